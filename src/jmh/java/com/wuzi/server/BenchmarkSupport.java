@@ -0,0 +1,51 @@
+package com.wuzi.server;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 各基准共用的辅助：屏蔽服务器日志，以及只计数不做 IO 的连接
+final class BenchmarkSupport {
+    private BenchmarkSupport() {
+    }
+
+    // 落子等操作都会写 INFO 日志；基准中改为异步写到空设备，保留入队的开销而不刷屏
+    static void quietLogging() {
+        ServerConfig config = new ServerConfig();
+        config.setLogAsync(true);
+        config.setLogFile(System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null");
+        try {
+            ServerLogger.configure(config);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 只累计收到的消息数；backlog 返回 0，使发送队列在入队线程上直接写出，开销计入调用方
+    static final class CountingConnection implements Connection {
+        private final AtomicLong messages;
+
+        CountingConnection(AtomicLong messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public void write(byte[] data) {
+            messages.incrementAndGet();
+        }
+
+        @Override
+        public void write(byte[][] data, int count) {
+            messages.addAndGet(count);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public int backlog() {
+            return 0;
+        }
+    }
+}
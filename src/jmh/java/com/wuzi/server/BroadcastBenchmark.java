@@ -0,0 +1,82 @@
+package com.wuzi.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 一手棋的完整广播：ClientHandler.makeMove 校验、落子、编码，写给对局双方并扇出给 watchers 个观战者。
+// 双方的连接在调用线程上直接写出；观战者由扇出线程异步写出，每次调用等到所有观战者都收到这手棋才返回。
+// 双方轮流在固定的 8 个点上落子（不会连成五），下完后重新开局
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    private static final int MOVES_PER_GAME = 8;
+
+    @Param({"0", "16", "256"})
+    public int watchers;
+
+    private GameRoom room;
+    private Player first;
+    private Player second;
+    private final AtomicLong delivered = new AtomicLong();
+    private long expected;
+    private int move;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.quietLogging();
+        room = new GameRoom(1);
+        AtomicLong players = new AtomicLong();
+        first = new Player("P1", new BenchmarkSupport.CountingConnection(players));
+        second = new Player("P2", new BenchmarkSupport.CountingConnection(players));
+        room.addPlayer(first);
+        room.addPlayer(second);
+        for (int i = 0; i < watchers; i++) {
+            room.getSpectators().add(new Player("W" + i, new BenchmarkSupport.CountingConnection(delivered)));
+        }
+        newGame();
+    }
+
+    private void newGame() {
+        room.setGameOver(true);
+        room.setPlayerReady(first);
+        room.setPlayerReady(second);
+        move = 0;
+    }
+
+    @Benchmark
+    public void move() {
+        if (move == MOVES_PER_GAME) {
+            newGame();
+        }
+        Player mover = room.getCurrentTurnColor().equals(first.getColor()) ? first : second;
+        // 黑方落在第 7 行，白方落在第 9 行，每方 4 手
+        int x = move % 2 == 0 ? 7 : 9;
+        int y = move / 2;
+        move++;
+        OutboundBatch.begin();
+        try {
+            ClientHandler.makeMove(room, mover, x, y);
+        } finally {
+            OutboundBatch.end();
+        }
+        expected += watchers;
+        while (delivered.get() < expected) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.wuzi.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+
+// ClientHandler 的文本命令解析：CommandParser 与原先 split + toLowerCase + parseInt 的方式对比。
+// 加 -prof gc 运行可以看到每条命令的分配量
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandParserBenchmark {
+    // 接近线上比例的命令组合：以落子为主，夹杂同步、列表、进房和准备
+    private static final String[] MIX = {
+        "put 7 7", "put 8 7", "put A 3", "put e e", "sync", "put 6 9", "put 7 B",
+        "ls rooms", "put 0 0", "start", "enter room 12", "put 3 4", "put D 2", "leave"
+    };
+
+    private final CommandParser parser = new CommandParser();
+    private int next;
+
+    private String nextLine() {
+        String line = MIX[next];
+        next = next + 1 == MIX.length ? 0 : next + 1;
+        return line;
+    }
+
+    @Benchmark
+    public int parse() {
+        CommandParser p = parser;
+        CommandParser.Command command = p.parse(nextLine());
+        if (command == CommandParser.Command.PUT) {
+            return p.intAt(1, 36) * 16 + p.intAt(2, 36);
+        } else if (command == CommandParser.Command.ENTER && p.is(1, "room")) {
+            return p.intAt(2, 10);
+        }
+        return command.ordinal();
+    }
+
+    @Benchmark
+    public int parseWithSplit() {
+        String[] parts = nextLine().split(" ");
+        switch (parts[0].toLowerCase()) {
+            case "put":
+                return Integer.parseInt(parts[1], 36) * 16 + Integer.parseInt(parts[2], 36);
+            case "enter":
+                return parts[1].equals("room") ? Integer.parseInt(parts[2]) : 0;
+            case "sync":
+                return 1;
+            case "ls":
+                return 2;
+            case "start":
+                return 3;
+            default:
+                return 4;
+        }
+    }
+}
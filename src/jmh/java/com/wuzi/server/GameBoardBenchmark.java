@@ -0,0 +1,105 @@
+package com.wuzi.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 位棋盘的落子、胜负判断和文本渲染。stones 为局面上已有的棋子数：8 为开局，100 接近下满半盘；
+// 局面随机生成但不含五连，每次落子后撤回，局面保持不变
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBoardBenchmark {
+    @Param({"8", "100"})
+    public int stones;
+
+    private GameBoard board;
+    // 局面上的空点，依次轮流落子
+    private int[] empty;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        board = new GameBoard();
+        int size = board.getSize();
+        Random random = new Random(42);
+        int placed = 0;
+        while (placed < stones) {
+            int x = random.nextInt(size);
+            int y = random.nextInt(size);
+            if (board.getCell(x, y) != 0) {
+                continue;
+            }
+            int c = placed % 2;
+            board.place(x, y, c);
+            if (board.checkWin(x, y)) {
+                board.remove(x, y, c);
+                continue;
+            }
+            placed++;
+        }
+        empty = new int[size * size - stones];
+        int n = 0;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if (board.getCell(x, y) == 0) {
+                    empty[n++] = x * size + y;
+                }
+            }
+        }
+    }
+
+    private int nextCell() {
+        int cell = empty[next];
+        next = next + 1 == empty.length ? 0 : next + 1;
+        return cell;
+    }
+
+    @Benchmark
+    public boolean makeMoveAndCheckWin() {
+        int cell = nextCell();
+        int x = cell / board.getSize();
+        int y = cell % board.getSize();
+        board.makeMove(x, y, "black");
+        boolean win = board.checkWin(x, y);
+        board.remove(x, y, 0);
+        return win;
+    }
+
+    // 同一版本的重复渲染（双方玩家、观战者、sync）复用缓存的字节
+    @Benchmark
+    public String toStringCached() {
+        return board.toString();
+    }
+
+    // 落子后只重绘变化的行
+    @Benchmark
+    public String toStringAfterMove() {
+        int cell = nextCell();
+        int x = cell / board.getSize();
+        int y = cell % board.getSize();
+        board.makeMove(x, y, "white");
+        String text = board.toString();
+        board.remove(x, y, 1);
+        return text;
+    }
+
+    // 没有缓存时整盘渲染
+    @Benchmark
+    public byte[] renderFull() {
+        return new BoardRenderer(board).render();
+    }
+}
@@ -0,0 +1,79 @@
+package com.wuzi.server;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 按房间号查找房间：单线程，多线程并发查找，以及查找的同时有玩家不断进出房间（改动空闲索引与房间表）
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoomManagerBenchmark {
+    static final int ROOMS = 1000;
+
+    private RoomManager manager;
+
+    @Setup
+    public void setUp() {
+        BenchmarkSupport.quietLogging();
+        manager = new RoomManager(ROOMS, 100_000, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    // 每个线程自己的伪随机房间号序列和一名玩家
+    @State(Scope.Thread)
+    public static class Caller {
+        private int seed = (int) System.nanoTime() | 1;
+        private final Player player = new Player("bench", new BenchmarkSupport.CountingConnection(new AtomicLong()));
+
+        int nextRoomId() {
+            seed ^= seed << 13;
+            seed ^= seed >>> 17;
+            seed ^= seed << 5;
+            return (seed & Integer.MAX_VALUE) % ROOMS + 1;
+        }
+    }
+
+    @Benchmark
+    public GameRoom lookup(Caller caller) {
+        return manager.getRoom(caller.nextRoomId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public GameRoom lookupShared(Caller caller) {
+        return manager.getRoom(caller.nextRoomId());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public GameRoom contendedLookup(Caller caller) {
+        return manager.getRoom(caller.nextRoomId());
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public GameRoom contendedJoinAndLeave(Caller caller) {
+        GameRoom room = manager.joinAnyRoom(caller.player);
+        if (room != null) {
+            room.removePlayer(caller.player);
+        }
+        return room;
+    }
+}
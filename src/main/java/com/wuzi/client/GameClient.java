@@ -1,10 +1,14 @@
 package com.wuzi.client;
 
 import com.wuzi.common.AnsiColor;
+import com.wuzi.common.BoardDelta;
+import com.wuzi.common.BoardFormatter;
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
 public class GameClient {
@@ -13,8 +17,8 @@ public class GameClient {
 
     public static void main(String[] args) {
         try (Socket socket = new Socket(SERVER_HOST, SERVER_PORT);
-             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-             PrintWriter writer = new PrintWriter(socket.getOutputStream(), true);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
              Scanner scanner = new Scanner(System.in)) {
 
             // 读取服务器欢迎消息
@@ -25,6 +29,9 @@ public class GameClient {
             System.out.print("> ");
             String playerName = scanner.nextLine();
             writer.println(playerName);
+            // 请求增量棋盘更新，由本地维护棋盘并重绘
+            writer.println("delta on");
+            LocalBoard localBoard = new LocalBoard();
 
             // 创建消息接收线程
             Thread messageReceiver = new Thread(() -> {
@@ -32,6 +39,15 @@ public class GameClient {
                 try {
                     String message;
                     while ((message = reader.readLine()) != null) {
+                        if (message.startsWith(BoardDelta.BOARD) || message.startsWith(BoardDelta.MOVE)) {
+                            if (!localBoard.apply(message)) {
+                                // 序号不连续，说明丢失了更新，请求完整棋盘
+                                writer.println("sync");
+                                continue;
+                            }
+                            message = localBoard.render();
+                        }
+
                         // 去除ANSI颜色代码以便进行逻辑判断
                         String cleanMessage = message.replaceAll("\u001B\\[[;\\d]*m", "");
 
@@ -76,4 +92,47 @@ public class GameClient {
             e.printStackTrace();
         }
     }
+
+    // 客户端本地的棋盘副本，根据服务器的快照与增量消息更新
+    static class LocalBoard {
+        private int size = 15;
+        private int[][] cells = new int[size][size];
+        private int seq = -1;
+        private int lastX = -1;
+        private int lastY = -1;
+
+        // 返回 false 表示增量序号不连续，需要重新同步
+        boolean apply(String message) {
+            String[] parts = message.split(" ");
+            int messageSeq = Integer.parseInt(parts[1]);
+            if (parts[0].equals(BoardDelta.BOARD)) {
+                String data = parts[4];
+                size = (int) Math.round(Math.sqrt(data.length()));
+                cells = new int[size][size];
+                for (int i = 0; i < data.length(); i++) {
+                    cells[i / size][i % size] = data.charAt(i) - '0';
+                }
+                lastX = Integer.parseInt(parts[2]);
+                lastY = Integer.parseInt(parts[3]);
+                seq = messageSeq;
+                return true;
+            }
+            if (messageSeq <= seq) {
+                // 快照已经包含这一手（观战者追赶时可能出现）
+                return true;
+            }
+            if (messageSeq != seq + 1) {
+                return false;
+            }
+            lastX = Integer.parseInt(parts[2]);
+            lastY = Integer.parseInt(parts[3]);
+            cells[lastX][lastY] = parts[4].equals("b") ? 1 : 2;
+            seq = messageSeq;
+            return true;
+        }
+
+        String render() {
+            return BoardFormatter.render(size, (x, y) -> cells[x][y], lastX, lastY);
+        }
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,161 @@
+package com.wuzi.common;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// 可选的紧凑二进制协议，登录时用 HANDSHAKE 前缀代替名字行来启用：
+//   客户端发送 "#wuzi-bin1 <名字>\n"，此后双方都使用二进制帧
+// 帧格式：u16 长度（不含自身，大端）+ u8 操作码 + 负载
+public class BinaryProtocol {
+    public static final String HANDSHAKE = "#wuzi-bin1 ";
+    // 客户端请求帧的最大长度；服务器事件帧受 u16 限制
+    public static final int MAX_REQUEST_LENGTH = 4096;
+    public static final int MAX_FRAME_LENGTH = 0xFFFF;
+
+    // 客户端 -> 服务器
+    public static final int OP_LIST = 0x01;  // 可选 u16 页码 + u8 过滤条件
+    public static final int OP_ENTER = 0x02; // i32 房间号
+    public static final int OP_START = 0x03;
+    public static final int OP_PUT = 0x04;   // u8 x, u8 y（无边界棋盘为 i32 x, i32 y）
+    public static final int OP_LEAVE = 0x05;
+    public static final int OP_QUIT = 0x06;
+    public static final int OP_SYNC = 0x07;
+    public static final int OP_WATCH = 0x08; // i32 房间号
+    public static final int OP_MATCH = 0x09; // u8 1=加入匹配 0=取消
+
+    // 服务器 -> 客户端
+    public static final int EV_TEXT = 0x81;       // UTF-8 文本提示
+    public static final int EV_ROOM_LIST = 0x82;  // u16 数量，每项 i32 房间号 + u8 人数 + u8 状态，之后 u16 页码 + u16 总页数 + i32 总数 + i32 版本
+    public static final int EV_GAME_START = 0x83; // u8 己方颜色
+    public static final int EV_MOVE = 0x84;       // u16 序号, u8 x, u8 y, u8 颜色
+    public static final int EV_TURN = 0x85;       // u8 轮到的颜色
+    public static final int EV_GAME_OVER = 0x86;  // u8 获胜颜色 + UTF-8 获胜者名字
+    public static final int EV_BOARD = 0x87;      // u16 序号, u8 最后一手 x, u8 y（无则 0xFF），每格一字节
+    public static final int EV_ERROR = 0x88;      // u8 被拒绝的请求操作码 + u8 原因码 + UTF-8 说明（不带颜色）
+
+    // EV_ERROR 的原因码
+    public static final int ERR_MALFORMED = 1;      // 负载格式错误
+    public static final int ERR_UNKNOWN_OPCODE = 2; // 未知的操作码
+    public static final int ERR_RATE_LIMITED = 3;   // 请求过于频繁，已被丢弃
+    public static final int ERR_NOT_IN_ROOM = 4;
+    public static final int ERR_NOT_STARTED = 5;
+    public static final int ERR_GAME_OVER = 6;
+    public static final int ERR_OPPONENT_AWAY = 7;  // 等待对手重新连接
+    public static final int ERR_NOT_YOUR_TURN = 8;
+    public static final int ERR_FORBIDDEN = 9;      // 禁手
+    public static final int ERR_INVALID_MOVE = 10;  // 越界或已有棋子
+
+    // 颜色与格子状态编码一致
+    public static final int BLACK = 1;
+    public static final int WHITE = 2;
+
+    public static final int ROOM_FREE = 0;
+    public static final int ROOM_WAITING = 1;
+    public static final int ROOM_FULL = 2;
+    public static final int ROOM_PLAYING = 3;
+
+    public static int colorCode(String color) {
+        return color.equals("black") ? BLACK : WHITE;
+    }
+
+    // 生成只有操作码的帧
+    public static byte[] frame(int opcode) {
+        return allocate(opcode, 0).array();
+    }
+
+    public static byte[] enter(int roomId) {
+        return allocate(OP_ENTER, 4).putInt(roomId).array();
+    }
+
+    public static byte[] watch(int roomId) {
+        return allocate(OP_WATCH, 4).putInt(roomId).array();
+    }
+
+    public static byte[] match(boolean join) {
+        return allocate(OP_MATCH, 1).put((byte) (join ? 1 : 0)).array();
+    }
+
+    public static byte[] put(int x, int y) {
+        return allocate(OP_PUT, 2).put((byte) x).put((byte) y).array();
+    }
+
+    public static byte[] text(String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_FRAME_LENGTH - 1);
+        return allocate(EV_TEXT, length).put(bytes, 0, length).array();
+    }
+
+    public static byte[] error(int opcode, int reason, String message) {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_FRAME_LENGTH - 3);
+        return allocate(EV_ERROR, 2 + length).put((byte) opcode).put((byte) reason).put(bytes, 0, length).array();
+    }
+
+    public static byte[] gameStart(String color) {
+        return allocate(EV_GAME_START, 1).put((byte) colorCode(color)).array();
+    }
+
+    public static byte[] move(int seq, int x, int y, String color) {
+        return allocate(EV_MOVE, 5).putShort((short) seq).put((byte) x).put((byte) y).put((byte) colorCode(color)).array();
+    }
+
+    public static byte[] turn(String color) {
+        return allocate(EV_TURN, 1).put((byte) colorCode(color)).array();
+    }
+
+    public static byte[] gameOver(String winnerColor, String winnerName) {
+        byte[] name = winnerName.getBytes(StandardCharsets.UTF_8);
+        return allocate(EV_GAME_OVER, 1 + name.length).put((byte) colorCode(winnerColor)).put(name).array();
+    }
+
+    public static byte[] board(int seq, int lastX, int lastY, byte[] cells) {
+        return allocate(EV_BOARD, 4 + cells.length)
+            .putShort((short) seq)
+            .put((byte) lastX)
+            .put((byte) lastY)
+            .put(cells)
+            .array();
+    }
+
+    // 单帧能容纳的房间数上限
+    public static final int MAX_ROOM_LIST = (MAX_FRAME_LENGTH - 15) / 6;
+
+    public static byte[] list(int page, int filter) {
+        return allocate(OP_LIST, 3).putShort((short) page).put((byte) filter).array();
+    }
+
+    // ids、playerCounts、states 长度一致，按房间顺序排列，count 不超过 MAX_ROOM_LIST
+    public static byte[] roomList(int[] ids, int[] playerCounts, int[] states, int count,
+                                  int page, int pages, int total, int version) {
+        ByteBuffer buffer = allocate(EV_ROOM_LIST, 14 + count * 6).putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(ids[i]).put((byte) playerCounts[i]).put((byte) states[i]);
+        }
+        return buffer.putShort((short) page).putShort((short) pages).putInt(total).putInt(version).array();
+    }
+
+    // 阻塞读取一帧，返回不含长度前缀的内容（首字节为操作码）；流结束返回 null
+    public static byte[] readFrame(DataInputStream in, int maxLength) throws IOException {
+        int length;
+        try {
+            length = in.readUnsignedShort();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (length == 0 || length > maxLength) {
+            throw new IOException("非法的帧长度：" + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return frame;
+    }
+
+    private static ByteBuffer allocate(int opcode, int payloadLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(3 + payloadLength);
+        buffer.putShort((short) (1 + payloadLength)).put((byte) opcode);
+        return buffer;
+    }
+}
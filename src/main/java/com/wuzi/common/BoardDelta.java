@@ -0,0 +1,17 @@
+package com.wuzi.common;
+
+// 增量棋盘更新使用的机器可读消息，以 '@' 开头以便客户端与普通提示区分
+//   @board <seq> <lastX> <lastY> <cells>  完整快照，cells 为按行排列的 0/1/2
+//   @move <seq> <x> <y> <b|w>              第 seq 手落子
+public class BoardDelta {
+    public static final String BOARD = "@board";
+    public static final String MOVE = "@move";
+
+    public static String board(int seq, int lastX, int lastY, String cells) {
+        return BOARD + " " + seq + " " + lastX + " " + lastY + " " + cells;
+    }
+
+    public static String move(int seq, int x, int y, String color) {
+        return MOVE + " " + seq + " " + x + " " + y + " " + (color.equals("black") ? "b" : "w");
+    }
+}
@@ -0,0 +1,75 @@
+package com.wuzi.common;
+
+import java.util.function.IntBinaryOperator;
+
+// 棋盘的终端渲染，服务器与客户端（增量更新模式下本地重绘）共用同一种外观
+public class BoardFormatter {
+    private static final String GRID_COLOR = AnsiColor.YELLOW;
+    private static final String BLACK_PIECE_COLOR = AnsiColor.CYAN;
+    private static final String WHITE_PIECE_COLOR = AnsiColor.WHITE;
+    private static final String LAST_MOVE_BG = AnsiColor.BG_RED;
+
+    // cells(x, y) 返回格子状态 0: Empty, 1: Black, 2: White
+    public static String render(int size, IntBinaryOperator cells, int lastMoveX, int lastMoveY) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(header(size));
+        for (int i = 0; i < size; i++) {
+            sb.append(rowHeader(i));
+            for (int j = 0; j < size; j++) {
+                sb.append(cell(size, i, j, cells.applyAsInt(i, j), i == lastMoveX && j == lastMoveY));
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    // Column Headers
+    public static String header(int size) {
+        StringBuilder sb = new StringBuilder("  ");
+        for (int i = 0; i < size; i++) {
+            sb.append(coordinate(i)).append(' ');
+        }
+        return sb.append("\n").toString();
+    }
+
+    public static String rowHeader(int row) {
+        return coordinate(row) + " ";
+    }
+
+    // 坐标用一位 36 进制数字（0-9, A-Z）表示：15 路棋盘与十六进制相同，19 路棋盘用到 I
+    public static char coordinate(int index) {
+        return Character.toUpperCase(Character.forDigit(index, 36));
+    }
+
+    // 单个格子的文本，每个格子占两个字符宽度：交叉点（或棋子）+ 右侧横线
+    public static String cell(int size, int i, int j, int state, boolean lastMove) {
+        if (state == 0) {
+            return GRID_COLOR + gridChar(size, i, j) + AnsiColor.RESET;
+        }
+
+        String symbol = (state == 1) ? "●" : "○";
+        String color = (state == 1) ? BLACK_PIECE_COLOR : WHITE_PIECE_COLOR;
+        if (lastMove) {
+            // 最后一手只给棋子加红色背景，后面的空格不着色
+            return LAST_MOVE_BG + color + symbol + AnsiColor.RESET + " ";
+        }
+        // 棋子后面保留横线，使网格保持连贯；最后一列用空格
+        return color + symbol + AnsiColor.RESET + ((j == size - 1) ? " " : GRID_COLOR + "─" + AnsiColor.RESET);
+    }
+
+    private static String gridChar(int size, int i, int j) {
+        if (i == 0) {
+            if (j == 0) return "┌─";
+            if (j == size - 1) return "┐ ";
+            return "┬─";
+        }
+        if (i == size - 1) {
+            if (j == 0) return "└─";
+            if (j == size - 1) return "┘ ";
+            return "┴─";
+        }
+        if (j == 0) return "├─";
+        if (j == size - 1) return "┤ ";
+        return "┼─";
+    }
+}
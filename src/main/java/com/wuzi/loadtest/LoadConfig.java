@@ -0,0 +1,174 @@
+package com.wuzi.loadtest;
+
+// 压测参数，默认值可通过 -Dwuzi.load.xxx 系统属性覆盖
+public class LoadConfig {
+    public enum Entry {
+        // enter room：优先加入有人等待的房间
+        ROOM,
+        // match：进入快速匹配队列
+        MATCH
+    }
+
+    private String host = "localhost";
+    private int port = 8888;
+    // 为 true 时在本进程内启动一个服务器，服务器参数仍由 -Dwuzi.xxx 决定
+    private boolean embedded = false;
+    private int sessions = 100;
+    // 所有会话在这段时间内均匀地陆续连接
+    private int rampSeconds = 5;
+    private int durationSeconds = 60;
+    // 每个会话最多下几局，0 表示直到压测结束
+    private int gamesPerSession = 0;
+    private boolean binary = false;
+    private Entry entry = Entry.ROOM;
+    // 思考时间服从对数正态分布：中位数（毫秒）与 sigma，中位数为 0 表示不思考
+    private int thinkMedianMillis = 500;
+    private double thinkSigma = 0.8;
+    // 对局脚本文件，每行一局 "x,y x,y ..."；为空时随机落子
+    private String script = null;
+    // 等待服务器回应的最长时间，超时计为错误
+    private int timeoutSeconds = 30;
+    private String namePrefix = "load";
+    // 进度输出的间隔
+    private int reportSeconds = 5;
+
+    public static LoadConfig fromSystemProperties() {
+        LoadConfig config = new LoadConfig();
+        config.setHost(System.getProperty("wuzi.load.host", config.getHost()));
+        config.setPort(Integer.getInteger("wuzi.load.port", config.getPort()));
+        config.setEmbedded(Boolean.parseBoolean(System.getProperty("wuzi.load.embedded", String.valueOf(config.isEmbedded()))));
+        config.setSessions(Integer.getInteger("wuzi.load.sessions", config.getSessions()));
+        config.setRampSeconds(Integer.getInteger("wuzi.load.ramp", config.getRampSeconds()));
+        config.setDurationSeconds(Integer.getInteger("wuzi.load.duration", config.getDurationSeconds()));
+        config.setGamesPerSession(Integer.getInteger("wuzi.load.games", config.getGamesPerSession()));
+        config.setBinary("binary".equalsIgnoreCase(System.getProperty("wuzi.load.protocol", config.isBinary() ? "binary" : "text")));
+        config.setEntry(Entry.valueOf(System.getProperty("wuzi.load.entry", config.getEntry().name()).toUpperCase()));
+        config.setThinkMedianMillis(Integer.getInteger("wuzi.load.think", config.getThinkMedianMillis()));
+        config.setThinkSigma(Double.parseDouble(System.getProperty("wuzi.load.think.sigma", String.valueOf(config.getThinkSigma()))));
+        config.setScript(System.getProperty("wuzi.load.script", config.getScript()));
+        config.setTimeoutSeconds(Integer.getInteger("wuzi.load.timeout", config.getTimeoutSeconds()));
+        config.setNamePrefix(System.getProperty("wuzi.load.name", config.getNamePrefix()));
+        config.setReportSeconds(Integer.getInteger("wuzi.load.report", config.getReportSeconds()));
+        return config;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public boolean isEmbedded() {
+        return embedded;
+    }
+
+    public void setEmbedded(boolean embedded) {
+        this.embedded = embedded;
+    }
+
+    public int getSessions() {
+        return sessions;
+    }
+
+    public void setSessions(int sessions) {
+        this.sessions = sessions;
+    }
+
+    public int getRampSeconds() {
+        return rampSeconds;
+    }
+
+    public void setRampSeconds(int rampSeconds) {
+        this.rampSeconds = rampSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    public int getGamesPerSession() {
+        return gamesPerSession;
+    }
+
+    public void setGamesPerSession(int gamesPerSession) {
+        this.gamesPerSession = gamesPerSession;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public void setBinary(boolean binary) {
+        this.binary = binary;
+    }
+
+    public Entry getEntry() {
+        return entry;
+    }
+
+    public void setEntry(Entry entry) {
+        this.entry = entry;
+    }
+
+    public int getThinkMedianMillis() {
+        return thinkMedianMillis;
+    }
+
+    public void setThinkMedianMillis(int thinkMedianMillis) {
+        this.thinkMedianMillis = thinkMedianMillis;
+    }
+
+    public double getThinkSigma() {
+        return thinkSigma;
+    }
+
+    public void setThinkSigma(double thinkSigma) {
+        this.thinkSigma = thinkSigma;
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public void setScript(String script) {
+        this.script = script;
+    }
+
+    public int getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public void setTimeoutSeconds(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public void setNamePrefix(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    public int getReportSeconds() {
+        return reportSeconds;
+    }
+
+    public void setReportSeconds(int reportSeconds) {
+        this.reportSeconds = reportSeconds;
+    }
+}
@@ -0,0 +1,193 @@
+package com.wuzi.loadtest;
+
+import com.wuzi.server.GameServer;
+import com.wuzi.server.ServerConfig;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// 无界面的压测工具：同时运行 N 个模拟客户端会话，统计吞吐量和落子往返延迟。
+// 参数见 LoadConfig；wuzi.load.embedded=true 时在本进程内启动一个服务器作为压测对象
+public class LoadGenerator {
+    private final LoadConfig config;
+    private final LoadStats stats = new LoadStats();
+
+    public LoadGenerator(LoadConfig config) {
+        this.config = config;
+    }
+
+    public LoadStats getStats() {
+        return stats;
+    }
+
+    // 运行到 durationSeconds 结束（或每个会话都下完 gamesPerSession 局），返回统计结果
+    public LoadStats run() throws IOException, InterruptedException {
+        List<int[]> scripts = config.getScript() == null ? null : loadScripts(config.getScript());
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+        ExecutorService executor = newSessionExecutor();
+        Thread reporter = startReporter(start);
+        try {
+            long rampNanos = TimeUnit.SECONDS.toNanos(config.getRampSeconds());
+            for (int i = 0; i < config.getSessions() && System.nanoTime() < deadline; i++) {
+                long due = start + rampNanos * i / config.getSessions();
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+                executor.execute(new LoadSession(i + 1, config, stats, scripts, deadline));
+            }
+            executor.shutdown();
+            // 会话在截止时间后最多还要等一次读超时才会退出
+            long grace = TimeUnit.SECONDS.toNanos(config.getTimeoutSeconds());
+            if (!executor.awaitTermination(deadline + grace - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                executor.shutdownNow();
+            }
+        } finally {
+            reporter.interrupt();
+        }
+        printReport(System.nanoTime() - start);
+        return stats;
+    }
+
+    // 有虚拟线程时每个会话一个虚拟线程，否则使用普通线程池
+    private static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread t = new Thread(runnable, "wuzi-load-session");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    private Thread startReporter(long start) {
+        Thread t = new Thread(() -> {
+            long interval = TimeUnit.SECONDS.toMillis(Math.max(1, config.getReportSeconds()));
+            long lastMoves = 0;
+            try {
+                while (true) {
+                    Thread.sleep(interval);
+                    long moves = stats.getMoves();
+                    long[] p = stats.roundTripPercentiles(0.5, 0.99);
+                    System.out.printf("[%3ds] 在线 %d  对局 %d  落子 %d (%.0f/s)  往返 p50 %s p99 %s  错误 %d%n",
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), stats.getActive(),
+                        stats.getGames(), moves, (moves - lastMoves) * 1000.0 / interval,
+                        millis(p[0]), millis(p[1]), stats.getErrorTotal());
+                    lastMoves = moves;
+                }
+            } catch (InterruptedException e) {
+                // 压测结束
+            }
+        }, "wuzi-load-reporter");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    private void printReport(long elapsedNanos) {
+        double seconds = elapsedNanos / 1e9;
+        long[] p = stats.roundTripPercentiles(0.5, 0.99, 0.999);
+        System.out.println("========== 压测结果 ==========");
+        System.out.printf("会话：%d 个，连接成功 %d，连接失败 %d，协议 %s，入场 %s%n", config.getSessions(),
+            stats.getConnected(), stats.getConnectFailures(), config.isBinary() ? "binary" : "text",
+            config.getEntry().name().toLowerCase());
+        System.out.printf("时长：%.1f 秒%n", seconds);
+        System.out.printf("吞吐：落子 %d (%.1f/s)，完成对局 %d (%.2f/s)%n", stats.getMoves(), stats.getMoves() / seconds,
+            stats.getGames(), stats.getGames() / seconds);
+        System.out.printf("落子往返：p50 %s  p99 %s  p999 %s%n", millis(p[0]), millis(p[1]), millis(p[2]));
+        if (stats.getErrorTotal() == 0) {
+            System.out.println("错误：无");
+        } else {
+            System.out.println("错误：" + stats.getErrorTotal());
+            for (Map.Entry<String, Long> error : stats.getErrors().entrySet()) {
+                System.out.printf("  %s：%d%n", error.getKey(), error.getValue());
+            }
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.2fms", nanos / 1e6);
+    }
+
+    // 每行一局 "x,y x,y ..."，# 开头为注释
+    static List<int[]> loadScripts(String path) throws IOException {
+        List<int[]> scripts = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] moves = line.split("\\s+");
+            int[] script = new int[moves.length * 2];
+            for (int i = 0; i < moves.length; i++) {
+                String[] xy = moves[i].split(",");
+                if (xy.length != 2) {
+                    throw new IOException("无法解析的对局脚本：" + moves[i]);
+                }
+                script[i * 2] = Integer.parseInt(xy[0].trim());
+                script[i * 2 + 1] = Integer.parseInt(xy[1].trim());
+            }
+            scripts.add(script);
+        }
+        return scripts;
+    }
+
+    // 在本进程内启动服务器，监听一个空闲端口；日志写入文件以免淹没压测输出，未显式指定时不开指标端点
+    static void startEmbeddedServer(LoadConfig config) throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        ServerConfig serverConfig = ServerConfig.fromSystemProperties();
+        serverConfig.setPort(port);
+        if (System.getProperty("wuzi.log.file") == null) {
+            serverConfig.setLogFile("wuzi-load-server.log");
+            serverConfig.setLogAsync(true);
+        }
+        if (System.getProperty("wuzi.metrics.port") == null) {
+            serverConfig.setMetricsPort(0);
+        }
+        Thread t = new Thread(() -> new GameServer(serverConfig).start(), "wuzi-load-server");
+        t.setDaemon(true);
+        t.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            try {
+                new Socket("localhost", port).close();
+                break;
+            } catch (IOException e) {
+                if (System.nanoTime() > deadline) {
+                    throw new IOException("内置服务器未能启动", e);
+                }
+                Thread.sleep(50);
+            }
+        }
+        config.setHost("localhost");
+        config.setPort(port);
+        System.out.println("内置服务器已启动（" + serverConfig.getMode().name().toLowerCase() + "），端口：" + port
+            + "，日志：" + serverConfig.getLogFile());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.fromSystemProperties();
+        if (config.isEmbedded()) {
+            startEmbeddedServer(config);
+        }
+        System.out.printf("压测 %s:%d，%d 个会话，%d 秒内陆续连接，持续 %d 秒%n", config.getHost(), config.getPort(),
+            config.getSessions(), config.getRampSeconds(), config.getDurationSeconds());
+        LoadStats stats = new LoadGenerator(config).run();
+        System.exit(stats.getErrorTotal() == 0 && stats.getConnectFailures() == 0 ? 0 : 1);
+    }
+}
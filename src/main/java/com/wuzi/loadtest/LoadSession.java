@@ -0,0 +1,571 @@
+package com.wuzi.loadtest;
+
+import com.wuzi.common.BinaryProtocol;
+import com.wuzi.common.BoardDelta;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// 一个模拟的 GameClient 会话：登录、进房或匹配、按思考时间轮流落子，下完一局再来一局，直到压测结束。
+// 文本协议与 GameClient 相同（开启增量棋盘），也可以使用二进制帧。服务器的每条回应都会校验：
+// 落子序号连续、落点为空、自己的落子按原样回显，以及不应出现的错误提示
+class LoadSession implements Runnable {
+    private static final Pattern ANSI = Pattern.compile("\u001B\\[[;\\d]*m");
+    // 阻塞读的超时，用于定期检查压测是否结束；真正的回应超时由 LoadConfig.timeoutSeconds 决定
+    private static final int POLL_MILLIS = 1000;
+
+    private enum Event {
+        NONE, OPPONENT_JOINED, OPPONENT_LEFT, GAME_START, BOARD, MOVE, TURN, GAME_OVER, REJECTED
+    }
+
+    private final int id;
+    private final LoadConfig config;
+    private final LoadStats stats;
+    // 对局脚本，每局为 x0, y0, x1, y1, ... 的落子序列
+    private final List<int[]> scripts;
+    private final long deadline;
+
+    private InputStream in;
+    private OutputStream out;
+    // 尚未读完的一行或一帧，读超时后保留，下次接着读
+    private final ByteArrayOutputStream partial = new ByteArrayOutputStream(256);
+    private boolean framed;
+
+    // 最近读到的事件及其参数
+    private Event event = Event.NONE;
+    private int eventSeq;
+    private int eventX;
+    private int eventY;
+    private int eventColor;
+    private byte[] eventCells;
+
+    // 当前对局
+    private boolean inGame;
+    private int color;
+    private int size = 15;
+    private byte[] cells = new byte[size * size];
+    private int seq;
+    // 按顺序记录的落子（x, y），收到中途的完整快照后顺序未知，记为 -1
+    private int[] history = new int[size * size * 2];
+    private int historyLength;
+    // 已发出、尚未收到回显的落子
+    private int pendingX = -1;
+    private int pendingY;
+    private long sentAt;
+    private int gamesPlayed;
+    private long lastHeard;
+
+    LoadSession(int id, LoadConfig config, LoadStats stats, List<int[]> scripts, long deadline) {
+        this.id = id;
+        this.config = config;
+        this.stats = stats;
+        this.scripts = scripts;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public void run() {
+        Socket socket;
+        try {
+            socket = new Socket(config.getHost(), config.getPort());
+        } catch (IOException e) {
+            stats.connectFailed();
+            return;
+        }
+        stats.connected();
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(POLL_MILLIS);
+            in = new BufferedInputStream(socket.getInputStream());
+            out = new BufferedOutputStream(socket.getOutputStream());
+            play();
+        } catch (SocketTimeoutException e) {
+            stats.error("登录超时");
+        } catch (IOException e) {
+            if (System.nanoTime() < deadline) {
+                stats.error("连接中断");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stats.disconnected();
+        }
+    }
+
+    private void play() throws IOException, InterruptedException {
+        // 名字提示总是文本行；之后按协议收发
+        String prompt = readLine(TimeUnit.SECONDS.toNanos(config.getTimeoutSeconds()));
+        if (prompt.contains("服务器连接数已满")) {
+            stats.error("连接被拒绝");
+            return;
+        }
+        String name = config.getNamePrefix() + "-" + id;
+        if (config.isBinary()) {
+            writeText(BinaryProtocol.HANDSHAKE + name);
+            framed = true;
+        } else {
+            writeText(name);
+            writeText("delta on");
+        }
+        enter();
+        lastHeard = System.nanoTime();
+
+        while (true) {
+            if (finished()) {
+                send("quit", BinaryProtocol.frame(BinaryProtocol.OP_QUIT));
+                return;
+            }
+            try {
+                if (!readEvent()) {
+                    if (System.nanoTime() < deadline) {
+                        stats.error("连接被服务器关闭");
+                    }
+                    return;
+                }
+            } catch (SocketTimeoutException e) {
+                checkTimeout();
+                continue;
+            }
+            lastHeard = System.nanoTime();
+            if (!handle()) {
+                return;
+            }
+        }
+    }
+
+    private boolean finished() {
+        return System.nanoTime() >= deadline
+            || (config.getGamesPerSession() > 0 && gamesPlayed >= config.getGamesPerSession());
+    }
+
+    // 对局中或等待回显时长时间没有消息计为错误，离开房间重新进入；在房间里等对手不算
+    private void checkTimeout() throws IOException {
+        if (System.nanoTime() - lastHeard < TimeUnit.SECONDS.toNanos(config.getTimeoutSeconds())) {
+            return;
+        }
+        lastHeard = System.nanoTime();
+        if (pendingX >= 0 || inGame) {
+            stats.error(pendingX >= 0 ? "落子回显超时" : "对局中无响应");
+            rejoin();
+        }
+    }
+
+    // 返回 false 表示会话应当结束
+    private boolean handle() throws IOException, InterruptedException {
+        switch (event) {
+            case OPPONENT_JOINED:
+                think();
+                send("start", BinaryProtocol.frame(BinaryProtocol.OP_START));
+                break;
+            case GAME_START:
+                inGame = true;
+                color = eventColor;
+                seq = 0;
+                historyLength = 0;
+                pendingX = -1;
+                break;
+            case BOARD:
+                applyBoard();
+                // 开局不会提示黑方轮到自己，收到开局的空棋盘后黑方直接落第一手
+                if (inGame && seq == 0 && color == BinaryProtocol.BLACK && pendingX < 0) {
+                    think();
+                    if (!finished()) {
+                        putStone();
+                    }
+                }
+                break;
+            case MOVE:
+                applyMove();
+                break;
+            case TURN:
+                if (inGame && eventColor == color) {
+                    think();
+                    if (!finished()) {
+                        putStone();
+                    }
+                }
+                break;
+            case GAME_OVER:
+                if (!inGame) {
+                    break;
+                }
+                inGame = false;
+                pendingX = -1;
+                gamesPlayed++;
+                // 每局只由黑方计数一次
+                if (color == BinaryProtocol.BLACK) {
+                    stats.gameOver();
+                }
+                if (!finished()) {
+                    think();
+                    send("again", BinaryProtocol.frame(BinaryProtocol.OP_START));
+                }
+                break;
+            case OPPONENT_LEFT:
+                inGame = false;
+                pendingX = -1;
+                if (!finished()) {
+                    rejoin();
+                }
+                break;
+            case REJECTED:
+                stats.error("连接被拒绝");
+                return false;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    private void enter() throws IOException {
+        if (config.getEntry() == LoadConfig.Entry.MATCH) {
+            send("match", BinaryProtocol.match(true));
+        } else {
+            send("enter room", BinaryProtocol.enter(0));
+        }
+    }
+
+    private void rejoin() throws IOException {
+        inGame = false;
+        pendingX = -1;
+        send("leave", BinaryProtocol.frame(BinaryProtocol.OP_LEAVE));
+        enter();
+    }
+
+    private void applyBoard() {
+        int boardSize = (int) Math.round(Math.sqrt(eventCells.length));
+        if (boardSize != size) {
+            size = boardSize;
+            history = new int[size * size * 2];
+        }
+        cells = eventCells;
+        int stones = 0;
+        for (byte cell : cells) {
+            if (cell != 0) {
+                stones++;
+            }
+        }
+        // 开局的空棋盘之外，快照不包含落子顺序
+        historyLength = stones == 0 ? 0 : -1;
+        seq = eventSeq;
+    }
+
+    private void applyMove() throws IOException {
+        if (eventSeq <= seq) {
+            return;
+        }
+        if (eventSeq != seq + 1) {
+            stats.error("落子序号不连续");
+            send("sync", BinaryProtocol.frame(BinaryProtocol.OP_SYNC));
+            return;
+        }
+        int cell = eventX * size + eventY;
+        if (eventX < 0 || eventX >= size || eventY < 0 || eventY >= size || cells[cell] != 0) {
+            stats.error("落点与本地棋盘不一致");
+            send("sync", BinaryProtocol.frame(BinaryProtocol.OP_SYNC));
+            return;
+        }
+        cells[cell] = (byte) eventColor;
+        seq = eventSeq;
+        if (historyLength >= 0) {
+            history[historyLength++] = eventX;
+            history[historyLength++] = eventY;
+        }
+        if (eventColor == color && pendingX >= 0) {
+            if (eventX == pendingX && eventY == pendingY) {
+                stats.move(System.nanoTime() - sentAt);
+            } else {
+                stats.error("落子回显不符");
+            }
+            pendingX = -1;
+        }
+    }
+
+    private void putStone() throws IOException {
+        int move = chooseMove();
+        if (move < 0) {
+            return;
+        }
+        pendingX = move / size;
+        pendingY = move % size;
+        sentAt = System.nanoTime();
+        send("put " + Integer.toString(pendingX, 36) + " " + Integer.toString(pendingY, 36),
+            BinaryProtocol.put(pendingX, pendingY));
+    }
+
+    // 有脚本时沿用与当前棋谱前缀一致的那局脚本，否则在已有棋子周围两格内随机落子；棋盘已满返回 -1
+    private int chooseMove() {
+        if (scripts != null && historyLength >= 0) {
+            for (int[] script : scripts) {
+                if (script.length > historyLength && matchesHistory(script)) {
+                    int x = script[historyLength];
+                    int y = script[historyLength + 1];
+                    if (x >= 0 && x < size && y >= 0 && y < size && cells[x * size + y] == 0) {
+                        return x * size + y;
+                    }
+                }
+            }
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int candidates = 0;
+        int chosen = -1;
+        boolean empty = true;
+        for (int x = 0; x < size; x++) {
+            for (int y = 0; y < size; y++) {
+                if (cells[x * size + y] != 0) {
+                    empty = false;
+                } else if (nearStone(x, y) && random.nextInt(++candidates) == 0) {
+                    // 蓄水池抽样，不需要先收集所有候选点
+                    chosen = x * size + y;
+                }
+            }
+        }
+        if (empty) {
+            int center = size / 2;
+            return (center + random.nextInt(-1, 2)) * size + center + random.nextInt(-1, 2);
+        }
+        if (chosen < 0) {
+            for (int cell = 0; cell < cells.length; cell++) {
+                if (cells[cell] == 0) {
+                    return cell;
+                }
+            }
+        }
+        return chosen;
+    }
+
+    private boolean matchesHistory(int[] script) {
+        for (int i = 0; i < historyLength; i++) {
+            if (script[i] != history[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean nearStone(int x, int y) {
+        for (int i = Math.max(0, x - 2); i <= Math.min(size - 1, x + 2); i++) {
+            for (int j = Math.max(0, y - 2); j <= Math.min(size - 1, y + 2); j++) {
+                if (cells[i * size + j] != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // 对数正态分布的思考时间：多数很快，少数长考
+    private void think() throws InterruptedException {
+        int median = config.getThinkMedianMillis();
+        if (median <= 0) {
+            return;
+        }
+        double millis = median * Math.exp(config.getThinkSigma() * ThreadLocalRandom.current().nextGaussian());
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        Thread.sleep(Math.max(0, Math.min((long) millis, Math.min(remaining, 60_000))));
+    }
+
+    private void send(String text, byte[] frame) throws IOException {
+        if (framed) {
+            out.write(frame);
+            out.flush();
+        } else {
+            writeText(text);
+        }
+    }
+
+    private void writeText(String line) throws IOException {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    // 读取下一条消息并解析为事件；流结束返回 false
+    private boolean readEvent() throws IOException {
+        event = Event.NONE;
+        if (!framed) {
+            String line = readLine(0);
+            if (line == null) {
+                return false;
+            }
+            parseText(line);
+            return true;
+        }
+        byte[] frame = readFrame();
+        if (frame == null) {
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(frame);
+        int opcode = buffer.get() & 0xFF;
+        switch (opcode) {
+            case BinaryProtocol.EV_TEXT:
+                parseText(new String(frame, 1, frame.length - 1, StandardCharsets.UTF_8));
+                break;
+            case BinaryProtocol.EV_GAME_START:
+                event = Event.GAME_START;
+                eventColor = buffer.get();
+                break;
+            case BinaryProtocol.EV_BOARD:
+                event = Event.BOARD;
+                eventSeq = buffer.getShort() & 0xFFFF;
+                buffer.get();
+                buffer.get();
+                eventCells = new byte[buffer.remaining()];
+                buffer.get(eventCells);
+                break;
+            case BinaryProtocol.EV_MOVE:
+                event = Event.MOVE;
+                eventSeq = buffer.getShort() & 0xFFFF;
+                eventX = buffer.get() & 0xFF;
+                eventY = buffer.get() & 0xFF;
+                eventColor = buffer.get();
+                break;
+            case BinaryProtocol.EV_TURN:
+                event = Event.TURN;
+                eventColor = buffer.get();
+                break;
+            case BinaryProtocol.EV_GAME_OVER:
+                event = Event.GAME_OVER;
+                break;
+            case BinaryProtocol.EV_ERROR:
+                buffer.get();
+                countError(buffer.get() & 0xFF);
+                break;
+            default:
+                break;
+        }
+        return true;
+    }
+
+    // 二进制协议的拒绝事件按原因码计数，分类与文本提示一致
+    private void countError(int reason) {
+        switch (reason) {
+            case BinaryProtocol.ERR_FORBIDDEN:
+            case BinaryProtocol.ERR_INVALID_MOVE:
+                stats.error("落子被拒绝");
+                break;
+            case BinaryProtocol.ERR_NOT_YOUR_TURN:
+                stats.error("不是自己的回合");
+                break;
+            case BinaryProtocol.ERR_RATE_LIMITED:
+                stats.error("被限流");
+                break;
+            case BinaryProtocol.ERR_MALFORMED:
+            case BinaryProtocol.ERR_UNKNOWN_OPCODE:
+                stats.error("命令出错");
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void parseText(String message) {
+        String clean = ANSI.matcher(message).replaceAll("");
+        if (clean.startsWith(BoardDelta.MOVE + " ")) {
+            String[] parts = clean.split(" ");
+            event = Event.MOVE;
+            eventSeq = Integer.parseInt(parts[1]);
+            eventX = Integer.parseInt(parts[2]);
+            eventY = Integer.parseInt(parts[3]);
+            eventColor = parts[4].equals("b") ? BinaryProtocol.BLACK : BinaryProtocol.WHITE;
+        } else if (clean.startsWith(BoardDelta.BOARD + " ")) {
+            String[] parts = clean.split(" ");
+            event = Event.BOARD;
+            eventSeq = Integer.parseInt(parts[1]);
+            eventCells = new byte[parts[4].length()];
+            for (int i = 0; i < eventCells.length; i++) {
+                eventCells[i] = (byte) (parts[4].charAt(i) - '0');
+            }
+        } else if (clean.startsWith("游戏开始！你是")) {
+            event = Event.GAME_START;
+            eventColor = clean.startsWith("游戏开始！你是黑方") ? BinaryProtocol.BLACK : BinaryProtocol.WHITE;
+        } else if (clean.contains("轮到你了")) {
+            // 文本协议只提示轮到的一方
+            event = Event.TURN;
+            eventColor = color;
+        } else if (clean.contains("游戏结束！") || clean.contains("判负")) {
+            event = Event.GAME_OVER;
+        } else if (clean.contains("对手已加入")) {
+            event = Event.OPPONENT_JOINED;
+        } else if (clean.contains("等待其他玩家加入")) {
+            event = Event.OPPONENT_LEFT;
+        } else if (clean.contains("服务器连接数已满")) {
+            event = Event.REJECTED;
+        } else if (clean.contains("无效的落子位置") || clean.contains("禁手")) {
+            stats.error("落子被拒绝");
+        } else if (clean.contains("并不是你的回合")) {
+            stats.error("不是自己的回合");
+        } else if (clean.contains("操作过于频繁")) {
+            stats.error("被限流");
+        } else if (clean.contains("命令格式错误") || clean.contains("未知命令") || clean.contains("命令执行出错")) {
+            stats.error("命令出错");
+        }
+    }
+
+    // 逐字节读到换行；读超时抛出 SocketTimeoutException，已读的部分保留。timeoutNanos 大于 0 时超时后继续等到这么久
+    private String readLine(long timeoutNanos) throws IOException {
+        long start = System.nanoTime();
+        while (true) {
+            try {
+                int b;
+                while ((b = in.read()) != '\n') {
+                    if (b < 0) {
+                        if (partial.size() == 0) {
+                            return null;
+                        }
+                        break;
+                    }
+                    partial.write(b);
+                }
+                String line = partial.toString(StandardCharsets.UTF_8);
+                partial.reset();
+                return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+            } catch (SocketTimeoutException e) {
+                if (timeoutNanos <= 0 || System.nanoTime() - start >= timeoutNanos) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    // 长度前缀帧，返回不含前缀的内容；流结束返回 null
+    private byte[] readFrame() throws IOException {
+        while (true) {
+            int length = partial.size() >= 2 ? frameLength() : -1;
+            if (length >= 0 && partial.size() == 2 + length) {
+                byte[] bytes = partial.toByteArray();
+                partial.reset();
+                byte[] frame = new byte[length];
+                System.arraycopy(bytes, 2, frame, 0, length);
+                return frame;
+            }
+            if (length == 0) {
+                throw new IOException("非法的帧长度：0");
+            }
+            int b = in.read();
+            if (b < 0) {
+                if (partial.size() == 0) {
+                    return null;
+                }
+                throw new EOFException();
+            }
+            partial.write(b);
+        }
+    }
+
+    private int frameLength() {
+        byte[] bytes = partial.toByteArray();
+        return ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+    }
+}
@@ -0,0 +1,91 @@
+package com.wuzi.loadtest;
+
+import com.wuzi.server.LatencyHistogram;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// 所有会话共享的压测统计，会话线程并发累加
+public class LoadStats {
+    // 从发出落子到收到服务器回显这一手的往返时间
+    private final LatencyHistogram moveRoundTrip = new LatencyHistogram();
+    private final LongAdder connected = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder moves = new LongAdder();
+    private final LongAdder games = new LongAdder();
+    // 校验失败与意外回复，按类别计数
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    void connected() {
+        connected.increment();
+        active.increment();
+    }
+
+    void disconnected() {
+        active.decrement();
+    }
+
+    void connectFailed() {
+        connectFailures.increment();
+    }
+
+    void move(long roundTripNanos) {
+        moves.increment();
+        moveRoundTrip.record(roundTripNanos);
+    }
+
+    void gameOver() {
+        games.increment();
+    }
+
+    void error(String kind) {
+        errors.computeIfAbsent(kind, k -> new LongAdder()).increment();
+    }
+
+    public long getConnected() {
+        return connected.sum();
+    }
+
+    public long getConnectFailures() {
+        return connectFailures.sum();
+    }
+
+    public long getActive() {
+        return active.sum();
+    }
+
+    public long getMoves() {
+        return moves.sum();
+    }
+
+    public long getGames() {
+        return games.sum();
+    }
+
+    public long getErrorTotal() {
+        long total = 0;
+        for (LongAdder count : errors.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    public Map<String, Long> getErrors() {
+        Map<String, Long> result = new TreeMap<>();
+        errors.forEach((kind, count) -> result.put(kind, count.sum()));
+        return result;
+    }
+
+    // 往返时间的分位数（纳秒），quantiles 依次对应返回数组的各项
+    public long[] roundTripPercentiles(double... quantiles) {
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        long total = moveRoundTrip.snapshot(counts);
+        long[] result = new long[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            result[i] = LatencyHistogram.percentile(counts, total, quantiles[i]);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,113 @@
+package com.wuzi.server;
+
+import com.wuzi.common.AnsiColor;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// 连接准入：同时在线的连接数有上限。达到上限时接入线程先停止 accept，新连接留在内核的等待队列里；
+// 等待一段时间仍没有空位，才接受一个连接并告知服务器已满后关闭，让客户端尽快得到答复
+public class AdmissionControl {
+    // 达到上限后接入线程等待空位的时间
+    static final long ACCEPT_WAIT_MILLIS = 1000;
+
+    private static final byte[] FULL_MESSAGE = (AnsiColor.error("服务器连接数已满，请稍后再试") + "\n")
+        .getBytes(StandardCharsets.UTF_8);
+
+    private final int maxConnections;
+    private final Semaphore slots;
+    private final AtomicInteger active = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder stalls = new LongAdder();
+
+    // maxConnections 为 0 表示不限
+    public AdmissionControl(int maxConnections) {
+        this.maxConnections = maxConnections;
+        this.slots = maxConnections > 0 ? new Semaphore(maxConnections) : null;
+    }
+
+    // 在 accept 之前调用：有空位时占用一个并返回 true；等待超时返回 false，
+    // 此时调用方接受连接后再 tryAcquire 一次，仍然失败就用 reject 拒绝
+    public boolean awaitSlot() throws InterruptedException {
+        if (tryAcquire()) {
+            return true;
+        }
+        stalls.increment();
+        if (slots.tryAcquire(ACCEPT_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+            active.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public boolean tryAcquire() {
+        if (slots == null || slots.tryAcquire()) {
+            active.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    // 连接结束时归还占用的空位，每个连接恰好调用一次
+    public void release() {
+        active.decrementAndGet();
+        if (slots != null) {
+            slots.release();
+        }
+    }
+
+    public void reject(Socket socket) {
+        rejected.increment();
+        try (OutputStream out = socket.getOutputStream()) {
+            out.write(FULL_MESSAGE);
+        } catch (IOException e) {
+            // 客户端已断开，忽略
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    // 接入线程上的阻塞 channel，提示很短，一次写得完
+    public void reject(SocketChannel channel) {
+        rejected.increment();
+        try {
+            channel.write(ByteBuffer.wrap(FULL_MESSAGE));
+        } catch (IOException e) {
+            // 客户端已断开，忽略
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getActiveConnections() {
+        return active.get();
+    }
+
+    public long getRejectedTotal() {
+        return rejected.sum();
+    }
+
+    // 接入线程因连接数已满而暂停 accept 的次数
+    public long getStallTotal() {
+        return stalls.sum();
+    }
+}
@@ -0,0 +1,120 @@
+package com.wuzi.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// 后台日志线程：从环形缓冲区批量取出日志，格式化后一次写出并刷新
+public class AsyncLogWriter implements Runnable {
+    // 每批最多处理的条数，避免一次持有过大的输出缓冲
+    private static final int MAX_BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = 1_000_000L;
+
+    private final LogRingBuffer buffer;
+    private final OutputStream out;
+    private final boolean plain;
+    private final ServerLogger.Overflow overflow;
+    private final AtomicLong dropped = new AtomicLong();
+    private final StringBuilder batch = new StringBuilder(16 * 1024);
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    public AsyncLogWriter(int capacity, OutputStream out, boolean plain, ServerLogger.Overflow overflow) {
+        this.buffer = new LogRingBuffer(capacity);
+        this.out = out;
+        this.plain = plain;
+        this.overflow = overflow;
+    }
+
+    public void start() {
+        Thread t = new Thread(this, "wuzi-logger");
+        t.setDaemon(true);
+        thread = t;
+        t.start();
+    }
+
+    // 业务线程调用：只写入环形缓冲区，格式化与 IO 都在日志线程完成
+    public void submit(int level, String message) {
+        long now = System.currentTimeMillis();
+        if (buffer.offer(level, now, message)) {
+            return;
+        }
+        if (overflow == ServerLogger.Overflow.DROP) {
+            dropped.incrementAndGet();
+            return;
+        }
+        while (!buffer.offer(level, now, message)) {
+            if (!running) {
+                return;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS / 10);
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    // 停止并写出缓冲区中剩余的日志
+    public void shutdown() {
+        running = false;
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+            try {
+                t.join(2000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        long reportedDropped = 0;
+        while (true) {
+            boolean stopping = !running;
+            int count = drain();
+            long totalDropped = dropped.get();
+            if (totalDropped != reportedDropped) {
+                ServerLogger.appendLine(batch, ServerLogger.WARN, System.currentTimeMillis(),
+                    "日志缓冲区已满，丢弃了 " + (totalDropped - reportedDropped) + " 条日志", plain);
+                reportedDropped = totalDropped;
+                count++;
+            }
+            if (count > 0) {
+                writeBatch();
+            } else if (stopping) {
+                break;
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private int drain() {
+        int count = 0;
+        LogRingBuffer.Entry entry;
+        while (count < MAX_BATCH && (entry = buffer.peek()) != null) {
+            ServerLogger.appendLine(batch, entry.level, entry.timeMillis, entry.message, plain);
+            buffer.release();
+            count++;
+        }
+        return count;
+    }
+
+    private void writeBatch() {
+        try {
+            out.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException e) {
+            System.err.println("写日志失败：" + e.getMessage());
+        }
+        batch.setLength(0);
+        if (batch.capacity() > 256 * 1024) {
+            batch.trimToSize();
+        }
+    }
+}
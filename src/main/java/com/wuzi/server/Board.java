@@ -0,0 +1,39 @@
+package com.wuzi.server;
+
+// 棋盘：GameBoard 为固定尺寸的位棋盘，SparseBoard 为无边界的稀疏棋盘
+// 房间内的对局状态只在邮箱任务中读写，实现不需要线程安全（renderBytes 除外）
+public interface Board {
+    // 0 表示无边界
+    int getSize();
+
+    void reset();
+
+    // 坐标越界或已有棋子时返回 false
+    boolean makeMove(int x, int y, String color);
+
+    // 0: Empty, 1: Black, 2: White
+    int getCell(int x, int y);
+
+    // (x, y) 处的棋子是否在某个方向上连成五子或以上
+    boolean checkWin(int x, int y);
+
+    // 经过 (x, y) 的第 dir 条线（0 行 1 列 2 主对角 3 副对角）上以 (x, y) 为中心的棋形，
+    // (x, y) 视为 c 方（0 黑 1 白）棋子，见 LinePatterns
+    int linePattern(int c, int x, int y, int dir);
+
+    // 试算用的落子与撤销：不改变版本号和最后一手，调用方保证成对使用
+    void place(int x, int y, int c);
+
+    void remove(int x, int y, int c);
+
+    boolean isInside(int x, int y);
+
+    int getLastMoveX();
+
+    int getLastMoveY();
+
+    int getVersion();
+
+    // 以换行结尾的文本棋盘，同一版本内多次调用返回同一个数组
+    byte[] renderBytes();
+}
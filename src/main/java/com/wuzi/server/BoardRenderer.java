@@ -0,0 +1,124 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BoardFormatter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 服务器端棋盘渲染：格子文本预先编码成字节片段，按行缓存，整盘结果按棋盘版本缓存
+// 同一版本的重复请求（双方玩家、重新同步）直接复用同一个字节数组，不产生垃圾；
+// 落子后只重绘发生变化的行，再拼出该版本唯一的一份输出
+public class BoardRenderer {
+    // 格子种类：0 空，1 黑，2 白，3 黑（最后一手），4 白（最后一手）
+    private static final int CELL_KINDS = 5;
+    private static final Map<Integer, Fragments> FRAGMENTS = new ConcurrentHashMap<>();
+
+    private final GameBoard board;
+    private final Fragments fragments;
+    private final byte[][] rowBytes;
+    private final int[] rowLength;
+    private byte[] rendered;
+    private int renderedVersion = -1;
+
+    public BoardRenderer(GameBoard board) {
+        this.board = board;
+        this.fragments = FRAGMENTS.computeIfAbsent(board.getSize(), Fragments::new);
+        this.rowBytes = new byte[board.getSize()][fragments.maxRowLength];
+        this.rowLength = new int[board.getSize()];
+    }
+
+    // 返回以换行结尾的完整棋盘，可直接作为一条消息写出；调用方不得修改返回的数组
+    // 非线程安全，由 GameBoard.renderBytes 串行调用
+    public byte[] render() {
+        int version = board.getVersion();
+        if (rendered != null && version == renderedVersion) {
+            return rendered;
+        }
+        int dirty = board.takeDirtyRows();
+        int size = board.getSize();
+        int total = fragments.header.length + 1;
+        for (int row = 0; row < size; row++) {
+            if (rendered == null || (dirty & (1 << row)) != 0) {
+                renderRow(row);
+            }
+            total += rowLength[row];
+        }
+
+        byte[] out = new byte[total];
+        int pos = fragments.header.length;
+        System.arraycopy(fragments.header, 0, out, 0, pos);
+        for (int row = 0; row < size; row++) {
+            System.arraycopy(rowBytes[row], 0, out, pos, rowLength[row]);
+            pos += rowLength[row];
+        }
+        out[pos] = '\n';
+        rendered = out;
+        renderedVersion = version;
+        return out;
+    }
+
+    private void renderRow(int row) {
+        int size = board.getSize();
+        byte[] buffer = rowBytes[row];
+        byte[] header = fragments.rowHeaders[row];
+        System.arraycopy(header, 0, buffer, 0, header.length);
+        int pos = header.length;
+        int rowType = Fragments.positionType(row, size);
+        boolean lastMoveRow = row == board.getLastMoveX();
+        for (int col = 0; col < size; col++) {
+            int kind = board.getCell(row, col);
+            if (kind != 0 && lastMoveRow && col == board.getLastMoveY()) {
+                kind += 2;
+            }
+            byte[] fragment = fragments.cells[rowType][Fragments.positionType(col, size)][kind];
+            System.arraycopy(fragment, 0, buffer, pos, fragment.length);
+            pos += fragment.length;
+        }
+        buffer[pos++] = '\n';
+        rowLength[row] = pos;
+    }
+
+    // 某一棋盘尺寸下所有可能出现的文本片段，按尺寸全局共享
+    private static class Fragments {
+        final byte[] header;
+        final byte[][] rowHeaders;
+        // [行位置][列位置][格子种类]，位置 0 为第一行/列，1 为中间，2 为最后
+        final byte[][][][] cells;
+        final int maxRowLength;
+
+        Fragments(int size) {
+            header = encode(BoardFormatter.header(size));
+            rowHeaders = new byte[size][];
+            int maxHeader = 0;
+            for (int i = 0; i < size; i++) {
+                rowHeaders[i] = encode(BoardFormatter.rowHeader(i));
+                maxHeader = Math.max(maxHeader, rowHeaders[i].length);
+            }
+
+            int[] representative = {0, 1, size - 1};
+            cells = new byte[3][3][CELL_KINDS][];
+            int maxCell = 0;
+            for (int r = 0; r < 3; r++) {
+                for (int c = 0; c < 3; c++) {
+                    for (int kind = 0; kind < CELL_KINDS; kind++) {
+                        int state = kind > 2 ? kind - 2 : kind;
+                        byte[] fragment = encode(BoardFormatter.cell(size, representative[r], representative[c], state, kind > 2));
+                        cells[r][c][kind] = fragment;
+                        maxCell = Math.max(maxCell, fragment.length);
+                    }
+                }
+            }
+            maxRowLength = maxHeader + maxCell * size + 1;
+        }
+
+        static int positionType(int index, int size) {
+            if (index == 0) return 0;
+            if (index == size - 1) return 2;
+            return 1;
+        }
+
+        private static byte[] encode(String text) {
+            return text.getBytes(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,454 @@
+package com.wuzi.server;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.function.IntPredicate;
+
+// 五子棋 AI 搜索：迭代加深的 alpha-beta（negamax），候选着法按威胁程度（己方进攻 + 阻挡对方）排序，
+// 置换表以 Zobrist 哈希为键，用基本类型数组实现。一个实例只能被一个线程使用，由搜索线程在各局之间复用
+public class BotEngine {
+    // 与 GameBoard 相同的 15 路棋盘
+    static final int SIZE = 15;
+    static final int CELLS = SIZE * SIZE;
+    static final int WIN = 10_000_000;
+    private static final int INF = Integer.MAX_VALUE / 2;
+    private static final int MAX_PLY = 32;
+    // 深层只搜索排序靠前的若干着法
+    private static final int WIDTH = 12;
+    private static final int[] DX = {0, 1, 1, 1};
+    private static final int[] DY = {1, 0, 1, -1};
+
+    // 下标：[颜色][格子]，颜色 1 黑 2 白
+    private static final long[][] ZOBRIST = new long[3][CELLS];
+    private static final long SIDE_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EED_F1E1DL);
+        for (int c = 1; c <= 2; c++) {
+            for (int i = 0; i < CELLS; i++) {
+                ZOBRIST[c][i] = random.nextLong();
+            }
+        }
+        SIDE_TO_MOVE = random.nextLong();
+    }
+
+    private static final byte EXACT = 0;
+    private static final byte LOWER = 1;
+    private static final byte UPPER = 2;
+
+    private final int ttMask;
+    private final long[] ttKeys;
+    private final int[] ttScores;
+    private final byte[] ttDepths;
+    private final byte[] ttFlags;
+    private final short[] ttMoves;
+
+    private final byte[] board = new byte[CELLS];
+    // 周围两格内的棋子数，大于 0 的空格才作为候选
+    private final byte[] near = new byte[CELLS];
+    private final int[][] moveBuffers = new int[MAX_PLY][CELLS];
+    private final int[][] scoreBuffers = new int[MAX_PLY][CELLS];
+    private long hash;
+    private int stones;
+    private long deadline;
+    private boolean timeUp;
+    private long nodes;
+
+    public BotEngine() {
+        this(16);
+    }
+
+    // 置换表 2^ttBits 项，每项 16 字节
+    public BotEngine(int ttBits) {
+        int size = 1 << ttBits;
+        ttMask = size - 1;
+        ttKeys = new long[size];
+        ttScores = new int[size];
+        ttDepths = new byte[size];
+        ttFlags = new byte[size];
+        ttMoves = new short[size];
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    // cells 为按行排列的棋盘（0 空 1 黑 2 白），返回 color 一方的着法 x * SIZE + y，棋盘已满返回 -1
+    public int search(byte[] cells, int color, int maxDepth, long timeMillis) {
+        return search(cells, color, maxDepth, timeMillis, null);
+    }
+
+    // allowed 不为 null 时只在它接受的着法中选择（例如连珠规则下排除黑方禁手），只在根节点检查
+    public int search(byte[] cells, int color, int maxDepth, long timeMillis, IntPredicate allowed) {
+        return searchUntil(cells, color, maxDepth, System.nanoTime() + timeMillis * 1_000_000L, allowed);
+    }
+
+    // 搜索到 System.nanoTime() 的 deadlineNanos 为止，由调用方决定计时起点（例如请求入队的时刻）
+    public int searchUntil(byte[] cells, int color, int maxDepth, long deadlineNanos, IntPredicate allowed) {
+        load(cells);
+        nodes = 0;
+        timeUp = false;
+        deadline = deadlineNanos;
+        if (stones == 0) {
+            return (SIZE / 2) * SIZE + SIZE / 2;
+        }
+        int[] moves = moveBuffers[0];
+        int count = generate(color, 0);
+        if (allowed != null) {
+            count = filterRoot(count, allowed);
+        }
+        if (count == 0) {
+            return -1;
+        }
+        // 只有一手可走（必胜或必须挡）时不用搜索
+        int best = moves[0];
+        if (count == 1) {
+            return best;
+        }
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            int alpha = -INF;
+            int depthBest = -1;
+            for (int i = 0; i < count; i++) {
+                int move = moves[i];
+                place(move, color);
+                int score = isFive(move, color) ? WIN : -negamax(depth - 1, -INF, -alpha, 3 - color, 1);
+                remove(move, color);
+                if (timeUp) {
+                    break;
+                }
+                if (score > alpha) {
+                    alpha = score;
+                    depthBest = move;
+                }
+            }
+            if (timeUp) {
+                break;
+            }
+            if (depthBest >= 0) {
+                best = depthBest;
+                moveToFront(moves, count, best);
+            }
+            if (alpha >= WIN - MAX_PLY || alpha <= -(WIN - MAX_PLY)) {
+                break;
+            }
+        }
+        return best;
+    }
+
+    // 不搜索，直接返回威胁评分最高的一手；搜索线程池满时使用
+    public int quickMove(byte[] cells, int color, IntPredicate allowed) {
+        load(cells);
+        if (stones == 0) {
+            return (SIZE / 2) * SIZE + SIZE / 2;
+        }
+        int count = generate(color, 0);
+        if (allowed != null) {
+            count = filterRoot(count, allowed);
+        }
+        return count > 0 ? moveBuffers[0][0] : -1;
+    }
+
+    // 去掉根节点上不允许的候选；全部被排除时退而求其次，取任意一个允许的空点
+    private int filterRoot(int count, IntPredicate allowed) {
+        int[] moves = moveBuffers[0];
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (allowed.test(moves[i])) {
+                moves[kept++] = moves[i];
+            }
+        }
+        if (kept > 0) {
+            return kept;
+        }
+        for (int i = 0; i < CELLS; i++) {
+            if (board[i] == 0 && allowed.test(i)) {
+                moves[0] = i;
+                return 1;
+            }
+        }
+        return 0;
+    }
+
+    private int negamax(int depth, int alpha, int beta, int color, int ply) {
+        if ((++nodes & 1023) == 0 && System.nanoTime() > deadline) {
+            timeUp = true;
+        }
+        if (timeUp) {
+            return 0;
+        }
+        long key = hash ^ (color == 2 ? SIDE_TO_MOVE : 0);
+        int slot = (int) key & ttMask;
+        int ttMove = -1;
+        if (ttKeys[slot] == key) {
+            ttMove = ttMoves[slot];
+            if (ttDepths[slot] >= depth) {
+                int score = ttScores[slot];
+                byte flag = ttFlags[slot];
+                if (flag == EXACT || (flag == LOWER && score >= beta) || (flag == UPPER && score <= alpha)) {
+                    return score;
+                }
+            }
+        }
+        if (depth <= 0 || ply >= MAX_PLY - 1) {
+            return evaluate(color);
+        }
+
+        int[] moves = moveBuffers[ply];
+        int count = generate(color, ply);
+        if (count == 0) {
+            return 0;
+        }
+        if (ttMove >= 0) {
+            moveToFront(moves, count, ttMove);
+        }
+        int limit = Math.min(count, WIDTH);
+        int originalAlpha = alpha;
+        int best = -INF;
+        int bestMove = moves[0];
+        for (int i = 0; i < limit; i++) {
+            int move = moves[i];
+            place(move, color);
+            int score = isFive(move, color) ? WIN - ply : -negamax(depth - 1, -beta, -alpha, 3 - color, ply + 1);
+            remove(move, color);
+            if (timeUp) {
+                return 0;
+            }
+            if (score > best) {
+                best = score;
+                bestMove = move;
+            }
+            if (score > alpha) {
+                alpha = score;
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        ttKeys[slot] = key;
+        ttScores[slot] = best;
+        ttDepths[slot] = (byte) depth;
+        ttMoves[slot] = (short) bestMove;
+        ttFlags[slot] = best <= originalAlpha ? UPPER : best >= beta ? LOWER : EXACT;
+        return best;
+    }
+
+    private void load(byte[] cells) {
+        hash = 0;
+        stones = 0;
+        Arrays.fill(board, (byte) 0);
+        Arrays.fill(near, (byte) 0);
+        for (int i = 0; i < CELLS; i++) {
+            if (cells[i] != 0) {
+                place(i, cells[i]);
+            }
+        }
+    }
+
+    private void place(int move, int color) {
+        board[move] = (byte) color;
+        hash ^= ZOBRIST[color][move];
+        stones++;
+        adjustNear(move, 1);
+    }
+
+    private void remove(int move, int color) {
+        board[move] = 0;
+        hash ^= ZOBRIST[color][move];
+        stones--;
+        adjustNear(move, -1);
+    }
+
+    private void adjustNear(int move, int delta) {
+        int x = move / SIZE;
+        int y = move % SIZE;
+        for (int i = Math.max(0, x - 2); i <= Math.min(SIZE - 1, x + 2); i++) {
+            for (int j = Math.max(0, y - 2); j <= Math.min(SIZE - 1, y + 2); j++) {
+                near[i * SIZE + j] += delta;
+            }
+        }
+    }
+
+    private static void moveToFront(int[] moves, int count, int move) {
+        for (int i = 0; i < count; i++) {
+            if (moves[i] == move) {
+                System.arraycopy(moves, 0, moves, 1, i);
+                moves[0] = move;
+                return;
+            }
+        }
+    }
+
+    // 生成候选着法并按威胁评分从高到低排序。能连五时只返回这一手；对方有连五点时只返回挡点
+    private int generate(int color, int ply) {
+        int[] moves = moveBuffers[ply];
+        int[] scores = scoreBuffers[ply];
+        int opponent = 3 - color;
+        int count = 0;
+        int blockCount = 0;
+        for (int i = 0; i < CELLS; i++) {
+            if (board[i] != 0 || near[i] == 0) {
+                continue;
+            }
+            int attack = threat(i, color);
+            if (attack >= FIVE) {
+                moves[0] = i;
+                return 1;
+            }
+            int defense = threat(i, opponent);
+            if (defense >= FIVE) {
+                // 挡点排在最前，并在循环结束后截断
+                moves[count] = moves[blockCount];
+                scores[count] = scores[blockCount];
+                moves[blockCount] = i;
+                scores[blockCount] = Integer.MAX_VALUE;
+                blockCount++;
+                count++;
+                continue;
+            }
+            moves[count] = i;
+            scores[count] = attack + attack / 4 + defense;
+            count++;
+        }
+        if (blockCount > 0) {
+            return blockCount;
+        }
+        // 插入排序：候选数通常只有几十个
+        for (int i = 1; i < count; i++) {
+            int move = moves[i];
+            int score = scores[i];
+            int j = i - 1;
+            while (j >= 0 && scores[j] < score) {
+                moves[j + 1] = moves[j];
+                scores[j + 1] = scores[j];
+                j--;
+            }
+            moves[j + 1] = move;
+            scores[j + 1] = score;
+        }
+        return count;
+    }
+
+    private static final int FIVE = 1_000_000;
+    private static final int OPEN_FOUR = 100_000;
+    private static final int FOUR = 10_000;
+    private static final int OPEN_THREE = 8_000;
+    private static final int THREE = 1_000;
+    private static final int OPEN_TWO = 500;
+    private static final int TWO = 50;
+
+    // 在空格 move 落下 color 后，四个方向上形成的棋形评分之和
+    private int threat(int move, int color) {
+        int x = move / SIZE;
+        int y = move % SIZE;
+        int total = 0;
+        for (int d = 0; d < 4; d++) {
+            int count = 1;
+            int open = 0;
+            int nx = x + DX[d];
+            int ny = y + DY[d];
+            while (inside(nx, ny) && board[nx * SIZE + ny] == color) {
+                count++;
+                nx += DX[d];
+                ny += DY[d];
+            }
+            if (inside(nx, ny) && board[nx * SIZE + ny] == 0) {
+                open++;
+            }
+            nx = x - DX[d];
+            ny = y - DY[d];
+            while (inside(nx, ny) && board[nx * SIZE + ny] == color) {
+                count++;
+                nx -= DX[d];
+                ny -= DY[d];
+            }
+            if (inside(nx, ny) && board[nx * SIZE + ny] == 0) {
+                open++;
+            }
+            total += shape(count, open);
+        }
+        return total;
+    }
+
+    private static int shape(int count, int open) {
+        if (count >= 5) {
+            return FIVE;
+        }
+        if (open == 0) {
+            return 0;
+        }
+        switch (count) {
+            case 4:
+                return open == 2 ? OPEN_FOUR : FOUR;
+            case 3:
+                return open == 2 ? OPEN_THREE : THREE;
+            case 2:
+                return open == 2 ? OPEN_TWO : TWO;
+            default:
+                return open == 2 ? 10 : 1;
+        }
+    }
+
+    private static boolean inside(int x, int y) {
+        return x >= 0 && x < SIZE && y >= 0 && y < SIZE;
+    }
+
+    private boolean isFive(int move, int color) {
+        int x = move / SIZE;
+        int y = move % SIZE;
+        for (int d = 0; d < 4; d++) {
+            int count = 1;
+            for (int nx = x + DX[d], ny = y + DY[d]; inside(nx, ny) && board[nx * SIZE + ny] == color; nx += DX[d], ny += DY[d]) {
+                count++;
+            }
+            for (int nx = x - DX[d], ny = y - DY[d]; inside(nx, ny) && board[nx * SIZE + ny] == color; nx -= DX[d], ny -= DY[d]) {
+                count++;
+            }
+            if (count >= 5) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 静态评估：双方所有连续棋子段的棋形评分之差，站在 color 一方（轮到其落子）的角度
+    private int evaluate(int color) {
+        int mine = 0;
+        int theirs = 0;
+        for (int i = 0; i < CELLS; i++) {
+            int stone = board[i];
+            if (stone == 0) {
+                continue;
+            }
+            int x = i / SIZE;
+            int y = i % SIZE;
+            for (int d = 0; d < 4; d++) {
+                int px = x - DX[d];
+                int py = y - DY[d];
+                // 只从一段连续棋子的起点开始计算
+                if (inside(px, py) && board[px * SIZE + py] == stone) {
+                    continue;
+                }
+                int open = inside(px, py) && board[px * SIZE + py] == 0 ? 1 : 0;
+                int count = 0;
+                int nx = x;
+                int ny = y;
+                while (inside(nx, ny) && board[nx * SIZE + ny] == stone) {
+                    count++;
+                    nx += DX[d];
+                    ny += DY[d];
+                }
+                if (inside(nx, ny) && board[nx * SIZE + ny] == 0) {
+                    open++;
+                }
+                int value = shape(count, open);
+                if (stone == color) {
+                    mine += value;
+                } else {
+                    theirs += value;
+                }
+            }
+        }
+        // 轮到落子的一方占先手，对方的同等棋形威胁更小
+        return mine - theirs * 4 / 5;
+    }
+}
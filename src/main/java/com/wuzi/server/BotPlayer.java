@@ -0,0 +1,118 @@
+package com.wuzi.server;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntPredicate;
+
+// 服务器端的 AI 玩家，占房间的一个座位。轮到它时把局面交给有界的搜索线程池，
+// 算出的着法再投递回房间邮箱，和真人玩家的 put 走同一条路径
+public class BotPlayer extends Player {
+    // 各等级的搜索深度与每手思考时间（毫秒）
+    private static final int[] DEPTHS = {2, 4, 6, 8, 10};
+    private static final long[] THINK_MILLIS = {50, 200, 500, 1000, 2000};
+    public static final int MIN_LEVEL = 1;
+    public static final int MAX_LEVEL = DEPTHS.length;
+
+    private static final Connection NO_CONNECTION = new Connection() {
+        @Override
+        public void write(byte[] data) {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public int backlog() {
+            return 0;
+        }
+    };
+
+    // 置换表随搜索线程复用，内存占用只与线程数有关，与人机对局数无关
+    private static final ThreadLocal<BotEngine> ENGINES = ThreadLocal.withInitial(BotEngine::new);
+
+    private final int level;
+    private final Executor thinkers;
+
+    public BotPlayer(int level, Executor thinkers) {
+        super("电脑(Lv" + level + ")", NO_CONNECTION);
+        this.level = level;
+        this.thinkers = thinkers;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    // 以下回调都在房间邮箱中执行
+    @Override
+    public void sendGameStart() {
+        if ("black".equals(getColor())) {
+            think();
+        }
+    }
+
+    @Override
+    public void sendYourTurn() {
+        think();
+    }
+
+    // 一局结束后自动准备，玩家输入 again 即可开始下一局
+    @Override
+    public void sendGameOver(Player winner) {
+        GameRoom room = getCurrentRoom();
+        if (room != null) {
+            room.execute(() -> ClientHandler.startGame(room, this));
+        }
+    }
+
+    private void think() {
+        GameRoom room = getCurrentRoom();
+        if (room == null) {
+            return;
+        }
+        byte[] cells = room.getBoardCells();
+        int seq = room.getMoveSeq();
+        int color = "black".equals(getColor()) ? 1 : 2;
+        RuleSet rule = room.getRuleSet();
+        String colorName = getColor();
+        // 思考时间从轮到电脑时算起，在队列里等待的时间也计入
+        long deadline = System.nanoTime() + THINK_MILLIS[level - 1] * 1_000_000L;
+        try {
+            thinkers.execute(() -> {
+                BotEngine engine = ENGINES.get();
+                IntPredicate allowed = allowedMoves(rule, colorName, cells);
+                // 排队期间已用完思考时间：不再搜索，直接走快速着法
+                int move = System.nanoTime() >= deadline ? engine.quickMove(cells, color, allowed)
+                    : engine.searchUntil(cells, color, DEPTHS[level - 1], deadline, allowed);
+                play(room, seq, move);
+            });
+        } catch (RejectedExecutionException e) {
+            // 搜索队列已满：不排队等待，直接走威胁评分最高的一手
+            ServerLogger.warn("机器人搜索队列已满，房间 " + room.getRoomId() + " 使用快速着法");
+            play(room, seq, ENGINES.get().quickMove(cells, color, allowedMoves(rule, colorName, cells)));
+        }
+    }
+
+    // 有禁手时在局面副本上逐个检查根节点候选，搜索内部不考虑禁手
+    private static IntPredicate allowedMoves(RuleSet rule, String color, byte[] cells) {
+        if (!rule.hasForbidden(color)) {
+            return null;
+        }
+        GameBoard board = GameBoard.fromCells(cells);
+        return move -> rule.checkForbidden(board, move / BotEngine.SIZE, move % BotEngine.SIZE, color) == null;
+    }
+
+    private void play(GameRoom room, int seq, int move) {
+        if (move < 0) {
+            return;
+        }
+        room.execute(() -> {
+            // 思考期间对局可能已结束或重开，局面变了就丢弃这一手
+            if (getCurrentRoom() != room || room.getMoveSeq() != seq) {
+                return;
+            }
+            ClientHandler.makeMove(room, this, move / BotEngine.SIZE, move % BotEngine.SIZE);
+        });
+    }
+}
@@ -1,100 +1,501 @@
 package com.wuzi.server;
 
 import com.wuzi.common.AnsiColor;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import com.wuzi.common.BinaryProtocol;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 public class ClientHandler implements Runnable {
     private final Socket clientSocket;
     private final RoomManager roomManager;
     private Player player;
+    // 正在进行的存档回放，同一时间最多一个；计时线程检查空闲时也会读取
+    private volatile Replay replay;
+    // 空闲超时检查，挂在 RoomManager 的时间轮上
+    private TimingWheel.Timeout idleTimeout;
+    // 文本命令解析器，随会话复用
+    private final CommandParser parser = new CommandParser();
+    // 本会话的命令限流，同样只由处理命令的线程使用
+    private final RateLimiter rateLimiter = new RateLimiter();
+    // 服务器没有账号认证，只有从本机回环地址连入的会话才能使用管理命令
+    private boolean admin;
 
     public ClientHandler(Socket socket, RoomManager roomManager) {
         this.clientSocket = socket;
         this.roomManager = roomManager;
     }
 
+    // NIO 模式下由事件循环驱动，不持有阻塞 Socket
+    ClientHandler(RoomManager roomManager) {
+        this(null, roomManager);
+    }
+
     @Override
     public void run() {
         try {
-            BufferedReader reader = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-            PrintWriter writer = new PrintWriter(clientSocket.getOutputStream(), true);
+            // 直接按字节读取：文本行与二进制帧共用同一个输入流，协商后无需担心字符解码器预读
+            BufferedInputStream in = new BufferedInputStream(clientSocket.getInputStream());
+            SocketConnection connection = new SocketConnection(clientSocket);
 
             // 等待玩家输入名字
-            writer.println(AnsiColor.info("请输入你的名字："));
-            String playerName = reader.readLine();
-            player = new Player(playerName, clientSocket, reader, writer);
-            ServerLogger.info("玩家 " + playerName + " (" + clientSocket.getInetAddress() + ") 已登录");
-
-            // 发送欢迎消息和帮助
-            player.sendMessage(AnsiColor.success("欢迎 " + playerName + "！") + AnsiColor.info("输入 'ls rooms' 查看房间列表，或 'help' 查看帮助。"));
+            connection.writeLine(namePrompt());
+            String playerName = readLine(in);
+            if (playerName == null) {
+                connection.close();
+                return;
+            }
+            login(playerName, connection, String.valueOf(clientSocket.getInetAddress()));
 
             // 处理玩家命令
             boolean running = true;
-            while (running) {
-                String command = reader.readLine();
-                if (command == null) break;
+            if (isBinaryProtocol()) {
+                DataInputStream data = new DataInputStream(in);
+                while (running) {
+                    byte[] frame = BinaryProtocol.readFrame(data, BinaryProtocol.MAX_REQUEST_LENGTH);
+                    if (frame == null) break;
 
-                ServerLogger.info("收到玩家 " + playerName + " 命令: " + command);
-                running = handleCommand(command);
+                    running = handleFrame(ByteBuffer.wrap(frame));
+                }
+            } else {
+                while (running) {
+                    String command = readLine(in);
+                    if (command == null) break;
+
+                    running = handleLine(command);
+                }
             }
         } catch (Exception e) {
             ServerLogger.error("客户端处理错误：" + e.getMessage());
             e.printStackTrace();
         } finally {
-            if (player != null) {
-                ServerLogger.info("玩家 " + player.getName() + " 断开连接");
-                if (player.getCurrentRoom() != null) {
-                    player.getCurrentRoom().removePlayer(player);
-                }
-                player.close();
+            disconnect();
+        }
+    }
+
+    // 读取一行 UTF-8 文本，去掉行尾的 \r；流结束返回 null
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                return line.size() == 0 ? null : line.toString(StandardCharsets.UTF_8);
+            }
+            if (line.size() >= NioSession.MAX_LINE_BYTES) {
+                throw new IOException("命令过长");
+            }
+            line.write(b);
+        }
+        byte[] bytes = line.toByteArray();
+        int length = bytes.length;
+        if (length > 0 && bytes[length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, 0, length, StandardCharsets.UTF_8);
+    }
+
+    // address 为 InetAddress.toString() 的形式，例如 "localhost/127.0.0.1"
+    static boolean isLoopback(String address) {
+        int slash = address.lastIndexOf('/');
+        String ip = address.substring(slash + 1);
+        return ip.startsWith("127.") || ip.equals("0:0:0:0:0:0:0:1") || ip.equals("::1");
+    }
+
+    static String namePrompt() {
+        return AnsiColor.info("请输入你的名字：");
+    }
+
+    // 名字行以 BinaryProtocol.HANDSHAKE 开头时，此后的会话改用二进制帧
+    void login(String nameLine, Connection connection, String address) {
+        Player.Protocol protocol = Player.Protocol.TEXT;
+        String playerName = nameLine;
+        if (nameLine.startsWith(BinaryProtocol.HANDSHAKE)) {
+            protocol = Player.Protocol.BINARY;
+            playerName = nameLine.substring(BinaryProtocol.HANDSHAKE.length());
+        }
+        player = new Player(playerName, connection, protocol);
+        admin = isLoopback(address);
+        ServerLogger.info("玩家 " + playerName + " (" + address + ") 已登录");
+
+        OutboundBatch.begin();
+        try {
+            // 发送欢迎消息和帮助
+            player.sendMessage(AnsiColor.success("欢迎 " + playerName + "！") + AnsiColor.info("输入 'ls rooms' 查看房间列表，或 'help' 查看帮助。"));
+            startIdleTimer();
+            resumeGame();
+        } finally {
+            OutboundBatch.end();
+        }
+    }
+
+    // 空闲检查不随每条命令重新调度：命令只记录时刻，检查到期时发现期间有过操作就顺延
+    private void startIdleTimer() {
+        if (roomManager.getLobbyIdleMillis() <= 0 && roomManager.getRoomIdleMillis() <= 0) {
+            return;
+        }
+        TimingWheel timers = roomManager.getTimers();
+        Player self = player;
+        self.touch(timers.now());
+        idleTimeout = timers.newTimeout(() -> checkIdle(self));
+        timers.schedule(idleTimeout, idleLimit(null));
+    }
+
+    // 0 表示不限，按一个很长的周期重新检查
+    private long idleLimit(GameRoom room) {
+        long limit = room != null ? roomManager.getRoomIdleMillis() : roomManager.getLobbyIdleMillis();
+        return limit > 0 ? limit : Math.max(roomManager.getLobbyIdleMillis(), roomManager.getRoomIdleMillis());
+    }
+
+    // 在计时线程中执行，只做判断，房间内的处理投递到房间邮箱
+    private void checkIdle(Player self) {
+        if (self != player) {
+            return;
+        }
+        TimingWheel timers = roomManager.getTimers();
+        GameRoom room = self.getCurrentRoom();
+        long limit = room != null ? roomManager.getRoomIdleMillis() : roomManager.getLobbyIdleMillis();
+        long idle = timers.now() - self.getLastActivity();
+        if (limit <= 0 || idle < limit) {
+            timers.schedule(idleTimeout, limit > 0 ? limit - idle : idleLimit(room));
+            return;
+        }
+        if (room != null) {
+            room.execute(() -> idleInRoom(room, self));
+            return;
+        }
+        // 观战、回放和排队匹配时不需要输入
+        if (self.getWatchingRoom() != null || replay != null || self.isMatching()) {
+            timers.schedule(idleTimeout, limit);
+            return;
+        }
+        ServerLogger.info("玩家 " + self.getName() + " 长时间无操作，断开连接");
+        self.sendMessage(AnsiColor.info("长时间无操作，连接已断开"));
+        self.close();
+    }
+
+    // 在房间邮箱中执行：对局中轮到自己却长时间不落子判负，之后（或不在对局中时）让出座位
+    private void idleInRoom(GameRoom room, Player self) {
+        TimingWheel timers = roomManager.getTimers();
+        long idle = timers.now() - self.getLastActivity();
+        if (!room.isMember(self) || idle < roomManager.getRoomIdleMillis()) {
+            timers.schedule(idleTimeout, Math.max(1, idleLimit(self.getCurrentRoom()) - idle));
+            return;
+        }
+        if (room.isGameStarted() && !room.isGameOver()) {
+            // 计时对局由棋钟判定；等待对手落子或等待对手重连不算空闲
+            if (room.isTimed() || room.getPlayerCount() < 2 || !room.getCurrentTurnColor().equals(self.getColor())) {
+                timers.schedule(idleTimeout, roomManager.getRoomIdleMillis());
+                return;
             }
+            timeOut(room, self, " 长时间未落子");
+        }
+        self.setCurrentRoom(null);
+        self.sendMessage(AnsiColor.info("长时间无操作，已离开房间 " + room.getRoomId()));
+        ServerLogger.info("玩家 " + self.getName() + " 长时间无操作，离开房间 " + room.getRoomId());
+        removeFromRoom(room, self, " 长时间无操作，离开了房间");
+        // 离座后重新开始计算大厅的空闲时间
+        self.touch(timers.now());
+        timers.schedule(idleTimeout, idleLimit(null));
+    }
+
+    // 服务器重启前未下完的对局：同名玩家登录后回到原来的座位
+    private void resumeGame() {
+        GameRoom room = roomManager.takeReservation(player.getName());
+        if (room == null || !room.reclaimSeat(player)) {
+            return;
+        }
+        player.setCurrentRoom(room);
+        player.sendMessage(AnsiColor.success("已回到未完成的对局，房间 " + room.getRoomId()));
+        ServerLogger.info("玩家 " + player.getName() + " 重新连接到房间 " + room.getRoomId());
+        Player self = player;
+        room.execute(() -> {
+            if (!room.isMember(self)) {
+                return;
+            }
+            self.sendGameStart();
+            self.sendBoard(room);
+            if (room.getPlayerCount() < 2) {
+                self.sendMessage(AnsiColor.info("等待对手重新连接..."));
+                return;
+            }
+            Player other = room.getPlayer1() == self ? room.getPlayer2() : room.getPlayer1();
+            other.sendMessage(AnsiColor.info(self.getName() + " 已重新连接，对局继续"));
+            Player next = room.getCurrentTurnColor().equals(room.getPlayer1().getColor()) ? room.getPlayer1() : room.getPlayer2();
+            next.sendYourTurn();
+        });
+    }
+
+    // 处理一行命令，返回 false 表示会话应当结束。命令产生的所有回复合并为一次写出
+    boolean handleLine(String command) {
+        long received = System.nanoTime();
+        CommandParser.Command parsed = parser.parse(command);
+        if (!admit(RateLimiter.classify(parsed), received, 0)) {
+            return true;
+        }
+        Metrics.command(parsed);
+        player.touch(roomManager.getTimers().now());
+        ServerLogger.info("收到玩家 " + player.getName() + " 命令: " + command);
+        OutboundBatch.begin();
+        try {
+            return handleCommand(parsed, command, received);
+        } finally {
+            OutboundBatch.end();
+        }
+    }
+
+    // 超出速率的命令直接丢弃，不执行也不写日志；每轮刷屏只提示一次
+    // opcode 为二进制请求的操作码，文本命令为 0
+    private boolean admit(RateLimiter.CommandClass commandClass, long now, int opcode) {
+        if (rateLimiter.tryAcquire(commandClass, now)) {
+            return true;
+        }
+        if (rateLimiter.shouldWarn()) {
+            ServerLogger.warn("玩家 " + player.getName() + " 命令过于频繁，已限流");
+            player.sendError(opcode, BinaryProtocol.ERR_RATE_LIMITED, "操作过于频繁，请稍后再试");
+        }
+        return false;
+    }
+
+    boolean isBinaryProtocol() {
+        return player != null && player.getProtocol() == Player.Protocol.BINARY;
+    }
+
+    // 处理一个二进制请求帧（首字节为操作码），返回 false 表示会话应当结束
+    boolean handleFrame(ByteBuffer frame) {
+        OutboundBatch.begin();
+        try {
+            return dispatchFrame(frame);
+        } finally {
+            OutboundBatch.end();
         }
     }
 
-    private boolean handleCommand(String command) {
+    private boolean dispatchFrame(ByteBuffer frame) {
+        long received = System.nanoTime();
+        int opcode = frame.get() & 0xFF;
+        if (!admit(RateLimiter.classify(opcode), received, opcode)) {
+            return true;
+        }
+        Metrics.command(opcode);
+        player.touch(roomManager.getTimers().now());
+        ServerLogger.info("收到玩家 " + player.getName() + " 二进制命令: 0x" + Integer.toHexString(opcode));
         try {
-            String[] parts = command.split(" ");
-            switch (parts[0].toLowerCase()) {
-                case "ls":
-                    if (parts.length > 1 && parts[1].equals("rooms")) {
-                        listRooms();
+            switch (opcode) {
+                case BinaryProtocol.OP_LIST:
+                    if (frame.remaining() >= 3) {
+                        int page = frame.getShort() & 0xFFFF;
+                        int filter = frame.get() & 0xFF;
+                        RoomDirectory.Filter[] filters = RoomDirectory.Filter.values();
+                        listRooms(page, filter < filters.length ? filters[filter] : RoomDirectory.Filter.ALL);
+                    } else {
+                        listRooms(1, RoomDirectory.Filter.ALL);
                     }
                     break;
-                case "enter":
-                    if (parts.length > 2 && parts[1].equals("room")) {
-                        enterRoom(Integer.parseInt(parts[2]));
+                case BinaryProtocol.OP_ENTER:
+                    // 房间号 0 表示自动匹配一个可加入的房间
+                    int roomId = frame.getInt();
+                    if (roomId == 0) {
+                        enterAnyRoom();
+                    } else {
+                        enterRoom(roomId);
                     }
                     break;
-                case "start":
+                case BinaryProtocol.OP_START:
                     startGame();
                     break;
-                case "put":
-                    if (parts.length > 2) {
-                        // 使用16进制解析坐标
-                        makeMove(Integer.parseInt(parts[1], 16), Integer.parseInt(parts[2], 16));
+                case BinaryProtocol.OP_PUT:
+                    // 无边界棋盘的坐标可能为负，使用 i32 x, i32 y
+                    if (frame.remaining() >= 8) {
+                        makeMove(frame.getInt(), frame.getInt(), received);
+                    } else {
+                        makeMove(frame.get() & 0xFF, frame.get() & 0xFF, received);
                     }
                     break;
-                case "quit":
-                    player.sendMessage(AnsiColor.info("再见！"));
+                case BinaryProtocol.OP_LEAVE:
+                    leaveRoom();
+                    break;
+                case BinaryProtocol.OP_SYNC:
+                    syncBoard();
+                    break;
+                case BinaryProtocol.OP_WATCH:
+                    watchRoom(frame.getInt());
+                    break;
+                case BinaryProtocol.OP_MATCH:
+                    if (frame.get() != 0) {
+                        joinMatch();
+                    } else {
+                        cancelMatch(true);
+                    }
+                    break;
+                case BinaryProtocol.OP_QUIT:
+                    player.sendMessage("再见！");
                     return false;
-                case "again":
+                default:
+                    player.sendError(opcode, BinaryProtocol.ERR_UNKNOWN_OPCODE, "未知命令");
+            }
+        } catch (BufferUnderflowException e) {
+            player.sendError(opcode, BinaryProtocol.ERR_MALFORMED, "命令格式错误");
+        }
+        return true;
+    }
+
+    void disconnect() {
+        if (player != null) {
+            ServerLogger.info("玩家 " + player.getName() + " 断开连接");
+            if (idleTimeout != null) {
+                roomManager.getTimers().cancel(idleTimeout);
+            }
+            cancelMatch(false);
+            stopReplay();
+            GameRoom room = player.getCurrentRoom();
+            if (room != null) {
+                Player self = player;
+                self.setCurrentRoom(null);
+                room.execute(() -> removeFromRoom(room, self, " 断开连接"));
+            }
+            stopWatching();
+            player.close();
+            player = null;
+        }
+    }
+
+    // parsed 为 parser 对 command 的解析结果，received 为读到这行命令的时刻
+    private boolean handleCommand(CommandParser.Command parsed, String command, long received) {
+        CommandParser p = parser;
+        try {
+            switch (parsed) {
+                case LS:
+                    if (p.is(1, "rooms")) {
+                        // ls rooms [页码] [free|waiting|playing]，两个参数顺序不限
+                        int page = 1;
+                        RoomDirectory.Filter filter = RoomDirectory.Filter.ALL;
+                        for (int i = 2; i < p.count(); i++) {
+                            if (p.startsWithDigit(i)) {
+                                page = p.intAt(i, 10);
+                            } else {
+                                filter = RoomDirectory.Filter.parse(p.text(i));
+                                if (filter == null) {
+                                    player.sendMessage(AnsiColor.error("未知的过滤条件: " + p.text(i) + "，可用 free|waiting|playing"));
+                                    return true;
+                                }
+                            }
+                        }
+                        if (p.error() == CommandParser.Error.NONE) {
+                            listRooms(page, filter);
+                        }
+                    }
+                    break;
+                case ENTER:
+                    if (p.count() > 2 && p.is(1, "room")) {
+                        int roomId = p.intAt(2, 10);
+                        if (p.error() == CommandParser.Error.NONE) {
+                            enterRoom(roomId);
+                        }
+                    } else if (p.count() == 2 && p.is(1, "room")) {
+                        enterAnyRoom();
+                    }
+                    break;
+                case WATCH:
+                    if (p.is(1, "room")) {
+                        int roomId = p.intAt(2, 10);
+                        if (p.error() == CommandParser.Error.NONE) {
+                            watchRoom(roomId);
+                        }
+                    }
+                    break;
+                case MATCH:
+                    if (p.is(1, "cancel")) {
+                        cancelMatch(true);
+                    } else {
+                        joinMatch();
+                    }
+                    break;
+                case PLAY:
+                    if (p.is(1, "bot")) {
+                        int level = p.count() > 2 ? p.intAt(2, 10) : 3;
+                        if (p.error() == CommandParser.Error.NONE) {
+                            playBot(level);
+                        }
+                    }
+                    break;
+                case REPLAY:
+                    if (p.is(1, "stop")) {
+                        if (stopReplay()) {
+                            player.sendMessage(AnsiColor.info("已停止回放"));
+                        }
+                    } else if (p.count() > 1) {
+                        long gameId = p.longAt(1);
+                        double speed = p.count() > 2 ? p.decimalAt(2) : 1.0;
+                        if (p.error() == CommandParser.Error.NONE) {
+                            startReplay(gameId, speed);
+                        }
+                    }
+                    break;
+                case RULE:
+                    setRuleSet(p.text(1));
+                    break;
+                case SIZE:
+                    setBoardSize(p.text(1));
+                    break;
+                case CLOCK:
+                    setTimeControl(p.text(1));
+                    break;
+                case START:
+                case AGAIN:
                     startGame();
                     break;
-                case "leave":
+                case PUT: {
+                    // 有边界的棋盘每个坐标一位 36 进制数字（15 路与十六进制相同），无边界棋盘用带符号的十进制
+                    GameRoom current = player.getCurrentRoom();
+                    int radix = current != null && current.isUnbounded() ? 10 : 36;
+                    int x = p.intAt(1, radix);
+                    int y = p.intAt(2, radix);
+                    if (p.error() == CommandParser.Error.NONE) {
+                        makeMove(x, y, received);
+                    }
+                    break;
+                }
+                case QUIT:
+                    player.sendMessage(AnsiColor.info("再见！"));
+                    return false;
+                case LEAVE:
                     leaveRoom();
                     break;
-                case "help":
+                case DELTA:
+                    if (p.count() > 1) {
+                        setDeltaUpdates(p.is(1, "on"));
+                    }
+                    break;
+                case SYNC:
+                    syncBoard();
+                    break;
+                case HELP:
                     printHelp();
                     break;
+                case STATS:
+                    if (admin) {
+                        player.sendMessage(Metrics.renderStats());
+                    } else {
+                        player.sendMessage(AnsiColor.error("只有管理员可以查看服务器状态"));
+                    }
+                    break;
                 default:
                     player.sendMessage(AnsiColor.error("未知命令") + "，输入 " + AnsiColor.bold("help") + " 查看帮助");
             }
+            if (p.error() != CommandParser.Error.NONE) {
+                player.sendMessage(AnsiColor.error("命令格式错误：" + p.error().getMessage()));
+            }
             return true;
-        } catch (Exception e) {
-            player.sendMessage(AnsiColor.error("命令格式错误：" + e.getMessage()));
+        } catch (RuntimeException e) {
+            // 格式错误已经由解析器给出错误码，这里只兜住处理命令时的意外错误
+            ServerLogger.error("处理命令 " + command + " 出错：" + e.getMessage());
+            player.sendMessage(AnsiColor.error("命令执行出错"));
             return true;
         }
     }
@@ -104,98 +505,255 @@ public class ClientHandler implements Runnable {
         sb.append(AnsiColor.color("\n================ 五子棋命令帮助 ================\n", AnsiColor.CYAN));
         
         sb.append(AnsiColor.bold("\n[ 房间管理 ]\n"));
-        sb.append("  " + AnsiColor.color("ls rooms", AnsiColor.YELLOW) + "          - 查看房间列表\n");
+        sb.append("  " + AnsiColor.color("ls rooms [页码] [过滤]", AnsiColor.YELLOW) + " - 查看房间列表，过滤: free|waiting|playing\n");
         sb.append("  " + AnsiColor.color("enter room <id>", AnsiColor.YELLOW) + "   - 进入房间 (例如: enter room 1)\n");
-        sb.append("  " + AnsiColor.color("leave", AnsiColor.YELLOW) + "             - 离开当前房间\n");
+        sb.append("  " + AnsiColor.color("enter room", AnsiColor.YELLOW) + "        - 自动进入一个可加入的房间\n");
+        sb.append("  " + AnsiColor.color("match", AnsiColor.YELLOW) + "             - 快速匹配对手 (match cancel 取消)\n");
+        sb.append("  " + AnsiColor.color("play bot [等级]", AnsiColor.YELLOW) + "    - 与电脑对弈，等级 1-5，默认 3\n");
+        sb.append("  " + AnsiColor.color("watch room <id>", AnsiColor.YELLOW) + "   - 观战房间 (例如: watch room 1)\n");
+        sb.append("  " + AnsiColor.color("leave", AnsiColor.YELLOW) + "             - 离开当前房间或停止观战\n");
         
         sb.append(AnsiColor.bold("\n[ 游戏操作 ]\n"));
+        sb.append("  " + AnsiColor.color("rule [规则]", AnsiColor.YELLOW) + "       - 查看或设置本房间规则: freestyle|standard|renju\n");
+        sb.append("  " + AnsiColor.color("size [尺寸]", AnsiColor.YELLOW) + "       - 查看或设置棋盘尺寸: 15|19|unbounded\n");
+        sb.append("  " + AnsiColor.color("clock [计时]", AnsiColor.YELLOW) + "      - 查看剩余时间或设置计时: off|10+5|5/30x3\n");
         sb.append("  " + AnsiColor.color("start", AnsiColor.YELLOW) + "             - 准备/开始游戏\n");
-        sb.append("  " + AnsiColor.color("put <x> <y>", AnsiColor.YELLOW) + "       - 落子 (坐标 0-E, 例如: put 7 7)\n");
+        sb.append("  " + AnsiColor.color("put <x> <y>", AnsiColor.YELLOW) + "       - 落子 (坐标 0-E，19 路为 0-I，无边界棋盘为十进制，例如: put 7 7)\n");
         sb.append("  " + AnsiColor.color("again", AnsiColor.YELLOW) + "             - 重新开始一局\n");
+        sb.append("  " + AnsiColor.color("sync", AnsiColor.YELLOW) + "              - 重新获取完整棋盘\n");
         
+        sb.append("  " + AnsiColor.color("replay <编号> [速度]", AnsiColor.YELLOW) + " - 回放存档对局 (例如: replay 3 2 两倍速；replay stop 停止)\n");
+
         sb.append(AnsiColor.bold("\n[ 系统 ]\n"));
         sb.append("  " + AnsiColor.color("help", AnsiColor.YELLOW) + "              - 显示此帮助\n");
+        if (admin) {
+            sb.append("  " + AnsiColor.color("stats", AnsiColor.YELLOW) + "             - 查看服务器运行指标 (管理员)\n");
+        }
         sb.append("  " + AnsiColor.color("quit", AnsiColor.YELLOW) + "              - 退出游戏\n");
         
         sb.append(AnsiColor.color("\n================================================\n", AnsiColor.CYAN));
         player.sendMessage(sb.toString());
     }
 
-    private void listRooms() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(AnsiColor.color("\n==== 房间列表 ====\n", AnsiColor.CYAN));
-        
-        roomManager.getAllRooms().forEach((id, room) -> {
-            int count = room.getPlayerCount();
-            String status;
-            String statusColor;
-            
-            if (room.isGameStarted()) {
-                status = "🔴 游戏中";
-                statusColor = AnsiColor.RED;
-            } else if (count == 2) {
-                status = "🔴 已满员";
-                statusColor = AnsiColor.RED;
-            } else if (count == 1) {
-                status = "🟡 等待中";
-                statusColor = AnsiColor.YELLOW;
-            } else {
-                status = "🟢 空闲  ";
-                statusColor = AnsiColor.GREEN;
+    // 房间列表来自 RoomDirectory 的快照，每页只在房间状态变化后重新编码一次
+    private void listRooms(int page, RoomDirectory.Filter filter) {
+        player.sendFrame(roomManager.getDirectory().page(filter, page, isBinaryProtocol()));
+    }
+
+    private void startReplay(long gameId, double speed) {
+        GameArchive archive = roomManager.getArchive();
+        if (archive == null) {
+            player.sendMessage(AnsiColor.error("服务器未开启对局存档"));
+            return;
+        }
+        if (player.getCurrentRoom() != null) {
+            player.sendMessage(AnsiColor.error("请先离开当前房间再回放"));
+            return;
+        }
+        if (speed <= 0) {
+            player.sendMessage(AnsiColor.error("回放速度必须大于 0"));
+            return;
+        }
+        stopReplay();
+        replay = new Replay(player, gameId, speed);
+        replay.start(archive);
+    }
+
+    private boolean stopReplay() {
+        if (replay == null) {
+            return false;
+        }
+        replay.cancel();
+        replay = null;
+        return true;
+    }
+
+    private void joinMatch() {
+        if (player.getCurrentRoom() != null) {
+            player.sendMessage(AnsiColor.error("你已经在房间 " + player.getCurrentRoom().getRoomId() + " 中"));
+            return;
+        }
+        stopWatching();
+        stopReplay();
+        if (roomManager.getMatchmaker().enqueue(player)) {
+            player.sendMessage(AnsiColor.info("正在匹配对手 (积分 " + player.getRating() + ")，输入 match cancel 取消"));
+        } else {
+            player.sendMessage(AnsiColor.error("已在匹配队列中"));
+        }
+    }
+
+    // 离开匹配队列；进房间、观战、断线前都会调用，匹配恰好完成时玩家已在房间中
+    private void cancelMatch(boolean reply) {
+        if (!player.isMatching()) {
+            if (reply) {
+                player.sendMessage(AnsiColor.error("当前不在匹配队列中"));
             }
-            
-            String roomId = String.format("[%02d]", id);
-            String playerCount = String.format("(%d/2)", count);
-            
-            sb.append(AnsiColor.color(roomId, AnsiColor.BOLD))
-              .append(" ")
-              .append(AnsiColor.color(status, statusColor))
-              .append(" ")
-              .append(AnsiColor.color(playerCount, AnsiColor.WHITE))
-              .append("\n");
-        });
-        sb.append(AnsiColor.color("==================\n", AnsiColor.CYAN));
-        player.sendMessage(sb.toString());
+            return;
+        }
+        if (roomManager.getMatchmaker().cancel(player) && reply) {
+            player.sendMessage(AnsiColor.success("已取消匹配"));
+        }
+    }
+
+    // 进入一个空房间，由服务器端的 AI 坐另一个座位，双方自动准备
+    private void playBot(int level) {
+        cancelMatch(false);
+        if (player.getCurrentRoom() != null) {
+            player.sendMessage(AnsiColor.error("你已经在房间 " + player.getCurrentRoom().getRoomId() + " 中"));
+            return;
+        }
+        if (level < BotPlayer.MIN_LEVEL || level > BotPlayer.MAX_LEVEL) {
+            player.sendMessage(AnsiColor.error("电脑等级为 " + BotPlayer.MIN_LEVEL + "-" + BotPlayer.MAX_LEVEL));
+            return;
+        }
+        GameRoom room = roomManager.joinEmptyRoom(player);
+        if (room == null) {
+            player.sendMessage(AnsiColor.error("房间数已达上限，请稍后再试"));
+            return;
+        }
+        BotPlayer bot = new BotPlayer(level, roomManager.getBotThinkers());
+        if (!room.addPlayer(bot)) {
+            // 加入后、机器人入座前恰好有真人进了这个房间，按普通对局处理
+            onEnteredRoom(room);
+            return;
+        }
+        bot.setCurrentRoom(room);
+        stopWatching();
+        stopReplay();
+        player.setCurrentRoom(room);
+        player.sendMessage(AnsiColor.success("成功进入房间 " + room.getRoomId() + "，对手：" + bot.getName()));
+        ServerLogger.info("玩家 " + player.getName() + " 在房间 " + room.getRoomId() + " 与 " + bot.getName() + " 对局");
+        Player self = player;
+        room.execute(() -> startGame(room, bot));
+        room.execute(() -> startGame(room, self));
     }
 
     private void enterRoom(int roomId) {
+        cancelMatch(false);
         GameRoom room = roomManager.getRoom(roomId);
         if (room == null) {
             player.sendMessage(AnsiColor.error("房间不存在"));
             return;
         }
+        if (player.getCurrentRoom() != null) {
+            player.sendMessage(AnsiColor.error("你已经在房间 " + player.getCurrentRoom().getRoomId() + " 中"));
+            return;
+        }
 
         if (room.addPlayer(player)) {
-            player.setCurrentRoom(room);
-            player.sendMessage(AnsiColor.success("成功进入房间 " + roomId));
-            ServerLogger.info("玩家 " + player.getName() + " 进入房间 " + roomId);
-            if (room.getPlayerCount() == 2) {
-                room.getPlayer1().sendMessage(AnsiColor.info("对手已加入，请输入 start 开始游戏"));
-                room.getPlayer2().sendMessage(AnsiColor.info("对手已加入，请输入 start 开始游戏"));
-            }
+            onEnteredRoom(room);
         } else {
             player.sendMessage(AnsiColor.error("房间已满"));
         }
     }
 
+    private void enterAnyRoom() {
+        cancelMatch(false);
+        if (player.getCurrentRoom() != null) {
+            player.sendMessage(AnsiColor.error("你已经在房间 " + player.getCurrentRoom().getRoomId() + " 中"));
+            return;
+        }
+        GameRoom room = roomManager.joinAnyRoom(player);
+        if (room == null) {
+            player.sendMessage(AnsiColor.error("房间数已达上限，请稍后再试"));
+            return;
+        }
+        onEnteredRoom(room);
+    }
+
+    private void onEnteredRoom(GameRoom room) {
+        stopWatching();
+        stopReplay();
+        player.setCurrentRoom(room);
+        player.sendMessage(AnsiColor.success("成功进入房间 " + room.getRoomId()));
+        ServerLogger.info("玩家 " + player.getName() + " 进入房间 " + room.getRoomId());
+        room.getSpectators().publishMessage(AnsiColor.info(player.getName() + " 进入了房间"));
+        if (room.getPlayerCount() == 2) {
+            room.getPlayer1().sendMessage(AnsiColor.info("对手已加入，请输入 start 开始游戏"));
+            room.getPlayer2().sendMessage(AnsiColor.info("对手已加入，请输入 start 开始游戏"));
+        }
+    }
+
+    private void watchRoom(int roomId) {
+        cancelMatch(false);
+        GameRoom room = roomManager.getRoom(roomId);
+        if (room == null) {
+            player.sendMessage(AnsiColor.error("房间不存在"));
+            return;
+        }
+        if (player.getCurrentRoom() != null) {
+            player.sendMessage(AnsiColor.error("请先离开当前房间再观战"));
+            return;
+        }
+
+        stopWatching();
+        stopReplay();
+        player.setWatchingRoom(room);
+        room.getSpectators().add(player);
+        player.sendMessage(AnsiColor.success("开始观战房间 " + roomId) + AnsiColor.info("，输入 leave 停止观战"));
+        ServerLogger.info("玩家 " + player.getName() + " 观战房间 " + roomId);
+        Player self = player;
+        room.execute(() -> {
+            if (room.isGameStarted()) {
+                self.sendBoard(room);
+            }
+        });
+    }
+
+    private void stopWatching() {
+        GameRoom watching = player.getWatchingRoom();
+        if (watching != null) {
+            watching.getSpectators().remove(player);
+            player.setWatchingRoom(null);
+        }
+    }
+
     private void leaveRoom() {
+        if (player.isMatching() && roomManager.getMatchmaker().cancel(player)) {
+            player.sendMessage(AnsiColor.success("已取消匹配"));
+            return;
+        }
+        if (stopReplay()) {
+            player.sendMessage(AnsiColor.info("已停止回放"));
+            return;
+        }
         GameRoom room = player.getCurrentRoom();
+        if (room == null && player.getWatchingRoom() != null) {
+            int watchingId = player.getWatchingRoom().getRoomId();
+            stopWatching();
+            player.sendMessage(AnsiColor.success("已停止观战房间 " + watchingId));
+            return;
+        }
         if (room == null) {
             player.sendMessage(AnsiColor.error("你不在任何房间中"));
             return;
         }
 
-        // Notify other player before removing
+        // 玩家一侧立即离开，之后可以马上进入其他房间；房间一侧的清理在房间邮箱中完成
+        Player self = player;
+        self.setCurrentRoom(null);
+        self.sendMessage(AnsiColor.success("已离开房间 " + room.getRoomId()));
+        ServerLogger.info("玩家 " + self.getName() + " 离开房间 " + room.getRoomId());
+        room.execute(() -> removeFromRoom(room, self, " 离开了房间"));
+    }
+
+    // 在房间邮箱中执行
+    private static void removeFromRoom(GameRoom room, Player player, String reason) {
+        if (!room.isMember(player)) {
+            return;
+        }
         Player other = (room.getPlayer1() == player) ? room.getPlayer2() : room.getPlayer1();
         if (other != null) {
-            other.sendMessage(AnsiColor.info(player.getName() + " 离开了房间"));
+            other.sendMessage(AnsiColor.info(player.getName() + reason));
             other.sendMessage(AnsiColor.info("等待其他玩家加入..."));
         }
-
         room.removePlayer(player);
-        player.setCurrentRoom(null);
-        player.sendMessage(AnsiColor.success("已离开房间 " + room.getRoomId()));
-        ServerLogger.info("玩家 " + player.getName() + " 离开房间 " + room.getRoomId());
+        room.getSpectators().publishMessage(AnsiColor.info(player.getName() + reason));
+        // 真人离开后电脑也随之离座，房间重新变为空闲
+        if (other instanceof BotPlayer) {
+            other.setCurrentRoom(null);
+            room.removePlayer(other);
+        }
     }
 
     private void startGame() {
@@ -204,7 +762,15 @@ public class ClientHandler implements Runnable {
             player.sendMessage(AnsiColor.error("你不在任何房间中"));
             return;
         }
+        Player self = player;
+        room.execute(() -> startGame(room, self));
+    }
 
+    // 在房间邮箱中执行，下同
+    static void startGame(GameRoom room, Player player) {
+        if (!room.isMember(player)) {
+            return;
+        }
         if (room.isGameStarted() && !room.isGameOver()) {
             player.sendMessage(AnsiColor.error("游戏已经开始了"));
             return;
@@ -216,59 +782,268 @@ public class ClientHandler implements Runnable {
 
             ServerLogger.success("房间 " + room.getRoomId() + " 游戏开始 (" + p1.getName() + " vs " + p2.getName() + ")");
 
-            String msg1 = AnsiColor.success(String.format("游戏开始！你是%s方", p1.getColor().equals("black") ? "黑" : "白"));
-            String msg2 = AnsiColor.success(String.format("游戏开始！你是%s方", p2.getColor().equals("black") ? "黑" : "白"));
+            p1.sendGameStart();
+            p2.sendGameStart();
+            p1.sendBoard(room);
+            p2.sendBoard(room);
+            if (room.getRuleSet() != RuleSet.FREESTYLE || room.getBoardSize() != GameBoard.DEFAULT_SIZE || room.isTimed()) {
+                String rule = AnsiColor.info("本局规则：" + room.getRuleSet().getDisplayName() + "，棋盘：" + sizeName(room.getBoardSize())
+                    + "，计时：" + room.getTimeControl().getDisplayName());
+                p1.sendMessage(rule);
+                p2.sendMessage(rule);
+            }
 
-            p1.sendMessage(msg1);
-            p2.sendMessage(msg2);
-            p1.sendMessage(room.getBoardString());
-            p2.sendMessage(room.getBoardString());
+            Player black = p1.getColor().equals("black") ? p1 : p2;
+            Player white = black == p1 ? p2 : p1;
+            Spectators spectators = room.getSpectators();
+            spectators.publishMessage(AnsiColor.success("游戏开始！" + black.getName() + "（黑） vs " + white.getName() + "（白）"));
+            spectators.publishBoard();
         } else {
             player.sendMessage(AnsiColor.info("等待对手准备..."));
         }
     }
 
-    private void makeMove(int x, int y) {
+    // 不带参数时显示当前规则；修改在房间邮箱中进行，对局进行中不能修改
+    private void setRuleSet(String name) {
         GameRoom room = player.getCurrentRoom();
         if (room == null) {
             player.sendMessage(AnsiColor.error("你不在任何房间中"));
             return;
         }
+        if (name == null) {
+            player.sendMessage(AnsiColor.info("当前规则：" + room.getRuleSet().getDisplayName() + "，可选 freestyle|standard|renju"));
+            return;
+        }
+        RuleSet rule = RuleSet.parse(name);
+        if (rule == null) {
+            player.sendMessage(AnsiColor.error("未知规则: " + name + "，可选 freestyle|standard|renju"));
+            return;
+        }
+        Player self = player;
+        room.execute(() -> {
+            if (!room.isMember(self)) {
+                return;
+            }
+            if (!room.setRuleSet(rule)) {
+                self.sendMessage(AnsiColor.error("对局进行中不能修改规则"));
+                return;
+            }
+            String message = AnsiColor.info(self.getName() + " 将规则设为" + rule.getDisplayName() + "，下一局生效");
+            for (Player member : new Player[]{room.getPlayer1(), room.getPlayer2()}) {
+                if (member != null) {
+                    member.sendMessage(message);
+                }
+            }
+        });
+    }
 
+    private static String sizeName(int size) {
+        return size == 0 ? "无边界" : size + " 路";
+    }
+
+    // 不带参数时显示当前尺寸；与规则一样在房间邮箱中修改，对局进行中不能修改
+    private void setBoardSize(String value) {
+        GameRoom room = player.getCurrentRoom();
+        if (room == null) {
+            player.sendMessage(AnsiColor.error("你不在任何房间中"));
+            return;
+        }
+        if (value == null) {
+            player.sendMessage(AnsiColor.info("当前棋盘：" + sizeName(room.getBoardSize()) + "，可选 15|19|unbounded"));
+            return;
+        }
+        int size;
+        if (value.equalsIgnoreCase("unbounded")) {
+            size = 0;
+        } else if (value.equals("15") || value.equals("19")) {
+            size = Integer.parseInt(value);
+        } else {
+            player.sendMessage(AnsiColor.error("不支持的棋盘尺寸: " + value + "，可选 15|19|unbounded"));
+            return;
+        }
+        Player self = player;
+        room.execute(() -> {
+            if (!room.isMember(self)) {
+                return;
+            }
+            if (room.getPlayer1() instanceof BotPlayer || room.getPlayer2() instanceof BotPlayer) {
+                self.sendMessage(AnsiColor.error("人机对局只支持 15 路棋盘"));
+                return;
+            }
+            if (!room.setBoardSize(size)) {
+                self.sendMessage(AnsiColor.error("对局进行中不能修改棋盘尺寸"));
+                return;
+            }
+            String message = AnsiColor.info(self.getName() + " 将棋盘设为" + sizeName(size) + "，下一局生效");
+            for (Player member : new Player[]{room.getPlayer1(), room.getPlayer2()}) {
+                if (member != null) {
+                    member.sendMessage(message);
+                }
+            }
+        });
+    }
+
+    // 不带参数时显示计时规则和本局双方的剩余时间；修改方式与规则相同
+    private void setTimeControl(String spec) {
+        GameRoom room = player.getCurrentRoom();
+        if (room == null) {
+            player.sendMessage(AnsiColor.error("你不在任何房间中"));
+            return;
+        }
+        Player self = player;
+        if (spec == null) {
+            room.execute(() -> {
+                String remaining = room.describeClock();
+                self.sendMessage(AnsiColor.info("计时：" + room.getTimeControl().getDisplayName()
+                    + (remaining != null ? "，" + remaining : "") + "，可选 off|10+5|5/30x3"));
+            });
+            return;
+        }
+        TimeControl control = TimeControl.parse(spec);
+        if (control == null) {
+            player.sendMessage(AnsiColor.error("无法识别的计时: " + spec + "，例如 off、10+5（10 分钟每手加 5 秒）、5/30x3（5 分钟后读秒 30 秒 3 次）"));
+            return;
+        }
+        room.execute(() -> {
+            if (!room.isMember(self)) {
+                return;
+            }
+            if (!room.setTimeControl(control)) {
+                self.sendMessage(AnsiColor.error("对局进行中不能修改计时"));
+                return;
+            }
+            String message = AnsiColor.info(self.getName() + " 将计时设为" + control.getDisplayName() + "，下一局生效");
+            for (Player member : new Player[]{room.getPlayer1(), room.getPlayer2()}) {
+                if (member != null) {
+                    member.sendMessage(message);
+                }
+            }
+        });
+    }
+
+    private void setDeltaUpdates(boolean enabled) {
+        player.setDeltaUpdates(enabled);
+        player.sendMessage(AnsiColor.info(enabled ? "已开启增量棋盘更新" : "已关闭增量棋盘更新"));
+    }
+
+    private void syncBoard() {
+        GameRoom room = player.getCurrentRoom();
+        if (room == null) {
+            player.sendMessage(AnsiColor.error("当前没有进行中的对局"));
+            return;
+        }
+        Player self = player;
+        room.execute(() -> {
+            if (room.isGameStarted()) {
+                self.sendBoard(room);
+            } else {
+                self.sendMessage(AnsiColor.error("当前没有进行中的对局"));
+            }
+        });
+    }
+
+    // receivedNanos 为读到这条命令的时刻，用于统计落子延迟
+    private void makeMove(int x, int y, long receivedNanos) {
+        GameRoom room = player.getCurrentRoom();
+        if (room == null) {
+            player.sendError(BinaryProtocol.OP_PUT, BinaryProtocol.ERR_NOT_IN_ROOM, "你不在任何房间中");
+            return;
+        }
+        Player self = player;
+        room.execute(() -> makeMove(room, self, x, y, receivedNanos));
+    }
+
+    static void makeMove(GameRoom room, Player player, int x, int y) {
+        makeMove(room, player, x, y, 0);
+    }
+
+    // receivedNanos 不为 0 时，对手一端写出这手棋的时刻记入落子延迟
+    static void makeMove(GameRoom room, Player player, int x, int y, long receivedNanos) {
+        if (!room.isMember(player)) {
+            return;
+        }
+        // 拒绝落子时二进制客户端收到带原因码的 EV_ERROR
         if (!room.isGameStarted()) {
-            player.sendMessage(AnsiColor.error("游戏还未开始"));
+            player.sendError(BinaryProtocol.OP_PUT, BinaryProtocol.ERR_NOT_STARTED, "游戏还未开始");
             return;
         }
 
         if (room.isGameOver()) {
-            player.sendMessage(AnsiColor.error("游戏已结束"));
+            player.sendError(BinaryProtocol.OP_PUT, BinaryProtocol.ERR_GAME_OVER, "游戏已结束");
+            return;
+        }
+
+        if (room.getPlayerCount() < 2) {
+            player.sendError(BinaryProtocol.OP_PUT, BinaryProtocol.ERR_OPPONENT_AWAY, "等待对手重新连接");
             return;
         }
 
         if (!room.getCurrentTurnColor().equals(player.getColor())) {
-            player.sendMessage(AnsiColor.error("并不是你的回合，请等待对手落子"));
+            player.sendError(BinaryProtocol.OP_PUT, BinaryProtocol.ERR_NOT_YOUR_TURN, "并不是你的回合，请等待对手落子");
+            return;
+        }
+
+        // 超时检查可能还排在邮箱后面，超时后的落子不算
+        if (room.isOutOfTime()) {
+            timeOut(room, player, " 超时");
             return;
         }
 
         if (room.makeMove(x, y, player.getColor())) {
             ServerLogger.info("房间 " + room.getRoomId() + ": " + player.getName() + " 落子 (" + x + ", " + y + ")");
-            String boardString = room.getBoardString();
-            room.getPlayer1().sendMessage(boardString);
-            room.getPlayer2().sendMessage(boardString);
+            Player opponent = player == room.getPlayer1() ? room.getPlayer2() : room.getPlayer1();
+            player.sendMove(room, x, y, player.getColor());
+            opponent.sendMove(room, x, y, player.getColor(), receivedNanos);
+            room.getSpectators().publishMove(x, y, player.getColor());
 
             if (room.checkWin(x, y)) {
                 room.setGameOver(true);
-                ServerLogger.success("房间 " + room.getRoomId() + " 游戏结束，获胜者: " + player.getName());
-                String winMessage = AnsiColor.success(AnsiColor.bold(String.format("游戏结束！%s 获胜！\n输入 leave 离开房间，或者输入 again 再来一局\n", player.getName())));
-                room.getPlayer1().sendMessage(winMessage);
-                room.getPlayer2().sendMessage(winMessage);
+                Player loser = player == room.getPlayer1() ? room.getPlayer2() : room.getPlayer1();
+                announceWinner(room, player, loser);
             } else {
                 // Notify the next player
                 Player nextPlayer = room.getCurrentTurnColor().equals(room.getPlayer1().getColor()) ? room.getPlayer1() : room.getPlayer2();
-                nextPlayer.sendMessage(AnsiColor.info("轮到你了"));
+                nextPlayer.sendYourTurn();
             }
+        } else if (room.getRejectedForbidden() != null) {
+            player.sendError(BinaryProtocol.OP_PUT, BinaryProtocol.ERR_FORBIDDEN,
+                "禁手（" + room.getRejectedForbidden().getDisplayName() + "），请换一个位置");
         } else {
-            player.sendMessage(AnsiColor.error("无效的落子位置"));
+            player.sendError(BinaryProtocol.OP_PUT, BinaryProtocol.ERR_INVALID_MOVE, "无效的落子位置");
+        }
+    }
+
+    // 在房间邮箱中执行：loser 超时或长时间不落子，判负结束对局
+    static void timeOut(GameRoom room, Player loser, String reason) {
+        if (!room.isMember(loser) || !room.isGameStarted() || room.isGameOver()) {
+            return;
+        }
+        Player winner = room.getPlayer1() == loser ? room.getPlayer2() : room.getPlayer1();
+        if (winner == null) {
+            return;
+        }
+        room.forfeit(loser.getColor());
+        String message = AnsiColor.info(loser.getName() + reason + "，判负");
+        loser.sendMessage(message);
+        winner.sendMessage(message);
+        room.getSpectators().publishMessage(message);
+        announceWinner(room, winner, loser);
+    }
+
+    // 对局已结束：更新积分并通知双方与观战者
+    private static void announceWinner(GameRoom room, Player winner, Player loser) {
+        // 人机对局不计积分
+        if (!(winner instanceof BotPlayer) && !(loser instanceof BotPlayer)) {
+            Matchmaker.updateRatings(winner, loser);
+        }
+        ServerLogger.success("房间 " + room.getRoomId() + " 游戏结束，获胜者: " + winner.getName());
+        room.getPlayer1().sendGameOver(winner);
+        room.getPlayer2().sendGameOver(winner);
+        room.getSpectators().publishGameOver(winner, AnsiColor.success(AnsiColor.bold("游戏结束！" + winner.getName() + " 获胜！")));
+        if (room.getLastGameId() > 0) {
+            String saved = AnsiColor.info("本局已存档，编号 " + room.getLastGameId() + "，可用 replay " + room.getLastGameId() + " 回放");
+            room.getPlayer1().sendMessage(saved);
+            room.getPlayer2().sendMessage(saved);
         }
     }
-} 
\ No newline at end of file
+}
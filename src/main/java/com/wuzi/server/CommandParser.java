@@ -0,0 +1,226 @@
+package com.wuzi.server;
+
+import java.util.Arrays;
+
+// 文本命令解析：直接在收到的一行字符上切分词元，只记录每个词元的起止位置，不创建子串；
+// 命令字经预先构建的查找表映射为操作码，数字参数逐字符解析。格式错误记为错误码，不抛异常。
+// 每个会话一个实例，只由处理该会话命令的线程使用，解析常见命令不分配内存
+final class CommandParser {
+    enum Command {
+        LS("ls"),
+        ENTER("enter"),
+        WATCH("watch"),
+        MATCH("match"),
+        PLAY("play"),
+        REPLAY("replay"),
+        RULE("rule"),
+        SIZE("size"),
+        CLOCK("clock"),
+        START("start"),
+        PUT("put"),
+        QUIT("quit"),
+        AGAIN("again"),
+        LEAVE("leave"),
+        DELTA("delta"),
+        SYNC("sync"),
+        HELP("help"),
+        STATS("stats"),
+        UNKNOWN(null);
+
+        private final String keyword;
+
+        Command(String keyword) {
+            this.keyword = keyword;
+        }
+    }
+
+    enum Error {
+        NONE(null),
+        MISSING_ARGUMENT("缺少参数"),
+        BAD_NUMBER("数字格式错误");
+
+        private final String message;
+
+        Error(String message) {
+            this.message = message;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    // 超出的词元忽略
+    static final int MAX_TOKENS = 8;
+
+    // 按命令字首字母（小写）分组的候选命令，同一首字母最多几个，逐个比较即可
+    private static final Command[][] BY_INITIAL = new Command[26][];
+
+    static {
+        for (Command command : Command.values()) {
+            if (command.keyword == null) {
+                continue;
+            }
+            int index = command.keyword.charAt(0) - 'a';
+            Command[] group = BY_INITIAL[index];
+            if (group == null) {
+                group = new Command[0];
+            }
+            Command[] grown = Arrays.copyOf(group, group.length + 1);
+            grown[group.length] = command;
+            BY_INITIAL[index] = grown;
+        }
+    }
+
+    private final int[] starts = new int[MAX_TOKENS];
+    private final int[] ends = new int[MAX_TOKENS];
+    private String line;
+    private int count;
+    private Error error = Error.NONE;
+
+    // 切分一行命令并识别命令字；空行和无法识别的命令字返回 UNKNOWN
+    Command parse(String line) {
+        this.line = line;
+        this.count = 0;
+        this.error = Error.NONE;
+        int length = line.length();
+        int i = 0;
+        while (count < MAX_TOKENS) {
+            while (i < length && isSpace(line.charAt(i))) {
+                i++;
+            }
+            if (i == length) {
+                break;
+            }
+            starts[count] = i;
+            while (i < length && !isSpace(line.charAt(i))) {
+                i++;
+            }
+            ends[count++] = i;
+        }
+        return count == 0 ? Command.UNKNOWN : lookup(starts[0], ends[0]);
+    }
+
+    private Command lookup(int start, int end) {
+        int index = Character.toLowerCase(line.charAt(start)) - 'a';
+        if (index < 0 || index >= BY_INITIAL.length || BY_INITIAL[index] == null) {
+            return Command.UNKNOWN;
+        }
+        for (Command command : BY_INITIAL[index]) {
+            if (command.keyword.length() == end - start
+                    && line.regionMatches(true, start, command.keyword, 0, end - start)) {
+                return command;
+            }
+        }
+        return Command.UNKNOWN;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    // 词元个数，包括命令字
+    int count() {
+        return count;
+    }
+
+    // 第一个出错的参数的错误码，没有出错为 NONE
+    Error error() {
+        return error;
+    }
+
+    // 第 i 个词元是否为 word（不区分大小写）
+    boolean is(int i, String word) {
+        return i < count && ends[i] - starts[i] == word.length()
+            && line.regionMatches(true, starts[i], word, 0, word.length());
+    }
+
+    boolean startsWithDigit(int i) {
+        return i < count && Character.isDigit(line.charAt(starts[i]));
+    }
+
+    // 第 i 个词元的文本，不存在时返回 null；只用于不常见的命令
+    String text(int i) {
+        return i < count ? line.substring(starts[i], ends[i]) : null;
+    }
+
+    // 按 radix 进制解析第 i 个词元，可带负号；出错时记录错误码并返回 0
+    int intAt(int i, int radix) {
+        return (int) number(i, radix, Integer.MAX_VALUE);
+    }
+
+    long longAt(int i) {
+        return number(i, 10, Long.MAX_VALUE);
+    }
+
+    private long number(int i, int radix, long max) {
+        if (i >= count) {
+            return fail(Error.MISSING_ARGUMENT);
+        }
+        int p = starts[i];
+        int end = ends[i];
+        boolean negative = line.charAt(p) == '-';
+        if (negative || line.charAt(p) == '+') {
+            p++;
+        }
+        if (p == end) {
+            return fail(Error.BAD_NUMBER);
+        }
+        long value = 0;
+        for (; p < end; p++) {
+            int digit = Character.digit(line.charAt(p), radix);
+            if (digit < 0) {
+                return fail(Error.BAD_NUMBER);
+            }
+            // 先检查再乘，max 接近 Long.MAX_VALUE 时也不会溢出
+            if (value > (max - digit) / radix) {
+                return fail(Error.BAD_NUMBER);
+            }
+            value = value * radix + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    // 形如 "2"、"0.5"、".5" 的非负小数；出错时记录错误码并返回 0
+    double decimalAt(int i) {
+        if (i >= count) {
+            return fail(Error.MISSING_ARGUMENT);
+        }
+        long whole = 0;
+        long fraction = 0;
+        long scale = 1;
+        boolean point = false;
+        boolean digits = false;
+        for (int p = starts[i]; p < ends[i]; p++) {
+            char c = line.charAt(p);
+            if (c == '.' && !point) {
+                point = true;
+            } else if (c >= '0' && c <= '9') {
+                digits = true;
+                if (!point) {
+                    whole = whole * 10 + (c - '0');
+                    if (whole > 1_000_000) {
+                        return fail(Error.BAD_NUMBER);
+                    }
+                } else if (scale < 1_000_000) {
+                    fraction = fraction * 10 + (c - '0');
+                    scale *= 10;
+                }
+            } else {
+                return fail(Error.BAD_NUMBER);
+            }
+        }
+        if (!digits) {
+            return fail(Error.BAD_NUMBER);
+        }
+        return whole + (double) fraction / scale;
+    }
+
+    // 只记录第一个错误
+    private long fail(Error error) {
+        if (this.error == Error.NONE) {
+            this.error = error;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,44 @@
+package com.wuzi.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// 玩家连接的输出端，屏蔽阻塞 Socket 与 NIO 两种实现的差异
+public interface Connection {
+    // 写出一段完整的消息数据，实现需保证线程安全；写失败时静默处理，由读端负责断线清理
+    void write(byte[] data);
+
+    // 依次写出 data[0..count) 中的消息；实现应尽量合并为一次系统调用
+    default void write(byte[][] data, int count) {
+        for (int i = 0; i < count; i++) {
+            write(data[i]);
+        }
+    }
+
+    // 可以从任意线程调用
+    void close();
+
+    // write 只是入队、从不阻塞的连接返回已入队还没写出的消息数；write 可能阻塞的连接返回 -1，
+    // 由 OutboundQueue 排队后在写线程中写出
+    default int backlog() {
+        return -1;
+    }
+
+    // backlog() >= 0 的连接在消息真正写入套接字后回调 listener，由连接的 I/O 线程调用
+    default void setWriteListener(WriteListener listener) {
+    }
+
+    // 已排队的输出写完后再关闭，可以从任意线程调用；NIO 连接在事件循环线程中关闭
+    default void closeAfterFlush() {
+        close();
+    }
+
+    default void writeLine(String line) {
+        write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    interface WriteListener {
+        // buffers[0..count) 为刚写完的消息，回调返回后不能再持有
+        void written(ByteBuffer[] buffers, int count);
+    }
+}
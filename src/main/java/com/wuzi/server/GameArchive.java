@@ -0,0 +1,333 @@
+package com.wuzi.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 已结束对局的存档。每局追加到 games.bin（紧凑二进制，每手 1 字节），同时导出一份文本棋谱 <编号>.txt。
+// 内存中只保留 编号 -> 文件偏移 的索引和最近回放过的少量对局，回放时按需从磁盘读取单局；
+// 所有磁盘读写都在独立的存档线程上完成，不占用房间线程
+//
+// games.bin 记录：[i32 长度][i64 编号][i64 结束时间][u8 结果][u8 棋盘大小]
+//                 [u8 黑方名字长度 + 名字][u8 白方名字长度 + 名字][u16 手数][每手 x * 大小 + y，大小超过 16 时为 u16]
+public class GameArchive {
+    public static final class GameRecord {
+        final long id;
+        final long endMillis;
+        final int result;
+        final int boardSize;
+        final String black;
+        final String white;
+        // 每手两个字节 x, y，黑先交替
+        final byte[] moves;
+
+        GameRecord(long id, long endMillis, int result, int boardSize, String black, String white, byte[] moves) {
+            this.id = id;
+            this.endMillis = endMillis;
+            this.result = result;
+            this.boardSize = boardSize;
+            this.black = black;
+            this.white = white;
+            this.moves = moves;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public int getResult() {
+            return result;
+        }
+
+        public String getBlack() {
+            return black;
+        }
+
+        public String getWhite() {
+            return white;
+        }
+
+        public int getBoardSize() {
+            return boardSize;
+        }
+
+        public int getMoveCount() {
+            return moves.length / 2;
+        }
+
+        public int getMoveX(int i) {
+            return moves[i * 2];
+        }
+
+        public int getMoveY(int i) {
+            return moves[i * 2 + 1];
+        }
+    }
+
+    private final Path dir;
+    private final FileChannel data;
+    private final Map<Long, Long> index = new ConcurrentHashMap<>();
+    private final AtomicLong nextId;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "wuzi-archive");
+        t.setDaemon(true);
+        return t;
+    });
+    private final int cacheSize;
+    private final ReentrantLock cacheLock = new ReentrantLock();
+    // 按访问顺序排列的 LRU 缓存，由 cacheLock 保护
+    private final LinkedHashMap<Long, GameRecord> cache;
+    // 只在存档线程上访问
+    private long writePos;
+
+    private GameArchive(Path dir, int cacheSize) throws IOException {
+        Files.createDirectories(dir);
+        this.dir = dir;
+        this.cacheSize = cacheSize;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true);
+        this.data = FileChannel.open(dir.resolve("games.bin"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.nextId = new AtomicLong(scan() + 1);
+    }
+
+    public static GameArchive open(Path dir, int cacheSize) throws IOException {
+        return new GameArchive(dir, cacheSize);
+    }
+
+    // 扫描记录头重建索引，截掉崩溃时写了一半的尾部；返回最大编号
+    private long scan() throws IOException {
+        long size = data.size();
+        long pos = 0;
+        long maxId = 0;
+        ByteBuffer header = ByteBuffer.allocate(12);
+        while (pos + 12 <= size) {
+            header.clear();
+            readFully(header, pos);
+            int length = header.getInt(0);
+            if (length < 8 || pos + 4 + length > size) {
+                break;
+            }
+            long id = header.getLong(4);
+            index.put(id, pos);
+            maxId = Math.max(maxId, id);
+            pos += 4 + length;
+        }
+        if (pos < size) {
+            ServerLogger.warn("对局存档尾部不完整，已截断 " + (size - pos) + " 字节");
+            data.truncate(pos);
+        }
+        writePos = pos;
+        return maxId;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (data.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("对局存档意外结束");
+            }
+        }
+    }
+
+    // 保存一局已结束的对局，立即返回分配的编号，实际写盘在存档线程上进行。
+    // 新对局不放入缓存，缓存只留给有人回放的对局，正常对局不会把它们挤出去
+    public long save(String black, String white, int result, int boardSize, byte[] moves, int moveCount) {
+        long id = nextId.getAndIncrement();
+        GameRecord record = new GameRecord(id, System.currentTimeMillis(), result, boardSize, black, white,
+            Arrays.copyOf(moves, moveCount * 2));
+        io.execute(() -> {
+            try {
+                write(record);
+            } catch (IOException e) {
+                ServerLogger.error("保存对局 " + id + " 失败：" + e.getMessage());
+            }
+        });
+        return id;
+    }
+
+    private void write(GameRecord record) throws IOException {
+        byte[] encoded = encode(record);
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        while (buffer.hasRemaining()) {
+            data.write(buffer, writePos + buffer.position());
+        }
+        index.put(record.id, writePos);
+        writePos += encoded.length;
+        Files.write(dir.resolve(record.id + ".txt"), toText(record).getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] encode(GameRecord record) {
+        byte[] black = nameBytes(record.black);
+        byte[] white = nameBytes(record.white);
+        int count = record.getMoveCount();
+        boolean wide = record.boardSize > 16;
+        int length = 8 + 8 + 1 + 1 + 1 + black.length + 1 + white.length + 2 + count * (wide ? 2 : 1);
+        ByteBuffer buffer = ByteBuffer.allocate(4 + length)
+            .putInt(length)
+            .putLong(record.id)
+            .putLong(record.endMillis)
+            .put((byte) record.result)
+            .put((byte) record.boardSize)
+            .put((byte) black.length).put(black)
+            .put((byte) white.length).put(white)
+            .putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            int cell = record.getMoveX(i) * record.boardSize + record.getMoveY(i);
+            if (wide) {
+                buffer.putShort((short) cell);
+            } else {
+                buffer.put((byte) cell);
+            }
+        }
+        return buffer.array();
+    }
+
+    static GameRecord decode(ByteBuffer in) {
+        long id = in.getLong();
+        long endMillis = in.getLong();
+        int result = in.get();
+        int boardSize = in.get() & 0xFF;
+        byte[] black = new byte[in.get() & 0xFF];
+        in.get(black);
+        byte[] white = new byte[in.get() & 0xFF];
+        in.get(white);
+        int count = in.getShort() & 0xFFFF;
+        byte[] moves = new byte[count * 2];
+        for (int i = 0; i < count; i++) {
+            int cell = boardSize > 16 ? in.getShort() & 0xFFFF : in.get() & 0xFF;
+            moves[i * 2] = (byte) (cell / boardSize);
+            moves[i * 2 + 1] = (byte) (cell % boardSize);
+        }
+        return new GameRecord(id, endMillis, result, boardSize,
+            new String(black, StandardCharsets.UTF_8), new String(white, StandardCharsets.UTF_8), moves);
+    }
+
+    private static byte[] nameBytes(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= 255 ? bytes : Arrays.copyOf(bytes, 255);
+    }
+
+    // 文本棋谱：PGN 风格的标签加连珠记谱（列 a 起，行号自下而上从 1 起，天元为 h8）
+    static String toText(GameRecord record) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("[Event \"WuziOnline\"]\n");
+        sb.append("[Game \"").append(record.id).append("\"]\n");
+        sb.append("[Date \"").append(new SimpleDateFormat("yyyy.MM.dd HH:mm:ss").format(new Date(record.endMillis))).append("\"]\n");
+        sb.append("[Black \"").append(record.black).append("\"]\n");
+        sb.append("[White \"").append(record.white).append("\"]\n");
+        sb.append("[Size \"").append(record.boardSize).append("\"]\n");
+        sb.append("[Result \"").append(resultText(record.result)).append("\"]\n\n");
+        for (int i = 0; i < record.getMoveCount(); i++) {
+            if (i % 2 == 0) {
+                sb.append(i / 2 + 1).append(". ");
+            }
+            sb.append(notation(record.boardSize, record.getMoveX(i), record.getMoveY(i))).append(' ');
+        }
+        return sb.append(resultText(record.result)).append('\n').toString();
+    }
+
+    static String notation(int boardSize, int x, int y) {
+        return (char) ('a' + y) + String.valueOf(boardSize - x);
+    }
+
+    static String resultText(int result) {
+        switch (result) {
+            case GameJournal.RESULT_BLACK:
+                return "1-0";
+            case GameJournal.RESULT_WHITE:
+                return "0-1";
+            default:
+                return "*";
+        }
+    }
+
+    // 读取一局存档：命中缓存直接返回，否则在存档线程上从磁盘读出这一条记录；不存在时结果为 null
+    public CompletableFuture<GameRecord> load(long id) {
+        GameRecord cached = cacheGet(id);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            // 排在同一线程上，先于本次读取提交的写入一定已经完成
+            Long position = index.get(id);
+            if (position == null) {
+                return null;
+            }
+            try {
+                ByteBuffer length = ByteBuffer.allocate(4);
+                readFully(length, position);
+                ByteBuffer body = ByteBuffer.allocate(length.getInt(0));
+                readFully(body, position + 4);
+                body.flip();
+                GameRecord record = decode(body);
+                cachePut(record);
+                return record;
+            } catch (IOException e) {
+                ServerLogger.error("读取对局 " + id + " 失败：" + e.getMessage());
+                return null;
+            }
+        }, io);
+    }
+
+    public int getGameCount() {
+        return (int) (nextId.get() - 1);
+    }
+
+    private GameRecord cacheGet(long id) {
+        cacheLock.lock();
+        try {
+            return cache.get(id);
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    private void cachePut(GameRecord record) {
+        cacheLock.lock();
+        try {
+            cache.put(record.id, record);
+            if (cache.size() > cacheSize) {
+                Long eldest = cache.keySet().iterator().next();
+                cache.remove(eldest);
+            }
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    int getCachedCount() {
+        cacheLock.lock();
+        try {
+            return cache.size();
+        } finally {
+            cacheLock.unlock();
+        }
+    }
+
+    public void close() {
+        io.shutdown();
+        try {
+            io.awaitTermination(5, TimeUnit.SECONDS);
+            data.force(true);
+            data.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            ServerLogger.error("关闭对局存档失败：" + e.getMessage());
+        }
+    }
+}
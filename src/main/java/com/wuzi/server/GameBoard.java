@@ -1,167 +1,234 @@
 package com.wuzi.server;
 
-public class GameBoard {
-    private static final int BOARD_SIZE = 15;
-    // 0: Empty, 1: Black, 2: White
-    private final int[][] board;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class GameBoard implements Board {
+    public static final int DEFAULT_SIZE = 15;
+    // 每条线是一个 int 位掩码，五连判断的移位要求尺寸不超过 25
+    public static final int MAX_SIZE = 25;
+    private final int size;
+    // 位棋盘：每种颜色沿行、列、两条对角线各保存一组位掩码，下标 0 为黑，1 为白
+    // rows[c][x] 的第 y 位、cols[c][y] 的第 x 位、diags[c][x - y + size - 1] 与 antiDiags[c][x + y] 的第 x 位
+    private final int[][] rows;
+    private final int[][] cols;
+    private final int[][] diags;
+    private final int[][] antiDiags;
     private int lastMoveX = -1;
     private int lastMoveY = -1;
-
-    // ANSI Color Codes
-    private static final String RESET = "\u001B[0m";
-    private static final String GRID_COLOR = "\u001B[33m"; // Yellow for grid
-    private static final String BLACK_PIECE_COLOR = "\u001B[36m"; // Cyan for Black
-    private static final String WHITE_PIECE_COLOR = "\u001B[37m"; // White for White
-    private static final String LAST_MOVE_BG = "\u001B[41m"; // Red background for last move
+    // 棋盘每次变化版本号加一，dirtyRows 记录自上次渲染以来内容变化的行
+    private volatile int version;
+    private int dirtyRows;
+    private BoardRenderer renderer;
 
     public GameBoard() {
-        this.board = new int[BOARD_SIZE][BOARD_SIZE];
-        // int array defaults to 0, so no loop needed strictly, but explicit is fine
+        this(DEFAULT_SIZE);
     }
 
-    public void reset() {
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                board[i][j] = 0;
+    public GameBoard(int size) {
+        if (size < 5 || size > MAX_SIZE) {
+            throw new IllegalArgumentException("棋盘尺寸必须在 5-" + MAX_SIZE + " 之间: " + size);
+        }
+        this.size = size;
+        this.rows = new int[2][size];
+        this.cols = new int[2][size];
+        this.diags = new int[2][size * 2 - 1];
+        this.antiDiags = new int[2][size * 2 - 1];
+    }
+
+    // 由按行排列的格子状态（0 空 1 黑 2 白）重建棋盘
+    public static GameBoard fromCells(byte[] cells) {
+        int size = (int) Math.round(Math.sqrt(cells.length));
+        GameBoard board = new GameBoard(size);
+        for (int i = 0; i < cells.length; i++) {
+            if (cells[i] != 0) {
+                board.place(i / size, i % size, cells[i] - 1);
             }
         }
+        return board;
+    }
+
+    @Override
+    public void reset() {
+        for (int c = 0; c < 2; c++) {
+            Arrays.fill(rows[c], 0);
+            Arrays.fill(cols[c], 0);
+            Arrays.fill(diags[c], 0);
+            Arrays.fill(antiDiags[c], 0);
+        }
         lastMoveX = -1;
         lastMoveY = -1;
+        dirtyRows = -1;
+        version++;
     }
 
+    @Override
     public boolean makeMove(int x, int y, String color) {
-        if (x < 0 || x >= BOARD_SIZE || y < 0 || y >= BOARD_SIZE || board[x][y] != 0) {
+        if (!isInside(x, y) || getCell(x, y) != 0) {
             return false;
         }
-        board[x][y] = color.equals("black") ? 1 : 2;
+        place(x, y, color.equals("black") ? 0 : 1);
+        // 新落子所在行，以及失去最后一手标记的旧行需要重绘
+        dirtyRows |= 1 << x;
+        if (lastMoveX >= 0) {
+            dirtyRows |= 1 << lastMoveX;
+        }
         lastMoveX = x;
         lastMoveY = y;
+        version++;
         return true;
     }
 
+    @Override
+    public boolean isInside(int x, int y) {
+        return x >= 0 && x < size && y >= 0 && y < size;
+    }
+
+    @Override
+    public void place(int x, int y, int c) {
+        rows[c][x] |= 1 << y;
+        cols[c][y] |= 1 << x;
+        diags[c][x - y + size - 1] |= 1 << x;
+        antiDiags[c][x + y] |= 1 << x;
+    }
+
+    @Override
+    public void remove(int x, int y, int c) {
+        rows[c][x] &= ~(1 << y);
+        cols[c][y] &= ~(1 << x);
+        diags[c][x - y + size - 1] &= ~(1 << x);
+        antiDiags[c][x + y] &= ~(1 << x);
+    }
+
+    @Override
+    public int getCell(int x, int y) {
+        int bit = 1 << y;
+        if ((rows[0][x] & bit) != 0) return 1;
+        if ((rows[1][x] & bit) != 0) return 2;
+        return 0;
+    }
+
+    @Override
     public boolean checkWin(int x, int y) {
-        int piece = board[x][y];
+        int piece = getCell(x, y);
         if (piece == 0) return false;
+        int c = piece - 1;
 
-        // 检查八个方向
-        int[][] directions = {
-            {1, 0}, {1, 1}, {0, 1}, {-1, 1},
-            {-1, 0}, {-1, -1}, {0, -1}, {1, -1}
-        };
-
-        for (int i = 0; i < 4; i++) {
-            int count = 1;
-            // 正向检查
-            count += countPieces(x, y, directions[i][0], directions[i][1], piece);
-            // 反向检查
-            count += countPieces(x, y, directions[i + 4][0], directions[i + 4][1], piece);
-            if (count >= 5) return true;
-        }
-        return false;
+        // 只检查经过 (x, y) 的四条线，每条线用移位与运算一次判断是否有包含该点的五连
+        return hasFiveThrough(rows[c][x], y)
+            || hasFiveThrough(cols[c][y], x)
+            || hasFiveThrough(diags[c][x - y + size - 1], x)
+            || hasFiveThrough(antiDiags[c][x + y], x);
     }
 
-    private int countPieces(int x, int y, int dx, int dy, int piece) {
-        int count = 0;
-        int currentX = x + dx;
-        int currentY = y + dy;
+    private static boolean hasFiveThrough(int line, int pos) {
+        // five 的第 i 位表示 [i, i + 4] 五个位置全部有子
+        int five = line & (line >>> 1) & (line >>> 2) & (line >>> 3) & (line >>> 4);
+        // 包含 pos 的五连起点只能落在 [pos - 4, pos]
+        return (five & ((0x1F << pos) >>> 4)) != 0;
+    }
 
-        while (currentX >= 0 && currentX < BOARD_SIZE && 
-               currentY >= 0 && currentY < BOARD_SIZE && 
-               board[currentX][currentY] == piece) {
-            count++;
-            currentX += dx;
-            currentY += dy;
+    // 直接由四个方向的位掩码拼出窗口下标
+    @Override
+    public int linePattern(int c, int x, int y, int dir) {
+        int own;
+        int other;
+        int pos = x;
+        int lo = 0;
+        int hi = size - 1;
+        switch (dir) {
+            case 0:
+                own = rows[c][x];
+                other = rows[1 - c][x];
+                pos = y;
+                break;
+            case 1:
+                own = cols[c][y];
+                other = cols[1 - c][y];
+                break;
+            case 2:
+                own = diags[c][x - y + size - 1];
+                other = diags[1 - c][x - y + size - 1];
+                lo = Math.max(0, x - y);
+                hi = Math.min(size - 1, size - 1 + x - y);
+                break;
+            default:
+                own = antiDiags[c][x + y];
+                other = antiDiags[1 - c][x + y];
+                lo = Math.max(0, x + y - (size - 1));
+                hi = Math.min(size - 1, x + y);
         }
-        return count;
+        int index = 0;
+        for (int i = 0; i < LinePatterns.WINDOW; i++) {
+            int p = pos + i - LinePatterns.RADIUS;
+            if (p < lo || p > hi || (other >>> p & 1) != 0) {
+                index += 2 * LinePatterns.WEIGHTS[i];
+            } else if ((own >>> p & 1) != 0) {
+                index += LinePatterns.WEIGHTS[i];
+            }
+        }
+        return LinePatterns.lookup(index);
     }
 
     @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        
-        // Column Headers
-        sb.append("  ");
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            sb.append(String.format("%X ", i));
-        }
-        sb.append("\n");
-
-        for (int i = 0; i < BOARD_SIZE; i++) {
-            // Row Header
-            sb.append(String.format("%X ", i));
-            
-            for (int j = 0; j < BOARD_SIZE; j++) {
-                String cell;
-                int state = board[i][j];
-                
-                if (state == 0) {
-                    // Grid character based on position
-                    String gridChar;
-                    if (i == 0) {
-                        if (j == 0) gridChar = "┌─";
-                        else if (j == BOARD_SIZE - 1) gridChar = "┐ ";
-                        else gridChar = "┬─";
-                    } else if (i == BOARD_SIZE - 1) {
-                        if (j == 0) gridChar = "└─";
-                        else if (j == BOARD_SIZE - 1) gridChar = "┘ ";
-                        else gridChar = "┴─";
-                    } else {
-                        if (j == 0) gridChar = "├─";
-                        else if (j == BOARD_SIZE - 1) gridChar = "┤ ";
-                        else gridChar = "┼─";
-                    }
-                    // Apply Grid Color
-                    cell = GRID_COLOR + gridChar + RESET;
-                } else {
-                    // Piece
-                    String symbol = (state == 1) ? "●" : "○";
-                    String color = (state == 1) ? BLACK_PIECE_COLOR : WHITE_PIECE_COLOR;
-                    
-                    // Highlight last move
-                    if (i == lastMoveX && j == lastMoveY) {
-                        // For last move, maybe add a background or just make it bold/different
-                        // Let's use Red Background for the cell
-                        cell = LAST_MOVE_BG + color + symbol + RESET + " "; 
-                        // Note: The grid logic uses "─" or " " for spacing. 
-                        // To align correctly:
-                        // Grid chars are like "┌─". Takes 2 chars visual space usually?
-                        // "┌" is 1 char. "─" is 1 char. Total 2.
-                        // "●" is 1 char (wide). Space is 1 char. Total 2.
-                        // Let's stick to "Char" + "Space" or "Char" + "Dash".
-                        // My grid logic above: "┌─".
-                        // So pieces should be "● " (Piece + Space).
-                        
-                        // Re-evaluating alignment:
-                        // Headers are "0 1 2 ...". 2 chars per col.
-                        // Grid: "┌─", "┬─". 2 chars.
-                        // Last col: "┐ ". 2 chars.
-                        // Piece: "● ". 2 chars.
-                        
-                        // Fix for Last Move BG:
-                        // Apply BG only to the symbol
-                        cell = LAST_MOVE_BG + color + symbol + RESET + " ";
-                        
-                        // Actually, resetting after symbol means space is not colored.
-                        // That's fine.
-                    } else {
-                        cell = color + symbol + RESET + ((j == BOARD_SIZE - 1) ? " " : "─");
-                        // Wait, if there is a piece, the line to the right should be drawn?
-                        // If board[i][j] is a piece, we lose the grid line information.
-                        // Standard text go boards usually just replace the intersection with the piece.
-                        // But we need to maintain the horizontal line to the next intersection if we want it to look connected.
-                        // However, "●─" looks weird. Usually just "● " is enough if spacing is tight.
-                        // But my grid uses "─" for empty cells.
-                        // If I use " " for pieces, the horizontal line breaks.
-                        // Let's try "─" if the NEXT cell is also connected?
-                        // Too complex. Let's just use "─" always after a piece unless it's the last column.
-                        
-                        cell = color + symbol + RESET + ((j == BOARD_SIZE - 1) ? " " : GRID_COLOR + "─" + RESET);
-                    }
-                }
-                sb.append(cell);
+    public int getSize() {
+        return size;
+    }
+
+    @Override
+    public int getLastMoveX() {
+        return lastMoveX;
+    }
+
+    @Override
+    public int getLastMoveY() {
+        return lastMoveY;
+    }
+
+    // 按行排列的格子状态，每格一个字节 0/1/2
+    public byte[] toCells() {
+        byte[] cells = new byte[size * size];
+        for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+                cells[i * size + j] = (byte) getCell(i, j);
             }
-            sb.append("\n");
         }
-        return sb.toString();
+        return cells;
+    }
+
+    // 紧凑快照：按行排列的格子状态，每格一个字符 0/1/2
+    public String toSnapshot() {
+        byte[] cells = toCells();
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] += '0';
+        }
+        return new String(cells, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public int getVersion() {
+        return version;
+    }
+
+    int takeDirtyRows() {
+        int rows = dirtyRows;
+        dirtyRows = 0;
+        return rows;
+    }
+
+    // 以换行结尾的完整棋盘字节，同一版本内多次调用返回同一个数组
+    @Override
+    public synchronized byte[] renderBytes() {
+        if (renderer == null) {
+            // 只有真正需要文本棋盘的房间才分配渲染缓存
+            renderer = new BoardRenderer(this);
+        }
+        return renderer.render();
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = renderBytes();
+        return new String(bytes, 0, bytes.length - 1, StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,95 @@
+package com.wuzi.server;
+
+// 一局对局的棋钟，只在房间邮箱中读写。时间以调用方传入的单调毫秒时刻计算（不受系统时间调整影响），
+// 不自己计时：超时由房间在时间轮上按 deadline() 安排检查
+class GameClock {
+    private final TimeControl control;
+    // 下标 0 为黑，1 为白：剩余主时间与剩余读秒次数
+    private final long[] remaining = new long[2];
+    private final int[] periods = new int[2];
+    private int turn;
+    private long turnStart;
+
+    GameClock(TimeControl control, long now) {
+        this.control = control;
+        for (int c = 0; c < 2; c++) {
+            remaining[c] = control.getMainMillis();
+            periods[c] = control.getPeriods();
+        }
+        this.turnStart = now;
+    }
+
+    // 从对局日志恢复：各方剩余主时间和读秒次数，turn 方从 now 开始计时
+    GameClock(TimeControl control, long[] remaining, int[] periods, int turn, long now) {
+        this.control = control;
+        System.arraycopy(remaining, 0, this.remaining, 0, 2);
+        System.arraycopy(periods, 0, this.periods, 0, 2);
+        this.turn = turn;
+        this.turnStart = now;
+    }
+
+    // 暂停后继续（例如双方重连回到恢复的对局）：行棋方从 now 重新开始计时
+    void resume(long now) {
+        turnStart = now;
+    }
+
+    // 当前行棋方的超时时刻：剩余主时间加上所有剩余的读秒
+    long deadline() {
+        return turnStart + remaining[turn] + periods[turn] * control.getPeriodMillis();
+    }
+
+    boolean isOutOfTime(long now) {
+        return now > deadline();
+    }
+
+    // 行棋方在 now 时刻落子：扣除本手用时，主时间用完后每超出一个读秒周期消耗一次读秒，
+    // 然后加秒并轮到对方。已经超时返回 false，棋钟不变
+    boolean move(long now) {
+        if (isOutOfTime(now)) {
+            return false;
+        }
+        long elapsed = now - turnStart;
+        if (elapsed <= remaining[turn]) {
+            remaining[turn] -= elapsed;
+        } else {
+            long over = elapsed - remaining[turn];
+            remaining[turn] = 0;
+            periods[turn] -= (int) ((over - 1) / control.getPeriodMillis());
+        }
+        remaining[turn] += control.getIncrementMillis();
+        turn = 1 - turn;
+        turnStart = now;
+        return true;
+    }
+
+    // 0 黑 1 白
+    int getTurn() {
+        return turn;
+    }
+
+    // c 方的剩余主时间，轮到 c 方时扣除本手已用的时间
+    long getRemaining(int c, long now) {
+        if (c != turn) {
+            return remaining[c];
+        }
+        return Math.max(0, remaining[c] - (now - turnStart));
+    }
+
+    int getPeriods(int c) {
+        return periods[c];
+    }
+
+    // 例如 "黑 04:32  白 05:00 读秒×3"
+    String describe(long now) {
+        StringBuilder sb = new StringBuilder();
+        for (int c = 0; c < 2; c++) {
+            long seconds = (getRemaining(c, now) + 999) / 1000;
+            sb.append(c == 0 ? "黑 " : "  白 ");
+            sb.append(String.format("%02d:%02d", seconds / 60, seconds % 60));
+            if (control.getPeriods() > 0) {
+                sb.append(" 读秒×").append(periods[c]);
+            }
+        }
+        return sb.toString();
+    }
+}
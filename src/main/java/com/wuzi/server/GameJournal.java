@@ -0,0 +1,768 @@
+package com.wuzi.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+// 对局预写日志。开局、落子、结局以紧凑的二进制记录追加到内存映射文件，
+// 后台线程每隔 syncMillis 统一 force 一次，所有房间共享一次刷盘。落子在刷盘前就已回显给双方（异步提交），
+// 崩溃时最多丢失最近 syncMillis 内已确认的落子。
+//
+// 日志文件分为两个等长的区，每区以 魔数(4) + 版本(4) + 纪元(8) 开头，之后是记录
+// [u16 长度][类型 u8 + 房间号 i32 + 内容][CRC32C]。CRC 以所在区的纪元为种子，区被重用后残留的旧记录校验失败，
+// 重放在第一条无效记录处停止。
+// 压缩时在锁内复制进行中的对局并把追加切换到另一区（纪元加一），快照由刷盘线程在锁外写入并 fsync；
+// 快照落盘前旧区保持不动。重启时读取快照（纪元 S），依次重放纪元为 S 和 S+1 的区
+public class GameJournal {
+    // u8 黑方名字长度 + 名字 + u8 白方名字长度 + 名字 + u8 棋盘尺寸 + u8 规则（RuleSet 序号）
+    // + 计时规则 i64 主时间 + i64 加秒 + i64 读秒周期（毫秒）+ u8 读秒次数；
+    // 版本 1 的记录没有尺寸，视为 15，版本 4 之前没有规则，视为无禁手，版本 5 之前没有计时规则，视为不计时
+    static final int START = 1;
+    // u8 x, u8 y；计时对局另有落子方落子后的 i64 剩余主时间（毫秒）+ u8 剩余读秒次数
+    static final int MOVE = 2;
+    static final int END = 3;   // u8 胜方 0=中止 1=黑 2=白
+
+    static final int RESULT_ABORTED = 0;
+    static final int RESULT_BLACK = 1;
+    static final int RESULT_WHITE = 2;
+
+    private static final int MAGIC = 0x575A4A4C; // "WZJL"
+    private static final int SNAPSHOT_MAGIC = 0x575A5350; // "WZSP"
+    // 版本 2 在开局记录和快照中加入棋盘尺寸，版本 3 把日志分为两区，版本 4 加入规则，版本 5 加入计时规则和剩余时间；
+    // 仍可读取旧版本的文件
+    private static final int FORMAT = 5;
+    static final int HEADER = 16;
+    private static final int TIME_CONTROL_BYTES = 8 * 3 + 1;
+    private static final int MAX_BODY = 5 + 2 + 255 * 2 + 2 + TIME_CONTROL_BYTES;
+
+    // 一局进行中的对局：双方名字、棋盘尺寸、规则、计时规则、双方剩余时间和按顺序排列的落子坐标（黑先，交替落子）
+    public static final class GameLog {
+        final String black;
+        final String white;
+        final int boardSize;
+        final RuleSet ruleSet;
+        final TimeControl timeControl;
+        // 下标 0 为黑，1 为白：各方最近一次落子后的剩余主时间与读秒次数
+        final long[] remaining = new long[2];
+        final int[] periods = new int[2];
+        byte[] moves = new byte[32];
+        int moveCount;
+
+        GameLog(String black, String white, int boardSize, RuleSet ruleSet, TimeControl timeControl) {
+            this.black = black;
+            this.white = white;
+            this.boardSize = boardSize;
+            this.ruleSet = ruleSet;
+            this.timeControl = timeControl;
+            for (int c = 0; c < 2; c++) {
+                remaining[c] = timeControl.getMainMillis();
+                periods[c] = timeControl.getPeriods();
+            }
+        }
+
+        GameLog copy() {
+            GameLog copy = new GameLog(black, white, boardSize, ruleSet, timeControl);
+            System.arraycopy(remaining, 0, copy.remaining, 0, 2);
+            System.arraycopy(periods, 0, copy.periods, 0, 2);
+            copy.moves = Arrays.copyOf(moves, Math.max(2, moveCount * 2));
+            copy.moveCount = moveCount;
+            return copy;
+        }
+
+        // 记录刚落子一方的剩余时间
+        void clock(long remainingMillis, int remainingPeriods) {
+            int c = (moveCount - 1) & 1;
+            remaining[c] = remainingMillis;
+            periods[c] = remainingPeriods;
+        }
+
+        void add(int x, int y) {
+            if (moveCount * 2 + 2 > moves.length) {
+                moves = Arrays.copyOf(moves, moves.length * 2);
+            }
+            moves[moveCount * 2] = (byte) x;
+            moves[moveCount * 2 + 1] = (byte) y;
+            moveCount++;
+        }
+
+        public String getBlack() {
+            return black;
+        }
+
+        public String getWhite() {
+            return white;
+        }
+
+        public int getBoardSize() {
+            return boardSize;
+        }
+
+        public RuleSet getRuleSet() {
+            return ruleSet;
+        }
+
+        public TimeControl getTimeControl() {
+            return timeControl;
+        }
+
+        // c 为 0 黑 1 白
+        public long getRemaining(int c) {
+            return remaining[c];
+        }
+
+        public int getPeriods(int c) {
+            return periods[c];
+        }
+
+        public int getMoveCount() {
+            return moveCount;
+        }
+
+        public int getMoveX(int i) {
+            return moves[i * 2];
+        }
+
+        public int getMoveY(int i) {
+            return moves[i * 2 + 1];
+        }
+    }
+
+    private final Path journalPath;
+    private final Path snapshotPath;
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final int capacity;
+    private final int regionSize;
+    private final long syncNanos;
+    private final long snapshotNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition snapshotDone = lock.newCondition();
+    private final CRC32C crc = new CRC32C();
+    private final byte[] body = new byte[MAX_BODY];
+    private final byte[] epochBytes = new byte[8];
+    // 以下字段由 lock 保护
+    private final Map<Integer, GameLog> active = new HashMap<>();
+    private long epoch;
+    private int regionBase;
+    private int writePos;
+    private int flushedPos;
+    // 切换区时旧区尚未刷盘的部分，快照落盘前仍需要它
+    private int tailFrom;
+    private int tailTo;
+    // 已切换区、尚未写入的快照：切换时刻的进行中对局及其纪元
+    private Map<Integer, GameLog> pendingGames;
+    private long pendingEpoch;
+    private long lastSnapshot = System.nanoTime();
+    // 已写入快照文件的最大纪元，由 writeSnapshot 的同步保护
+    private long writtenEpoch = -1;
+    private final Map<Integer, GameLog> recovered;
+    private volatile boolean running;
+    private volatile Thread flusher;
+
+    private GameJournal(Path dir, int capacity, long syncMillis, long snapshotMillis) throws IOException {
+        Files.createDirectories(dir);
+        this.journalPath = dir.resolve("journal.wal");
+        this.snapshotPath = dir.resolve("snapshot.bin");
+        this.capacity = capacity;
+        this.regionSize = capacity / 2;
+        this.syncNanos = syncMillis * 1_000_000L;
+        this.snapshotNanos = snapshotMillis * 1_000_000L;
+        this.channel = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long next = recover();
+        // 恢复结果已写成新纪元的快照，日志从第一区重新开始，与旧文件的大小和布局无关
+        if (channel.size() > capacity) {
+            channel.truncate(capacity);
+        }
+        this.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        map.putInt(regionSize, 0);
+        map.force(regionSize, 4);
+        setEpoch(next);
+        writeRegionHeader(0);
+        map.force(0, HEADER + 2);
+        flushedPos = writePos;
+        Map<Integer, GameLog> copy = copyGames(active);
+        this.recovered = Collections.unmodifiableMap(copy);
+    }
+
+    public static GameJournal open(Path dir, int capacity, long syncMillis, long snapshotMillis) throws IOException {
+        return new GameJournal(dir, capacity, syncMillis, snapshotMillis);
+    }
+
+    // 启动时恢复出的进行中对局，键为房间号
+    public Map<Integer, GameLog> getRecoveredGames() {
+        return recovered;
+    }
+
+    public void recordStart(int roomId, String black, String white) {
+        recordStart(roomId, black, white, GameBoard.DEFAULT_SIZE, RuleSet.FREESTYLE);
+    }
+
+    public void recordStart(int roomId, String black, String white, int boardSize, RuleSet ruleSet) {
+        recordStart(roomId, black, white, boardSize, ruleSet, TimeControl.NONE);
+    }
+
+    public void recordStart(int roomId, String black, String white, int boardSize, RuleSet ruleSet,
+                            TimeControl timeControl) {
+        byte[] blackName = nameBytes(black);
+        byte[] whiteName = nameBytes(white);
+        lock.lock();
+        try {
+            int n = begin(START, roomId);
+            body[n++] = (byte) blackName.length;
+            System.arraycopy(blackName, 0, body, n, blackName.length);
+            n += blackName.length;
+            body[n++] = (byte) whiteName.length;
+            System.arraycopy(whiteName, 0, body, n, whiteName.length);
+            n += whiteName.length;
+            body[n++] = (byte) boardSize;
+            body[n++] = (byte) ruleSet.ordinal();
+            n = putLong(body, n, timeControl.getMainMillis());
+            n = putLong(body, n, timeControl.getIncrementMillis());
+            n = putLong(body, n, timeControl.getPeriodMillis());
+            body[n++] = (byte) timeControl.getPeriods();
+            append(n);
+            active.put(roomId, new GameLog(black, white, boardSize, ruleSet, timeControl));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordMove(int roomId, int x, int y) {
+        lock.lock();
+        try {
+            int n = begin(MOVE, roomId);
+            body[n++] = (byte) x;
+            body[n++] = (byte) y;
+            append(n);
+            GameLog game = active.get(roomId);
+            if (game != null) {
+                game.add(x, y);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 计时对局的落子：同时记录落子方落子（含加秒）后的剩余主时间和读秒次数
+    public void recordMove(int roomId, int x, int y, long remainingMillis, int remainingPeriods) {
+        lock.lock();
+        try {
+            int n = begin(MOVE, roomId);
+            body[n++] = (byte) x;
+            body[n++] = (byte) y;
+            n = putLong(body, n, remainingMillis);
+            body[n++] = (byte) remainingPeriods;
+            append(n);
+            GameLog game = active.get(roomId);
+            if (game != null) {
+                game.add(x, y);
+                game.clock(remainingMillis, remainingPeriods);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void recordEnd(int roomId, int result) {
+        lock.lock();
+        try {
+            int n = begin(END, roomId);
+            body[n++] = (byte) result;
+            append(n);
+            active.remove(roomId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] nameBytes(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return bytes.length <= 255 ? bytes : Arrays.copyOf(bytes, 255);
+    }
+
+    private static int putLong(byte[] b, int at, long value) {
+        for (int i = 7; i >= 0; i--) {
+            b[at++] = (byte) (value >>> (i * 8));
+        }
+        return at;
+    }
+
+    private static long getLong(byte[] b, int at) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (b[at + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private int begin(int type, int roomId) {
+        body[0] = (byte) type;
+        body[1] = (byte) (roomId >>> 24);
+        body[2] = (byte) (roomId >>> 16);
+        body[3] = (byte) (roomId >>> 8);
+        body[4] = (byte) roomId;
+        return 5;
+    }
+
+    // 调用方持有 lock；写入 body[0, length) 作为一条记录，只复制到映射内存，由刷盘线程统一 force。
+    // 当前区写满时切换到另一区；上一次切换的快照还没写完时先等它完成
+    private void append(int length) {
+        int need = 2 + length + 4;
+        if (writePos + need > regionBase + regionSize) {
+            if (pendingGames != null) {
+                awaitPendingSnapshot();
+            }
+            switchRegion();
+            Thread thread = flusher;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+        map.putShort(writePos, (short) length);
+        map.put(writePos + 2, body, 0, length);
+        map.putInt(writePos + 2 + length, checksum(body, 0, length));
+        writePos += need;
+    }
+
+    // 调用方持有 lock。没有刷盘线程时直接在当前线程写快照
+    private void awaitPendingSnapshot() {
+        if (flusher == null) {
+            try {
+                writeSnapshot(pendingEpoch, pendingGames);
+                snapshotWritten(pendingEpoch);
+            } catch (IOException e) {
+                throw new IllegalStateException("对局日志已满且无法写入快照", e);
+            }
+            return;
+        }
+        long remaining = TimeUnit.SECONDS.toNanos(5);
+        try {
+            while (pendingGames != null && remaining > 0) {
+                remaining = snapshotDone.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (pendingGames != null) {
+            throw new IllegalStateException("对局日志已满且无法写入快照");
+        }
+    }
+
+    private int checksum(byte[] data, int offset, int length) {
+        crc.reset();
+        crc.update(epochBytes, 0, 8);
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private void setEpoch(long value) {
+        epoch = value;
+        for (int i = 0; i < 8; i++) {
+            epochBytes[i] = (byte) (value >>> (56 - i * 8));
+        }
+    }
+
+    private void writeRegionHeader(int base) {
+        regionBase = base;
+        map.putInt(base, MAGIC);
+        map.putInt(base + 4, FORMAT);
+        map.putLong(base + 8, epoch);
+        map.putShort(base + HEADER, (short) 0);
+        writePos = base + HEADER;
+    }
+
+    // 调用方持有 lock，且没有待写的快照。复制进行中的对局作为新纪元的快照内容，之后的记录写入另一区；
+    // 只有内存操作，快照由 writePendingSnapshot 在锁外写入
+    private void switchRegion() {
+        pendingGames = copyGames(active);
+        pendingEpoch = epoch + 1;
+        tailFrom = flushedPos;
+        tailTo = writePos;
+        setEpoch(pendingEpoch);
+        writeRegionHeader(regionBase == 0 ? regionSize : 0);
+        // 新区的区头随下一次刷盘一起 force
+        flushedPos = regionBase;
+        lastSnapshot = System.nanoTime();
+    }
+
+    private static Map<Integer, GameLog> copyGames(Map<Integer, GameLog> games) {
+        Map<Integer, GameLog> copy = new HashMap<>();
+        for (Map.Entry<Integer, GameLog> entry : games.entrySet()) {
+            copy.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    // 写入待写的快照并 fsync，期间不持有 lock，追加照常进行
+    private void writePendingSnapshot() {
+        Map<Integer, GameLog> games;
+        long target;
+        lock.lock();
+        try {
+            games = pendingGames;
+            target = pendingEpoch;
+        } finally {
+            lock.unlock();
+        }
+        if (games == null) {
+            return;
+        }
+        try {
+            writeSnapshot(target, games);
+        } catch (IOException e) {
+            // 快照失败时旧区保持不动，下一轮刷盘再试
+            ServerLogger.error("写入对局快照失败：" + e.getMessage());
+            return;
+        }
+        lock.lock();
+        try {
+            snapshotWritten(target);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 调用方持有 lock；快照落盘后旧区不再需要，可以在下次切换时重用
+    private void snapshotWritten(long target) {
+        if (pendingGames == null || pendingEpoch != target) {
+            return;
+        }
+        ServerLogger.info("对局日志已压缩，进行中对局 " + pendingGames.size() + " 局，纪元 " + target);
+        pendingGames = null;
+        tailFrom = 0;
+        tailTo = 0;
+        snapshotDone.signalAll();
+    }
+
+    // 只做文件 I/O，不获取 lock。较旧纪元的快照不会覆盖较新的
+    private synchronized void writeSnapshot(long snapshotEpoch, Map<Integer, GameLog> games) throws IOException {
+        if (snapshotEpoch <= writtenEpoch) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + games.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(FORMAT);
+        out.writeLong(snapshotEpoch);
+        out.writeInt(games.size());
+        for (Map.Entry<Integer, GameLog> entry : games.entrySet()) {
+            GameLog game = entry.getValue();
+            out.writeInt(entry.getKey());
+            byte[] black = nameBytes(game.black);
+            byte[] white = nameBytes(game.white);
+            out.writeByte(black.length);
+            out.write(black);
+            out.writeByte(white.length);
+            out.write(white);
+            out.writeByte(game.boardSize);
+            out.writeByte(game.ruleSet.ordinal());
+            out.writeLong(game.timeControl.getMainMillis());
+            out.writeLong(game.timeControl.getIncrementMillis());
+            out.writeLong(game.timeControl.getPeriodMillis());
+            out.writeByte(game.timeControl.getPeriods());
+            for (int c = 0; c < 2; c++) {
+                out.writeLong(game.remaining[c]);
+                out.writeByte(game.periods[c]);
+            }
+            out.writeShort(game.moveCount);
+            out.write(game.moves, 0, game.moveCount * 2);
+        }
+        byte[] data = bytes.toByteArray();
+        CRC32C snapshotCrc = new CRC32C();
+        snapshotCrc.update(data, 0, data.length);
+
+        Path tmp = snapshotPath.resolveSibling("snapshot.tmp");
+        try (FileChannel file = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(data.length + 4);
+            buffer.put(data).putInt((int) snapshotCrc.getValue()).flip();
+            while (buffer.hasRemaining()) {
+                file.write(buffer);
+            }
+            file.force(true);
+        }
+        Files.move(tmp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writtenEpoch = snapshotEpoch;
+    }
+
+    // 读取快照并重放日志，把结果写成新纪元的快照，返回新纪元。恢复出的对局放入 active
+    private long recover() throws IOException {
+        Map<Integer, GameLog> games = new HashMap<>();
+        long snapshotEpoch = readSnapshot(games);
+        long newest = snapshotEpoch;
+        int replayed = 0;
+        long fileSize = channel.size();
+        if (fileSize >= HEADER + 2) {
+            MappedByteBuffer old = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+            int format = old.getInt(0) == MAGIC ? old.getInt(4) : 0;
+            // 版本 3 之前的文件只有一个区
+            int size = format >= 3 ? (int) (fileSize / 2) : (int) fileSize;
+            int regions = format >= 3 ? 2 : 1;
+            long[] epochs = new long[regions];
+            long first = Long.MAX_VALUE;
+            for (int r = 0; r < regions; r++) {
+                int base = r * size;
+                boolean valid = old.getInt(base) == MAGIC && isKnownFormat(old.getInt(base + 4));
+                epochs[r] = valid ? old.getLong(base + 8) : -1;
+                if (valid) {
+                    first = Math.min(first, epochs[r]);
+                    newest = Math.max(newest, epochs[r]);
+                }
+            }
+            if (snapshotEpoch >= 0) {
+                first = snapshotEpoch;
+            }
+            // 先重放快照之后的区，再重放切换后、快照尚未写完时的下一区
+            for (long e = first; e <= first + 1; e++) {
+                for (int r = 0; r < regions; r++) {
+                    if (epochs[r] == e) {
+                        replayed += replayRegion(old, r * size, size, e, games);
+                    }
+                }
+            }
+        }
+        active.putAll(games);
+        long next = newest + 1;
+        writeSnapshot(next, games);
+        if (!games.isEmpty() || replayed > 0) {
+            ServerLogger.info("对局日志恢复完成：重放 " + replayed + " 条记录，进行中对局 " + games.size() + " 局");
+        }
+        return next;
+    }
+
+    private int replayRegion(ByteBuffer source, int base, int size, long regionEpoch, Map<Integer, GameLog> games) {
+        setEpoch(regionEpoch);
+        int pos = base + HEADER;
+        int end = base + size;
+        int replayed = 0;
+        while (pos + 2 <= end) {
+            int length = source.getShort(pos) & 0xFFFF;
+            if (length < 5 || length > MAX_BODY || pos + 2 + length + 4 > end) {
+                break;
+            }
+            source.get(pos + 2, body, 0, length);
+            if (source.getInt(pos + 2 + length) != checksum(body, 0, length)) {
+                break;
+            }
+            apply(games, length);
+            pos += 2 + length + 4;
+            replayed++;
+        }
+        return replayed;
+    }
+
+    // 返回快照纪元，没有有效快照返回 -1
+    private long readSnapshot(Map<Integer, GameLog> games) throws IOException {
+        if (!Files.exists(snapshotPath)) {
+            return -1;
+        }
+        byte[] data = Files.readAllBytes(snapshotPath);
+        CRC32C snapshotCrc = new CRC32C();
+        snapshotCrc.update(data, 0, Math.max(0, data.length - 4));
+        ByteBuffer in = ByteBuffer.wrap(data);
+        int format = data.length < 24 ? 0 : in.getInt(4);
+        if (data.length < 24 || in.getInt(data.length - 4) != (int) snapshotCrc.getValue()
+                || in.getInt() != SNAPSHOT_MAGIC || !isKnownFormat(in.getInt())) {
+            ServerLogger.warn("对局快照损坏，忽略：" + snapshotPath);
+            return -1;
+        }
+        long snapshotEpoch = in.getLong();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            int roomId = in.getInt();
+            byte[] black = new byte[in.get() & 0xFF];
+            in.get(black);
+            byte[] white = new byte[in.get() & 0xFF];
+            in.get(white);
+            int boardSize = format >= 2 ? in.get() & 0xFF : GameBoard.DEFAULT_SIZE;
+            RuleSet ruleSet = format >= 4 ? ruleSet(in.get()) : RuleSet.FREESTYLE;
+            TimeControl timeControl = format >= 5
+                ? new TimeControl(in.getLong(), in.getLong(), in.getLong(), in.get() & 0xFF) : TimeControl.NONE;
+            GameLog game = new GameLog(new String(black, StandardCharsets.UTF_8), new String(white, StandardCharsets.UTF_8),
+                boardSize, ruleSet, timeControl);
+            if (format >= 5) {
+                for (int c = 0; c < 2; c++) {
+                    game.remaining[c] = in.getLong();
+                    game.periods[c] = in.get() & 0xFF;
+                }
+            }
+            int moves = in.getShort() & 0xFFFF;
+            for (int m = 0; m < moves; m++) {
+                game.add(in.get(), in.get());
+            }
+            games.put(roomId, game);
+        }
+        return snapshotEpoch;
+    }
+
+    private static RuleSet ruleSet(byte ordinal) {
+        RuleSet[] values = RuleSet.values();
+        return ordinal >= 0 && ordinal < values.length ? values[ordinal] : RuleSet.FREESTYLE;
+    }
+
+    private static boolean isKnownFormat(int format) {
+        return format >= 1 && format <= FORMAT;
+    }
+
+    private void apply(Map<Integer, GameLog> games, int length) {
+        int roomId = ((body[1] & 0xFF) << 24) | ((body[2] & 0xFF) << 16) | ((body[3] & 0xFF) << 8) | (body[4] & 0xFF);
+        switch (body[0]) {
+            case START:
+                int blackLength = body[5] & 0xFF;
+                String black = new String(body, 6, blackLength, StandardCharsets.UTF_8);
+                int whiteLength = body[6 + blackLength] & 0xFF;
+                String white = new String(body, 7 + blackLength, whiteLength, StandardCharsets.UTF_8);
+                int sizeAt = 7 + blackLength + whiteLength;
+                int boardSize = sizeAt < length ? body[sizeAt] & 0xFF : GameBoard.DEFAULT_SIZE;
+                RuleSet ruleSet = sizeAt + 1 < length ? ruleSet(body[sizeAt + 1]) : RuleSet.FREESTYLE;
+                int timeAt = sizeAt + 2;
+                TimeControl timeControl = timeAt + TIME_CONTROL_BYTES <= length
+                    ? new TimeControl(getLong(body, timeAt), getLong(body, timeAt + 8), getLong(body, timeAt + 16),
+                        body[timeAt + 24] & 0xFF)
+                    : TimeControl.NONE;
+                games.put(roomId, new GameLog(black, white, boardSize, ruleSet, timeControl));
+                break;
+            case MOVE:
+                GameLog game = games.get(roomId);
+                if (game != null) {
+                    game.add(body[5], body[6]);
+                    if (length >= 7 + 9) {
+                        game.clock(getLong(body, 7), body[15] & 0xFF);
+                    }
+                }
+                break;
+            case END:
+                games.remove(roomId);
+                break;
+            default:
+                break;
+        }
+    }
+
+    // 刷盘一次：把上次以来追加的记录 force 到磁盘；force 在锁外进行，追加不会被磁盘 I/O 阻塞。
+    // 刚切换过区时先 force 旧区的剩余部分，保证新区的记录不会先于它们落盘
+    void sync() {
+        int oldFrom;
+        int oldTo;
+        int from;
+        int to;
+        long syncEpoch;
+        lock.lock();
+        try {
+            oldFrom = tailFrom;
+            oldTo = tailTo;
+            from = flushedPos;
+            to = writePos;
+            syncEpoch = epoch;
+        } finally {
+            lock.unlock();
+        }
+        if (oldTo > oldFrom) {
+            map.force(oldFrom, oldTo - oldFrom);
+        }
+        if (to > from) {
+            map.force(from, to - from);
+        }
+        lock.lock();
+        try {
+            if (tailFrom == oldFrom && tailTo == oldTo) {
+                tailFrom = 0;
+                tailTo = 0;
+            }
+            if (epoch == syncEpoch && to > flushedPos) {
+                flushedPos = to;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 当前区用到一半或距上次快照超过周期时切换区，然后在锁外写快照
+    void compactIfNeeded() {
+        lock.lock();
+        try {
+            int used = writePos - regionBase;
+            boolean half = used > regionSize / 2;
+            boolean due = used > HEADER && System.nanoTime() - lastSnapshot >= snapshotNanos;
+            if (pendingGames == null && (half || due)) {
+                switchRegion();
+            }
+        } finally {
+            lock.unlock();
+        }
+        writePendingSnapshot();
+    }
+
+    // 立即切换区并写出快照
+    void compactNow() {
+        beginCompaction();
+        writePendingSnapshot();
+    }
+
+    // 只切换区，快照留给刷盘线程
+    void beginCompaction() {
+        lock.lock();
+        try {
+            if (pendingGames == null) {
+                switchRegion();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public synchronized void start() {
+        if (flusher != null) {
+            return;
+        }
+        running = true;
+        flusher = new Thread(() -> {
+            while (running) {
+                LockSupport.parkNanos(syncNanos);
+                try {
+                    sync();
+                    compactIfNeeded();
+                } catch (RuntimeException e) {
+                    ServerLogger.error("对局日志刷盘失败：" + e.getMessage());
+                }
+            }
+        }, "wuzi-journal");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public void close() {
+        running = false;
+        Thread thread = flusher;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sync();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            ServerLogger.error("关闭对局日志失败：" + e.getMessage());
+        }
+    }
+}
@@ -1,75 +1,361 @@
 package com.wuzi.server;
 
+import com.wuzi.common.AnsiColor;
+import com.wuzi.common.BinaryProtocol;
+import com.wuzi.common.BoardDelta;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class GameRoom {
     private final int roomId;
     private final AtomicInteger playerCount;
-    private final GameBoard gameBoard;
-    private Player player1;
-    private Player player2;
+    // 棋盘尺寸只能在对局之外修改，修改时整个替换；房间空出后恢复为 15 路
+    private volatile Board gameBoard;
+    private final Spectators spectators;
+    // 只保护成员变化（进入、离开、回收），这些操作来自玩家线程、匹配线程等多个入口。
+    // 使用 ReentrantLock 而不是 synchronized，虚拟线程在锁内阻塞时不会钉住载体线程
+    private final ReentrantLock lock = new ReentrantLock();
+    // 是否已排在 RoomManager 的空房间/等待房间队列中，保证每个房间在每个队列里最多一项
+    final AtomicBoolean inEmptyIndex = new AtomicBoolean();
+    final AtomicBoolean inWaitingIndex = new AtomicBoolean();
+    // 准备、开局、落子、结束等对局状态只在邮箱任务中修改
+    private final RoomMailbox mailbox = new RoomMailbox();
+    // 成员在锁内修改，邮箱任务无锁读取
+    private volatile Player player1;
+    private volatile Player player2;
     private boolean player1Ready;
     private boolean player2Ready;
-    private boolean isGameStarted;
-    private boolean isGameOver;
+    // 房间列表等在邮箱之外读取
+    private volatile boolean isGameStarted;
+    private volatile boolean isGameOver;
     private String currentTurnColor;
+    // 对局规则，只能在对局之外修改；房间空出后恢复为无禁手
+    private volatile RuleSet ruleSet = RuleSet.FREESTYLE;
+    // 计时规则，同样只能在对局之外修改；为 null 时使用服务器默认，房间空出后恢复为 null
+    private volatile TimeControl timeControl;
+    // 本局的棋钟，不计时的对局为 null；超时检查挂在 RoomManager 的时间轮上，触发后回到邮箱中判定
+    private GameClock clock;
+    private TimingWheel.Timeout clockTimeout;
+    // 最近一次被拒绝的落子若是禁手，记录其原因，供调用方提示；只在邮箱中读写
+    private RuleSet.Forbidden rejectedForbidden;
+    // 当前对局已落子数，作为增量更新的序号
+    private int moveSeq;
+    // 本局落子记录，每手 x, y 两个字节，对局结束时存档
+    private byte[] moveLog = new byte[64];
+    // 最近一局存档的编号，未存档为 0
+    private volatile long lastGameId;
+    // 人数变化时通知 RoomManager 维护空闲索引，单独创建的房间为 null
+    private final RoomManager manager;
+    private volatile long emptySince;
+    private boolean retired;
+    // 从对局日志恢复的对局为断线的双方保留座位，按名字重新连接后入座；由 lock 保护
+    private String reservedBlack;
+    private String reservedWhite;
+    private long reservedSince;
 
     public GameRoom(int roomId) {
+        this(roomId, null);
+    }
+
+    GameRoom(int roomId, RoomManager manager) {
         this.roomId = roomId;
+        this.manager = manager;
+        this.emptySince = System.currentTimeMillis();
         this.playerCount = new AtomicInteger(0);
         this.gameBoard = new GameBoard();
+        this.spectators = new Spectators(this);
         this.isGameStarted = false;
         this.isGameOver = false;
         this.player1Ready = false;
         this.player2Ready = false;
     }
 
-    public synchronized boolean addPlayer(Player player) {
-        if (playerCount.get() >= 2) {
-            return false;
+    public boolean addPlayer(Player player) {
+        lock.lock();
+        try {
+            if (retired || playerCount.get() >= 2 || hasReservation()) {
+                return false;
+            }
+            if (player1 == null) {
+                player1 = player;
+                player1Ready = false;
+            } else {
+                player2 = player;
+                player2Ready = false;
+            }
+            playerCount.incrementAndGet();
+            notifyOccupancy();
+            return true;
+        } finally {
+            lock.unlock();
         }
-        if (player1 == null) {
-            player1 = player;
-            player1Ready = false;
-        } else {
-            player2 = player;
-            player2Ready = false;
+    }
+
+    public void removePlayer(Player player) {
+        lock.lock();
+        try {
+            if (player == player1) {
+                player1 = null;
+                player1Ready = false;
+            } else if (player == player2) {
+                player2 = null;
+                player2Ready = false;
+            } else {
+                return;
+            }
+            if (playerCount.decrementAndGet() == 0) {
+                emptySince = System.currentTimeMillis();
+                ruleSet = RuleSet.FREESTYLE;
+                timeControl = null;
+                if (gameBoard.getSize() != GameBoard.DEFAULT_SIZE) {
+                    gameBoard = new GameBoard();
+                }
+            }
+            if (isGameStarted && !isGameOver) {
+                journalEnd(GameJournal.RESULT_ABORTED);
+            }
+            isGameStarted = false;
+            stopClock();
+            clearReservations();
+            notifyOccupancy();
+        } finally {
+            lock.unlock();
         }
-        playerCount.incrementAndGet();
-        return true;
     }
 
-    public synchronized void removePlayer(Player player) {
-        if (player == player1) {
-            player1 = null;
-            player1Ready = false;
-        } else if (player == player2) {
-            player2 = null;
-            player2Ready = false;
+    // 在 lock 内调用，保证索引更新顺序与人数变化一致
+    private void notifyOccupancy() {
+        if (manager != null) {
+            manager.onOccupancyChanged(this);
         }
-        playerCount.decrementAndGet();
-        isGameStarted = false;
     }
 
-    public synchronized boolean setPlayerReady(Player player) {
+    void notifyStateChanged() {
+        if (manager != null) {
+            manager.onRoomStateChanged(this);
+        }
+    }
+
+    private void logMove(int index, int x, int y) {
+        if (index * 2 + 2 > moveLog.length) {
+            moveLog = Arrays.copyOf(moveLog, moveLog.length * 2);
+        }
+        moveLog[index * 2] = (byte) x;
+        moveLog[index * 2 + 1] = (byte) y;
+    }
+
+    private void archive(int result) {
+        GameArchive archive = manager != null ? manager.getArchive() : null;
+        Player p1 = player1;
+        Player p2 = player2;
+        // 无边界棋盘的坐标超出存档格式的范围，不存档；一手未下就结束的对局（如开局后黑方超时）没有可回放的内容
+        if (archive == null || p1 == null || p2 == null || isUnbounded() || moveSeq == 0) {
+            return;
+        }
+        Player black = "black".equals(p1.getColor()) ? p1 : p2;
+        Player white = black == p1 ? p2 : p1;
+        lastGameId = archive.save(black.getName(), white.getName(), result, gameBoard.getSize(), moveLog, moveSeq);
+    }
+
+    public long getLastGameId() {
+        return lastGameId;
+    }
+
+    // 无边界棋盘的对局不记录日志
+    private GameJournal journal() {
+        return manager != null && !isUnbounded() ? manager.getJournal() : null;
+    }
+
+    private void journalEnd(int result) {
+        GameJournal journal = journal();
+        if (journal != null) {
+            journal.recordEnd(roomId, result);
+        }
+    }
+
+    // 启动时按日志恢复一局进行中的对局，双方座位保留给同名玩家；已分出胜负的对局不恢复
+    boolean restoreGame(GameJournal.GameLog game) {
+        lock.lock();
+        try {
+            if (game.getBoardSize() < 5 || game.getBoardSize() > GameBoard.MAX_SIZE) {
+                return false;
+            }
+            if (gameBoard.getSize() != game.getBoardSize()) {
+                gameBoard = new GameBoard(game.getBoardSize());
+            }
+            gameBoard.reset();
+            RuleSet rules = game.getRuleSet();
+            String color = "black";
+            int x = -1;
+            int y = -1;
+            for (int i = 0; i < game.getMoveCount(); i++) {
+                x = game.getMoveX(i);
+                y = game.getMoveY(i);
+                if (!gameBoard.makeMove(x, y, color)) {
+                    gameBoard.reset();
+                    return false;
+                }
+                logMove(i, x, y);
+                color = color.equals("black") ? "white" : "black";
+            }
+            if (x >= 0 && rules.isWin(gameBoard, x, y)) {
+                gameBoard.reset();
+                return false;
+            }
+            ruleSet = rules;
+            // 计时对局恢复双方的剩余时间；双方都回到座位后才继续计时
+            TimeControl control = game.getTimeControl();
+            if (control.isTimed()) {
+                timeControl = control;
+                clock = new GameClock(control, new long[]{game.getRemaining(0), game.getRemaining(1)},
+                    new int[]{game.getPeriods(0), game.getPeriods(1)}, game.getMoveCount() % 2, clockNow());
+            }
+            moveSeq = game.getMoveCount();
+            currentTurnColor = color;
+            isGameStarted = true;
+            isGameOver = false;
+            reservedBlack = game.getBlack();
+            reservedWhite = game.getWhite();
+            reservedSince = System.currentTimeMillis();
+            notifyStateChanged();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 同名玩家重新连接时回到保留的座位，黑方坐 player1，白方坐 player2
+    boolean reclaimSeat(Player player) {
+        lock.lock();
+        try {
+            if (player.getName().equals(reservedBlack) && player1 == null) {
+                player1 = player;
+                player.setColor("black");
+                reservedBlack = null;
+            } else if (player.getName().equals(reservedWhite) && player2 == null) {
+                player2 = player;
+                player.setColor("white");
+                reservedWhite = null;
+            } else {
+                return false;
+            }
+            playerCount.incrementAndGet();
+            if (!hasReservation() && clock != null) {
+                execute(this::resumeClock);
+            }
+            notifyOccupancy();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 在房间邮箱中调用：保留座位超时仍无人认领时取消对局，房间重新开放
+    void expireReservation(long now, long timeoutMillis) {
+        Player present;
+        lock.lock();
+        try {
+            if (!hasReservation() || now - reservedSince < timeoutMillis) {
+                return;
+            }
+            clearReservations();
+            if (isGameStarted && !isGameOver) {
+                journalEnd(GameJournal.RESULT_ABORTED);
+            }
+            isGameStarted = false;
+            stopClock();
+            present = player1 != null ? player1 : player2;
+            notifyOccupancy();
+        } finally {
+            lock.unlock();
+        }
+        if (present != null) {
+            present.sendMessage(AnsiColor.info("对手未在时限内重新连接，对局已取消"));
+        }
+    }
+
+    // 调用方持有 lock
+    private boolean hasReservation() {
+        return reservedBlack != null || reservedWhite != null;
+    }
+
+    // 调用方持有 lock
+    private void clearReservations() {
+        if (manager != null) {
+            if (reservedBlack != null) {
+                manager.dropReservation(reservedBlack, this);
+            }
+            if (reservedWhite != null) {
+                manager.dropReservation(reservedWhite, this);
+            }
+        }
+        reservedBlack = null;
+        reservedWhite = null;
+    }
+
+    // 房间仍然无人且无观战者时标记为已回收，之后不再接受玩家
+    boolean retireIfIdle() {
+        lock.lock();
+        try {
+            if (playerCount.get() != 0 || !spectators.isEmpty() || hasReservation()) {
+                return false;
+            }
+            retired = true;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isRetired() {
+        return retired;
+    }
+
+    // 房间此刻能否再加入玩家：未回收、没有保留座位且未满
+    boolean isOpen() {
+        lock.lock();
+        try {
+            return !retired && playerCount.get() < 2 && !hasReservation();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getEmptySince() {
+        return emptySince;
+    }
+
+    // 把一条房间命令投递到房间邮箱，与同一房间的其他命令串行执行
+    public void execute(Runnable command) {
+        mailbox.execute(command);
+    }
+
+    public boolean isMember(Player player) {
+        return player != null && (player == player1 || player == player2);
+    }
+
+    public boolean setPlayerReady(Player player) {
         if (player == player1) {
             player1Ready = true;
         } else if (player == player2) {
             player2Ready = true;
         }
-        
+
         if (player1Ready && player2Ready) {
             return startGame();
         }
         return false;
     }
 
-    private synchronized boolean startGame() {
+    private boolean startGame() {
         if (playerCount.get() == 2 && (!isGameStarted || isGameOver)) {
-            if (isGameOver) {
-                gameBoard.reset();
-                isGameOver = false;
-            }
+            // 上一局可能因玩家离开而中断，开局总是清空棋盘
+            gameBoard.reset();
+            moveSeq = 0;
+            lastGameId = 0;
+            isGameOver = false;
             isGameStarted = true;
             player1Ready = false;
             player2Ready = false;
@@ -78,37 +364,253 @@ public class GameRoom {
             player1.setColor(player1IsBlack ? "black" : "white");
             player2.setColor(player1IsBlack ? "white" : "black");
             currentTurnColor = "black";
+            stopClock();
+            touch(player1);
+            touch(player2);
+            TimeControl control = getTimeControl();
+            if (control.isTimed()) {
+                clock = new GameClock(control, clockNow());
+                scheduleClock();
+            }
+            GameJournal journal = journal();
+            if (journal != null) {
+                Player black = player1.getColor().equals("black") ? player1 : player2;
+                Player white = black == player1 ? player2 : player1;
+                journal.recordStart(roomId, black.getName(), white.getName(), gameBoard.getSize(), ruleSet, control);
+            }
+            notifyStateChanged();
             return true;
         }
         return false;
     }
 
     public boolean makeMove(int x, int y, String color) {
+        rejectedForbidden = null;
         if (!isGameStarted || isGameOver) {
             return false;
         }
         if (!color.equals(currentTurnColor)) {
             return false;
         }
+        rejectedForbidden = ruleSet.checkForbidden(gameBoard, x, y, color);
+        if (rejectedForbidden != null) {
+            return false;
+        }
         if (gameBoard.makeMove(x, y, color)) {
+            logMove(moveSeq, x, y);
+            moveSeq++;
+            int mover = currentTurnColor.equals("black") ? 0 : 1;
             currentTurnColor = currentTurnColor.equals("black") ? "white" : "black";
+            long now = clockNow();
+            if (clock != null) {
+                clock.move(now);
+                scheduleClock();
+            }
+            GameJournal journal = journal();
+            if (journal != null) {
+                if (clock != null) {
+                    journal.recordMove(roomId, x, y, clock.getRemaining(mover, now), clock.getPeriods(mover));
+                } else {
+                    journal.recordMove(roomId, x, y);
+                }
+            }
+            touch(getPlayerByColor(currentTurnColor));
             return true;
         }
         return false;
     }
 
+    // 开局、轮到某方、对局结束时重新计算空闲时间，等待对手落子的时间不算空闲
+    private void touch(Player player) {
+        if (manager != null && player != null) {
+            player.touch(manager.getTimers().now());
+        }
+    }
+
+    // 调用方在邮箱中：为当前行棋方的超时时刻安排一次检查，替换之前的检查
+    private void scheduleClock() {
+        TimingWheel timers = manager != null ? manager.getTimers() : null;
+        if (timers == null) {
+            return;
+        }
+        if (clockTimeout == null) {
+            clockTimeout = timers.newTimeout(() -> execute(this::checkClock));
+        }
+        timers.schedule(clockTimeout, clock.deadline() - clockNow());
+    }
+
+    // 棋钟使用的单调时钟（毫秒）。时间轮的 now() 只精确到一个刻度，不用于计时
+    private static long clockNow() {
+        return System.nanoTime() / 1_000_000L;
+    }
+
+    // 在邮箱中执行：恢复的计时对局双方都已回到座位，行棋方从现在开始计时
+    private void resumeClock() {
+        if (clock == null || !isGameStarted || isGameOver) {
+            return;
+        }
+        clock.resume(clockNow());
+        scheduleClock();
+    }
+
+    private void stopClock() {
+        if (clockTimeout != null) {
+            manager.getTimers().cancel(clockTimeout);
+        }
+        clock = null;
+    }
+
+    // 时间轮触发后在邮箱中执行：时间轮按刻度取整，真正超时才判负，否则重新安排
+    private void checkClock() {
+        if (clock == null || !isGameStarted || isGameOver) {
+            return;
+        }
+        if (!isOutOfTime()) {
+            scheduleClock();
+            return;
+        }
+        Player loser = getPlayerByColor(currentTurnColor);
+        if (loser != null) {
+            ClientHandler.timeOut(this, loser, " 超时");
+        }
+    }
+
+    // 当前行棋方是否已经用完时间
+    public boolean isOutOfTime() {
+        return clock != null && clock.isOutOfTime(clockNow());
+    }
+
+    public boolean isTimed() {
+        return clock != null;
+    }
+
+    // 双方剩余时间，不计时的对局返回 null
+    public String describeClock() {
+        return clock != null ? clock.describe(clockNow()) : null;
+    }
+
+    public TimeControl getTimeControl() {
+        TimeControl control = timeControl;
+        if (control != null) {
+            return control;
+        }
+        return manager != null ? manager.getDefaultTimeControl() : TimeControl.NONE;
+    }
+
+    // 对局进行中不能修改计时规则
+    public boolean setTimeControl(TimeControl timeControl) {
+        if (isGameStarted && !isGameOver) {
+            return false;
+        }
+        this.timeControl = timeControl;
+        return true;
+    }
+
+    private Player getPlayerByColor(String color) {
+        Player p1 = player1;
+        Player p2 = player2;
+        if (p1 != null && color.equals(p1.getColor())) {
+            return p1;
+        }
+        return p2 != null && color.equals(p2.getColor()) ? p2 : null;
+    }
+
     public String getCurrentTurnColor() {
         return currentTurnColor;
     }
 
     public boolean checkWin(int x, int y) {
-        return gameBoard.checkWin(x, y);
+        return ruleSet.isWin(gameBoard, x, y);
+    }
+
+    // color 方在 (x, y) 落子是否为当前规则下的禁手，不是返回 null
+    public RuleSet.Forbidden checkForbidden(int x, int y, String color) {
+        return ruleSet.checkForbidden(gameBoard, x, y, color);
+    }
+
+    // 上一次 makeMove 因禁手返回 false 时为禁手类型，否则为 null
+    public RuleSet.Forbidden getRejectedForbidden() {
+        return rejectedForbidden;
+    }
+
+    public RuleSet getRuleSet() {
+        return ruleSet;
+    }
+
+    // 对局进行中不能修改规则
+    public boolean setRuleSet(RuleSet ruleSet) {
+        if (isGameStarted && !isGameOver) {
+            return false;
+        }
+        this.ruleSet = ruleSet;
+        return true;
+    }
+
+    // 0 表示无边界
+    public int getBoardSize() {
+        return gameBoard.getSize();
+    }
+
+    public boolean isUnbounded() {
+        return gameBoard.getSize() == 0;
+    }
+
+    // 对局进行中不能修改尺寸；size 为 0 时使用无边界的稀疏棋盘
+    public boolean setBoardSize(int size) {
+        if (isGameStarted && !isGameOver) {
+            return false;
+        }
+        if (size != gameBoard.getSize()) {
+            gameBoard = size == 0 ? new SparseBoard() : new GameBoard(size);
+        }
+        return true;
     }
 
     public String getBoardString() {
         return gameBoard.toString();
     }
 
+    // 以换行结尾的完整棋盘，同一局面下所有接收者共享同一个数组
+    public byte[] getBoardBytes() {
+        return gameBoard.renderBytes();
+    }
+
+    // 无边界棋盘没有完整快照，增量与二进制客户端也收到文本视口
+    public String getBoardSnapshot() {
+        if (isUnbounded()) {
+            return gameBoard.toString();
+        }
+        return BoardDelta.board(moveSeq, gameBoard.getLastMoveX(), gameBoard.getLastMoveY(), dense().toSnapshot());
+    }
+
+    // 按行排列的格子状态（0 空 1 黑 2 白）的副本
+    public byte[] getBoardCells() {
+        return dense().toCells();
+    }
+
+    public byte[] getBoardFrame() {
+        if (isUnbounded()) {
+            return BinaryProtocol.text(gameBoard.toString());
+        }
+        return BinaryProtocol.board(moveSeq, gameBoard.getLastMoveX(), gameBoard.getLastMoveY(), dense().toCells());
+    }
+
+    private GameBoard dense() {
+        Board board = gameBoard;
+        if (!(board instanceof GameBoard)) {
+            throw new IllegalStateException("无边界棋盘没有完整的格子数组");
+        }
+        return (GameBoard) board;
+    }
+
+    public int getMoveSeq() {
+        return moveSeq;
+    }
+
+    public Spectators getSpectators() {
+        return spectators;
+    }
+
     public int getRoomId() {
         return roomId;
     }
@@ -126,7 +628,32 @@ public class GameRoom {
     }
 
     public void setGameOver(boolean gameOver) {
+        if (gameOver && !isGameOver && isGameStarted) {
+            // 落子后已轮到对方，胜方是刚落子的一方
+            int result = "black".equals(currentTurnColor) ? GameJournal.RESULT_WHITE : GameJournal.RESULT_BLACK;
+            journalEnd(result);
+            archive(result);
+            stopClock();
+            touch(player1);
+            touch(player2);
+        }
         isGameOver = gameOver;
+        notifyStateChanged();
+    }
+
+    // 在房间邮箱中调用：loserColor 方超时或长时间不落子，判负结束对局
+    public void forfeit(String loserColor) {
+        if (!isGameStarted || isGameOver) {
+            return;
+        }
+        int result = "black".equals(loserColor) ? GameJournal.RESULT_WHITE : GameJournal.RESULT_BLACK;
+        journalEnd(result);
+        archive(result);
+        stopClock();
+        touch(player1);
+        touch(player2);
+        isGameOver = true;
+        notifyStateChanged();
     }
 
     public Player getPlayer1() {
@@ -1,30 +1,152 @@
 package com.wuzi.server;
 
+import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.file.Paths;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 public class GameServer {
-    private static final int PORT = 8888;
+    private final ServerConfig config;
     private final RoomManager roomManager;
-    private final ExecutorService executorService;
+    private final AdmissionControl admission;
 
     public GameServer() {
-        this.roomManager = new RoomManager();
-        this.executorService = Executors.newCachedThreadPool();
+        this(ServerConfig.fromSystemProperties());
+    }
+
+    public GameServer(ServerConfig config) {
+        this.config = config;
+        try {
+            ServerLogger.configure(config);
+        } catch (IOException e) {
+            ServerLogger.error("日志配置失败，继续使用控制台输出：" + e.getMessage());
+        }
+        this.roomManager = new RoomManager(config.getWarmRooms(), config.getMaxRooms(),
+                config.getRoomIdleSeconds() * 1000L);
+        openJournal();
+        openArchive();
+        this.roomManager.startReclaimer();
+        this.roomManager.getMatchmaker().start(config.getMatchTickMillis());
+        this.roomManager.setBotThreads(config.getBotThreads());
+        TimeControl clock = TimeControl.parse(config.getClock());
+        if (clock == null) {
+            ServerLogger.warn("无法识别的默认计时 " + config.getClock() + "，对局不计时");
+        } else {
+            this.roomManager.setDefaultTimeControl(clock);
+        }
+        this.roomManager.setIdleTimeouts(config.getLobbyIdleSeconds() * 1000L, config.getSeatIdleSeconds() * 1000L);
+        this.roomManager.getTimers().start();
+        OutboundQueue.Policy policy;
+        try {
+            policy = OutboundQueue.Policy.valueOf(config.getOutboundPolicy().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            ServerLogger.warn("无法识别的发送队列策略 " + config.getOutboundPolicy() + "，使用 coalesce");
+            policy = OutboundQueue.Policy.COALESCE;
+        }
+        OutboundQueue.configure(config.getOutboundCapacity(), config.getOutboundDisconnect(), policy);
+        this.admission = new AdmissionControl(config.getMaxConnections());
+        RateLimiter.configure(config.getLobbyRate(), config.getLobbyBurst(), config.getGameRate(), config.getGameBurst());
+        Metrics.bind(roomManager, admission);
+        startMetrics();
+    }
+
+    // 指标端点启动失败不影响对局服务，stats 命令仍然可用
+    private void startMetrics() {
+        if (config.getMetricsPort() <= 0) {
+            return;
+        }
+        try {
+            MetricsServer metrics = MetricsServer.start(config.getMetricsPort());
+            ServerLogger.info("运行指标端点：http://127.0.0.1:" + metrics.getPort() + "/metrics");
+        } catch (IOException e) {
+            ServerLogger.error("启动指标端点失败：" + e.getMessage());
+        }
+    }
+
+    // 打开对局日志并恢复上次未完成的对局；失败时不影响服务器启动，只是不再持久化
+    private void openJournal() {
+        if (config.getJournalDir() == null) {
+            return;
+        }
+        try {
+            GameJournal journal = GameJournal.open(Paths.get(config.getJournalDir()),
+                config.getJournalSizeMb() * 1024 * 1024, config.getJournalSyncMillis(),
+                config.getJournalSnapshotSeconds() * 1000L);
+            roomManager.restore(journal);
+            roomManager.setJournal(journal);
+            journal.start();
+            Runtime.getRuntime().addShutdownHook(new Thread(journal::close, "wuzi-journal-shutdown"));
+        } catch (IOException e) {
+            ServerLogger.error("打开对局日志失败，本次运行不记录对局：" + e.getMessage());
+        }
+    }
+
+    private void openArchive() {
+        if (config.getArchiveDir() == null) {
+            return;
+        }
+        try {
+            GameArchive archive = GameArchive.open(Paths.get(config.getArchiveDir()), config.getArchiveCacheSize());
+            roomManager.setArchive(archive);
+            Runtime.getRuntime().addShutdownHook(new Thread(archive::close, "wuzi-archive-shutdown"));
+            ServerLogger.info("对局存档已打开，共 " + archive.getGameCount() + " 局");
+        } catch (IOException e) {
+            ServerLogger.error("打开对局存档失败，本次运行不存档：" + e.getMessage());
+        }
     }
 
     public void start() {
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            ServerLogger.success("五子棋服务器启动，监听端口：" + PORT);
+        switch (config.getMode()) {
+            case NIO:
+                startNio();
+                break;
+            case VIRTUAL:
+                ExecutorService virtualExecutor = newVirtualThreadExecutor();
+                if (virtualExecutor == null) {
+                    ServerLogger.warn("当前 JDK 不支持虚拟线程，回退到阻塞模式");
+                    startBlocking(Executors.newCachedThreadPool(), "阻塞");
+                } else {
+                    startBlocking(virtualExecutor, "虚拟线程");
+                }
+                break;
+            default:
+                startBlocking(Executors.newCachedThreadPool(), "阻塞");
+        }
+    }
+
+    // 虚拟线程 API 在 JDK 21 才有，通过反射获取，使代码仍可按 Java 17 编译和运行
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private void startBlocking(ExecutorService executorService, String modeName) {
+        try (ServerSocket serverSocket = new ServerSocket(config.getPort())) {
+            ServerLogger.success("五子棋服务器启动 (" + modeName + ")，监听端口：" + config.getPort());
             
             while (true) {
+                // 连接数已满时暂停 accept，会话线程数也随之受限
+                boolean admitted = admission.awaitSlot();
                 Socket clientSocket = serverSocket.accept();
+                if (!admitted && !admission.tryAcquire()) {
+                    admission.reject(clientSocket);
+                    continue;
+                }
                 ServerLogger.info("新客户端连接：" + clientSocket.getInetAddress());
                 
                 ClientHandler clientHandler = new ClientHandler(clientSocket, roomManager);
-                executorService.execute(clientHandler);
+                executorService.execute(() -> {
+                    try {
+                        clientHandler.run();
+                    } finally {
+                        admission.release();
+                    }
+                });
             }
         } catch (Exception e) {
             ServerLogger.error("服务器启动失败：" + e.getMessage());
@@ -32,7 +154,21 @@ public class GameServer {
         }
     }
 
+    private void startNio() {
+        NioServer server = new NioServer(config, roomManager, admission);
+        try {
+            server.bind();
+            ServerLogger.success("五子棋服务器启动 (NIO, " + config.getEventLoops() + " 个事件循环)，监听端口：" + server.getPort());
+            server.serve();
+        } catch (Exception e) {
+            ServerLogger.error("服务器启动失败：" + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            server.close();
+        }
+    }
+
     public static void main(String[] args) {
         new GameServer().start();
     }
-} 
\ No newline at end of file
+}
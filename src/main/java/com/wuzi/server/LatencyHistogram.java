@@ -0,0 +1,80 @@
+package com.wuzi.server;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// 无锁的对数-线性直方图（纳秒）：小于 8 的值各占一格，之后每个 2 的幂区间均分 8 格，相对误差不超过 12.5%。
+// 每格是一个 LongAdder，多线程同时记录时自动分散到不同的计数单元；记录只做一次下标计算和一次累加，不分配内存
+public final class LatencyHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB = 1 << SUB_BITS;
+    // 最高到 2^40 纳秒（约 18 分钟），更大的值计入最后一格
+    private static final int MAX_EXPONENT = 40;
+    public static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets[indexOf(value)].increment();
+        sum.add(value);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB - 1);
+        return (exponent - SUB_BITS + 1) * SUB + sub;
+    }
+
+    // 第 index 格的上界（不含）
+    static long upperBound(int index) {
+        if (index < SUB) {
+            return index + 1;
+        }
+        int exponent = index / SUB + SUB_BITS - 1;
+        int sub = index % SUB;
+        return (long) (SUB + sub + 1) << (exponent - SUB_BITS);
+    }
+
+    // 把各格的计数复制到 counts（长度至少 BUCKETS），返回总数
+    public long snapshot(long[] counts) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        return total;
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    // 由快照估算分位数（取所在格的上界），没有数据时返回 0
+    public static long percentile(long[] counts, long total, double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+}
@@ -0,0 +1,226 @@
+package com.wuzi.server;
+
+// 单条线上的棋形查表。以落子点为中心取左右各 5 格，每格 0 空 / 1 己方 / 2 对方或棋盘外，
+// 中心固定为己方，其余 10 格组成一个三进制下标（3^10 = 59049 项），启动时一次性算好每种排列的棋形，
+// 判断胜负和禁手时每个方向只需一次查表；下标由各 Board 实现自行拼出
+final class LinePatterns {
+    static final int RADIUS = 5;
+    static final int WINDOW = RADIUS * 2 + 1;
+    static final int SIZE = 59049;
+
+    // 恰好五连（经过中心）
+    static final int FIVE = 1;
+    // 六连及以上
+    static final int OVERLINE = 1 << 1;
+    // 再下一子即成恰好五连的冲四数（0-2），活四算一个
+    static final int FOUR_SHIFT = 2;
+    static final int FOUR_MASK = 3 << FOUR_SHIFT;
+    // 再下一子即成活四的活三（该方向没有四时才标记）
+    static final int THREE = 1 << 4;
+    // 活三的成活四点，第 i 位对应偏移 i - RADIUS
+    static final int EXTENSION_SHIFT = 8;
+    // 四个方向：行、列、主对角线、副对角线，与 Board.linePattern 的 dir 对应
+    static final int[] DX = {0, 1, 1, 1};
+    static final int[] DY = {1, 0, 1, -1};
+    // 判断活三真假时递归检查成活四点是否为禁手的最大层数
+    private static final int FORBIDDEN_DEPTH = 4;
+
+    private static final int[] TABLE = new int[SIZE];
+    // 窗口中各格在下标里的权重，中心格为 0
+    static final int[] WEIGHTS = new int[WINDOW];
+
+    static {
+        for (int i = 0, w = 1; i < WINDOW; i++) {
+            if (i != RADIUS) {
+                WEIGHTS[i] = w;
+                w *= 3;
+            }
+        }
+        int[] cells = new int[WINDOW];
+        for (int index = 0; index < SIZE; index++) {
+            int rest = index;
+            for (int i = 0; i < WINDOW; i++) {
+                if (i == RADIUS) {
+                    cells[i] = 1;
+                    continue;
+                }
+                cells[i] = rest % 3;
+                rest /= 3;
+            }
+            TABLE[index] = classify(cells);
+        }
+    }
+
+    private LinePatterns() {
+    }
+
+    static int lookup(int index) {
+        return TABLE[index];
+    }
+
+    static int fours(int pattern) {
+        return (pattern & FOUR_MASK) >>> FOUR_SHIFT;
+    }
+
+    // (x, y) 处的棋子是否在某个方向上恰好五连（不含长连）
+    static boolean hasExactFive(Board board, int x, int y) {
+        int piece = board.getCell(x, y);
+        if (piece == 0) {
+            return false;
+        }
+        for (int dir = 0; dir < 4; dir++) {
+            if ((board.linePattern(piece - 1, x, y, dir) & FIVE) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 连珠规则下黑方在空格 (x, y) 落子是否为禁手，不是禁手返回 null；成五优先于一切禁手
+    static RuleSet.Forbidden renjuForbidden(Board board, int x, int y) {
+        return forbidden(board, x, y, FORBIDDEN_DEPTH);
+    }
+
+    private static RuleSet.Forbidden forbidden(Board board, int x, int y, int depth) {
+        if (!board.isInside(x, y) || board.getCell(x, y) != 0) {
+            return null;
+        }
+        board.place(x, y, 0);
+        try {
+            boolean overline = false;
+            int fours = 0;
+            int threes = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                int pattern = board.linePattern(0, x, y, dir);
+                if ((pattern & FIVE) != 0) {
+                    return null;
+                }
+                overline |= (pattern & OVERLINE) != 0;
+                fours += fours(pattern);
+                if ((pattern & THREE) != 0) {
+                    threes++;
+                }
+            }
+            if (overline) {
+                return RuleSet.Forbidden.OVERLINE;
+            }
+            if (fours >= 2) {
+                return RuleSet.Forbidden.DOUBLE_FOUR;
+            }
+            if (threes < 2) {
+                return null;
+            }
+            // 只有可能构成三三时才逐个确认活三的真假，这是唯一需要递归的情况
+            int realThrees = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                int pattern = board.linePattern(0, x, y, dir);
+                if ((pattern & THREE) != 0 && isRealThree(board, x, y, dir, pattern, depth)) {
+                    realThrees++;
+                }
+            }
+            return realThrees >= 2 ? RuleSet.Forbidden.DOUBLE_THREE : null;
+        } finally {
+            board.remove(x, y, 0);
+        }
+    }
+
+    // 活三至少有一个成活四点本身不是禁手，才是真活三
+    private static boolean isRealThree(Board board, int x, int y, int dir, int pattern, int depth) {
+        if (depth == 0) {
+            return true;
+        }
+        int extensions = pattern >>> EXTENSION_SHIFT;
+        for (int i = 0; i < WINDOW; i++) {
+            if ((extensions >>> i & 1) == 0) {
+                continue;
+            }
+            int offset = i - RADIUS;
+            if (forbidden(board, x + DX[dir] * offset, y + DY[dir] * offset, depth - 1) == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int classify(int[] cells) {
+        int run = runThroughCenter(cells);
+        if (run >= 6) {
+            return OVERLINE;
+        }
+        if (run == 5) {
+            return FIVE;
+        }
+        int fours = fourCount(cells);
+        if (fours > 0) {
+            return Math.min(fours, 2) << FOUR_SHIFT;
+        }
+        int extensions = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            if (cells[i] != 0) {
+                continue;
+            }
+            cells[i] = 1;
+            if (isStraightFour(cells)) {
+                extensions |= 1 << i;
+            }
+            cells[i] = 0;
+        }
+        return extensions == 0 ? 0 : THREE | (extensions << EXTENSION_SHIFT);
+    }
+
+    private static int runThroughCenter(int[] cells) {
+        int run = 1;
+        for (int i = RADIUS - 1; i >= 0 && cells[i] == 1; i--) {
+            run++;
+        }
+        for (int i = RADIUS + 1; i < WINDOW && cells[i] == 1; i++) {
+            run++;
+        }
+        return run;
+    }
+
+    // 成五点：下在该空格后经过中心恰好五连；两个成五点相隔 5 格（中间是连续四子）时是同一个活四
+    private static int fourCount(int[] cells) {
+        int count = 0;
+        int first = -1;
+        for (int i = 0; i < WINDOW; i++) {
+            if (cells[i] != 0) {
+                continue;
+            }
+            cells[i] = 1;
+            boolean five = runThroughCenter(cells) == 5;
+            cells[i] = 0;
+            if (five) {
+                if (count == 1 && i - first == 5) {
+                    continue;
+                }
+                if (count == 0) {
+                    first = i;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean isStraightFour(int[] cells) {
+        int first = -1;
+        for (int i = 0; i < WINDOW; i++) {
+            if (cells[i] != 0) {
+                continue;
+            }
+            cells[i] = 1;
+            boolean five = runThroughCenter(cells) == 5;
+            cells[i] = 0;
+            if (five) {
+                if (first >= 0 && i - first == 5) {
+                    return true;
+                }
+                if (first < 0) {
+                    first = i;
+                }
+            }
+        }
+        return false;
+    }
+}
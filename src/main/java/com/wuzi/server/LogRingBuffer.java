@@ -0,0 +1,74 @@
+package com.wuzi.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// 有界无锁环形缓冲区：多个业务线程写入，单个日志线程读取
+// 每个槽位带一个序号：序号 == 写位置 表示可写，== 写位置 + 1 表示已发布待读取
+// 槽位中的条目对象预先分配并复用，写入日志不产生额外对象
+public class LogRingBuffer {
+    public static class Entry {
+        int level;
+        long timeMillis;
+        String message;
+    }
+
+    private final int mask;
+    private final Entry[] entries;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // 只由消费者线程访问
+    private long head;
+
+    public LogRingBuffer(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("容量必须是 2 的幂：" + capacity);
+        }
+        this.mask = capacity - 1;
+        this.entries = new Entry[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+    }
+
+    // 缓冲区已满时返回 false，不会阻塞
+    public boolean offer(int level, long timeMillis, String message) {
+        long pos = tail.get();
+        int index;
+        while (true) {
+            index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = tail.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = tail.get();
+            }
+        }
+        Entry entry = entries[index];
+        entry.level = level;
+        entry.timeMillis = timeMillis;
+        entry.message = message;
+        sequences.lazySet(index, pos + 1);
+        return true;
+    }
+
+    // 消费者调用：返回下一条已发布的条目，没有则返回 null；处理完后必须调用 release()
+    public Entry peek() {
+        int index = (int) (head & mask);
+        return sequences.get(index) == head + 1 ? entries[index] : null;
+    }
+
+    public void release() {
+        int index = (int) (head & mask);
+        entries[index].message = null;
+        sequences.lazySet(index, head + mask + 1);
+        head++;
+    }
+}
@@ -0,0 +1,212 @@
+package com.wuzi.server;
+
+import com.wuzi.common.AnsiColor;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 快速匹配：玩家按积分分桶进入无锁队列，由定时 tick 批量配对并分配房间
+public class Matchmaker {
+    static final int BUCKET_WIDTH = 100;
+    static final int BUCKETS = 40;
+    // 每等待这么久，可接受的积分差扩大一个桶
+    static final long WIDEN_MILLIS = 2000;
+    private static final int ELO_K = 32;
+
+    private final RoomManager roomManager;
+    private final Queue<Ticket>[] buckets;
+    private final AtomicInteger waiting = new AtomicInteger();
+    // 每个桶本轮剩下的一个未配对玩家，只在 tick 线程内使用
+    private final Ticket[] leftovers = new Ticket[BUCKETS];
+    private ScheduledExecutorService ticker;
+
+    // 泛型数组只能以原始类型创建
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public Matchmaker(RoomManager roomManager) {
+        this.roomManager = roomManager;
+        this.buckets = new Queue[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    // 已在队列中返回 false
+    public boolean enqueue(Player player) {
+        if (player.getMatchTicket() != null) {
+            return false;
+        }
+        Ticket ticket = new Ticket(player, System.currentTimeMillis());
+        player.setMatchTicket(ticket);
+        waiting.incrementAndGet();
+        buckets[bucketOf(player.getRating())].offer(ticket);
+        return true;
+    }
+
+    // 取消排队；若恰好正在配对则等配对完成，此时返回 false 且玩家已进入房间
+    public boolean cancel(Player player) {
+        Ticket ticket = player.getMatchTicket();
+        if (ticket == null) {
+            return false;
+        }
+        while (true) {
+            int state = ticket.state.get();
+            if (state == Ticket.WAITING) {
+                if (ticket.state.compareAndSet(Ticket.WAITING, Ticket.CANCELLED)) {
+                    waiting.decrementAndGet();
+                    player.setMatchTicket(null);
+                    return true;
+                }
+            } else if (state == Ticket.CLAIMED) {
+                Thread.onSpinWait();
+            } else {
+                return false;
+            }
+        }
+    }
+
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    // 执行一轮配对，返回本轮配对数；只能由单个线程调用
+    int tick(long now) {
+        int pairs = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            Ticket held = null;
+            Ticket t;
+            while ((t = buckets[b].poll()) != null) {
+                if (!t.state.compareAndSet(Ticket.WAITING, Ticket.CLAIMED)) {
+                    continue;
+                }
+                if (held == null) {
+                    held = t;
+                } else if (seat(held, t)) {
+                    pairs++;
+                    held = null;
+                } else {
+                    // 房间数已达上限，剩下的留到下一轮
+                    release(held);
+                    release(t);
+                    held = null;
+                    break;
+                }
+            }
+            leftovers[b] = held;
+        }
+        // 等待较久的玩家与相邻桶中剩下的玩家配对
+        for (int b = 0; b < BUCKETS; b++) {
+            Ticket a = leftovers[b];
+            if (a == null) {
+                continue;
+            }
+            long reach = Math.min(BUCKETS, (now - a.enqueuedAt) / WIDEN_MILLIS);
+            for (int d = 1; d <= reach; d++) {
+                int other = b + d < BUCKETS && leftovers[b + d] != null ? b + d
+                        : b - d >= 0 && leftovers[b - d] != null ? b - d : -1;
+                if (other >= 0) {
+                    if (seat(a, leftovers[other])) {
+                        pairs++;
+                        leftovers[b] = null;
+                        leftovers[other] = null;
+                    }
+                    break;
+                }
+            }
+        }
+        for (int b = 0; b < BUCKETS; b++) {
+            if (leftovers[b] != null) {
+                release(leftovers[b]);
+                leftovers[b] = null;
+            }
+        }
+        return pairs;
+    }
+
+    private void release(Ticket ticket) {
+        ticket.state.set(Ticket.WAITING);
+        buckets[bucketOf(ticket.player.getRating())].offer(ticket);
+    }
+
+    // 为两名玩家分配一个空房间（复用或新建），房间数已达上限返回 false
+    private boolean seat(Ticket a, Ticket b) {
+        GameRoom room;
+        while (true) {
+            room = roomManager.joinEmptyRoom(a.player);
+            if (room == null) {
+                return false;
+            }
+            if (room.addPlayer(b.player)) {
+                break;
+            }
+            // 有人通过 enter room 抢先进入了同一房间，换一个
+            room.removePlayer(a.player);
+        }
+        a.player.setCurrentRoom(room);
+        b.player.setCurrentRoom(room);
+        a.state.set(Ticket.MATCHED);
+        b.state.set(Ticket.MATCHED);
+        a.player.setMatchTicket(null);
+        b.player.setMatchTicket(null);
+        waiting.addAndGet(-2);
+        ServerLogger.info("匹配成功: " + a.player.getName() + " vs " + b.player.getName() + "，房间 " + room.getRoomId());
+        notifyMatched(a.player, b.player, room);
+        notifyMatched(b.player, a.player, room);
+        return true;
+    }
+
+    private void notifyMatched(Player player, Player opponent, GameRoom room) {
+        player.sendMessage(AnsiColor.success("匹配成功，进入房间 " + room.getRoomId() + "，对手: "
+                + opponent.getName() + " (" + opponent.getRating() + ")"));
+        player.sendMessage(AnsiColor.info("对手已加入，请输入 start 开始游戏"));
+    }
+
+    static int bucketOf(int rating) {
+        return Math.max(0, Math.min(BUCKETS - 1, rating / BUCKET_WIDTH));
+    }
+
+    // 对局结束后按 Elo 更新双方积分
+    public static void updateRatings(Player winner, Player loser) {
+        double expected = 1.0 / (1.0 + Math.pow(10, (loser.getRating() - winner.getRating()) / 400.0));
+        int delta = (int) Math.round(ELO_K * (1 - expected));
+        winner.setRating(winner.getRating() + delta);
+        loser.setRating(loser.getRating() - delta);
+    }
+
+    public synchronized void start(long tickMillis) {
+        if (ticker != null) {
+            return;
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wuzi-matchmaker");
+            t.setDaemon(true);
+            return t;
+        });
+        ticker.scheduleWithFixedDelay(() -> {
+            try {
+                tick(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                ServerLogger.error("匹配出错: " + e.getMessage());
+            }
+        }, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    static final class Ticket {
+        static final int WAITING = 0;
+        // tick 线程正在处理，取消需要等待
+        static final int CLAIMED = 1;
+        static final int MATCHED = 2;
+        static final int CANCELLED = 3;
+
+        final Player player;
+        final long enqueuedAt;
+        final AtomicInteger state = new AtomicInteger(WAITING);
+
+        Ticket(Player player, long enqueuedAt) {
+            this.player = player;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BinaryProtocol;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 进程内的运行指标。热路径上只做 LongAdder 累加和直方图记录，不加锁、不分配内存；
+// 连接数、房间状态、发送队列等由各自的组件维护，抓取时才读取并汇总成 Prometheus 文本或 stats 命令的回复
+public final class Metrics {
+    private static final CommandParser.Command[] COMMANDS = CommandParser.Command.values();
+    // 按命令类型累计的执行次数，文本与二进制命令合并统计
+    private static final LongAdder[] COMMAND_COUNTS = new LongAdder[COMMANDS.length];
+    // 从读到落子命令到对手那一端写出棋盘变化的耗时
+    static final LatencyHistogram MOVE_LATENCY = new LatencyHistogram();
+    private static final LongAdder OUTBOUND_BYTES = new LongAdder();
+    private static final LongAdder OUTBOUND_MESSAGES = new LongAdder();
+    private static final LongAdder OUTBOUND_WRITES = new LongAdder();
+
+    // 近期每秒命令数：时间轮上定期采样一次累计值，只由计时线程写入
+    static final long SAMPLE_MILLIS = 10_000;
+    private static final long[] lastCounts = new long[COMMANDS.length];
+    private static final long[] recentCounts = new long[COMMANDS.length];
+    private static volatile long lastSampleNanos = System.nanoTime();
+    private static volatile long recentSampleNanos;
+
+    private static volatile RoomManager roomManager;
+    private static volatile AdmissionControl admission;
+
+    static {
+        for (int i = 0; i < COMMAND_COUNTS.length; i++) {
+            COMMAND_COUNTS[i] = new LongAdder();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    // 启动时由 GameServer 绑定需要抓取的组件，并在时间轮上开始采样命令速率
+    public static void bind(RoomManager rooms, AdmissionControl admissionControl) {
+        roomManager = rooms;
+        admission = admissionControl;
+        TimingWheel timers = rooms.getTimers();
+        TimingWheel.Timeout[] sampler = new TimingWheel.Timeout[1];
+        sampler[0] = timers.newTimeout(() -> {
+            sample();
+            timers.schedule(sampler[0], SAMPLE_MILLIS);
+        });
+        timers.schedule(sampler[0], SAMPLE_MILLIS);
+    }
+
+    static void command(CommandParser.Command command) {
+        COMMAND_COUNTS[command.ordinal()].increment();
+    }
+
+    // 二进制操作码按对应的文本命令统计
+    static void command(int opcode) {
+        command(commandOf(opcode));
+    }
+
+    static CommandParser.Command commandOf(int opcode) {
+        switch (opcode) {
+            case BinaryProtocol.OP_LIST:
+                return CommandParser.Command.LS;
+            case BinaryProtocol.OP_ENTER:
+                return CommandParser.Command.ENTER;
+            case BinaryProtocol.OP_START:
+                return CommandParser.Command.START;
+            case BinaryProtocol.OP_PUT:
+                return CommandParser.Command.PUT;
+            case BinaryProtocol.OP_LEAVE:
+                return CommandParser.Command.LEAVE;
+            case BinaryProtocol.OP_SYNC:
+                return CommandParser.Command.SYNC;
+            case BinaryProtocol.OP_WATCH:
+                return CommandParser.Command.WATCH;
+            case BinaryProtocol.OP_MATCH:
+                return CommandParser.Command.MATCH;
+            case BinaryProtocol.OP_QUIT:
+                return CommandParser.Command.QUIT;
+            default:
+                return CommandParser.Command.UNKNOWN;
+        }
+    }
+
+    // 发送队列一次交给连接的消息数与字节数
+    static void outbound(int messages, long bytes) {
+        OUTBOUND_WRITES.increment();
+        OUTBOUND_MESSAGES.add(messages);
+        OUTBOUND_BYTES.add(bytes);
+    }
+
+    static long getCommandTotal(CommandParser.Command command) {
+        return COMMAND_COUNTS[command.ordinal()].sum();
+    }
+
+    static long getOutboundBytes() {
+        return OUTBOUND_BYTES.sum();
+    }
+
+    // 在计时线程中执行：保留上一个采样周期的增量，stats 命令据此给出近期速率
+    static void sample() {
+        long now = System.nanoTime();
+        for (int i = 0; i < COMMANDS.length; i++) {
+            long total = COMMAND_COUNTS[i].sum();
+            recentCounts[i] = total - lastCounts[i];
+            lastCounts[i] = total;
+        }
+        recentSampleNanos = now - lastSampleNanos;
+        lastSampleNanos = now;
+    }
+
+    // 房间按状态计数：空闲、等待中、已满、对局中
+    private static long[] roomStates() {
+        long[] states = new long[4];
+        RoomManager rooms = roomManager;
+        if (rooms == null) {
+            return states;
+        }
+        for (GameRoom room : rooms.getAllRooms().values()) {
+            if (room.isGameStarted()) {
+                states[3]++;
+            } else {
+                states[Math.min(2, room.getPlayerCount())]++;
+            }
+        }
+        return states;
+    }
+
+    private static final String[] ROOM_STATES = {"free", "waiting", "full", "playing"};
+
+    // Prometheus 文本格式（0.0.4）
+    public static String renderPrometheus() {
+        StringBuilder sb = new StringBuilder(4096);
+        AdmissionControl ac = admission;
+        if (ac != null) {
+            gauge(sb, "wuzi_connections", "当前在线连接数", ac.getActiveConnections());
+            gauge(sb, "wuzi_connections_max", "连接数上限，0 表示不限", ac.getMaxConnections());
+            counter(sb, "wuzi_connections_rejected_total", "因连接数已满被拒绝的连接数", ac.getRejectedTotal());
+            counter(sb, "wuzi_accept_stalls_total", "接入线程因连接数已满暂停 accept 的次数", ac.getStallTotal());
+        }
+
+        long[] states = roomStates();
+        header(sb, "wuzi_rooms", "按状态统计的房间数", "gauge");
+        for (int i = 0; i < states.length; i++) {
+            sb.append("wuzi_rooms{state=\"").append(ROOM_STATES[i]).append("\"} ").append(states[i]).append('\n');
+        }
+
+        header(sb, "wuzi_commands_total", "按类型统计的已执行命令数", "counter");
+        for (CommandParser.Command command : COMMANDS) {
+            sb.append("wuzi_commands_total{command=\"").append(command.name().toLowerCase(Locale.ROOT)).append("\"} ")
+                .append(getCommandTotal(command)).append('\n');
+        }
+        counter(sb, "wuzi_commands_throttled_total", "被限流丢弃的命令数", RateLimiter.getThrottledTotal());
+
+        histogram(sb, "wuzi_move_latency_seconds", "从读到落子命令到对手一端写出棋盘变化的耗时", MOVE_LATENCY);
+
+        counter(sb, "wuzi_outbound_bytes_total", "写出的字节数", OUTBOUND_BYTES.sum());
+        counter(sb, "wuzi_outbound_messages_total", "写出的消息数", OUTBOUND_MESSAGES.sum());
+        counter(sb, "wuzi_outbound_writes_total", "交给连接的写出次数", OUTBOUND_WRITES.sum());
+        gauge(sb, "wuzi_outbound_queued", "所有发送队列当前积压的消息数", OutboundQueue.getQueuedTotal());
+        gauge(sb, "wuzi_outbound_max_depth", "单个发送队列出现过的最大积压", OutboundQueue.getMaxDepth());
+        counter(sb, "wuzi_outbound_dropped_total", "积压时丢弃的消息数", OutboundQueue.getDroppedTotal());
+        counter(sb, "wuzi_outbound_disconnects_total", "因积压被断开的慢连接数", OutboundQueue.getDisconnectedTotal());
+
+        RoomManager rooms = roomManager;
+        if (rooms != null) {
+            gauge(sb, "wuzi_timers", "时间轮上等待到期的计时任务数", rooms.getTimers().size());
+        }
+        return sb.toString();
+    }
+
+    // stats 命令的回复：汇总关键指标和最近一个采样周期的命令速率
+    static String renderStats() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("================ 服务器状态 ================\n");
+        AdmissionControl ac = admission;
+        if (ac != null) {
+            sb.append("连接: ").append(ac.getActiveConnections());
+            if (ac.getMaxConnections() > 0) {
+                sb.append('/').append(ac.getMaxConnections());
+            }
+            sb.append("，已拒绝 ").append(ac.getRejectedTotal()).append('\n');
+        }
+        long[] states = roomStates();
+        sb.append(String.format("房间: 空闲 %d，等待中 %d，已满 %d，对局中 %d%n", states[0], states[1], states[2], states[3]));
+
+        long window = recentSampleNanos;
+        sb.append("命令/秒");
+        if (window > 0) {
+            sb.append("（最近 ").append(TimeUnit.NANOSECONDS.toSeconds(window)).append(" 秒）:");
+            double seconds = window / 1e9;
+            boolean any = false;
+            for (int i = 0; i < COMMANDS.length; i++) {
+                if (recentCounts[i] > 0) {
+                    sb.append(String.format(" %s %.1f", COMMANDS[i].name().toLowerCase(Locale.ROOT), recentCounts[i] / seconds));
+                    any = true;
+                }
+            }
+            sb.append(any ? "\n" : " 无\n");
+        } else {
+            sb.append(": 尚未采样\n");
+        }
+        sb.append("被限流命令: ").append(RateLimiter.getThrottledTotal()).append('\n');
+
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        long total = MOVE_LATENCY.snapshot(counts);
+        sb.append(String.format("落子延迟: %d 次，p50 %s，p99 %s，p99.9 %s%n", total,
+            formatNanos(LatencyHistogram.percentile(counts, total, 0.5)),
+            formatNanos(LatencyHistogram.percentile(counts, total, 0.99)),
+            formatNanos(LatencyHistogram.percentile(counts, total, 0.999))));
+
+        sb.append(String.format("发送: %d 字节，%d 条消息，积压 %d，丢弃 %d，断开 %d%n", OUTBOUND_BYTES.sum(),
+            OUTBOUND_MESSAGES.sum(), OutboundQueue.getQueuedTotal(), OutboundQueue.getDroppedTotal(),
+            OutboundQueue.getDisconnectedTotal()));
+        sb.append("============================================");
+        return sb.toString();
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos >= 1_000_000) {
+            return String.format("%.1fms", nanos / 1e6);
+        }
+        return String.format("%.1fµs", nanos / 1e3);
+    }
+
+    private static void header(StringBuilder sb, String name, String help, String type) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, help, "gauge");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, long value) {
+        header(sb, name, help, "counter");
+        sb.append(name).append(' ').append(value).append('\n');
+    }
+
+    // 直方图的桶上界取 2 的幂（纳秒），从 1µs 左右到约 34 秒，换算成秒输出
+    private static void histogram(StringBuilder sb, String name, String help, LatencyHistogram histogram) {
+        header(sb, name, help, "histogram");
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        long total = histogram.snapshot(counts);
+        long cumulative = 0;
+        int index = 0;
+        for (int exponent = 10; exponent <= 35; exponent++) {
+            long bound = 1L << exponent;
+            while (index < LatencyHistogram.BUCKETS && LatencyHistogram.upperBound(index) <= bound) {
+                cumulative += counts[index++];
+            }
+            sb.append(name).append("_bucket{le=\"").append(bound / 1e9).append("\"} ").append(cumulative).append('\n');
+        }
+        sb.append(name).append("_bucket{le=\"+Inf\"} ").append(total).append('\n');
+        sb.append(name).append("_sum ").append(histogram.getSum() / 1e9).append('\n');
+        sb.append(name).append("_count ").append(total).append('\n');
+    }
+}
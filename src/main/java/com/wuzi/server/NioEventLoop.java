@@ -0,0 +1,137 @@
+package com.wuzi.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 单线程事件循环，负责一组会话的读、命令处理和写出
+public class NioEventLoop implements Runnable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Selector selector;
+    private final RoomManager roomManager;
+    // 会话关闭时归还连接名额
+    private final AdmissionControl admission;
+    private final Queue<SocketChannel> pendingChannels = new ConcurrentLinkedQueue<>();
+    private final Queue<NioSession> pendingFlushes = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    // 同一循环内所有会话共享一个读缓冲区，完整的行直接从中解析
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    // 聚集写时装载各会话排队数据的数组，同样由循环内所有会话共享
+    private final ByteBuffer[] gather = new ByteBuffer[OutboundQueue.MAX_BATCH];
+    private volatile boolean running = true;
+    private volatile Thread thread;
+
+    public NioEventLoop(RoomManager roomManager, AdmissionControl admission) throws IOException {
+        this.selector = Selector.open();
+        this.roomManager = roomManager;
+        this.admission = admission;
+    }
+
+    public void register(SocketChannel channel) {
+        pendingChannels.add(channel);
+        wakeup();
+    }
+
+    void scheduleFlush(NioSession session) {
+        pendingFlushes.add(session);
+        wakeup();
+    }
+
+    void sessionClosed() {
+        admission.release();
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    private void wakeup() {
+        if (Thread.currentThread() != thread && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        while (running) {
+            try {
+                selector.select();
+                wakeupPending.set(false);
+                registerPending();
+                processSelectedKeys();
+                flushPending();
+            } catch (Exception e) {
+                ServerLogger.error("事件循环错误：" + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof NioSession) {
+                ((NioSession) key.attachment()).close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void registerPending() {
+        SocketChannel channel;
+        while ((channel = pendingChannels.poll()) != null) {
+            try {
+                channel.configureBlocking(false);
+                NioSession session = new NioSession(channel, this, new ClientHandler(roomManager));
+                session.attach(channel.register(selector, SelectionKey.OP_READ, session));
+            } catch (IOException e) {
+                ServerLogger.error("注册客户端连接失败：" + e.getMessage());
+                admission.release();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // 忽略
+                }
+            }
+        }
+    }
+
+    private void processSelectedKeys() {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            NioSession session = (NioSession) key.attachment();
+            if (!key.isValid()) {
+                session.close();
+                continue;
+            }
+            if (key.isReadable()) {
+                session.onReadable(readBuffer);
+            }
+            if (key.isValid() && key.isWritable()) {
+                session.flush(gather);
+            }
+        }
+    }
+
+    private void flushPending() {
+        NioSession session;
+        while ((session = pendingFlushes.poll()) != null) {
+            session.flush(gather);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.wuzi.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+// 基于 Selector 的服务器：一个接入线程 + 少量事件循环线程承载全部连接
+public class NioServer {
+    private final ServerConfig config;
+    private final RoomManager roomManager;
+    private final NioEventLoop[] loops;
+    private final AdmissionControl admission;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+
+    public NioServer(ServerConfig config, RoomManager roomManager) {
+        this(config, roomManager, new AdmissionControl(config.getMaxConnections()));
+    }
+
+    public NioServer(ServerConfig config, RoomManager roomManager, AdmissionControl admission) {
+        this.config = config;
+        this.roomManager = roomManager;
+        this.admission = admission;
+        this.loops = new NioEventLoop[config.getEventLoops()];
+    }
+
+    public void bind() throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(config.getPort()), 1024);
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new NioEventLoop(roomManager, admission);
+            Thread thread = new Thread(loops[i], "wuzi-nio-" + i);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        running = true;
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    // 在当前线程上阻塞接受连接，按轮询方式分配给事件循环；连接数已满时暂停接受
+    public void serve() {
+        int next = 0;
+        while (running) {
+            boolean admitted = false;
+            try {
+                admitted = admission.awaitSlot();
+                SocketChannel channel = serverChannel.accept();
+                if (!admitted && !(admitted = admission.tryAcquire())) {
+                    admission.reject(channel);
+                    continue;
+                }
+                ServerLogger.info("新客户端连接：" + channel.socket().getInetAddress());
+                loops[next].register(channel);
+                next = (next + 1) % loops.length;
+            } catch (ClosedChannelException e) {
+                releaseIf(admitted);
+                break;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (IOException e) {
+                releaseIf(admitted);
+                ServerLogger.error("接受连接失败：" + e.getMessage());
+            }
+        }
+    }
+
+    // 名额已占用但连接没有交给事件循环
+    private void releaseIf(boolean admitted) {
+        if (admitted) {
+            admission.release();
+        }
+    }
+
+    public void close() {
+        running = false;
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        for (NioEventLoop loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,336 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BinaryProtocol;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// NIO 模式下的单个客户端会话：负责非阻塞的按行分帧与输出排队
+public class NioSession implements Connection {
+    // 单行命令的最大字节数，超出视为异常客户端
+    static final int MAX_LINE_BYTES = 4096;
+
+    private final SocketChannel channel;
+    private final NioEventLoop loop;
+    private final ClientHandler handler;
+    private final String address;
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    // outbound 中还没写完的消息数，玩家的 OutboundQueue 据此判断慢连接
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile WriteListener writeListener;
+    private SelectionKey key;
+    private boolean loggedIn;
+    private boolean binary;
+    // 可能由计时线程、房间线程设置
+    private volatile boolean closeAfterFlush;
+    private volatile boolean closeRequested;
+    // 跨越多次读取的半行数据，空闲连接不占用缓冲区
+    private byte[] partial;
+    private int partialLength;
+
+    NioSession(SocketChannel channel, NioEventLoop loop, ClientHandler handler) {
+        this.channel = channel;
+        this.loop = loop;
+        this.handler = handler;
+        this.address = String.valueOf(channel.socket().getInetAddress());
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+        writeLine(ClientHandler.namePrompt());
+    }
+
+    @Override
+    public void write(byte[] data) {
+        if (closed.get()) {
+            return;
+        }
+        backlog.incrementAndGet();
+        OutboundQueue.recordQueued(1);
+        outbound.add(ByteBuffer.wrap(data));
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.scheduleFlush(this);
+        }
+    }
+
+    // 一批消息只唤醒一次事件循环
+    @Override
+    public void write(byte[][] data, int count) {
+        if (closed.get()) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            outbound.add(ByteBuffer.wrap(data[i]));
+        }
+        backlog.addAndGet(count);
+        OutboundQueue.recordQueued(count);
+        if (flushScheduled.compareAndSet(false, true)) {
+            loop.scheduleFlush(this);
+        }
+    }
+
+    @Override
+    public int backlog() {
+        return backlog.get();
+    }
+
+    @Override
+    public void setWriteListener(WriteListener listener) {
+        this.writeListener = listener;
+    }
+
+    // 其他线程发起的关闭交给事件循环执行，断线清理始终在事件循环线程中进行
+    @Override
+    public void close() {
+        if (!loop.inLoop()) {
+            closeRequested = true;
+            loop.scheduleFlush(this);
+            return;
+        }
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        loop.sessionClosed();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // 连接已不可用，忽略
+        }
+        int dropped = backlog.getAndSet(0);
+        OutboundQueue.recordQueued(-dropped);
+        outbound.clear();
+        handler.disconnect();
+    }
+
+    boolean isClosed() {
+        return closed.get();
+    }
+
+    // 由事件循环线程调用，readBuffer 为该循环共享的读缓冲区
+    void onReadable(ByteBuffer readBuffer) {
+        readBuffer.clear();
+        int n;
+        try {
+            n = channel.read(readBuffer);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        if (n < 0) {
+            close();
+            return;
+        }
+        readBuffer.flip();
+        // 握手行之后同一批数据中可能紧跟着二进制帧，因此每一段都重新判断分帧方式
+        while (readBuffer.hasRemaining() && !closeAfterFlush && !closed.get()) {
+            if (binary) {
+                readFrame(readBuffer);
+            } else {
+                readLine(readBuffer);
+            }
+        }
+    }
+
+    private void readLine(ByteBuffer buffer) {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            int pos = buffer.position();
+            if (buffer.get() == '\n') {
+                dispatchLine(buffer, start, pos);
+                return;
+            }
+        }
+        appendPartial(buffer, start, buffer.limit() - start, MAX_LINE_BYTES);
+    }
+
+    private void readFrame(ByteBuffer buffer) {
+        if (partialLength == 0 && buffer.remaining() >= 2) {
+            int length = buffer.getShort(buffer.position()) & 0xFFFF;
+            if (!checkFrameLength(length)) {
+                return;
+            }
+            if (buffer.remaining() >= 2 + length) {
+                // 完整的帧直接在共享读缓冲区上处理
+                int start = buffer.position() + 2;
+                buffer.position(start + length);
+                dispatchFrame(buffer.slice(start, length));
+                return;
+            }
+        }
+
+        // 帧跨越多次读取：先凑齐 2 字节长度，再凑齐整帧
+        int need = 2 - partialLength;
+        if (partialLength >= 2) {
+            need = 2 + frameLength() - partialLength;
+        }
+        int n = Math.min(need, buffer.remaining());
+        appendPartial(buffer, buffer.position(), n, 2 + BinaryProtocol.MAX_REQUEST_LENGTH);
+        buffer.position(buffer.position() + n);
+        if (closed.get() || partialLength < 2) {
+            return;
+        }
+        if (partialLength == 2 && !checkFrameLength(frameLength())) {
+            return;
+        }
+        if (partialLength == 2 + frameLength()) {
+            ByteBuffer frame = ByteBuffer.wrap(partial, 2, frameLength()).slice();
+            partialLength = 0;
+            dispatchFrame(frame);
+            releasePartial();
+        }
+    }
+
+    private int frameLength() {
+        return ((partial[0] & 0xFF) << 8) | (partial[1] & 0xFF);
+    }
+
+    private boolean checkFrameLength(int length) {
+        if (length == 0 || length > BinaryProtocol.MAX_REQUEST_LENGTH) {
+            ServerLogger.warn("客户端 " + address + " 发送了非法的帧长度 " + length + "，断开连接");
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    private void appendPartial(ByteBuffer buffer, int from, int length, int limit) {
+        if (partialLength + length > limit) {
+            ServerLogger.warn("客户端 " + address + " 发送的命令过长，断开连接");
+            close();
+            return;
+        }
+        if (partial == null) {
+            partial = new byte[Math.max(64, length)];
+        } else if (partial.length < partialLength + length) {
+            partial = Arrays.copyOf(partial, Math.max(partial.length * 2, partialLength + length));
+        }
+        buffer.get(from, partial, partialLength, length);
+        partialLength += length;
+    }
+
+    // 长时间空闲的连接不保留大缓冲区
+    private void releasePartial() {
+        if (partialLength == 0 && partial != null && partial.length > 256) {
+            partial = null;
+        }
+    }
+
+    private void dispatchLine(ByteBuffer buffer, int from, int newline) {
+        String line;
+        int length = newline - from;
+        if (partialLength > 0) {
+            appendPartial(buffer, from, length, MAX_LINE_BYTES);
+            if (closed.get()) {
+                return;
+            }
+            line = decodeLine(partial, 0, partialLength);
+            partialLength = 0;
+            releasePartial();
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(from, bytes, 0, length);
+            line = decodeLine(bytes, 0, length);
+        }
+
+        try {
+            if (!loggedIn) {
+                loggedIn = true;
+                handler.login(line, this, address);
+                binary = handler.isBinaryProtocol();
+            } else if (!handler.handleLine(line)) {
+                closeAfterFlush();
+            }
+        } catch (Exception e) {
+            ServerLogger.error("客户端处理错误：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private void dispatchFrame(ByteBuffer frame) {
+        try {
+            if (!handler.handleFrame(frame)) {
+                closeAfterFlush();
+            }
+        } catch (Exception e) {
+            ServerLogger.error("客户端处理错误：" + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    // 停止读取，待输出写完后关闭
+    @Override
+    public void closeAfterFlush() {
+        closeAfterFlush = true;
+        loop.scheduleFlush(this);
+    }
+
+    private static String decodeLine(byte[] bytes, int offset, int length) {
+        if (length > 0 && bytes[offset + length - 1] == '\r') {
+            length--;
+        }
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+
+    // 由事件循环线程调用：把排队数据装进 gather 一次聚集写出，写不完时注册 OP_WRITE 等待下次可写
+    void flush(ByteBuffer[] gather) {
+        flushScheduled.set(false);
+        if (closed.get()) {
+            return;
+        }
+        if (closeRequested) {
+            close();
+            return;
+        }
+        try {
+            while (true) {
+                int n = 0;
+                for (ByteBuffer buffer : outbound) {
+                    gather[n++] = buffer;
+                    if (n == gather.length) {
+                        break;
+                    }
+                }
+                if (n == 0) {
+                    break;
+                }
+                channel.write(gather, 0, n);
+                int written = 0;
+                while (written < n && !gather[written].hasRemaining()) {
+                    outbound.poll();
+                    written++;
+                }
+                backlog.addAndGet(-written);
+                OutboundQueue.recordQueued(-written);
+                WriteListener listener = writeListener;
+                if (listener != null && written > 0) {
+                    listener.written(gather, written);
+                }
+                Arrays.fill(gather, 0, n, null);
+                if (written < n) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        } catch (IOException | CancelledKeyException e) {
+            close();
+            return;
+        }
+        if (closeAfterFlush) {
+            close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.wuzi.server;
+
+import java.util.Arrays;
+
+// 一条命令（或一批房间邮箱任务、一批观战事件）期间产生的输出先留在各玩家的发送队列里，
+// 结束时每个收件人只写出一次：阻塞连接一次 flush，NIO 连接一次聚集写。
+// 按线程记录，可以嵌套，只有最外层结束时才写出
+final class OutboundBatch {
+    private static final ThreadLocal<OutboundBatch> CURRENT = ThreadLocal.withInitial(OutboundBatch::new);
+
+    private int depth;
+    private OutboundQueue[] touched = new OutboundQueue[8];
+    private int count;
+
+    private OutboundBatch() {
+    }
+
+    static void begin() {
+        CURRENT.get().depth++;
+    }
+
+    static void end() {
+        OutboundBatch batch = CURRENT.get();
+        if (--batch.depth == 0) {
+            batch.flushAll();
+        }
+    }
+
+    // 当前线程在批次中时登记 queue 并返回 true，由批次结束时统一写出；否则返回 false
+    static boolean defer(OutboundQueue queue) {
+        OutboundBatch batch = CURRENT.get();
+        if (batch.depth == 0) {
+            return false;
+        }
+        // 队列上记着登记它的批次，观战扇出一批上万个收件人时查重仍是 O(1)。
+        // 两个线程的批次交替登记同一队列时标记会被覆盖，最多重复登记一次，多一次空的 kick
+        if (queue.deferredIn == batch) {
+            return true;
+        }
+        queue.deferredIn = batch;
+        if (batch.count == batch.touched.length) {
+            batch.touched = Arrays.copyOf(batch.touched, batch.count * 2);
+        }
+        batch.touched[batch.count++] = queue;
+        return true;
+    }
+
+    private void flushAll() {
+        // depth 已经归零，写出期间再入队的数据不会登记到本批次
+        for (int i = 0; i < count; i++) {
+            OutboundQueue queue = touched[i];
+            touched[i] = null;
+            // 先清除标记再写出：批次对象按线程复用，残留的标记会让下一批次漏登记
+            if (queue.deferredIn == this) {
+                queue.deferredIn = null;
+            }
+            queue.kick();
+        }
+        count = 0;
+    }
+}
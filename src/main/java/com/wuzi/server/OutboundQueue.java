@@ -0,0 +1,320 @@
+package com.wuzi.server;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// 玩家的有界发送队列：调用方只入队、从不阻塞。每名玩家一个，自己的回复、对局事件、观战与回放都经它写出，顺序不乱。
+// 阻塞 Socket 上的数据由共享的写线程写出，慢连接只会占住一个写线程，不会拖慢入队的一方；
+// 本身已经异步的连接（NIO 会话）在入队线程上直接交给连接，按连接自己的积压量执行同样的慢连接策略。
+// 每次写出把已排队的消息一次交给连接，处在 OutboundBatch 中时等批次结束再写出
+public class OutboundQueue {
+    public enum Kind {
+        // 命令回复、开局、轮到你、对局结束等不能丢的消息
+        ESSENTIAL,
+        // 棋盘更新：积压时可以丢弃，之后由一次完整棋盘补上
+        BOARD,
+        // 观战提示等丢了也不影响对局的消息
+        INFO
+    }
+
+    // 积压超过容量后的处理方式；无论哪种策略，积压达到断开阈值都会断开连接
+    public enum Policy {
+        // 丢弃提示消息；丢弃的棋盘更新在积压回落到一半后合并为一次完整棋盘补发
+        COALESCE,
+        // 丢弃提示消息和棋盘更新，不补发，由客户端按序号发现缺口后自行 sync
+        DROP,
+        // 立即断开
+        DISCONNECT
+    }
+
+    private static final AtomicInteger WRITER_IDS = new AtomicInteger();
+    private static final ExecutorService WRITERS = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "wuzi-writer-" + WRITER_IDS.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    // 新建队列使用的默认配置，启动时由 GameServer 设置
+    private static volatile int defaultCapacity = 256;
+    private static volatile int defaultDisconnectAt = 1024;
+    private static volatile Policy defaultPolicy = Policy.COALESCE;
+
+    // 所有队列共用的统计：当前积压的消息总数、单个队列出现过的最大积压、累计丢弃与断开次数
+    private static final LongAdder QUEUED = new LongAdder();
+    private static final AtomicInteger MAX_DEPTH = new AtomicInteger();
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final LongAdder DISCONNECTED = new LongAdder();
+    // 一次交给连接的最多消息数
+    static final int MAX_BATCH = 64;
+
+    private final Connection connection;
+    private final int capacity;
+    private final int disconnectAt;
+    private final Policy policy;
+    // 积压回落后请求补发完整棋盘，补发的数据经 resynced 入队；可以为 null
+    private final Runnable resync;
+    private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    // 只由持有 draining 的线程使用
+    private final byte[][] batch = new byte[MAX_BATCH][];
+    // 丢弃过棋盘更新，在补发完整棋盘之前不再发送棋盘增量
+    private volatile boolean lagging;
+    private final AtomicBoolean resyncRequested = new AtomicBoolean(false);
+    private volatile boolean closing;
+    private volatile boolean closed;
+    // 连接自己排队（NIO 会话）：交给连接时还没写出，写出由连接回调 socketWritten
+    private final boolean selfQueued;
+    // 正在计时的一条消息（按引用识别）及其计时起点，写出时记入落子延迟；同一时间最多跟踪一条
+    private volatile byte[] traced;
+    private long tracedSince;
+    // 最近登记了本队列的批次，用于批次内 O(1) 查重；由 OutboundBatch 读写
+    volatile OutboundBatch deferredIn;
+
+    public static void configure(int capacity, int disconnectAt, Policy policy) {
+        defaultCapacity = capacity;
+        defaultDisconnectAt = Math.max(capacity, disconnectAt);
+        defaultPolicy = policy;
+    }
+
+    static int getDefaultCapacity() {
+        return defaultCapacity;
+    }
+
+    public OutboundQueue(Connection connection, Runnable resync) {
+        this(connection, defaultCapacity, defaultDisconnectAt, defaultPolicy, resync);
+    }
+
+    public OutboundQueue(Connection connection, int capacity, int disconnectAt, Policy policy, Runnable resync) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.disconnectAt = disconnectAt;
+        this.policy = policy;
+        this.resync = resync;
+        this.selfQueued = connection != null && connection.backlog() >= 0;
+        if (selfQueued) {
+            connection.setWriteListener(this::socketWritten);
+        }
+    }
+
+    // 返回数据是否被接受；被丢弃或连接因积压被断开时返回 false
+    public boolean offer(byte[] data, Kind kind) {
+        return offer(data, kind, 0);
+    }
+
+    // sinceNanos 不为 0 时，这条数据写出时把从 sinceNanos 起的耗时记入落子延迟
+    boolean offer(byte[] data, Kind kind, long sinceNanos) {
+        if (closed) {
+            return false;
+        }
+        int depth = depth();
+        if (depth > MAX_DEPTH.get()) {
+            MAX_DEPTH.accumulateAndGet(depth, Math::max);
+        }
+        if (depth >= capacity) {
+            if (policy == Policy.DISCONNECT || depth >= disconnectAt) {
+                overflow(depth);
+                return false;
+            }
+            if (kind != Kind.ESSENTIAL) {
+                DROPPED.increment();
+                if (kind == Kind.BOARD && policy == Policy.COALESCE && resync != null) {
+                    lagging = true;
+                }
+                return false;
+            }
+        } else if (lagging) {
+            resyncIfCaughtUp();
+            if (kind == Kind.BOARD) {
+                DROPPED.increment();
+                return false;
+            }
+        }
+        if (sinceNanos != 0) {
+            tracedSince = sinceNanos;
+            traced = data;
+        }
+        enqueue(data);
+        return true;
+    }
+
+    // 补发的完整棋盘：不受 lagging 限制，入队后恢复正常发送；data 为 null 表示无需补发
+    public void resynced(byte[] data) {
+        if (data != null && !closed) {
+            enqueue(data);
+        }
+        lagging = false;
+        resyncRequested.set(false);
+    }
+
+    // 积压回落到容量的一半时请求补发完整棋盘，每次落后只请求一次。
+    // 入队时和写出后都会检查，没有新消息时也能及时补上
+    private void resyncIfCaughtUp() {
+        if (lagging && depth() <= capacity / 2 && resyncRequested.compareAndSet(false, true)) {
+            resync.run();
+        }
+    }
+
+    // 自己排队的连接（NIO 会话）真正写出数据后在 I/O 线程回调：积压此时才会下降，
+    // 计时的消息此时才算送出，落子延迟包含在连接中排队和聚集写的时间
+    private void socketWritten(ByteBuffer[] buffers, int count) {
+        byte[] pending = traced;
+        if (pending != null) {
+            for (int i = 0; i < count; i++) {
+                if (buffers[i].hasArray() && buffers[i].array() == pending) {
+                    Metrics.MOVE_LATENCY.record(System.nanoTime() - tracedSince);
+                    traced = null;
+                    break;
+                }
+            }
+        }
+        if (lagging && resync != null) {
+            resyncIfCaughtUp();
+        }
+    }
+
+    // 当前积压的消息数
+    public int depth() {
+        int backlog = connection.backlog();
+        return backlog >= 0 ? backlog + size.get() : size.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    boolean isLagging() {
+        return lagging;
+    }
+
+    private void enqueue(byte[] data) {
+        size.incrementAndGet();
+        QUEUED.increment();
+        queue.add(data);
+        if (!OutboundBatch.defer(this)) {
+            kick();
+        }
+    }
+
+    // 开始写出已排队的数据；已有线程在写时由它顺带写出
+    void kick() {
+        if (draining.compareAndSet(false, true)) {
+            if (connection.backlog() >= 0) {
+                drain();
+            } else {
+                WRITERS.execute(this::drain);
+            }
+        }
+    }
+
+    private void overflow(int depth) {
+        DISCONNECTED.increment();
+        ServerLogger.warn("连接积压 " + depth + " 条消息未写出，断开慢连接");
+        discard();
+        connection.close();
+    }
+
+    // 已排队的数据写完后关闭连接
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closing = true;
+        kick();
+    }
+
+    // 取出最多 MAX_BATCH 条排队的数据放进 batch
+    private int poll() {
+        int n = 0;
+        byte[] data;
+        while (n < MAX_BATCH && (data = queue.poll()) != null) {
+            batch[n++] = data;
+        }
+        if (n > 0) {
+            size.addAndGet(-n);
+            QUEUED.add(-n);
+        }
+        return n;
+    }
+
+    // 统计交给连接的字节。阻塞连接的 write 返回时数据已写出，在这里记入落子延迟；
+    // 自己排队的连接由 socketWritten 在真正写出时记录
+    private void written(int n) {
+        long bytes = 0;
+        byte[] pending = selfQueued ? null : traced;
+        for (int i = 0; i < n; i++) {
+            bytes += batch[i].length;
+            if (batch[i] == pending) {
+                Metrics.MOVE_LATENCY.record(System.nanoTime() - tracedSince);
+                traced = null;
+            }
+        }
+        Metrics.outbound(n, bytes);
+    }
+
+    private void discard() {
+        closed = true;
+        int n = 0;
+        while (queue.poll() != null) {
+            n++;
+        }
+        size.addAndGet(-n);
+        QUEUED.add(-n);
+    }
+
+    private void drain() {
+        do {
+            int n;
+            while (!closed && (n = poll()) > 0) {
+                if (n == 1) {
+                    connection.write(batch[0]);
+                } else {
+                    connection.write(batch, n);
+                }
+                written(n);
+                Arrays.fill(batch, 0, n, null);
+                if (lagging) {
+                    resyncIfCaughtUp();
+                }
+            }
+            if (closing && !closed && queue.isEmpty()) {
+                discard();
+                if (connection.backlog() >= 0) {
+                    connection.closeAfterFlush();
+                } else {
+                    connection.close();
+                }
+            }
+            draining.set(false);
+            // 释放标记后可能又有新数据入队，但入队方看到标记仍被占用而没有调度
+        } while (!closed && (!queue.isEmpty() || closing) && draining.compareAndSet(false, true));
+    }
+
+    // NIO 会话自己排队，积压变化时计入全局统计
+    static void recordQueued(int delta) {
+        QUEUED.add(delta);
+    }
+
+    public static long getQueuedTotal() {
+        return QUEUED.sum();
+    }
+
+    public static int getMaxDepth() {
+        return MAX_DEPTH.get();
+    }
+
+    public static long getDroppedTotal() {
+        return DROPPED.sum();
+    }
+
+    public static long getDisconnectedTotal() {
+        return DISCONNECTED.sum();
+    }
+}
@@ -1,22 +1,45 @@
 package com.wuzi.server;
 
-import java.io.BufferedReader;
-import java.io.PrintWriter;
-import java.net.Socket;
+import com.wuzi.common.AnsiColor;
+import com.wuzi.common.BinaryProtocol;
+import com.wuzi.common.BoardDelta;
+import java.nio.charset.StandardCharsets;
 
 public class Player {
+    public enum Protocol {
+        // 默认的文本命令与彩色文本输出
+        TEXT,
+        // 登录时协商的长度前缀二进制帧
+        BINARY
+    }
+
     private final String name;
-    private final Socket socket;
-    private final BufferedReader reader;
-    private final PrintWriter writer;
+    private final Connection connection;
+    // 所有发给该玩家的数据都经这个队列写出，发送方从不阻塞
+    private final OutboundQueue outbound;
+    private final Protocol protocol;
     private String color;
-    private GameRoom currentRoom;
+    // 匹配成功时由匹配线程设置
+    private volatile GameRoom currentRoom;
+    // 正在观战的房间，与 currentRoom 互斥；补发棋盘时在其他线程读取
+    private volatile GameRoom watchingRoom;
+    // 开启后棋盘只发送变化的格子，由客户端在本地重绘
+    private boolean deltaUpdates;
+    private volatile int rating = 1500;
+    // 正在快速匹配队列中时不为 null
+    private volatile Matchmaker.Ticket matchTicket;
+    // 最近一次收到命令的时刻（时间轮时钟），用于空闲超时
+    private volatile long lastActivity;
 
-    public Player(String name, Socket socket, BufferedReader reader, PrintWriter writer) {
+    public Player(String name, Connection connection) {
+        this(name, connection, Protocol.TEXT);
+    }
+
+    public Player(String name, Connection connection, Protocol protocol) {
         this.name = name;
-        this.socket = socket;
-        this.reader = reader;
-        this.writer = writer;
+        this.connection = connection;
+        this.outbound = new OutboundQueue(connection, this::resync);
+        this.protocol = protocol;
         this.color = null;
         this.currentRoom = null;
     }
@@ -25,6 +48,10 @@ public class Player {
         return name;
     }
 
+    public Protocol getProtocol() {
+        return protocol;
+    }
+
     public String getColor() {
         return color;
     }
@@ -41,22 +68,177 @@ public class Player {
         this.currentRoom = room;
     }
 
+    public int getRating() {
+        return rating;
+    }
+
+    public void setRating(int rating) {
+        this.rating = rating;
+    }
+
+    Matchmaker.Ticket getMatchTicket() {
+        return matchTicket;
+    }
+
+    void setMatchTicket(Matchmaker.Ticket matchTicket) {
+        this.matchTicket = matchTicket;
+    }
+
+    public boolean isMatching() {
+        return matchTicket != null;
+    }
+
+    long getLastActivity() {
+        return lastActivity;
+    }
+
+    void touch(long now) {
+        lastActivity = now;
+    }
+
+    public GameRoom getWatchingRoom() {
+        return watchingRoom;
+    }
+
+    public void setWatchingRoom(GameRoom watchingRoom) {
+        this.watchingRoom = watchingRoom;
+    }
+
+    // 当前积压未写出的消息数
+    public int getOutboundDepth() {
+        return outbound.depth();
+    }
+
+    // 已编码好的数据按类别入队，积压时由发送队列的策略决定是否丢弃
+    void send(byte[] data, OutboundQueue.Kind kind) {
+        outbound.offer(data, kind);
+    }
+
+    // 发送队列丢弃过棋盘更新、积压回落后调用：在房间邮箱中取当前完整棋盘补发
+    private void resync() {
+        GameRoom room = currentRoom != null ? currentRoom : watchingRoom;
+        if (room == null) {
+            outbound.resynced(null);
+            return;
+        }
+        room.execute(() -> outbound.resynced(room.isGameStarted() ? encodeRoomBoard(room) : null));
+    }
+
+    public boolean isDeltaUpdates() {
+        return deltaUpdates;
+    }
+
+    public void setDeltaUpdates(boolean deltaUpdates) {
+        this.deltaUpdates = deltaUpdates;
+    }
+
+    // 二进制协议下文本提示包装成 EV_TEXT 帧
     public void sendMessage(String message) {
-        writer.println(message);
-        writer.flush();
+        outbound.offer(encodeMessage(message), OutboundQueue.Kind.ESSENTIAL);
     }
 
-    public String readMessage() throws Exception {
-        return reader.readLine();
+    // 按玩家的协议编码，用于经发送队列异步写出的场景
+    byte[] encodeMessage(String message) {
+        if (protocol == Protocol.BINARY) {
+            return BinaryProtocol.text(message);
+        }
+        return (message + "\n").getBytes(StandardCharsets.UTF_8);
     }
 
-    public void close() {
-        try {
-            reader.close();
-            writer.close();
-            socket.close();
-        } catch (Exception e) {
-            e.printStackTrace();
+    // 不属于任何房间的棋盘（例如回放）的完整局面
+    byte[] encodeBoard(GameBoard board, int seq) {
+        if (protocol == Protocol.BINARY) {
+            return BinaryProtocol.board(seq, board.getLastMoveX(), board.getLastMoveY(), board.toCells());
+        } else if (deltaUpdates) {
+            return encodeMessage(BoardDelta.board(seq, board.getLastMoveX(), board.getLastMoveY(), board.toSnapshot()));
         }
+        return board.renderBytes();
+    }
+
+    byte[] encodeMove(GameBoard board, int seq, int x, int y, String color) {
+        if (protocol == Protocol.BINARY) {
+            return BinaryProtocol.move(seq, x, y, color);
+        } else if (deltaUpdates) {
+            return encodeMessage(BoardDelta.move(seq, x, y, color));
+        }
+        return board.renderBytes();
+    }
+
+    // 写出已编码好的字节：二进制协议的帧，或以换行结尾的文本
+    public void sendFrame(byte[] frame) {
+        outbound.offer(frame, OutboundQueue.Kind.ESSENTIAL);
+    }
+
+    // 请求被拒绝：二进制协议发 EV_ERROR（opcode 为被拒绝的请求，reason 为 BinaryProtocol.ERR_*），文本协议发红色提示
+    public void sendError(int opcode, int reason, String message) {
+        if (protocol == Protocol.BINARY) {
+            sendFrame(BinaryProtocol.error(opcode, reason, message));
+        } else {
+            sendMessage(AnsiColor.error(message));
+        }
+    }
+
+    // 房间当前的完整棋盘，按玩家的协议编码
+    byte[] encodeRoomBoard(GameRoom room) {
+        if (protocol == Protocol.BINARY) {
+            return room.getBoardFrame();
+        } else if (deltaUpdates) {
+            return encodeMessage(room.getBoardSnapshot());
+        }
+        return room.getBoardBytes();
+    }
+
+    // 发送完整棋盘：开局、重新同步时使用
+    public void sendBoard(GameRoom room) {
+        outbound.offer(encodeRoomBoard(room), OutboundQueue.Kind.BOARD);
+    }
+
+    // 发送一手落子后的棋盘变化；无边界棋盘的视口可能随之移动，总是发送整个视口
+    public void sendMove(GameRoom room, int x, int y, String color) {
+        sendMove(room, x, y, color, 0);
+    }
+
+    // sinceNanos 不为 0 时，这次更新写出时记入落子延迟
+    void sendMove(GameRoom room, int x, int y, String color, long sinceNanos) {
+        byte[] data;
+        if (room.isUnbounded()) {
+            data = encodeRoomBoard(room);
+        } else if (protocol == Protocol.BINARY) {
+            data = BinaryProtocol.move(room.getMoveSeq(), x, y, color);
+        } else if (deltaUpdates) {
+            data = encodeMessage(BoardDelta.move(room.getMoveSeq(), x, y, color));
+        } else {
+            data = room.getBoardBytes();
+        }
+        outbound.offer(data, OutboundQueue.Kind.BOARD, sinceNanos);
+    }
+
+    public void sendGameStart() {
+        if (protocol == Protocol.BINARY) {
+            sendFrame(BinaryProtocol.gameStart(color));
+        } else {
+            sendMessage(AnsiColor.success(String.format("游戏开始！你是%s方", color.equals("black") ? "黑" : "白")));
+        }
+    }
+
+    public void sendYourTurn() {
+        if (protocol == Protocol.BINARY) {
+            sendFrame(BinaryProtocol.turn(color));
+        } else {
+            sendMessage(AnsiColor.info("轮到你了"));
+        }
+    }
+
+    public void sendGameOver(Player winner) {
+        if (protocol == Protocol.BINARY) {
+            sendFrame(BinaryProtocol.gameOver(winner.getColor(), winner.getName()));
+        } else {
+            sendMessage(AnsiColor.success(AnsiColor.bold(String.format("游戏结束！%s 获胜！\n输入 leave 离开房间，或者输入 again 再来一局\n", winner.getName()))));
+        }
+    }
+
+    // 已排队的数据写完后关闭连接
+    public void close() {
+        outbound.close();
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,127 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BinaryProtocol;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// 单个会话的命令限流：大厅命令与对局命令各一个令牌桶，超出速率的命令直接丢弃，
+// 不执行也不写日志，刷屏的脚本只影响自己的会话。只由处理该会话命令的线程使用
+final class RateLimiter {
+    enum CommandClass {
+        // 列表、进房、观战、匹配、设置等
+        LOBBY,
+        // 落子、准备、同步等对局中的操作
+        GAME,
+        // 退出不限流
+        EXEMPT
+    }
+
+    // 新会话使用的速率（每秒）和突发容量，启动时由 GameServer 设置；速率为 0 表示不限
+    private static volatile double lobbyRate = 5;
+    private static volatile int lobbyBurst = 20;
+    private static volatile double gameRate = 20;
+    private static volatile int gameBurst = 40;
+
+    // 所有会话累计被限流的命令数
+    private static final LongAdder THROTTLED = new LongAdder();
+
+    private final TokenBucket lobby;
+    private final TokenBucket game;
+    // 本轮刷屏是否已经提示过，放行一条命令后重置
+    private boolean warned;
+
+    static void configure(double lobbyPerSecond, int lobbyBurstSize, double gamePerSecond, int gameBurstSize) {
+        lobbyRate = lobbyPerSecond;
+        lobbyBurst = lobbyBurstSize;
+        gameRate = gamePerSecond;
+        gameBurst = gameBurstSize;
+    }
+
+    RateLimiter() {
+        this(lobbyRate, lobbyBurst, gameRate, gameBurst);
+    }
+
+    RateLimiter(double lobbyPerSecond, int lobbyBurstSize, double gamePerSecond, int gameBurstSize) {
+        this.lobby = lobbyPerSecond > 0 ? new TokenBucket(lobbyPerSecond, lobbyBurstSize) : null;
+        this.game = gamePerSecond > 0 ? new TokenBucket(gamePerSecond, gameBurstSize) : null;
+    }
+
+    // 返回命令是否放行；被限流时计数
+    boolean tryAcquire(CommandClass commandClass, long nowNanos) {
+        TokenBucket bucket = commandClass == CommandClass.LOBBY ? lobby : commandClass == CommandClass.GAME ? game : null;
+        if (bucket == null || bucket.tryAcquire(nowNanos)) {
+            warned = false;
+            return true;
+        }
+        THROTTLED.increment();
+        return false;
+    }
+
+    // 被限流后只提示一次，避免提示本身又成了刷屏
+    boolean shouldWarn() {
+        if (warned) {
+            return false;
+        }
+        warned = true;
+        return true;
+    }
+
+    static CommandClass classify(CommandParser.Command command) {
+        switch (command) {
+            case PUT:
+            case START:
+            case AGAIN:
+            case SYNC:
+                return CommandClass.GAME;
+            case QUIT:
+                return CommandClass.EXEMPT;
+            default:
+                return CommandClass.LOBBY;
+        }
+    }
+
+    static CommandClass classify(int opcode) {
+        switch (opcode) {
+            case BinaryProtocol.OP_PUT:
+            case BinaryProtocol.OP_START:
+            case BinaryProtocol.OP_SYNC:
+                return CommandClass.GAME;
+            case BinaryProtocol.OP_QUIT:
+                return CommandClass.EXEMPT;
+            default:
+                return CommandClass.LOBBY;
+        }
+    }
+
+    static long getThrottledTotal() {
+        return THROTTLED.sum();
+    }
+
+    // 按时间差惰性补充令牌，不需要定时任务
+    static final class TokenBucket {
+        private final double tokensPerNano;
+        private final double capacity;
+        private double tokens;
+        private long last;
+
+        TokenBucket(double perSecond, int burst) {
+            this.tokensPerNano = perSecond / TimeUnit.SECONDS.toNanos(1);
+            this.capacity = Math.max(1, burst);
+            this.tokens = capacity;
+            this.last = System.nanoTime();
+        }
+
+        boolean tryAcquire(long nowNanos) {
+            long elapsed = nowNanos - last;
+            if (elapsed > 0) {
+                tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+                last = nowNanos;
+            }
+            if (tokens >= 1) {
+                tokens -= 1;
+                return true;
+            }
+            return false;
+        }
+    }
+}
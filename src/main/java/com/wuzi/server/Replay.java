@@ -0,0 +1,92 @@
+package com.wuzi.server;
+
+import com.wuzi.common.AnsiColor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 存档回放：按设定速度逐手推送给一名玩家。所有回放共用一个定时线程，
+// 数据经玩家的发送队列写出，慢连接只会让自己的回放暂停，不会拖住定时线程或房间线程
+public class Replay implements Runnable {
+    // 正常速度下每手间隔
+    static final long BASE_INTERVAL_MILLIS = 1000;
+    // 玩家的发送队列积压超过这么多条时暂停推送
+    private static final int PAUSE_DEPTH = 4;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "wuzi-replay");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Player player;
+    private final long gameId;
+    private final long intervalMillis;
+    // 按存档的棋盘尺寸在读到存档后创建
+    private GameBoard board;
+    private GameArchive.GameRecord record;
+    private int next;
+    private volatile boolean cancelled;
+
+    public Replay(Player player, long gameId, double speed) {
+        this.player = player;
+        this.gameId = gameId;
+        this.intervalMillis = Math.max(50, Math.min(10_000, (long) (BASE_INTERVAL_MILLIS / speed)));
+    }
+
+    // 异步读取存档，读到后开始推送
+    public void start(GameArchive archive) {
+        archive.load(gameId).whenComplete((loaded, error) -> {
+            if (cancelled) {
+                return;
+            }
+            if (loaded == null) {
+                player.sendMessage(AnsiColor.error("对局 " + gameId + " 不存在"));
+                return;
+            }
+            record = loaded;
+            board = new GameBoard(loaded.getBoardSize());
+            player.sendMessage(AnsiColor.info("开始回放对局 #" + gameId + "：" + loaded.getBlack() + "（黑） vs "
+                + loaded.getWhite() + "（白），共 " + loaded.getMoveCount() + " 手，输入 replay stop 停止"));
+            player.send(player.encodeBoard(board, 0), OutboundQueue.Kind.ESSENTIAL);
+            if (loaded.getMoveCount() == 0) {
+                finish();
+            } else {
+                TIMER.schedule(this, intervalMillis, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void run() {
+        if (cancelled) {
+            return;
+        }
+        // 上一手还没写出去就先等一等，而不是丢弃
+        if (player.getOutboundDepth() > PAUSE_DEPTH) {
+            TIMER.schedule(this, intervalMillis, TimeUnit.MILLISECONDS);
+            return;
+        }
+        int x = record.getMoveX(next);
+        int y = record.getMoveY(next);
+        String color = next % 2 == 0 ? "black" : "white";
+        board.makeMove(x, y, color);
+        next++;
+        player.send(player.encodeMove(board, next, x, y, color), OutboundQueue.Kind.ESSENTIAL);
+        if (next < record.getMoveCount()) {
+            TIMER.schedule(this, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            finish();
+        }
+    }
+
+    private void finish() {
+        String winner = record.getResult() == GameJournal.RESULT_BLACK ? record.getBlack() + "（黑）获胜"
+            : record.getResult() == GameJournal.RESULT_WHITE ? record.getWhite() + "（白）获胜" : "未分胜负";
+        player.sendMessage(AnsiColor.success("回放结束：" + winner));
+    }
+}
@@ -0,0 +1,241 @@
+package com.wuzi.server;
+
+import com.wuzi.common.AnsiColor;
+import com.wuzi.common.BinaryProtocol;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 房间列表快照。房间状态变化只递增版本号，读取时发现版本变化才重建快照；
+// 每个分页在同一快照内只编码一次，之后所有请求直接写出缓存的字节
+public class RoomDirectory {
+    public enum Filter {
+        ALL, FREE, WAITING, PLAYING;
+
+        // 命令参数 free|waiting|playing，无法识别返回 null
+        public static Filter parse(String name) {
+            switch (name.toLowerCase()) {
+                case "all":
+                    return ALL;
+                case "free":
+                    return FREE;
+                case "waiting":
+                    return WAITING;
+                case "playing":
+                    return PLAYING;
+                default:
+                    return null;
+            }
+        }
+    }
+
+    static final int PAGE_SIZE = 20;
+
+    private final RoomManager roomManager;
+    // 两次重建之间的最短间隔，房间频繁变化时列表最多落后这么久
+    private final long minRebuildNanos;
+    private final AtomicLong version = new AtomicLong();
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+
+    public RoomDirectory(RoomManager roomManager, long minRebuildMillis) {
+        this.roomManager = roomManager;
+        this.minRebuildNanos = minRebuildMillis * 1_000_000L;
+    }
+
+    void invalidate() {
+        version.incrementAndGet();
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    // 返回 filter 下第 page 页（从 1 开始，超出范围按最近的有效页处理）的编码结果
+    public byte[] page(Filter filter, int page, boolean binary) {
+        return current().page(filter, page, binary);
+    }
+
+    Snapshot current() {
+        Snapshot s = snapshot;
+        long v = version.get();
+        if (s != null && (s.version == v || System.nanoTime() - s.builtAt < minRebuildNanos)) {
+            return s;
+        }
+        rebuildLock.lock();
+        try {
+            s = snapshot;
+            v = version.get();
+            if (s == null || (s.version != v && System.nanoTime() - s.builtAt >= minRebuildNanos)) {
+                // 先读版本再遍历房间，遍历期间的变化会让下次读取再次重建
+                s = new Snapshot(v, roomManager.getAllRooms());
+                snapshot = s;
+            }
+            return s;
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    static final class Snapshot {
+        final long version;
+        final long builtAt;
+        final int[] ids;
+        final int[] counts;
+        final int[] states;
+        final int[] watchers;
+        // 每种过滤条件下命中的房间下标
+        final int[][] byFilter;
+        private final Map<Integer, byte[]> encoded = new ConcurrentHashMap<>();
+
+        Snapshot(long version, Map<Integer, GameRoom> rooms) {
+            this.version = version;
+            this.builtAt = System.nanoTime();
+            GameRoom[] sorted = rooms.values().toArray(new GameRoom[0]);
+            Arrays.sort(sorted, Comparator.comparingInt(GameRoom::getRoomId));
+            int n = sorted.length;
+            ids = new int[n];
+            counts = new int[n];
+            states = new int[n];
+            watchers = new int[n];
+            int[][] matches = new int[Filter.values().length][n];
+            int[] sizes = new int[matches.length];
+            for (int i = 0; i < n; i++) {
+                GameRoom room = sorted[i];
+                ids[i] = room.getRoomId();
+                counts[i] = room.getPlayerCount();
+                states[i] = stateOf(room, counts[i]);
+                watchers[i] = room.getSpectators().size();
+                matches[Filter.ALL.ordinal()][sizes[Filter.ALL.ordinal()]++] = i;
+                Filter filter = filterOf(states[i]);
+                if (filter != null) {
+                    matches[filter.ordinal()][sizes[filter.ordinal()]++] = i;
+                }
+            }
+            byFilter = new int[matches.length][];
+            for (int f = 0; f < matches.length; f++) {
+                byFilter[f] = Arrays.copyOf(matches[f], sizes[f]);
+            }
+        }
+
+        private static int stateOf(GameRoom room, int count) {
+            if (room.isGameStarted()) {
+                return BinaryProtocol.ROOM_PLAYING;
+            } else if (count == 2) {
+                return BinaryProtocol.ROOM_FULL;
+            } else if (count == 1) {
+                return BinaryProtocol.ROOM_WAITING;
+            }
+            return BinaryProtocol.ROOM_FREE;
+        }
+
+        private static Filter filterOf(int state) {
+            switch (state) {
+                case BinaryProtocol.ROOM_FREE:
+                    return Filter.FREE;
+                case BinaryProtocol.ROOM_WAITING:
+                    return Filter.WAITING;
+                case BinaryProtocol.ROOM_PLAYING:
+                    return Filter.PLAYING;
+                default:
+                    return null;
+            }
+        }
+
+        int total(Filter filter) {
+            return byFilter[filter.ordinal()].length;
+        }
+
+        int pages(Filter filter) {
+            return Math.max(1, (total(filter) + PAGE_SIZE - 1) / PAGE_SIZE);
+        }
+
+        byte[] page(Filter filter, int page, boolean binary) {
+            int clamped = Math.max(1, Math.min(page, pages(filter)));
+            int key = (clamped << 3) | (filter.ordinal() << 1) | (binary ? 1 : 0);
+            return encoded.computeIfAbsent(key, k -> binary ? encodeBinary(filter, clamped) : encodeText(filter, clamped));
+        }
+
+        private byte[] encodeBinary(Filter filter, int page) {
+            int[] matched = byFilter[filter.ordinal()];
+            int from = (page - 1) * PAGE_SIZE;
+            int count = Math.max(0, Math.min(PAGE_SIZE, matched.length - from));
+            int[] pageIds = new int[count];
+            int[] pageCounts = new int[count];
+            int[] pageStates = new int[count];
+            for (int i = 0; i < count; i++) {
+                int index = matched[from + i];
+                pageIds[i] = ids[index];
+                pageCounts[i] = counts[index];
+                pageStates[i] = states[index];
+            }
+            return BinaryProtocol.roomList(pageIds, pageCounts, pageStates, count,
+                page, pages(filter), matched.length, (int) version);
+        }
+
+        private byte[] encodeText(Filter filter, int page) {
+            int[] matched = byFilter[filter.ordinal()];
+            int from = (page - 1) * PAGE_SIZE;
+            int to = Math.min(matched.length, from + PAGE_SIZE);
+            StringBuilder sb = new StringBuilder();
+            String title = filter == Filter.ALL ? "房间列表" : "房间列表 - " + filterName(filter);
+            sb.append(AnsiColor.color("\n==== " + title + " (第 " + page + "/" + pages(filter)
+                + " 页，共 " + matched.length + " 间) ====\n", AnsiColor.CYAN));
+            for (int i = from; i < to; i++) {
+                int index = matched[i];
+                appendRoom(sb, ids[index], counts[index], states[index], watchers[index]);
+            }
+            if (pages(filter) > 1) {
+                sb.append(AnsiColor.color("ls rooms <页码> [free|waiting|playing] 翻页\n", AnsiColor.WHITE));
+            }
+            sb.append(AnsiColor.color("==================\n", AnsiColor.CYAN));
+            return sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        private static String filterName(Filter filter) {
+            switch (filter) {
+                case FREE:
+                    return "空闲";
+                case WAITING:
+                    return "等待中";
+                default:
+                    return "游戏中";
+            }
+        }
+
+        private static void appendRoom(StringBuilder sb, int id, int count, int state, int watchers) {
+            String status;
+            String statusColor;
+            if (state == BinaryProtocol.ROOM_PLAYING) {
+                status = "🔴 游戏中";
+                statusColor = AnsiColor.RED;
+            } else if (state == BinaryProtocol.ROOM_FULL) {
+                status = "🔴 已满员";
+                statusColor = AnsiColor.RED;
+            } else if (state == BinaryProtocol.ROOM_WAITING) {
+                status = "🟡 等待中";
+                statusColor = AnsiColor.YELLOW;
+            } else {
+                status = "🟢 空闲  ";
+                statusColor = AnsiColor.GREEN;
+            }
+
+            String roomId = String.format("[%02d]", id);
+            String playerCount = String.format("(%d/2)", count);
+
+            sb.append(AnsiColor.color(roomId, AnsiColor.BOLD))
+              .append(" ")
+              .append(AnsiColor.color(status, statusColor))
+              .append(" ")
+              .append(AnsiColor.color(playerCount, AnsiColor.WHITE));
+            if (watchers > 0) {
+                sb.append(" ").append(AnsiColor.color(watchers + " 人观战", AnsiColor.MAGENTA));
+            }
+            sb.append("\n");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.wuzi.server;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 房间邮箱：同一房间的命令按提交顺序逐个执行，任意时刻最多一个线程在处理；
+// 所有房间复用一组固定的工作线程。对局状态只在邮箱任务中读写，落子路径不需要加锁
+public class RoomMailbox implements Executor {
+    // 每次调度最多连续处理的命令数，避免繁忙房间长期占用工作线程
+    static final int BATCH = 64;
+
+    private static final AtomicInteger WORKER_IDS = new AtomicInteger();
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+        Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "wuzi-room-" + WORKER_IDS.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final Executor workers;
+
+    public RoomMailbox() {
+        this(WORKERS);
+    }
+
+    RoomMailbox(Executor workers) {
+        this.workers = workers;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        tasks.offer(task);
+        schedule();
+    }
+
+    public int getPendingCount() {
+        return tasks.size();
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            workers.execute(this::drain);
+        }
+    }
+
+    // 一次调度连续处理的命令发给同一玩家的输出合并写出
+    private void drain() {
+        OutboundBatch.begin();
+        try {
+            for (int i = 0; i < BATCH; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    ServerLogger.error("房间命令执行出错：" + e.getMessage());
+                }
+            }
+        } finally {
+            OutboundBatch.end();
+        }
+        scheduled.set(false);
+        // 释放标记后再检查一次，防止与刚入队的命令擦肩而过
+        if (!tasks.isEmpty()) {
+            schedule();
+        }
+    }
+}
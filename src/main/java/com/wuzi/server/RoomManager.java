@@ -1,26 +1,146 @@
 package com.wuzi.server;
 
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class RoomManager {
     private final Map<Integer, GameRoom> rooms;
     private final AtomicInteger roomIdGenerator;
+    // 已占用的房间名额，先预留再创建，并发创建也不会超过 maxRooms
+    private final AtomicInteger roomCount = new AtomicInteger();
+    // 空房间与等待对手的房间索引，用于 O(1) 找到可加入的房间；索引可能短暂滞后，加入时以房间自身状态为准
+    private final RoomIndex emptyRooms = new RoomIndex(0);
+    private final RoomIndex waitingRooms = new RoomIndex(1);
+    private final int warmRooms;
+    private final int maxRooms;
+    private final long idleMillis;
+    private final Matchmaker matchmaker = new Matchmaker(this);
+    private final RoomDirectory directory = new RoomDirectory(this, 50);
+    // 恢复的对局中等待重新连接的玩家名 -> 房间
+    private final Map<String, GameRoom> reservations = new ConcurrentHashMap<>();
+    private volatile GameJournal journal;
+    private volatile GameArchive archive;
+    private ScheduledExecutorService reclaimer;
+    // 人机对局的搜索线程池：线程数固定、队列有界，机器人思考不会挤占处理玩家命令的线程；
+    // 线程按需创建，空闲后退出
+    private final AtomicInteger botThreadId = new AtomicInteger();
+    private final ThreadPoolExecutor botThinkers;
+    private final BotQueue botQueue;
+    // 棋钟与玩家空闲超时共用的时间轮：100ms 一个刻度，512 格约 51 秒一圈
+    private final TimingWheel timers = new TimingWheel(100, 512);
+    private volatile TimeControl defaultTimeControl = TimeControl.NONE;
+    // 不在房间中、坐在房间里的玩家无操作多久后断开或离座，0 表示不限
+    private volatile long lobbyIdleMillis;
+    private volatile long roomIdleMillis;
 
     public RoomManager() {
+        this(10, 100_000, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    // warmRooms 个预创建的房间常驻不回收，其余房间按需创建，空闲超过 idleMillis 后回收
+    public RoomManager(int warmRooms, int maxRooms, long idleMillis) {
         this.rooms = new ConcurrentHashMap<>();
         this.roomIdGenerator = new AtomicInteger(1);
-        // 初始化10个房间
-        for (int i = 0; i < 10; i++) {
+        this.warmRooms = warmRooms;
+        this.maxRooms = maxRooms;
+        this.idleMillis = idleMillis;
+        int botThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.botQueue = new BotQueue(botThreads * BotQueue.PER_THREAD);
+        this.botThinkers = new ThreadPoolExecutor(botThreads, botThreads, 30, TimeUnit.SECONDS,
+            botQueue, r -> {
+                Thread t = new Thread(r, "wuzi-bot-" + botThreadId.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        this.botThinkers.allowCoreThreadTimeOut(true);
+        for (int i = 0; i < warmRooms; i++) {
             createRoom();
         }
     }
 
+    // 机器人搜索队列：只排线程数的几倍，排在后面的请求等到时思考时间也已耗尽，不如直接走快速着法。
+    // 上限随 setBotThreads 调整
+    private static final class BotQueue extends LinkedBlockingQueue<Runnable> {
+        static final int PER_THREAD = 4;
+        private volatile int limit;
+
+        BotQueue(int limit) {
+            this.limit = limit;
+        }
+
+        void setLimit(int limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean offer(Runnable task) {
+            return size() < limit && super.offer(task);
+        }
+    }
+
+    // 可加入房间的索引：无锁队列，加上每个房间一个"已排队"标记，同一房间在队列中最多一项。
+    // 队列中的房间可能已经过期（满员、回收、被移除），取出时再校验，不在人数变化时从队列中间删除
+    private static final class RoomIndex {
+        private final Queue<GameRoom> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        // 0 为空房间索引，1 为等待房间索引
+        private final int occupancy;
+
+        RoomIndex(int occupancy) {
+            this.occupancy = occupancy;
+        }
+
+        private AtomicBoolean flag(GameRoom room) {
+            return occupancy == 0 ? room.inEmptyIndex : room.inWaitingIndex;
+        }
+
+        void offer(GameRoom room) {
+            if (flag(room).compareAndSet(false, true)) {
+                size.incrementAndGet();
+                queue.add(room);
+            }
+        }
+
+        GameRoom poll() {
+            GameRoom room = queue.poll();
+            if (room != null) {
+                flag(room).set(false);
+                size.decrementAndGet();
+            }
+            return room;
+        }
+
+        int size() {
+            return size.get();
+        }
+    }
+
+    // 房间数达到上限时返回 null
     public GameRoom createRoom() {
-        int roomId = roomIdGenerator.getAndIncrement();
-        GameRoom room = new GameRoom(roomId);
+        if (roomCount.incrementAndGet() > maxRooms) {
+            roomCount.decrementAndGet();
+            return null;
+        }
+        return createRoom(roomIdGenerator.getAndIncrement());
+    }
+
+    // 调用方已预留名额
+    private GameRoom createRoom(int roomId) {
+        GameRoom room = new GameRoom(roomId, this);
         rooms.put(roomId, room);
+        emptyRooms.offer(room);
+        directory.invalidate();
         ServerLogger.info("创建房间: " + roomId);
         return room;
     }
@@ -33,8 +153,238 @@ public class RoomManager {
         return rooms;
     }
 
+    public GameArchive getArchive() {
+        return archive;
+    }
+
+    public void setArchive(GameArchive archive) {
+        this.archive = archive;
+    }
+
+    public GameJournal getJournal() {
+        return journal;
+    }
+
+    public void setJournal(GameJournal journal) {
+        this.journal = journal;
+    }
+
+    // 按日志恢复进行中的对局，需在接受连接之前调用；返回恢复的对局数
+    public int restore(GameJournal source) {
+        int restored = 0;
+        for (Map.Entry<Integer, GameJournal.GameLog> entry : source.getRecoveredGames().entrySet()) {
+            int roomId = entry.getKey();
+            GameRoom room = rooms.get(roomId);
+            if (room == null) {
+                roomIdGenerator.accumulateAndGet(roomId + 1, Math::max);
+                // 恢复的对局不受房间上限限制
+                roomCount.incrementAndGet();
+                room = createRoom(roomId);
+            }
+            GameJournal.GameLog game = entry.getValue();
+            // 有保留座位的房间留在空房间索引中也不会被加入，取出时丢弃
+            if (room.restoreGame(game)) {
+                reservations.put(game.getBlack(), room);
+                reservations.put(game.getWhite(), room);
+                restored++;
+            } else {
+                // 日志中的对局其实已分出胜负，补记结局
+                source.recordEnd(roomId, GameJournal.RESULT_ABORTED);
+            }
+        }
+        if (restored > 0) {
+            ServerLogger.success("已从对局日志恢复 " + restored + " 局对局，等待玩家重新连接");
+        }
+        return restored;
+    }
+
+    // 玩家登录时取出为其保留座位的房间
+    public GameRoom takeReservation(String playerName) {
+        return reservations.remove(playerName);
+    }
+
+    void dropReservation(String playerName, GameRoom room) {
+        reservations.remove(playerName, room);
+    }
+
+    // 保留座位超过空闲时限仍未被认领的对局取消
+    public void expireReservations(long now) {
+        for (GameRoom room : new HashSet<>(reservations.values())) {
+            room.execute(() -> room.expireReservation(now, idleMillis));
+        }
+    }
+
+    public RoomDirectory getDirectory() {
+        return directory;
+    }
+
+    public Matchmaker getMatchmaker() {
+        return matchmaker;
+    }
+
+    public Executor getBotThinkers() {
+        return botThinkers;
+    }
+
+    public TimingWheel getTimers() {
+        return timers;
+    }
+
+    public TimeControl getDefaultTimeControl() {
+        return defaultTimeControl;
+    }
+
+    // 没有单独设置计时规则的房间使用默认规则
+    public void setDefaultTimeControl(TimeControl timeControl) {
+        this.defaultTimeControl = timeControl;
+    }
+
+    public long getLobbyIdleMillis() {
+        return lobbyIdleMillis;
+    }
+
+    public long getRoomIdleMillis() {
+        return roomIdleMillis;
+    }
+
+    public void setIdleTimeouts(long lobbyIdleMillis, long roomIdleMillis) {
+        this.lobbyIdleMillis = lobbyIdleMillis;
+        this.roomIdleMillis = roomIdleMillis;
+    }
+
+    public void setBotThreads(int threads) {
+        int n = Math.max(1, threads);
+        // 调整顺序保证任何时刻 core <= max
+        if (n > botThinkers.getMaximumPoolSize()) {
+            botThinkers.setMaximumPoolSize(n);
+            botThinkers.setCorePoolSize(n);
+        } else {
+            botThinkers.setCorePoolSize(n);
+            botThinkers.setMaximumPoolSize(n);
+        }
+        botQueue.setLimit(n * BotQueue.PER_THREAD);
+    }
+
     public void removeRoom(int roomId) {
-        rooms.remove(roomId);
+        GameRoom room = rooms.remove(roomId);
+        if (room != null) {
+            roomCount.decrementAndGet();
+            directory.invalidate();
+        }
         ServerLogger.info("销毁房间: " + roomId);
     }
-} 
\ No newline at end of file
+
+    // 为玩家找一个可加入的房间并加入：优先有人等待的房间，其次空房间，都没有时新建；房间数已达上限返回 null
+    public GameRoom joinAnyRoom(Player player) {
+        GameRoom room = joinFrom(waitingRooms, player);
+        return room != null ? room : joinEmptyRoom(player);
+    }
+
+    // 让玩家进入一个空房间（复用空闲房间或新建），房间数已达上限返回 null
+    public GameRoom joinEmptyRoom(Player player) {
+        GameRoom room = joinFrom(emptyRooms, player);
+        while (room == null) {
+            GameRoom created = createRoom();
+            if (created == null) {
+                return null;
+            }
+            if (created.addPlayer(player)) {
+                room = created;
+            }
+        }
+        return room;
+    }
+
+    // 从队头取房间尝试加入。最多检查取时队列中的项数，重新入队的房间不会在本次调用中反复出现
+    private GameRoom joinFrom(RoomIndex index, Player player) {
+        int budget = index.size() + 1;
+        GameRoom room;
+        while (budget-- > 0 && (room = index.poll()) != null) {
+            // 人数与索引不符的项（如等待房间里的人已离开）不在这里加入，重新归入对应索引
+            if (room.getPlayerCount() == index.occupancy && rooms.get(room.getRoomId()) == room
+                    && room.addPlayer(player)) {
+                return room;
+            }
+            // 取出后房间标记已清除：人数在这期间变回可加入时，这里重新入队，不会被遗漏
+            requeue(room);
+        }
+        return null;
+    }
+
+    private void requeue(GameRoom room) {
+        if (room.isRetired() || rooms.get(room.getRoomId()) != room || !room.isOpen()) {
+            return;
+        }
+        int count = room.getPlayerCount();
+        if (count == 0) {
+            emptyRooms.offer(room);
+        } else if (count == 1) {
+            waitingRooms.offer(room);
+        }
+    }
+
+    // 由 GameRoom 在人数变化后调用，把变为可加入的房间放入对应索引；过期的索引项在取出时丢弃
+    void onOccupancyChanged(GameRoom room) {
+        if (room.isRetired()) {
+            return;
+        }
+        directory.invalidate();
+        int count = room.getPlayerCount();
+        if (count == 0) {
+            emptyRooms.offer(room);
+        } else if (count == 1) {
+            waitingRooms.offer(room);
+        }
+    }
+
+    // 开局、结束、观战人数变化等不影响空闲索引的状态变化
+    void onRoomStateChanged(GameRoom room) {
+        directory.invalidate();
+    }
+
+    public int getEmptyRoomCount() {
+        return emptyRooms.size();
+    }
+
+    public int getWaitingRoomCount() {
+        return waitingRooms.size();
+    }
+
+    // 回收空闲超过 idleMillis 的非常驻房间，返回回收数量；已回收的房间留在索引中，取出时丢弃
+    public int reclaimIdleRooms(long now) {
+        int reclaimed = 0;
+        for (GameRoom room : emptyRooms.queue) {
+            if (room.getRoomId() <= warmRooms || room.isRetired()) {
+                continue;
+            }
+            if (now - room.getEmptySince() >= idleMillis && room.retireIfIdle()) {
+                if (rooms.remove(room.getRoomId(), room)) {
+                    roomCount.decrementAndGet();
+                }
+                reclaimed++;
+            }
+        }
+        if (reclaimed > 0) {
+            directory.invalidate();
+            ServerLogger.info("回收空闲房间 " + reclaimed + " 个，当前房间数 " + rooms.size());
+        }
+        return reclaimed;
+    }
+
+    public synchronized void startReclaimer() {
+        if (reclaimer != null) {
+            return;
+        }
+        reclaimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "wuzi-room-reclaimer");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1000, idleMillis / 2);
+        reclaimer.scheduleAtFixedRate(() -> {
+            long now = System.currentTimeMillis();
+            reclaimIdleRooms(now);
+            expireReservations(now);
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,78 @@
+package com.wuzi.server;
+
+// 房间的对局规则，开局前由房间内玩家选择
+public enum RuleSet {
+    // 无禁手：五连或长连都获胜
+    FREESTYLE("freestyle", "无禁手"),
+    // 标准五子棋：恰好五连才获胜，长连不算
+    STANDARD("standard", "标准"),
+    // 连珠：黑方恰好五连获胜，三三、四四、长连为禁手；白方五连或长连都获胜
+    RENJU("renju", "连珠");
+
+    public enum Forbidden {
+        DOUBLE_THREE("三三"),
+        DOUBLE_FOUR("四四"),
+        OVERLINE("长连");
+
+        private final String displayName;
+
+        Forbidden(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private final String name;
+    private final String displayName;
+
+    RuleSet(String name, String displayName) {
+        this.name = name;
+        this.displayName = displayName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+
+    // 未知规则名返回 null
+    public static RuleSet parse(String name) {
+        for (RuleSet rule : values()) {
+            if (rule.name.equalsIgnoreCase(name)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    // (x, y) 处刚落下的棋子是否使该方获胜
+    public boolean isWin(Board board, int x, int y) {
+        switch (this) {
+            case STANDARD:
+                return LinePatterns.hasExactFive(board, x, y);
+            case RENJU:
+                return board.getCell(x, y) == 1 ? LinePatterns.hasExactFive(board, x, y) : board.checkWin(x, y);
+            default:
+                return board.checkWin(x, y);
+        }
+    }
+
+    // 只有连珠规则的黑方有禁手
+    public boolean hasForbidden(String color) {
+        return this == RENJU && "black".equals(color);
+    }
+
+    // color 方在空格 (x, y) 落子是否为禁手，不是返回 null
+    public Forbidden checkForbidden(Board board, int x, int y, String color) {
+        if (!hasForbidden(color)) {
+            return null;
+        }
+        return LinePatterns.renjuForbidden(board, x, y);
+    }
+}
@@ -0,0 +1,347 @@
+package com.wuzi.server;
+
+// 服务器启动参数，默认值可通过 -Dwuzi.xxx 系统属性覆盖
+public class ServerConfig {
+    public enum Mode {
+        // 每个连接一个线程，阻塞读写
+        BLOCKING,
+        // 基于 Selector 的事件循环，少量线程承载大量连接
+        NIO,
+        // 与 BLOCKING 相同的阻塞代码，但每个连接运行在虚拟线程上（需要 JDK 21）
+        VIRTUAL
+    }
+
+    private int port = 8888;
+    private Mode mode = Mode.BLOCKING;
+    private int eventLoops = Math.max(1, Runtime.getRuntime().availableProcessors());
+    private boolean logAsync = false;
+    // 为空时输出到控制台
+    private String logFile = null;
+    private boolean logPlain = false;
+    private int logBufferSize = 8192;
+    private ServerLogger.Overflow logOverflow = ServerLogger.Overflow.DROP;
+    // 常驻房间数、房间总数上限，以及空房间被回收前的空闲秒数
+    private int warmRooms = 10;
+    private int maxRooms = 100_000;
+    private int roomIdleSeconds = 300;
+    // 快速匹配的配对周期
+    private int matchTickMillis = 100;
+    // 对局日志目录，为空时不记录也不恢复对局
+    private String journalDir = null;
+    private int journalSizeMb = 64;
+    // 组提交周期：每隔这么久统一刷盘一次
+    private int journalSyncMillis = 10;
+    private int journalSnapshotSeconds = 60;
+    // 对局存档目录，为空时不存档，replay 不可用
+    private String archiveDir = null;
+    // 内存中缓存的最近回放对局数
+    private int archiveCacheSize = 256;
+    // 人机对局的搜索线程数
+    private int botThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    // 房间默认的计时规则，格式见 TimeControl.parse
+    private String clock = "off";
+    // 不在房间中、坐在房间里无操作多久后断开或离座，0 表示不限
+    private int lobbyIdleSeconds = 600;
+    private int seatIdleSeconds = 300;
+    // 每名玩家发送队列的容量与断开阈值（条），以及超过容量后的策略：coalesce、drop 或 disconnect
+    private int outboundCapacity = 256;
+    private int outboundDisconnect = 1024;
+    private String outboundPolicy = "coalesce";
+    // 同时在线的连接数上限，0 表示不限；未设置（-1）时按模式取默认值：
+    // 阻塞模式每个连接占一个平台线程，默认 10000，NIO 与虚拟线程模式默认不限
+    private int maxConnections = -1;
+    // 每个连接的命令限流：大厅命令与对局命令各自的每秒速率和突发容量，速率为 0 表示不限
+    private int lobbyRate = 5;
+    private int lobbyBurst = 20;
+    private int gameRate = 20;
+    private int gameBurst = 40;
+    // Prometheus 抓取端口，只监听本机回环地址，0 表示不开启
+    private int metricsPort = 9889;
+
+    public static ServerConfig fromSystemProperties() {
+        ServerConfig config = new ServerConfig();
+        config.setPort(Integer.getInteger("wuzi.port", config.getPort()));
+        config.setMode(Mode.valueOf(System.getProperty("wuzi.mode", config.getMode().name()).toUpperCase()));
+        config.setEventLoops(Integer.getInteger("wuzi.nio.loops", config.getEventLoops()));
+        config.setLogAsync(Boolean.parseBoolean(System.getProperty("wuzi.log.async", String.valueOf(config.isLogAsync()))));
+        config.setLogFile(System.getProperty("wuzi.log.file", config.getLogFile()));
+        config.setLogPlain(Boolean.parseBoolean(System.getProperty("wuzi.log.plain", String.valueOf(config.isLogPlain()))));
+        config.setLogBufferSize(Integer.getInteger("wuzi.log.buffer", config.getLogBufferSize()));
+        config.setLogOverflow(ServerLogger.Overflow.valueOf(System.getProperty("wuzi.log.overflow", config.getLogOverflow().name()).toUpperCase()));
+        config.setWarmRooms(Integer.getInteger("wuzi.rooms.warm", config.getWarmRooms()));
+        config.setMaxRooms(Integer.getInteger("wuzi.rooms.max", config.getMaxRooms()));
+        config.setRoomIdleSeconds(Integer.getInteger("wuzi.rooms.idle", config.getRoomIdleSeconds()));
+        config.setMatchTickMillis(Integer.getInteger("wuzi.match.tick", config.getMatchTickMillis()));
+        config.setJournalDir(System.getProperty("wuzi.journal.dir", config.getJournalDir()));
+        config.setJournalSizeMb(Integer.getInteger("wuzi.journal.size", config.getJournalSizeMb()));
+        config.setJournalSyncMillis(Integer.getInteger("wuzi.journal.sync", config.getJournalSyncMillis()));
+        config.setJournalSnapshotSeconds(Integer.getInteger("wuzi.journal.snapshot", config.getJournalSnapshotSeconds()));
+        config.setArchiveDir(System.getProperty("wuzi.archive.dir", config.getArchiveDir()));
+        config.setArchiveCacheSize(Integer.getInteger("wuzi.archive.cache", config.getArchiveCacheSize()));
+        config.setBotThreads(Integer.getInteger("wuzi.bot.threads", config.getBotThreads()));
+        config.setClock(System.getProperty("wuzi.clock", config.getClock()));
+        config.setLobbyIdleSeconds(Integer.getInteger("wuzi.idle.lobby", config.getLobbyIdleSeconds()));
+        config.setSeatIdleSeconds(Integer.getInteger("wuzi.idle.room", config.getSeatIdleSeconds()));
+        config.setOutboundCapacity(Integer.getInteger("wuzi.outbound.capacity", config.getOutboundCapacity()));
+        config.setOutboundDisconnect(Integer.getInteger("wuzi.outbound.disconnect", config.getOutboundDisconnect()));
+        config.setOutboundPolicy(System.getProperty("wuzi.outbound.policy", config.getOutboundPolicy()));
+        config.setMaxConnections(Integer.getInteger("wuzi.connections.max", config.maxConnections));
+        config.setLobbyRate(Integer.getInteger("wuzi.rate.lobby", config.getLobbyRate()));
+        config.setLobbyBurst(Integer.getInteger("wuzi.rate.lobby.burst", config.getLobbyBurst()));
+        config.setGameRate(Integer.getInteger("wuzi.rate.game", config.getGameRate()));
+        config.setGameBurst(Integer.getInteger("wuzi.rate.game.burst", config.getGameBurst()));
+        config.setMetricsPort(Integer.getInteger("wuzi.metrics.port", config.getMetricsPort()));
+        return config;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public void setMode(Mode mode) {
+        this.mode = mode;
+    }
+
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    public void setEventLoops(int eventLoops) {
+        this.eventLoops = eventLoops;
+    }
+
+    public boolean isLogAsync() {
+        return logAsync;
+    }
+
+    public void setLogAsync(boolean logAsync) {
+        this.logAsync = logAsync;
+    }
+
+    public String getLogFile() {
+        return logFile;
+    }
+
+    public void setLogFile(String logFile) {
+        this.logFile = logFile;
+    }
+
+    public boolean isLogPlain() {
+        return logPlain;
+    }
+
+    public void setLogPlain(boolean logPlain) {
+        this.logPlain = logPlain;
+    }
+
+    public int getLogBufferSize() {
+        return logBufferSize;
+    }
+
+    public void setLogBufferSize(int logBufferSize) {
+        this.logBufferSize = logBufferSize;
+    }
+
+    public ServerLogger.Overflow getLogOverflow() {
+        return logOverflow;
+    }
+
+    public void setLogOverflow(ServerLogger.Overflow logOverflow) {
+        this.logOverflow = logOverflow;
+    }
+
+    public int getWarmRooms() {
+        return warmRooms;
+    }
+
+    public void setWarmRooms(int warmRooms) {
+        this.warmRooms = warmRooms;
+    }
+
+    public int getMaxRooms() {
+        return maxRooms;
+    }
+
+    public void setMaxRooms(int maxRooms) {
+        this.maxRooms = maxRooms;
+    }
+
+    public int getRoomIdleSeconds() {
+        return roomIdleSeconds;
+    }
+
+    public void setRoomIdleSeconds(int roomIdleSeconds) {
+        this.roomIdleSeconds = roomIdleSeconds;
+    }
+
+    public int getMatchTickMillis() {
+        return matchTickMillis;
+    }
+
+    public void setMatchTickMillis(int matchTickMillis) {
+        this.matchTickMillis = matchTickMillis;
+    }
+
+    public String getJournalDir() {
+        return journalDir;
+    }
+
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public int getJournalSizeMb() {
+        return journalSizeMb;
+    }
+
+    public void setJournalSizeMb(int journalSizeMb) {
+        this.journalSizeMb = journalSizeMb;
+    }
+
+    public int getJournalSyncMillis() {
+        return journalSyncMillis;
+    }
+
+    public void setJournalSyncMillis(int journalSyncMillis) {
+        this.journalSyncMillis = journalSyncMillis;
+    }
+
+    public int getJournalSnapshotSeconds() {
+        return journalSnapshotSeconds;
+    }
+
+    public void setJournalSnapshotSeconds(int journalSnapshotSeconds) {
+        this.journalSnapshotSeconds = journalSnapshotSeconds;
+    }
+
+    public String getArchiveDir() {
+        return archiveDir;
+    }
+
+    public void setArchiveDir(String archiveDir) {
+        this.archiveDir = archiveDir;
+    }
+
+    public int getArchiveCacheSize() {
+        return archiveCacheSize;
+    }
+
+    public void setArchiveCacheSize(int archiveCacheSize) {
+        this.archiveCacheSize = archiveCacheSize;
+    }
+
+    public int getBotThreads() {
+        return botThreads;
+    }
+
+    public void setBotThreads(int botThreads) {
+        this.botThreads = botThreads;
+    }
+
+    public String getClock() {
+        return clock;
+    }
+
+    public void setClock(String clock) {
+        this.clock = clock;
+    }
+
+    public int getLobbyIdleSeconds() {
+        return lobbyIdleSeconds;
+    }
+
+    public void setLobbyIdleSeconds(int lobbyIdleSeconds) {
+        this.lobbyIdleSeconds = lobbyIdleSeconds;
+    }
+
+    public int getSeatIdleSeconds() {
+        return seatIdleSeconds;
+    }
+
+    public void setSeatIdleSeconds(int seatIdleSeconds) {
+        this.seatIdleSeconds = seatIdleSeconds;
+    }
+
+    public int getOutboundCapacity() {
+        return outboundCapacity;
+    }
+
+    public void setOutboundCapacity(int outboundCapacity) {
+        this.outboundCapacity = outboundCapacity;
+    }
+
+    public int getOutboundDisconnect() {
+        return outboundDisconnect;
+    }
+
+    public void setOutboundDisconnect(int outboundDisconnect) {
+        this.outboundDisconnect = outboundDisconnect;
+    }
+
+    public String getOutboundPolicy() {
+        return outboundPolicy;
+    }
+
+    public void setOutboundPolicy(String outboundPolicy) {
+        this.outboundPolicy = outboundPolicy;
+    }
+
+    public int getMaxConnections() {
+        if (maxConnections >= 0) {
+            return maxConnections;
+        }
+        return mode == Mode.BLOCKING ? 10_000 : 0;
+    }
+
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getLobbyRate() {
+        return lobbyRate;
+    }
+
+    public void setLobbyRate(int lobbyRate) {
+        this.lobbyRate = lobbyRate;
+    }
+
+    public int getLobbyBurst() {
+        return lobbyBurst;
+    }
+
+    public void setLobbyBurst(int lobbyBurst) {
+        this.lobbyBurst = lobbyBurst;
+    }
+
+    public int getGameRate() {
+        return gameRate;
+    }
+
+    public void setGameRate(int gameRate) {
+        this.gameRate = gameRate;
+    }
+
+    public int getGameBurst() {
+        return gameBurst;
+    }
+
+    public void setGameBurst(int gameBurst) {
+        this.gameBurst = gameBurst;
+    }
+
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    public void setMetricsPort(int metricsPort) {
+        this.metricsPort = metricsPort;
+    }
+}
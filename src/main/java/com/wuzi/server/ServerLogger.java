@@ -1,29 +1,116 @@
 package com.wuzi.server;
 
 import com.wuzi.common.AnsiColor;
-import java.time.LocalDateTime;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 
+// 默认同步输出到控制台；configure 开启异步模式后，业务线程只写入环形缓冲区，由后台线程批量输出
 public class ServerLogger {
-    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    public enum Overflow {
+        // 缓冲区满时丢弃并计数，不给业务线程增加延迟
+        DROP,
+        // 缓冲区满时等待日志线程腾出空间
+        BLOCK
+    }
+
+    static final int INFO = 0;
+    static final int SUCCESS = 1;
+    static final int WARN = 2;
+    static final int ERROR = 3;
+
+    private static final String[] LEVEL_TAGS = {"[INFO] ", "[SUCCESS] ", "[WARN] ", "[ERROR] "};
+    private static final String[] LEVEL_COLORS = {AnsiColor.CYAN, AnsiColor.GREEN, AnsiColor.YELLOW, AnsiColor.RED};
+    private static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private static volatile AsyncLogWriter asyncWriter;
+    private static volatile boolean plain;
+    // 同一秒内的日志共用格式化好的时间戳
+    private static volatile CachedTimestamp timestamp = new CachedTimestamp(-1, "");
+
+    private static class CachedTimestamp {
+        final long second;
+        final String text;
+
+        CachedTimestamp(long second, String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
 
-    private static String getTimestamp() {
-        return AnsiColor.color("[" + LocalDateTime.now().format(formatter) + "]", AnsiColor.WHITE);
+    public static synchronized void configure(ServerConfig config) throws IOException {
+        plain = config.isLogPlain();
+        if (!config.isLogAsync()) {
+            return;
+        }
+        OutputStream out = config.getLogFile() == null
+            ? System.out
+            : new BufferedOutputStream(new FileOutputStream(config.getLogFile(), true));
+        AsyncLogWriter writer = new AsyncLogWriter(config.getLogBufferSize(), out, plain, config.getLogOverflow());
+        writer.start();
+        AsyncLogWriter previous = asyncWriter;
+        asyncWriter = writer;
+        if (previous != null) {
+            previous.shutdown();
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(writer::shutdown, "wuzi-logger-shutdown"));
     }
 
     public static void info(String message) {
-        System.out.println(getTimestamp() + " " + AnsiColor.info("[INFO] " + message));
+        log(INFO, message);
     }
 
     public static void success(String message) {
-        System.out.println(getTimestamp() + " " + AnsiColor.success("[SUCCESS] " + message));
+        log(SUCCESS, message);
     }
 
     public static void warn(String message) {
-        System.out.println(getTimestamp() + " " + AnsiColor.warn("[WARN] " + message));
+        log(WARN, message);
     }
 
     public static void error(String message) {
-        System.err.println(getTimestamp() + " " + AnsiColor.error("[ERROR] " + message));
+        log(ERROR, message);
+    }
+
+    private static void log(int level, String message) {
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            writer.submit(level, message);
+            return;
+        }
+        StringBuilder sb = new StringBuilder(message.length() + 48);
+        appendLine(sb, level, System.currentTimeMillis(), message, plain);
+        sb.setLength(sb.length() - 1);
+        if (level == ERROR) {
+            System.err.println(sb);
+        } else {
+            System.out.println(sb);
+        }
+    }
+
+    // 追加一行以换行结尾的日志
+    static void appendLine(StringBuilder sb, int level, long timeMillis, String message, boolean plain) {
+        String time = getTimestamp(timeMillis);
+        if (plain) {
+            sb.append('[').append(time).append("] ").append(LEVEL_TAGS[level]).append(message);
+        } else {
+            sb.append(AnsiColor.WHITE).append('[').append(time).append(']').append(AnsiColor.RESET).append(' ')
+              .append(LEVEL_COLORS[level]).append(LEVEL_TAGS[level]).append(message).append(AnsiColor.RESET);
+        }
+        sb.append('\n');
+    }
+
+    private static String getTimestamp(long timeMillis) {
+        long second = Math.floorDiv(timeMillis, 1000);
+        CachedTimestamp cached = timestamp;
+        if (cached.second != second) {
+            cached = new CachedTimestamp(second, formatter.format(Instant.ofEpochSecond(second)));
+            timestamp = cached;
+        }
+        return cached.text;
     }
 }
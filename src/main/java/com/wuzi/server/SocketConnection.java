@@ -0,0 +1,57 @@
+package com.wuzi.server;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 阻塞模式下基于 Socket 输出流的连接
+public class SocketConnection implements Connection {
+    private final Socket socket;
+    private final OutputStream out;
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    public SocketConnection(Socket socket) throws IOException {
+        this.socket = socket;
+        this.out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    @Override
+    public void write(byte[] data) {
+        writeLock.lock();
+        try {
+            out.write(data);
+            out.flush();
+        } catch (IOException e) {
+            // 与原 PrintWriter 行为一致：写失败不抛出，读线程会感知断线
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // 整批写入缓冲区后只 flush 一次
+    @Override
+    public void write(byte[][] data, int count) {
+        writeLock.lock();
+        try {
+            for (int i = 0; i < count; i++) {
+                out.write(data[i]);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // 同 write
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
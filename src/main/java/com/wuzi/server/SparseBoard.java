@@ -0,0 +1,289 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BoardFormatter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// 无边界棋盘：棋子存放在线性探测的开放寻址哈希表中，键为打包成 long 的坐标，键和值都是基本类型数组，
+// 内存只与棋子数有关。胜负只沿经过落子点的四条线逐格判断；文本渲染只画最近几手周围的一块视口
+public class SparseBoard implements Board {
+    // 坐标范围 [-LIMIT, LIMIT]
+    public static final int LIMIT = 1_000_000;
+    // 视口边长至少 VIEW，最近几手分布更散时放大，但不超过 MAX_VIEW
+    static final int VIEW = 15;
+    static final int MAX_VIEW = 25;
+    // 视口取最近这么多手的范围
+    private static final int RECENT = 8;
+    private static final long FREE = Long.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private long[] keys = newKeys(INITIAL_CAPACITY);
+    private byte[] values = new byte[INITIAL_CAPACITY];
+    private int count;
+    // 最近 RECENT 手的环形缓冲
+    private final int[] recentX = new int[RECENT];
+    private final int[] recentY = new int[RECENT];
+    private int moves;
+    private volatile int version;
+    private byte[] rendered;
+    private int renderedVersion = -1;
+
+    private static long[] newKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, FREE);
+        return keys;
+    }
+
+    private static long key(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & (keys.length - 1);
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+            if (keys[i] == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    private void put(long key, byte value) {
+        if ((count + 1) * 2 > keys.length) {
+            grow();
+        }
+        int mask = keys.length - 1;
+        int i = slot(key);
+        while (keys[i] != FREE) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        count++;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        byte[] oldValues = values;
+        keys = newKeys(oldKeys.length * 2);
+        values = new byte[oldKeys.length * 2];
+        count = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    // 线性探测下的删除：把后面探测链上的键前移填补空位，不留墓碑
+    private void delete(long key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return;
+        }
+        int mask = keys.length - 1;
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            if (keys[j] == FREE) {
+                break;
+            }
+            int home = slot(keys[j]);
+            boolean stays = i <= j ? (i < home && home <= j) : (i < home || home <= j);
+            if (!stays) {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = FREE;
+        values[i] = 0;
+        count--;
+    }
+
+    @Override
+    public int getSize() {
+        return 0;
+    }
+
+    @Override
+    public void reset() {
+        // 上一局很大时释放表空间
+        keys = newKeys(INITIAL_CAPACITY);
+        values = new byte[INITIAL_CAPACITY];
+        count = 0;
+        moves = 0;
+        version++;
+    }
+
+    @Override
+    public boolean isInside(int x, int y) {
+        return x >= -LIMIT && x <= LIMIT && y >= -LIMIT && y <= LIMIT;
+    }
+
+    @Override
+    public boolean makeMove(int x, int y, String color) {
+        if (!isInside(x, y) || getCell(x, y) != 0) {
+            return false;
+        }
+        place(x, y, color.equals("black") ? 0 : 1);
+        recentX[moves % RECENT] = x;
+        recentY[moves % RECENT] = y;
+        moves++;
+        version++;
+        return true;
+    }
+
+    @Override
+    public void place(int x, int y, int c) {
+        put(key(x, y), (byte) (c + 1));
+    }
+
+    @Override
+    public void remove(int x, int y, int c) {
+        delete(key(x, y));
+    }
+
+    @Override
+    public int getCell(int x, int y) {
+        if (!isInside(x, y)) {
+            return 0;
+        }
+        int i = indexOf(key(x, y));
+        return i < 0 ? 0 : values[i];
+    }
+
+    public int getStoneCount() {
+        return count;
+    }
+
+    @Override
+    public boolean checkWin(int x, int y) {
+        int piece = getCell(x, y);
+        if (piece == 0) return false;
+        for (int dir = 0; dir < 4; dir++) {
+            int dx = LinePatterns.DX[dir];
+            int dy = LinePatterns.DY[dir];
+            int run = 1;
+            for (int i = 1; i < 5 && getCell(x + dx * i, y + dy * i) == piece; i++) {
+                run++;
+            }
+            for (int i = 1; i < 5 && getCell(x - dx * i, y - dy * i) == piece; i++) {
+                run++;
+            }
+            if (run >= 5) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int linePattern(int c, int x, int y, int dir) {
+        int dx = LinePatterns.DX[dir];
+        int dy = LinePatterns.DY[dir];
+        int index = 0;
+        for (int i = 0; i < LinePatterns.WINDOW; i++) {
+            int offset = i - LinePatterns.RADIUS;
+            if (offset == 0) {
+                continue;
+            }
+            int px = x + dx * offset;
+            int py = y + dy * offset;
+            int cell = getCell(px, py);
+            if (!isInside(px, py) || (cell != 0 && cell != c + 1)) {
+                index += 2 * LinePatterns.WEIGHTS[i];
+            } else if (cell != 0) {
+                index += LinePatterns.WEIGHTS[i];
+            }
+        }
+        return LinePatterns.lookup(index);
+    }
+
+    @Override
+    public int getLastMoveX() {
+        return moves == 0 ? 0 : recentX[(moves - 1) % RECENT];
+    }
+
+    @Override
+    public int getLastMoveY() {
+        return moves == 0 ? 0 : recentY[(moves - 1) % RECENT];
+    }
+
+    @Override
+    public int getVersion() {
+        return version;
+    }
+
+    // 以换行结尾的视口文本，按版本缓存
+    @Override
+    public synchronized byte[] renderBytes() {
+        int current = version;
+        if (rendered == null || renderedVersion != current) {
+            rendered = (renderViewport() + "\n").getBytes(StandardCharsets.UTF_8);
+            renderedVersion = current;
+        }
+        return rendered;
+    }
+
+    private String renderViewport() {
+        int minX = 0;
+        int maxX = 0;
+        int minY = 0;
+        int maxY = 0;
+        int recent = Math.min(moves, RECENT);
+        for (int i = 0; i < recent; i++) {
+            int x = recentX[i];
+            int y = recentY[i];
+            if (i == 0) {
+                minX = maxX = x;
+                minY = maxY = y;
+            } else {
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+        }
+        // 四周各留两格
+        int rows = Math.max(VIEW, Math.min(MAX_VIEW, maxX - minX + 5));
+        int cols = Math.max(VIEW, Math.min(MAX_VIEW, maxY - minY + 5));
+        int top = Math.floorDiv(minX + maxX, 2) - rows / 2;
+        int left = Math.floorDiv(minY + maxY, 2) - cols / 2;
+        boolean hasLast = moves > 0;
+        int lastX = getLastMoveX();
+        int lastY = getLastMoveY();
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("视口：行 %d..%d，列 %d..%d（列号只显示个位）\n", top, top + rows - 1, left, left + cols - 1));
+        sb.append("         ");
+        for (int j = 0; j < cols; j++) {
+            sb.append(Math.floorMod(left + j, 10)).append(' ');
+        }
+        sb.append('\n');
+        for (int i = 0; i < rows; i++) {
+            int x = top + i;
+            sb.append(String.format("%8d ", x));
+            for (int j = 0; j < cols; j++) {
+                int y = left + j;
+                // 视口不是棋盘边缘，每格都按内部交叉点绘制
+                sb.append(BoardFormatter.cell(3, 1, 1, getCell(x, y), hasLast && x == lastX && y == lastY));
+            }
+            sb.append('\n');
+        }
+        return sb.substring(0, sb.length() - 1);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = renderBytes();
+        return new String(bytes, 0, bytes.length - 1, StandardCharsets.UTF_8);
+    }
+}
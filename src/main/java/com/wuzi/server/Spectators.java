@@ -0,0 +1,147 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BinaryProtocol;
+import com.wuzi.common.BoardDelta;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 房间的观战者集合。每个房间事件只按三种输出格式各编码一次，得到的不可变字节数组
+// 由扇出线程分发到每个观战者的发送队列，对局双方的线程只负责编码和入队一个事件；
+// 慢观战者按发送队列的策略丢弃提示、合并棋盘更新
+public class Spectators {
+    private static final AtomicInteger FANOUT_IDS = new AtomicInteger();
+    private static final ExecutorService FANOUT = Executors.newFixedThreadPool(
+        Math.max(2, Runtime.getRuntime().availableProcessors()), r -> {
+            Thread t = new Thread(r, "wuzi-fanout-" + FANOUT_IDS.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+    // 一个房间事件的三种编码：完整文本棋盘/提示、增量文本、二进制帧；为 null 表示该格式无需发送
+    private static class Event {
+        final byte[] text;
+        final byte[] delta;
+        final byte[] binary;
+        final OutboundQueue.Kind kind;
+
+        Event(byte[] text, byte[] delta, byte[] binary, OutboundQueue.Kind kind) {
+            this.text = text;
+            this.delta = delta;
+            this.binary = binary;
+            this.kind = kind;
+        }
+    }
+
+    private final GameRoom room;
+    private final Set<Player> watchers = ConcurrentHashMap.newKeySet();
+    // 同一房间的事件按发布顺序串行扇出
+    private final Queue<Event> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    public Spectators(GameRoom room) {
+        this.room = room;
+    }
+
+    public void add(Player player) {
+        watchers.add(player);
+        room.notifyStateChanged();
+    }
+
+    public void remove(Player player) {
+        if (watchers.remove(player)) {
+            room.notifyStateChanged();
+        }
+    }
+
+    public int size() {
+        return watchers.size();
+    }
+
+    public boolean isEmpty() {
+        return watchers.isEmpty();
+    }
+
+    public void publishMessage(String message) {
+        if (watchers.isEmpty()) {
+            return;
+        }
+        byte[] text = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        publish(new Event(text, null, BinaryProtocol.text(message), OutboundQueue.Kind.INFO));
+    }
+
+    public void publishBoard() {
+        if (watchers.isEmpty()) {
+            return;
+        }
+        publish(new Event(room.getBoardBytes(), line(room.getBoardSnapshot()), room.getBoardFrame(), OutboundQueue.Kind.BOARD));
+    }
+
+    public void publishMove(int x, int y, String color) {
+        if (watchers.isEmpty()) {
+            return;
+        }
+        if (room.isUnbounded()) {
+            publishBoard();
+            return;
+        }
+        int seq = room.getMoveSeq();
+        publish(new Event(room.getBoardBytes(), line(BoardDelta.move(seq, x, y, color)),
+            BinaryProtocol.move(seq, x, y, color), OutboundQueue.Kind.BOARD));
+    }
+
+    public void publishGameOver(Player winner, String message) {
+        if (watchers.isEmpty()) {
+            return;
+        }
+        byte[] text = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        publish(new Event(text, null, BinaryProtocol.gameOver(winner.getColor(), winner.getName()), OutboundQueue.Kind.ESSENTIAL));
+    }
+
+    private static byte[] line(String text) {
+        return (text + "\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void publish(Event event) {
+        pending.add(event);
+        if (scheduled.compareAndSet(false, true)) {
+            FANOUT.execute(this::fanOut);
+        }
+    }
+
+    // 一次取出的多个事件对每个观战者合并写出
+    private void fanOut() {
+        do {
+            OutboundBatch.begin();
+            try {
+                Event event;
+                while ((event = pending.poll()) != null) {
+                    for (Player watcher : watchers) {
+                        deliver(watcher, event);
+                    }
+                }
+            } finally {
+                OutboundBatch.end();
+            }
+            scheduled.set(false);
+        } while (!pending.isEmpty() && scheduled.compareAndSet(false, true));
+    }
+
+    private static void deliver(Player player, Event event) {
+        byte[] data;
+        if (player.getProtocol() == Player.Protocol.BINARY) {
+            data = event.binary;
+        } else if (player.isDeltaUpdates() && event.delta != null) {
+            data = event.delta;
+        } else {
+            data = event.text;
+        }
+        player.send(data, event.kind);
+    }
+}
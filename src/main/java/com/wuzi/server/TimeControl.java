@@ -0,0 +1,99 @@
+package com.wuzi.server;
+
+// 对局的计时规则：主时间加每手加秒（费舍尔），或主时间用完后进入读秒。
+// 不可变，房间之间共享同一个实例
+public final class TimeControl {
+    public static final TimeControl NONE = new TimeControl(0, 0, 0, 0);
+
+    // 解析时的上限：先检查再乘以毫秒数，避免溢出成负数而变成不计时；
+    // 读秒次数在对局日志中以一个字节保存
+    static final long MAX_MAIN_MINUTES = 24 * 60;
+    static final long MAX_SECONDS = 3600;
+    static final int MAX_PERIODS = 255;
+
+    private final long mainMillis;
+    private final long incrementMillis;
+    private final long periodMillis;
+    private final int periods;
+
+    public TimeControl(long mainMillis, long incrementMillis, long periodMillis, int periods) {
+        this.mainMillis = mainMillis;
+        this.incrementMillis = incrementMillis;
+        this.periodMillis = periodMillis;
+        this.periods = periods;
+    }
+
+    // off 不计时；"10+5" 为 10 分钟加每手 5 秒；"5/30x3" 为 5 分钟后读秒 30 秒共 3 次，省略 x 时为 1 次。
+    // 格式错误或超出上限（主时间 24 小时，加秒与读秒 3600 秒，读秒 255 次）返回 null
+    public static TimeControl parse(String spec) {
+        if (spec == null) {
+            return null;
+        }
+        if (spec.equalsIgnoreCase("off")) {
+            return NONE;
+        }
+        try {
+            int plus = spec.indexOf('+');
+            if (plus > 0) {
+                long main = Long.parseLong(spec.substring(0, plus));
+                long increment = Long.parseLong(spec.substring(plus + 1));
+                if (main <= 0 || main > MAX_MAIN_MINUTES || increment < 0 || increment > MAX_SECONDS) {
+                    return null;
+                }
+                return new TimeControl(main * 60_000, increment * 1000, 0, 0);
+            }
+            int slash = spec.indexOf('/');
+            if (slash > 0) {
+                long main = Long.parseLong(spec.substring(0, slash));
+                String byoyomi = spec.substring(slash + 1);
+                int x = byoyomi.indexOf('x');
+                long period = Long.parseLong(x < 0 ? byoyomi : byoyomi.substring(0, x));
+                int periods = x < 0 ? 1 : Integer.parseInt(byoyomi.substring(x + 1));
+                if (main < 0 || main > MAX_MAIN_MINUTES || period <= 0 || period > MAX_SECONDS
+                        || periods <= 0 || periods > MAX_PERIODS) {
+                    return null;
+                }
+                return new TimeControl(main * 60_000, 0, period * 1000, periods);
+            }
+            long main = Long.parseLong(spec);
+            return main > 0 && main <= MAX_MAIN_MINUTES ? new TimeControl(main * 60_000, 0, 0, 0) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public boolean isTimed() {
+        return mainMillis > 0 || periods > 0;
+    }
+
+    public long getMainMillis() {
+        return mainMillis;
+    }
+
+    public long getIncrementMillis() {
+        return incrementMillis;
+    }
+
+    public long getPeriodMillis() {
+        return periodMillis;
+    }
+
+    public int getPeriods() {
+        return periods;
+    }
+
+    public String getDisplayName() {
+        if (!isTimed()) {
+            return "不计时";
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append(mainMillis / 60_000).append(" 分钟");
+        if (incrementMillis > 0) {
+            sb.append("，每手加 ").append(incrementMillis / 1000).append(" 秒");
+        }
+        if (periods > 0) {
+            sb.append("，读秒 ").append(periodMillis / 1000).append(" 秒 ×").append(periods);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,189 @@
+package com.wuzi.server;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+// 哈希时间轮：全服的对局计时与空闲超时共用一个计时线程。每个格子是一条侵入式双向链表，
+// 到期刻度对格子数取模决定放在哪一格；计时线程每个刻度只检查当前格子。
+// 调度和取消都是加锁后 O(1) 的链表操作，Timeout 对象可反复调度，重新计时不分配内存
+public class TimingWheel {
+    private final long tickMillis;
+    private final int mask;
+    private final Timeout[] buckets;
+    // 只保护链表结构；到期任务在锁外执行，可以在任务里重新调度自己
+    private final ReentrantLock lock = new ReentrantLock();
+    // 已推进到的刻度，由计时线程在锁内递增
+    private volatile long tick;
+    private int size;
+    // 每个刻度取出的到期任务，只由推进时间轮的线程使用
+    private Timeout[] expired = new Timeout[64];
+    private Thread thread;
+
+    // 可反复调度的定时任务，同一时刻最多在时间轮中出现一次
+    public static final class Timeout {
+        private final Runnable task;
+        private long deadline;
+        private int bucket = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    // slots 会向上取整为 2 的幂
+    public TimingWheel(long tickMillis, int slots) {
+        if (tickMillis <= 0 || slots <= 0) {
+            throw new IllegalArgumentException("刻度和格子数必须大于 0");
+        }
+        this.tickMillis = tickMillis;
+        int n = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+        this.buckets = new Timeout[n];
+        this.mask = n - 1;
+    }
+
+    public Timeout newTimeout(Runnable task) {
+        return new Timeout(task);
+    }
+
+    // delayMillis 之后执行，按刻度向上取整；已在等待中的任务改为新的到期时间
+    public void schedule(Timeout timeout, long delayMillis) {
+        long ticks = Math.max(1, (delayMillis + tickMillis - 1) / tickMillis);
+        lock.lock();
+        try {
+            if (timeout.bucket >= 0) {
+                unlink(timeout);
+            }
+            timeout.deadline = tick + ticks;
+            int index = (int) (timeout.deadline & mask);
+            Timeout head = buckets[index];
+            timeout.bucket = index;
+            timeout.prev = null;
+            timeout.next = head;
+            if (head != null) {
+                head.prev = timeout;
+            }
+            buckets[index] = timeout;
+            size++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 返回任务是否还在等待中（被本次调用取消）
+    public boolean cancel(Timeout timeout) {
+        lock.lock();
+        try {
+            if (timeout.bucket < 0) {
+                return false;
+            }
+            unlink(timeout);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean isPending(Timeout timeout) {
+        lock.lock();
+        try {
+            return timeout.bucket >= 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 调用方持有 lock
+    private void unlink(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+
+    // 推进一个刻度并执行到期的任务，返回执行的任务数
+    int advance() {
+        int count = 0;
+        lock.lock();
+        try {
+            long now = ++tick;
+            Timeout t = buckets[(int) (now & mask)];
+            while (t != null) {
+                Timeout next = t.next;
+                // 同一格里还有之后几圈才到期的任务
+                if (t.deadline <= now) {
+                    unlink(t);
+                    if (count == expired.length) {
+                        expired = Arrays.copyOf(expired, count * 2);
+                    }
+                    expired[count++] = t;
+                }
+                t = next;
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < count; i++) {
+            Timeout t = expired[i];
+            expired[i] = null;
+            try {
+                t.task.run();
+            } catch (RuntimeException e) {
+                ServerLogger.error("定时任务执行出错：" + e.getMessage());
+            }
+        }
+        return count;
+    }
+
+    // 时间轮自身的时钟（毫秒），精度为一个刻度；读取只是一次 volatile 读
+    public long now() {
+        return tick * tickMillis;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::run, "wuzi-timer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // 按绝对时间对齐刻度，某个刻度处理得慢时后面的刻度连续追上，不会累积漂移
+    private void run() {
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        long origin = System.nanoTime() - tick * tickNanos;
+        while (true) {
+            long wait = origin + (tick + 1) * tickNanos - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            advance();
+        }
+    }
+}
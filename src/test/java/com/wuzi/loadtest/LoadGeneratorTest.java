@@ -0,0 +1,100 @@
+package com.wuzi.loadtest;
+
+import com.wuzi.server.NioServer;
+import com.wuzi.server.RoomManager;
+import com.wuzi.server.ServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LoadGeneratorTest {
+    private NioServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setEventLoops(2);
+        RoomManager roomManager = new RoomManager();
+        roomManager.getMatchmaker().start(20);
+        server = new NioServer(config, roomManager);
+        server.bind();
+        Thread acceptor = new Thread(server::serve);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    // 思考时间固定为 30 毫秒，每个会话的落子速率低于默认的对局限流
+    private LoadConfig config(int port) {
+        LoadConfig config = new LoadConfig();
+        config.setPort(port);
+        config.setSessions(4);
+        config.setRampSeconds(1);
+        config.setDurationSeconds(60);
+        config.setGamesPerSession(1);
+        config.setThinkMedianMillis(30);
+        config.setThinkSigma(0);
+        config.setTimeoutSeconds(10);
+        config.setReportSeconds(60);
+        return config;
+    }
+
+    @Test
+    void testTextSessionsPlayFullGames() throws Exception {
+        LoadStats stats = new LoadGenerator(config(server.getPort())).run();
+        assertEquals(4, stats.getConnected());
+        assertEquals(2, stats.getGames());
+        assertTrue(stats.getMoves() >= 9, "每局至少 9 手");
+        assertEquals(0, stats.getErrorTotal(), stats.getErrors().toString());
+        assertEquals(0, stats.getActive());
+        long[] p = stats.roundTripPercentiles(0.5, 0.999);
+        assertTrue(p[0] > 0 && p[0] <= p[1]);
+    }
+
+    @Test
+    void testBinaryMatchSessions() throws Exception {
+        LoadConfig config = config(server.getPort());
+        config.setBinary(true);
+        config.setEntry(LoadConfig.Entry.MATCH);
+        LoadStats stats = new LoadGenerator(config).run();
+        assertEquals(2, stats.getGames());
+        assertEquals(0, stats.getErrorTotal(), stats.getErrors().toString());
+    }
+
+    @Test
+    void testConnectFailuresAreCounted() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        LoadStats stats = new LoadGenerator(config(port)).run();
+        assertEquals(4, stats.getConnectFailures());
+        assertEquals(0, stats.getConnected());
+    }
+
+    @Test
+    void testLoadScripts(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("openings.txt");
+        Files.write(file, List.of("# 花月", "7,7 7,8 8,8", "", "7,7  8,6"), StandardCharsets.UTF_8);
+        List<int[]> scripts = LoadGenerator.loadScripts(file.toString());
+        assertEquals(2, scripts.size());
+        assertArrayEquals(new int[]{7, 7, 7, 8, 8, 8}, scripts.get(0));
+        assertArrayEquals(new int[]{7, 7, 8, 6}, scripts.get(1));
+
+        Files.write(file, List.of("7,7 8"), StandardCharsets.UTF_8);
+        assertThrows(IOException.class, () -> LoadGenerator.loadScripts(file.toString()));
+    }
+}
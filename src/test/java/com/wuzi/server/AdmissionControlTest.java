@@ -0,0 +1,127 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdmissionControlTest {
+
+    private static class RecordingConnection implements Connection {
+        final List<String> lines = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(byte[] data) {
+            lines.add(new String(data, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+        }
+
+        long count(String text) {
+            return lines.stream().filter(line -> line.contains(text)).count();
+        }
+    }
+
+    @Test
+    void testTokenBucketBurstAndRefill() {
+        long second = TimeUnit.SECONDS.toNanos(1);
+        RateLimiter limiter = new RateLimiter(2, 3, 0, 0);
+        long now = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(RateLimiter.CommandClass.LOBBY, now));
+        }
+        assertFalse(limiter.tryAcquire(RateLimiter.CommandClass.LOBBY, now));
+        // 半秒补回一个令牌，空闲再久也不超过突发容量
+        assertTrue(limiter.tryAcquire(RateLimiter.CommandClass.LOBBY, now + second / 2));
+        assertFalse(limiter.tryAcquire(RateLimiter.CommandClass.LOBBY, now + second / 2));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire(RateLimiter.CommandClass.LOBBY, now + 60 * second));
+        }
+        assertFalse(limiter.tryAcquire(RateLimiter.CommandClass.LOBBY, now + 60 * second));
+        // 速率为 0 的类别与退出命令不限流
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire(RateLimiter.CommandClass.GAME, now));
+        }
+        assertTrue(limiter.tryAcquire(RateLimiter.CommandClass.EXEMPT, now));
+    }
+
+    @Test
+    void testFloodIsThrottledPerSessionAndClass() throws InterruptedException {
+        RoomManager manager = new RoomManager(1, 10, 60_000);
+        RecordingConnection spammer = new RecordingConnection();
+        RecordingConnection other = new RecordingConnection();
+        ClientHandler h1 = new ClientHandler(manager);
+        ClientHandler h2 = new ClientHandler(manager);
+        h1.login("Spam", spammer, "test");
+        h2.login("Calm", other, "test");
+        long throttled = RateLimiter.getThrottledTotal();
+
+        for (int i = 0; i < 200; i++) {
+            assertTrue(h1.handleLine("help"));
+        }
+        // 默认大厅突发 20 条，一轮刷屏只提示一次
+        Thread.sleep(100);
+        long served = spammer.count("五子棋命令帮助");
+        assertTrue(served >= 20 && served < 40, "执行了 " + served + " 条");
+        assertEquals(1, spammer.count("操作过于频繁"));
+        assertTrue(RateLimiter.getThrottledTotal() - throttled >= 160);
+
+        // 对局命令是另一个令牌桶；其他会话不受影响
+        assertTrue(h1.handleLine("sync"));
+        assertTrue(h2.handleLine("help"));
+        Thread.sleep(100);
+        assertTrue(spammer.count("当前没有进行中的对局") >= 1);
+        assertEquals(1, other.count("五子棋命令帮助"));
+        // 退出不限流
+        assertFalse(h1.handleLine("quit"));
+    }
+
+    @Test
+    void testConnectionsBeyondCapAreHeldThenRejected() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setEventLoops(1);
+        AdmissionControl admission = new AdmissionControl(1);
+        NioServer server = new NioServer(config, new RoomManager(), admission);
+        server.bind();
+        Thread acceptor = new Thread(server::serve);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        try {
+            Socket first = new Socket("localhost", server.getPort());
+            BufferedReader r1 = new BufferedReader(new InputStreamReader(first.getInputStream(), StandardCharsets.UTF_8));
+            assertTrue(r1.readLine().contains("请输入你的名字"));
+            assertEquals(1, admission.getActiveConnections());
+
+            // 第二个连接先在内核队列里等待，等不到空位才被拒绝
+            try (Socket second = new Socket("localhost", server.getPort())) {
+                BufferedReader r2 = new BufferedReader(new InputStreamReader(second.getInputStream(), StandardCharsets.UTF_8));
+                long start = System.nanoTime();
+                assertTrue(r2.readLine().contains("服务器连接数已满"));
+                assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= AdmissionControl.ACCEPT_WAIT_MILLIS / 2);
+                assertNull(r2.readLine());
+            }
+            assertEquals(1, admission.getRejectedTotal());
+            assertTrue(admission.getStallTotal() >= 1);
+
+            // 第一个连接断开后名额归还，新连接正常登录
+            first.close();
+            for (int i = 0; i < 200 && admission.getActiveConnections() > 0; i++) {
+                Thread.sleep(10);
+            }
+            try (Socket third = new Socket("localhost", server.getPort())) {
+                BufferedReader r3 = new BufferedReader(new InputStreamReader(third.getInputStream(), StandardCharsets.UTF_8));
+                assertTrue(r3.readLine().contains("请输入你的名字"));
+            }
+        } finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BinaryProtocol;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryProtocolTest {
+    private NioServer nioServer;
+    private ServerSocket blockingServer;
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (nioServer != null) {
+            nioServer.close();
+        }
+        if (blockingServer != null) {
+            blockingServer.close();
+        }
+    }
+
+    private int startNio(RoomManager roomManager) throws IOException {
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setEventLoops(1);
+        nioServer = new NioServer(config, roomManager);
+        nioServer.bind();
+        Thread acceptor = new Thread(nioServer::serve);
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return nioServer.getPort();
+    }
+
+    private int startBlocking(RoomManager roomManager) throws IOException {
+        blockingServer = new ServerSocket(0);
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = blockingServer.accept();
+                    Thread session = new Thread(new ClientHandler(socket, roomManager));
+                    session.setDaemon(true);
+                    session.start();
+                }
+            } catch (IOException e) {
+                // 测试结束时关闭
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return blockingServer.getLocalPort();
+    }
+
+    @Test
+    void testNioGame() throws Exception {
+        playGame(startNio(new RoomManager()));
+    }
+
+    @Test
+    void testBlockingGame() throws Exception {
+        playGame(startBlocking(new RoomManager()));
+    }
+
+    @Test
+    void testNioFrameSplitAcrossReads() throws Exception {
+        int port = startNio(new RoomManager());
+        try (Socket socket = new Socket("localhost", port)) {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            OutputStream out = socket.getOutputStream();
+            while (in.read() != '\n') {
+                // 跳过名字提示
+            }
+            // 握手行与下一帧的第一个字节在同一次写入中到达
+            byte[] list = BinaryProtocol.frame(BinaryProtocol.OP_LIST);
+            byte[] handshake = (BinaryProtocol.HANDSHAKE + "丙\n").getBytes(StandardCharsets.UTF_8);
+            byte[] first = new byte[handshake.length + 1];
+            System.arraycopy(handshake, 0, first, 0, handshake.length);
+            first[handshake.length] = list[0];
+            out.write(first);
+            out.flush();
+            assertEquals(BinaryProtocol.EV_TEXT, BinaryProtocol.readFrame(in, BinaryProtocol.MAX_FRAME_LENGTH)[0] & 0xFF);
+            for (int i = 1; i < list.length; i++) {
+                out.write(list[i]);
+                out.flush();
+                Thread.sleep(20);
+            }
+            assertEquals(BinaryProtocol.EV_ROOM_LIST, BinaryProtocol.readFrame(in, BinaryProtocol.MAX_FRAME_LENGTH)[0] & 0xFF);
+        }
+    }
+
+    @Test
+    void testRejectedRequestsGetTypedErrors() throws Exception {
+        int port = startNio(new RoomManager());
+        try (Client a = new Client(port, "丁")) {
+            a.send(BinaryProtocol.put(7, 7));
+            ByteBuffer error = a.expect(BinaryProtocol.EV_ERROR);
+            assertEquals(BinaryProtocol.OP_PUT, error.get() & 0xFF);
+            assertEquals(BinaryProtocol.ERR_NOT_IN_ROOM, error.get());
+
+            a.send(BinaryProtocol.enter(1));
+            a.send(BinaryProtocol.put(7, 7));
+            error = a.expect(BinaryProtocol.EV_ERROR);
+            assertEquals(BinaryProtocol.OP_PUT, error.get() & 0xFF);
+            assertEquals(BinaryProtocol.ERR_NOT_STARTED, error.get());
+
+            // 缺少房间号的观战请求与未知操作码
+            a.send(BinaryProtocol.frame(BinaryProtocol.OP_WATCH));
+            error = a.expect(BinaryProtocol.EV_ERROR);
+            assertEquals(BinaryProtocol.OP_WATCH, error.get() & 0xFF);
+            assertEquals(BinaryProtocol.ERR_MALFORMED, error.get());
+            a.send(BinaryProtocol.frame(0x7F));
+            error = a.expect(BinaryProtocol.EV_ERROR);
+            assertEquals(0x7F, error.get() & 0xFF);
+            assertEquals(BinaryProtocol.ERR_UNKNOWN_OPCODE, error.get());
+            assertEquals("未知命令", StandardCharsets.UTF_8.decode(error).toString());
+        }
+    }
+
+    private static class Client implements AutoCloseable {
+        final Socket socket;
+        final DataInputStream in;
+        final OutputStream out;
+
+        Client(int port, String name) throws IOException {
+            socket = new Socket("localhost", port);
+            in = new DataInputStream(socket.getInputStream());
+            out = socket.getOutputStream();
+            // 名字提示仍是文本行
+            while (in.read() != '\n') {
+                // 跳过
+            }
+            out.write((BinaryProtocol.HANDSHAKE + name + "\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertEquals(BinaryProtocol.EV_TEXT, next().get() & 0xFF);
+        }
+
+        void send(byte[] frame) throws IOException {
+            out.write(frame);
+            out.flush();
+        }
+
+        ByteBuffer next() throws IOException {
+            byte[] frame = BinaryProtocol.readFrame(in, BinaryProtocol.MAX_FRAME_LENGTH);
+            assertNotNull(frame);
+            return ByteBuffer.wrap(frame);
+        }
+
+        // 跳过文本提示，返回下一个指定类型的事件
+        ByteBuffer expect(int event) throws IOException {
+            while (true) {
+                ByteBuffer frame = next();
+                int opcode = frame.get() & 0xFF;
+                if (opcode == event) {
+                    return frame;
+                }
+                assertEquals(BinaryProtocol.EV_TEXT, opcode, "unexpected event 0x" + Integer.toHexString(opcode));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    private void playGame(int port) throws Exception {
+        try (Client a = new Client(port, "甲"); Client b = new Client(port, "乙")) {
+            a.send(BinaryProtocol.frame(BinaryProtocol.OP_LIST));
+            ByteBuffer list = a.expect(BinaryProtocol.EV_ROOM_LIST);
+            assertEquals(10, list.getShort());
+            assertEquals(1, list.getInt());
+            assertEquals(0, list.get());
+            assertEquals(BinaryProtocol.ROOM_FREE, list.get());
+
+            a.send(BinaryProtocol.enter(1));
+            b.send(BinaryProtocol.enter(1));
+            a.send(BinaryProtocol.frame(BinaryProtocol.OP_START));
+            b.send(BinaryProtocol.frame(BinaryProtocol.OP_START));
+
+            int colorA = a.expect(BinaryProtocol.EV_GAME_START).get();
+            int colorB = b.expect(BinaryProtocol.EV_GAME_START).get();
+            assertNotEquals(colorA, colorB);
+            ByteBuffer board = a.expect(BinaryProtocol.EV_BOARD);
+            assertEquals(0, board.getShort());
+            assertEquals(4 + 225, board.remaining() + 2);
+            b.expect(BinaryProtocol.EV_BOARD);
+
+            Client black = colorA == BinaryProtocol.BLACK ? a : b;
+            Client white = black == a ? b : a;
+            for (int i = 0; i < 5; i++) {
+                black.send(BinaryProtocol.put(7, i));
+                assertEquals(2 * i + 1, black.expect(BinaryProtocol.EV_MOVE).getShort());
+                ByteBuffer move = white.expect(BinaryProtocol.EV_MOVE);
+                assertEquals(2 * i + 1, move.getShort());
+                assertEquals(7, move.get());
+                assertEquals(i, move.get());
+                assertEquals(BinaryProtocol.BLACK, move.get());
+                if (i == 4) {
+                    break;
+                }
+                assertEquals(BinaryProtocol.WHITE, white.expect(BinaryProtocol.EV_TURN).get());
+                white.send(BinaryProtocol.put(8, i));
+                assertEquals(2 * i + 2, white.expect(BinaryProtocol.EV_MOVE).getShort());
+                assertEquals(2 * i + 2, black.expect(BinaryProtocol.EV_MOVE).getShort());
+                assertEquals(BinaryProtocol.BLACK, black.expect(BinaryProtocol.EV_TURN).get());
+            }
+            ByteBuffer over = white.expect(BinaryProtocol.EV_GAME_OVER);
+            assertEquals(BinaryProtocol.BLACK, over.get());
+            over = black.expect(BinaryProtocol.EV_GAME_OVER);
+            over.get();
+            assertEquals(black == a ? "甲" : "乙", StandardCharsets.UTF_8.decode(over).toString());
+
+            black.send(BinaryProtocol.frame(BinaryProtocol.OP_QUIT));
+            black.expect(BinaryProtocol.EV_TEXT);
+            assertNull(BinaryProtocol.readFrame(black.in, BinaryProtocol.MAX_FRAME_LENGTH));
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BoardFormatter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoardRendererTest {
+    private GameBoard gameBoard;
+
+    @BeforeEach
+    void setUp() {
+        gameBoard = new GameBoard();
+    }
+
+    private String expected() {
+        return BoardFormatter.render(gameBoard.getSize(), gameBoard::getCell, gameBoard.getLastMoveX(), gameBoard.getLastMoveY()) + "\n";
+    }
+
+    @Test
+    void testMatchesFormatterAfterEachMove() {
+        Random random = new Random(42);
+        assertEquals(expected(), new String(gameBoard.renderBytes(), StandardCharsets.UTF_8));
+        for (int i = 0; i < 150; i++) {
+            int x = random.nextInt(15);
+            int y = random.nextInt(15);
+            gameBoard.makeMove(x, y, i % 2 == 0 ? "black" : "white");
+            // 偶尔连续落两手再渲染，覆盖多行同时变脏的情况
+            if (i % 3 != 0) {
+                assertEquals(expected(), new String(gameBoard.renderBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        gameBoard.reset();
+        assertEquals(expected(), new String(gameBoard.renderBytes(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testSameVersionReusesBytes() {
+        gameBoard.makeMove(7, 7, "black");
+        byte[] first = gameBoard.renderBytes();
+        assertSame(first, gameBoard.renderBytes());
+        gameBoard.makeMove(7, 8, "white");
+        assertNotSame(first, gameBoard.renderBytes());
+    }
+
+    @Test
+    void testSteadyStateRenderDoesNotAllocate() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        gameBoard.makeMove(7, 7, "black");
+        for (int i = 0; i < 10_000; i++) {
+            gameBoard.renderBytes();
+        }
+
+        long before = threads.getThreadAllocatedBytes(threadId);
+        int total = 0;
+        for (int i = 0; i < 100_000; i++) {
+            total += gameBoard.renderBytes().length;
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+        assertTrue(total > 0);
+        // 允许少量测量本身的开销，远小于一次完整渲染（约 3.5 KB）
+        assertTrue(allocated < 1024, "allocated " + allocated + " bytes");
+    }
+}
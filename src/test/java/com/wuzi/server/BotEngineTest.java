@@ -0,0 +1,130 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import static org.junit.jupiter.api.Assertions.*;
+
+class BotEngineTest {
+
+    private static final int SIZE = BotEngine.SIZE;
+
+    private static byte[] board(int[][] black, int[][] white) {
+        byte[] cells = new byte[SIZE * SIZE];
+        for (int[] p : black) {
+            cells[p[0] * SIZE + p[1]] = 1;
+        }
+        for (int[] p : white) {
+            cells[p[0] * SIZE + p[1]] = 2;
+        }
+        return cells;
+    }
+
+    @Test
+    void testTakesWinningMove() {
+        byte[] cells = board(new int[][]{{7, 3}, {7, 4}, {7, 5}, {7, 6}}, new int[][]{{8, 3}, {8, 4}, {8, 5}, {6, 6}});
+        int move = new BotEngine(12).search(cells, 1, 4, 1000);
+        assertTrue(move == 7 * SIZE + 2 || move == 7 * SIZE + 7, "应当连成五子: " + move);
+    }
+
+    @Test
+    void testBlocksFour() {
+        // 白方 (7,3)-(7,6) 四连，左端已被黑棋挡住
+        byte[] cells = board(new int[][]{{7, 2}, {9, 9}, {10, 10}}, new int[][]{{7, 3}, {7, 4}, {7, 5}, {7, 6}});
+        assertEquals(7 * SIZE + 7, new BotEngine(12).search(cells, 1, 4, 1000));
+    }
+
+    @Test
+    void testBlocksOpenThree() {
+        byte[] cells = board(new int[][]{{3, 3}, {11, 11}}, new int[][]{{7, 5}, {7, 6}, {7, 7}});
+        int move = new BotEngine(12).search(cells, 1, 4, 1000);
+        assertTrue(move == 7 * SIZE + 4 || move == 7 * SIZE + 8 || move == 7 * SIZE + 3 || move == 7 * SIZE + 9,
+            "应当挡住活三: (" + move / SIZE + ", " + move % SIZE + ")");
+    }
+
+    @Test
+    void testSearchIsTimeBounded() {
+        byte[] cells = board(new int[][]{{7, 7}, {8, 8}, {6, 8}}, new int[][]{{7, 8}, {8, 7}});
+        long start = System.nanoTime();
+        int move = new BotEngine(12).search(cells, 2, 30, 100);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+        assertTrue(move >= 0 && cells[move] == 0);
+        assertTrue(elapsedMillis < 1000, "搜索超时: " + elapsedMillis + "ms");
+    }
+
+    @Test
+    void testBotAnswersInRoom() throws InterruptedException {
+        RoomManager roomManager = new RoomManager(1, 10, 1000);
+        GameRoom room = roomManager.getRoom(1);
+        Player human = new Player("Alice", new Connection() {
+            @Override
+            public void write(byte[] data) {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        BotPlayer bot = new BotPlayer(1, roomManager.getBotThinkers());
+        assertTrue(room.addPlayer(human));
+        assertTrue(room.addPlayer(bot));
+        human.setCurrentRoom(room);
+        bot.setCurrentRoom(room);
+        room.execute(() -> ClientHandler.startGame(room, bot));
+        room.execute(() -> ClientHandler.startGame(room, human));
+
+        // 电脑执黑时先等它落下第一手，之后真人下一手、电脑应一手
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!room.isGameStarted() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(room.isGameStarted());
+        int before = "black".equals(bot.getColor()) ? 1 : 0;
+        while (room.getMoveSeq() < before && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(before, room.getMoveSeq());
+        room.execute(() -> ClientHandler.makeMove(room, human, 0, 0));
+        int expected = before + 2;
+        while (room.getMoveSeq() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, room.getMoveSeq());
+        assertEquals(human.getColor(), room.getCurrentTurnColor());
+    }
+
+    @Test
+    void testExpiredDeadlineStillReturnsMove() {
+        byte[] cells = board(new int[][]{{7, 7}, {7, 8}}, new int[][]{{8, 7}});
+        int move = new BotEngine(12).searchUntil(cells, 2, 10, System.nanoTime() - 1, null);
+        assertTrue(move >= 0 && cells[move] == 0);
+    }
+
+    @Test
+    void testBotQueueIsBoundedByThreadCount() throws Exception {
+        RoomManager roomManager = new RoomManager(0, 10, 1000);
+        roomManager.setBotThreads(1);
+        Executor thinkers = roomManager.getBotThinkers();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch running = new CountDownLatch(1);
+        thinkers.execute(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        running.await();
+        try {
+            // 一个线程在忙，队列只能再排 4 个
+            for (int i = 0; i < 4; i++) {
+                thinkers.execute(() -> { });
+            }
+            assertThrows(RejectedExecutionException.class, () -> thinkers.execute(() -> { }));
+        } finally {
+            release.countDown();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandParserTest {
+    // 接近线上比例的命令组合：以落子为主，夹杂同步、列表、进房和准备
+    private static final String[] MIX = {
+        "put 7 7", "put 8 7", "put A 3", "put e e", "sync", "put 6 9", "put 7 B",
+        "ls rooms", "put 0 0", "start", "enter room 12", "put 3 4", "put D 2", "leave"
+    };
+
+    @Test
+    void testTokenizeAndLookup() {
+        CommandParser p = new CommandParser();
+        assertEquals(CommandParser.Command.PUT, p.parse("PUT  7\t8 "));
+        assertEquals(3, p.count());
+        assertEquals(CommandParser.Command.ENTER, p.parse("enter room"));
+        assertTrue(p.is(1, "room"));
+        assertFalse(p.is(2, "room"));
+        assertEquals(CommandParser.Command.UNKNOWN, p.parse(""));
+        assertEquals(0, p.count());
+        assertEquals(CommandParser.Command.UNKNOWN, p.parse("puts 7 7"));
+        assertEquals(CommandParser.Command.UNKNOWN, p.parse("落子 7 7"));
+        assertEquals(CommandParser.Command.SYNC, p.parse("sync"));
+        assertEquals(CommandParser.Command.CLOCK, p.parse("clock 10+5"));
+        assertEquals("10+5", p.text(1));
+        assertNull(p.text(2));
+        // 超出的词元忽略
+        p.parse("ls rooms 1 2 3 4 5 6 7 8 9");
+        assertEquals(CommandParser.MAX_TOKENS, p.count());
+    }
+
+    @Test
+    void testNumbersAndTypedErrors() {
+        CommandParser p = new CommandParser();
+        p.parse("put e A");
+        assertEquals(14, p.intAt(1, 36));
+        assertEquals(10, p.intAt(2, 36));
+        assertEquals(CommandParser.Error.NONE, p.error());
+
+        p.parse("put -12 +3");
+        assertEquals(-12, p.intAt(1, 10));
+        assertEquals(3, p.intAt(2, 10));
+
+        p.parse("put 7");
+        p.intAt(1, 36);
+        p.intAt(2, 36);
+        assertEquals(CommandParser.Error.MISSING_ARGUMENT, p.error());
+
+        // 只记录第一个错误
+        p.parse("put ? -");
+        assertEquals(0, p.intAt(1, 36));
+        p.intAt(2, 36);
+        assertEquals(CommandParser.Error.BAD_NUMBER, p.error());
+
+        p.parse("enter room 99999999999");
+        p.intAt(2, 10);
+        assertEquals(CommandParser.Error.BAD_NUMBER, p.error());
+
+        p.parse("replay 9223372036854775807 9223372036854775808");
+        assertEquals(Long.MAX_VALUE, p.longAt(1));
+        p.longAt(2);
+        assertEquals(CommandParser.Error.BAD_NUMBER, p.error());
+
+        p.parse("replay 42 0.5");
+        assertEquals(42, p.longAt(1));
+        assertEquals(0.5, p.decimalAt(2));
+        p.parse("replay 42 1e3");
+        p.decimalAt(2);
+        assertEquals(CommandParser.Error.BAD_NUMBER, p.error());
+        p.parse("replay 42 .");
+        p.decimalAt(2);
+        assertEquals(CommandParser.Error.BAD_NUMBER, p.error());
+    }
+
+    @Test
+    void testMalformedCommandGetsErrorReply() {
+        RoomManager manager = new RoomManager(1, 10, 60_000);
+        StringBuilder out = new StringBuilder();
+        ClientHandler handler = new ClientHandler(manager);
+        handler.login("A", new Connection() {
+            @Override
+            public synchronized void write(byte[] data) {
+                out.append(new String(data, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void close() {
+            }
+        }, "test");
+        assertTrue(handler.handleLine("enter room x"));
+        assertTrue(handler.handleLine("put 7"));
+        for (int i = 0; i < 100 && !out.toString().contains("缺少参数"); i++) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        assertTrue(out.toString().contains("命令格式错误：数字格式错误"));
+        assertTrue(out.toString().contains("命令格式错误：缺少参数"));
+    }
+
+    // 常见命令混合解析 rounds 次，新解析器整体分配的内存不足每 100 次一个字节，即解析本身不分配内存
+    @Test
+    void testParsingTheCommandMixDoesNotAllocate() {
+        CommandParser p = new CommandParser();
+        int rounds = 200_000;
+        long sink = 0;
+        // 预热，让解析经过 JIT 编译；耗时对比见 CommandParserBenchmark
+        for (int i = 0; i < rounds; i++) {
+            sink += parseNew(p, MIX[i % MIX.length]);
+        }
+
+        long allocatedBefore = allocatedBytes();
+        for (int i = 0; i < rounds; i++) {
+            sink += parseNew(p, MIX[i % MIX.length]);
+        }
+        long newBytes = allocatedBytes() - allocatedBefore;
+        assertTrue(newBytes < rounds / 100, "新解析器分配了 " + newBytes + " 字节（" + sink + "）");
+    }
+
+    private static int parseNew(CommandParser p, String line) {
+        CommandParser.Command command = p.parse(line);
+        if (command == CommandParser.Command.PUT) {
+            return p.intAt(1, 36) * 16 + p.intAt(2, 36);
+        } else if (command == CommandParser.Command.ENTER && p.is(1, "room")) {
+            return p.intAt(2, 10);
+        }
+        return command.ordinal();
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,163 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BinaryProtocol;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameArchiveTest {
+    private static final byte[] MOVES = {7, 7, 7, 8, 8, 8, 6, 6, 9, 9};
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void testSaveAndLoadAfterReopen() throws Exception {
+        GameArchive archive = GameArchive.open(dir, 4);
+        long first = archive.save("Alice", "Bob", GameJournal.RESULT_BLACK, 15, MOVES, 5);
+        long second = archive.save("Carol", "Dave", GameJournal.RESULT_WHITE, 15, MOVES, 3);
+        assertEquals(first + 1, second);
+        archive.close();
+
+        // 5 手棋每手 1 字节
+        long expected = 4 + 8 + 8 + 1 + 1 + 1 + 5 + 1 + 3 + 2 + 5;
+        assertEquals(expected + 4 + 8 + 8 + 1 + 1 + 1 + 5 + 1 + 4 + 2 + 3, Files.size(dir.resolve("games.bin")));
+
+        GameArchive reopened = GameArchive.open(dir, 4);
+        assertEquals(0, reopened.getCachedCount());
+        GameArchive.GameRecord record = reopened.load(first).get(5, TimeUnit.SECONDS);
+        assertEquals("Alice", record.getBlack());
+        assertEquals(GameJournal.RESULT_BLACK, record.getResult());
+        assertEquals(5, record.getMoveCount());
+        assertEquals(9, record.getMoveX(4));
+        assertEquals(1, reopened.getCachedCount());
+        assertNull(reopened.load(99).get(5, TimeUnit.SECONDS));
+        assertEquals(second + 1, reopened.save("E", "F", GameJournal.RESULT_BLACK, 15, MOVES, 1));
+        reopened.close();
+    }
+
+    @Test
+    void testCacheIsBounded() throws Exception {
+        GameArchive archive = GameArchive.open(dir, 2);
+        for (int i = 0; i < 5; i++) {
+            archive.save("A" + i, "B" + i, GameJournal.RESULT_BLACK, 15, MOVES, 5);
+        }
+        // 新保存的对局不进缓存，只有读取过的才进
+        assertEquals(0, archive.getCachedCount());
+        for (int id = 1; id <= 3; id++) {
+            assertEquals("A" + (id - 1), archive.load(id).get(5, TimeUnit.SECONDS).getBlack());
+        }
+        assertEquals(2, archive.getCachedCount());
+        archive.close();
+    }
+
+    @Test
+    void testTextRecordAndTruncatedTail() throws Exception {
+        GameArchive archive = GameArchive.open(dir, 2);
+        long id = archive.save("Alice", "Bob", GameJournal.RESULT_BLACK, 15, MOVES, 5);
+        archive.close();
+
+        String text = Files.readString(dir.resolve(id + ".txt"));
+        assertTrue(text.contains("[Black \"Alice\"]"));
+        assertTrue(text.contains("[Result \"1-0\"]"));
+        assertTrue(text.contains("1. h8 i8 2. i7 g9 3. j6 1-0"));
+
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("games.bin").toFile(), "rw")) {
+            file.seek(file.length());
+            file.write(new byte[] {0, 0, 0, 100, 1, 2});
+        }
+        GameArchive reopened = GameArchive.open(dir, 2);
+        assertEquals(5, reopened.load(id).get(5, TimeUnit.SECONDS).getMoveCount());
+        reopened.close();
+    }
+
+    @Test
+    void testGamesWithoutMovesAreNotArchived() throws Exception {
+        GameArchive archive = GameArchive.open(dir, 2);
+        RoomManager roomManager = new RoomManager();
+        roomManager.setArchive(archive);
+        GameRoom room = roomManager.createRoom();
+        Player first = new Player("Alice", null);
+        Player second = new Player("Bob", null);
+        room.addPlayer(first);
+        room.addPlayer(second);
+        room.setPlayerReady(first);
+        room.setPlayerReady(second);
+        // 黑方一手未下就超时判负
+        room.forfeit("black");
+        assertEquals(0, archive.getGameCount());
+
+        room.setGameOver(true);
+        room.setPlayerReady(first);
+        room.setPlayerReady(second);
+        assertTrue(room.makeMove(7, 7, "black"));
+        room.forfeit("white");
+        assertEquals(1, archive.getGameCount());
+        archive.close();
+    }
+
+    @Test
+    void testReplayOfGameWithoutMovesFinishes() throws Exception {
+        GameArchive archive = GameArchive.open(dir, 2);
+        long id = archive.save("Alice", "Bob", GameJournal.RESULT_WHITE, 15, MOVES, 0);
+        List<String> messages = new CopyOnWriteArrayList<>();
+        Player viewer = new Player("viewer", new Connection() {
+            @Override
+            public void write(byte[] data) {
+                messages.add(new String(data, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        new Replay(viewer, id, 100).start(archive);
+        for (int i = 0; i < 200 && messages.stream().noneMatch(m -> m.contains("回放结束")); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(messages.stream().anyMatch(m -> m.contains("回放结束：Bob（白）获胜")));
+        archive.close();
+    }
+
+    @Test
+    void testReplayStreamsMovesInOrder() throws Exception {
+        GameArchive archive = GameArchive.open(dir, 2);
+        long id = archive.save("Alice", "Bob", GameJournal.RESULT_BLACK, 15, MOVES, 5);
+        List<byte[]> frames = new CopyOnWriteArrayList<>();
+        Player viewer = new Player("viewer", new Connection() {
+            @Override
+            public void write(byte[] data) {
+                frames.add(data);
+            }
+
+            @Override
+            public void close() {
+            }
+        }, Player.Protocol.BINARY);
+
+        new Replay(viewer, id, 100).start(archive);
+        // 提示 + 棋盘 + 5 手 + 结束提示
+        for (int i = 0; i < 200 && frames.size() < 8; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(8, frames.size());
+        assertEquals(BinaryProtocol.EV_BOARD, frames.get(1)[2] & 0xFF);
+        for (int i = 0; i < 5; i++) {
+            ByteBuffer move = ByteBuffer.wrap(frames.get(2 + i), 2, frames.get(2 + i).length - 2);
+            assertEquals(BinaryProtocol.EV_MOVE, move.get() & 0xFF);
+            assertEquals(i + 1, move.getShort());
+            assertEquals(MOVES[i * 2], move.get());
+            assertEquals(MOVES[i * 2 + 1], move.get());
+        }
+        archive.close();
+    }
+}
@@ -65,4 +65,58 @@ class GameBoardTest {
         gameBoard.makeMove(4, 4, "black");
         assertTrue(gameBoard.checkWin(0, 0));
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testAntiDiagonalWin() {
+        // 白子反斜向连成5子，落在棋盘右上角边缘
+        gameBoard.makeMove(0, 14, "white");
+        gameBoard.makeMove(1, 13, "white");
+        gameBoard.makeMove(2, 12, "white");
+        gameBoard.makeMove(3, 11, "white");
+        gameBoard.makeMove(4, 10, "white");
+        assertTrue(gameBoard.checkWin(2, 12));
+        assertTrue(gameBoard.checkWin(0, 14));
+    }
+
+    @Test
+    void testFourIsNotWin() {
+        gameBoard.makeMove(7, 3, "black");
+        gameBoard.makeMove(7, 4, "black");
+        gameBoard.makeMove(7, 5, "black");
+        gameBoard.makeMove(7, 6, "black");
+        gameBoard.makeMove(7, 7, "white");
+        assertFalse(gameBoard.checkWin(7, 6));
+        assertFalse(gameBoard.checkWin(7, 7));
+    }
+
+    @Test
+    void testWinMustPassThroughMove() {
+        // 第 0 行有五连，但 (1, 0) 所在的四条线上没有
+        for (int y = 0; y < 5; y++) {
+            gameBoard.makeMove(0, y, "black");
+        }
+        gameBoard.makeMove(1, 7, "black");
+        assertFalse(gameBoard.checkWin(1, 7));
+        assertFalse(gameBoard.checkWin(5, 5)); // 空位
+    }
+
+    @Test
+    void testOverlineWinsInFreestyle() {
+        for (int x = 5; x < 11; x++) {
+            gameBoard.makeMove(x, 14, "white");
+        }
+        assertTrue(gameBoard.checkWin(10, 14));
+    }
+
+    @Test
+    void testResetClearsBoard() {
+        for (int y = 0; y < 5; y++) {
+            gameBoard.makeMove(3, y, "black");
+        }
+        gameBoard.reset();
+        assertEquals(0, gameBoard.getCell(3, 0));
+        assertFalse(gameBoard.checkWin(3, 0));
+        assertTrue(gameBoard.makeMove(3, 0, "white"));
+        assertEquals(2, gameBoard.getCell(3, 0));
+    }
+}
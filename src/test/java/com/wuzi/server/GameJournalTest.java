@@ -0,0 +1,225 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+
+class GameJournalTest {
+    private static final int CAPACITY = 64 * 1024;
+
+    @TempDir
+    Path dir;
+
+    private GameJournal open() throws Exception {
+        return GameJournal.open(dir, CAPACITY, 10, 60_000);
+    }
+
+    @Test
+    void testReplayRestoresInProgressGames() throws Exception {
+        GameJournal journal = open();
+        journal.recordStart(1, "Alice", "Bob");
+        journal.recordMove(1, 7, 7);
+        journal.recordMove(1, 8, 8);
+        journal.recordStart(2, "Carol", "Dave");
+        journal.recordMove(2, 0, 0);
+        journal.recordEnd(2, GameJournal.RESULT_BLACK);
+        journal.close();
+
+        Map<Integer, GameJournal.GameLog> games = open().getRecoveredGames();
+        assertEquals(1, games.size());
+        GameJournal.GameLog game = games.get(1);
+        assertEquals("Alice", game.getBlack());
+        assertEquals("Bob", game.getWhite());
+        assertEquals(2, game.getMoveCount());
+        assertEquals(8, game.getMoveX(1));
+        assertEquals(8, game.getMoveY(1));
+    }
+
+    @Test
+    void testBoardSizeSurvivesReplayAndCompaction() throws Exception {
+        GameJournal journal = open();
+        journal.recordStart(1, "Alice", "Bob", 19, RuleSet.FREESTYLE);
+        journal.recordMove(1, 18, 18);
+        journal.recordStart(2, "Carol", "Dave");
+        journal.close();
+
+        GameJournal reopened = open();
+        assertEquals(19, reopened.getRecoveredGames().get(1).getBoardSize());
+        assertEquals(GameBoard.DEFAULT_SIZE, reopened.getRecoveredGames().get(2).getBoardSize());
+        reopened.compactNow();
+        reopened.close();
+        assertEquals(19, open().getRecoveredGames().get(1).getBoardSize());
+    }
+
+    @Test
+    void testCompactionKeepsGamesAndDiscardsOldRecords() throws Exception {
+        GameJournal journal = open();
+        journal.recordStart(1, "Alice", "Bob");
+        journal.recordMove(1, 7, 7);
+        journal.recordStart(2, "Carol", "Dave");
+        journal.compactNow();
+        journal.recordMove(1, 7, 8);
+        journal.recordEnd(2, GameJournal.RESULT_ABORTED);
+        journal.close();
+
+        GameJournal reopened = open();
+        Map<Integer, GameJournal.GameLog> games = reopened.getRecoveredGames();
+        assertEquals(1, games.size());
+        assertEquals(2, games.get(1).getMoveCount());
+
+        // 再次压缩后重新打开，结果不变
+        reopened.compactNow();
+        reopened.close();
+        assertEquals(2, open().getRecoveredGames().get(1).getMoveCount());
+    }
+
+    @Test
+    void testTornRecordStopsReplay() throws Exception {
+        GameJournal journal = open();
+        journal.recordStart(1, "Alice", "Bob");
+        journal.recordMove(1, 7, 7);
+        journal.recordMove(1, 8, 8);
+        journal.close();
+
+        // 最后一条落子记录为 2 字节长度 + 7 字节内容 + 4 字节校验，破坏其中一个坐标
+        try (RandomAccessFile file = new RandomAccessFile(dir.resolve("journal.wal").toFile(), "rw")) {
+            // 开局记录：名字之后为尺寸、规则各 1 字节和 25 字节的计时规则
+            int start = GameJournal.HEADER + (2 + 5 + 1 + 5 + 1 + 3 + 1 + 1 + 25 + 4) + (2 + 7 + 4);
+            file.seek(start + 2 + 5);
+            file.write(3);
+        }
+        GameJournal reopened = open();
+        assertEquals(1, reopened.getRecoveredGames().get(1).getMoveCount());
+
+        // 新记录从损坏处开始覆盖
+        reopened.recordMove(1, 9, 9);
+        reopened.close();
+        GameJournal.GameLog game = open().getRecoveredGames().get(1);
+        assertEquals(2, game.getMoveCount());
+        assertEquals(9, game.getMoveX(1));
+    }
+
+    @Test
+    void testRestoredSeatsReclaimedByName() throws Exception {
+        GameJournal journal = open();
+        journal.recordStart(3, "Alice", "Bob");
+        journal.recordMove(3, 7, 7);
+        journal.close();
+
+        RoomManager roomManager = new RoomManager();
+        GameJournal reopened = open();
+        assertEquals(1, roomManager.restore(reopened));
+        roomManager.setJournal(reopened);
+        GameRoom room = roomManager.getRoom(3);
+        assertTrue(room.isGameStarted());
+        assertEquals("white", room.getCurrentTurnColor());
+        assertEquals(1, room.getMoveSeq());
+
+        // 保留的座位不接受其他玩家
+        assertFalse(room.addPlayer(new Player("Mallory", null)));
+        Player bob = new Player("Bob", null);
+        assertSame(room, roomManager.takeReservation("Bob"));
+        assertTrue(room.reclaimSeat(bob));
+        assertEquals("white", bob.getColor());
+        Player alice = new Player("Alice", null);
+        assertSame(room, roomManager.takeReservation("Alice"));
+        assertTrue(room.reclaimSeat(alice));
+        assertTrue(room.makeMove(8, 8, "white"));
+        reopened.close();
+
+        assertEquals(2, open().getRecoveredGames().get(3).getMoveCount());
+    }
+
+    @Test
+    void testCrashBeforeSnapshotReplaysBothRegions() throws Exception {
+        GameJournal journal = open();
+        journal.recordStart(1, "Alice", "Bob");
+        journal.recordMove(1, 7, 7);
+        // 已切换到另一区，快照尚未写出时崩溃：两区的记录都要重放
+        journal.beginCompaction();
+        journal.recordMove(1, 8, 8);
+        journal.recordStart(2, "Carol", "Dave");
+        journal.close();
+
+        Map<Integer, GameJournal.GameLog> games = open().getRecoveredGames();
+        assertEquals(2, games.size());
+        assertEquals(2, games.get(1).getMoveCount());
+        assertEquals(8, games.get(1).getMoveX(1));
+    }
+
+    @Test
+    void testFullRegionsSwitchWithoutLosingMoves() throws Exception {
+        // 每区 2KB，约 150 条落子记录，下面的落子会多次写满并切换区
+        GameJournal journal = GameJournal.open(dir, 4096, 10, 60_000);
+        journal.recordStart(1, "Alice", "Bob");
+        for (int i = 0; i < 1000; i++) {
+            journal.recordMove(1, i % 15, i / 15 % 15);
+        }
+        journal.close();
+
+        GameJournal.GameLog game = GameJournal.open(dir, 4096, 10, 60_000).getRecoveredGames().get(1);
+        assertEquals(1000, game.getMoveCount());
+        assertEquals(999 % 15, game.getMoveX(999));
+    }
+
+    @Test
+    void testRuleSetSurvivesReplayAndRestore() throws Exception {
+        GameJournal journal = open();
+        journal.recordStart(4, "Alice", "Bob", GameBoard.DEFAULT_SIZE, RuleSet.STANDARD);
+        // 黑方最后一手连成六子：无禁手算胜，标准规则下长连不算胜，对局继续
+        int[][] moves = {{7, 0}, {0, 0}, {7, 1}, {0, 2}, {7, 2}, {0, 4}, {7, 4}, {0, 6}, {7, 5}, {0, 8}, {7, 3}};
+        for (int[] move : moves) {
+            journal.recordMove(4, move[0], move[1]);
+        }
+        journal.recordStart(5, "Carol", "Dave", GameBoard.DEFAULT_SIZE, RuleSet.RENJU);
+        journal.compactNow();
+        journal.close();
+
+        GameJournal reopened = open();
+        assertEquals(RuleSet.STANDARD, reopened.getRecoveredGames().get(4).getRuleSet());
+        assertEquals(RuleSet.RENJU, reopened.getRecoveredGames().get(5).getRuleSet());
+        RoomManager roomManager = new RoomManager();
+        assertEquals(2, roomManager.restore(reopened));
+        GameRoom room = roomManager.getRoom(4);
+        assertEquals(RuleSet.STANDARD, room.getRuleSet());
+        assertEquals("white", room.getCurrentTurnColor());
+        assertEquals(RuleSet.RENJU, roomManager.getRoom(5).getRuleSet());
+        reopened.close();
+    }
+
+    @Test
+    void testClockSurvivesReplayAndRestore() throws Exception {
+        GameJournal journal = open();
+        TimeControl fischer = new TimeControl(600_000, 5000, 0, 0);
+        journal.recordStart(6, "Alice", "Bob", GameBoard.DEFAULT_SIZE, RuleSet.FREESTYLE, fischer);
+        journal.recordMove(6, 7, 7, 590_000, 0);
+        journal.compactNow();
+        // 快照之后的记录从日志重放
+        journal.recordMove(6, 7, 8, 420_000, 0);
+        journal.recordMove(6, 8, 8, 585_000, 0);
+        journal.recordStart(7, "Carol", "Dave", GameBoard.DEFAULT_SIZE, RuleSet.FREESTYLE,
+            new TimeControl(0, 0, 30_000, 3));
+        journal.recordMove(7, 7, 7, 0, 2);
+        journal.close();
+
+        GameJournal reopened = open();
+        GameJournal.GameLog game = reopened.getRecoveredGames().get(6);
+        assertEquals(600_000, game.getTimeControl().getMainMillis());
+        assertEquals(5000, game.getTimeControl().getIncrementMillis());
+        assertEquals(585_000, game.getRemaining(0));
+        assertEquals(420_000, game.getRemaining(1));
+        assertEquals(2, reopened.getRecoveredGames().get(7).getPeriods(0));
+        assertEquals(3, reopened.getRecoveredGames().get(7).getPeriods(1));
+
+        RoomManager roomManager = new RoomManager();
+        assertEquals(2, roomManager.restore(reopened));
+        GameRoom room = roomManager.getRoom(6);
+        assertTrue(room.isTimed());
+        assertEquals("黑 09:45  白 07:00", room.describeClock());
+        assertEquals("黑 00:00 读秒×2  白 00:00 读秒×3", roomManager.getRoom(7).describeClock());
+        reopened.close();
+    }
+}
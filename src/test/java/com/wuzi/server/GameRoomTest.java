@@ -13,8 +13,8 @@ class GameRoomTest {
     void setUp() {
         gameRoom = new GameRoom(1);
         // 创建模拟的Player对象
-        player1 = new Player("Player1", null, null, null);
-        player2 = new Player("Player2", null, null, null);
+        player1 = new Player("Player1", null);
+        player2 = new Player("Player2", null);
     }
 
     @Test
@@ -23,7 +23,7 @@ class GameRoomTest {
         assertEquals(1, gameRoom.getPlayerCount());
         assertTrue(gameRoom.addPlayer(player2));
         assertEquals(2, gameRoom.getPlayerCount());
-        assertFalse(gameRoom.addPlayer(new Player("Player3", null, null, null)));
+        assertFalse(gameRoom.addPlayer(new Player("Player3", null)));
     }
 
     @Test
@@ -108,4 +108,33 @@ class GameRoomTest {
         gameRoom.setGameOver(true);
         assertTrue(gameRoom.isGameOver());
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testMoveSequenceAndSnapshot() {
+        gameRoom.addPlayer(player1);
+        gameRoom.addPlayer(player2);
+        gameRoom.setPlayerReady(player1);
+        gameRoom.setPlayerReady(player2);
+        assertEquals(0, gameRoom.getMoveSeq());
+
+        assertTrue(gameRoom.makeMove(0, 1, "black"));
+        assertTrue(gameRoom.makeMove(2, 3, "white"));
+        assertEquals(2, gameRoom.getMoveSeq());
+
+        String[] parts = gameRoom.getBoardSnapshot().split(" ");
+        assertEquals("@board", parts[0]);
+        assertEquals("2", parts[1]);
+        assertEquals("2", parts[2]);
+        assertEquals("3", parts[3]);
+        assertEquals(225, parts[4].length());
+        assertEquals('1', parts[4].charAt(1));
+        assertEquals('2', parts[4].charAt(2 * 15 + 3));
+
+        // 新的一局序号归零，棋盘清空
+        gameRoom.setGameOver(true);
+        gameRoom.setPlayerReady(player1);
+        gameRoom.setPlayerReady(player2);
+        assertEquals(0, gameRoom.getMoveSeq());
+        assertEquals("0".repeat(225), gameRoom.getBoardSnapshot().split(" ")[4]);
+    }
+}
@@ -0,0 +1,77 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogRingBufferTest {
+
+    @Test
+    void testOfferUntilFull() {
+        LogRingBuffer buffer = new LogRingBuffer(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(ServerLogger.INFO, i, "m" + i));
+        }
+        assertFalse(buffer.offer(ServerLogger.INFO, 4, "m4"));
+
+        LogRingBuffer.Entry entry = buffer.peek();
+        assertEquals("m0", entry.message);
+        buffer.release();
+        assertTrue(buffer.offer(ServerLogger.WARN, 5, "m5"));
+        for (int i = 1; i < 4; i++) {
+            assertEquals("m" + i, buffer.peek().message);
+            buffer.release();
+        }
+        assertEquals(ServerLogger.WARN, buffer.peek().level);
+        buffer.release();
+        assertNull(buffer.peek());
+    }
+
+    @Test
+    void testRejectsNonPowerOfTwo() {
+        assertThrows(IllegalArgumentException.class, () -> new LogRingBuffer(6));
+    }
+
+    @Test
+    void testConcurrentProducersSingleConsumer() throws Exception {
+        LogRingBuffer buffer = new LogRingBuffer(64);
+        int producers = 4;
+        int perProducer = 20_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int id = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(ServerLogger.INFO, i, id + ":" + i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            threads[p].start();
+        }
+
+        Set<String> seen = new HashSet<>();
+        int[] lastSeen = new int[producers];
+        java.util.Arrays.fill(lastSeen, -1);
+        while (seen.size() < producers * perProducer) {
+            LogRingBuffer.Entry entry = buffer.peek();
+            if (entry == null) {
+                Thread.yield();
+                continue;
+            }
+            String[] parts = entry.message.split(":");
+            int producer = Integer.parseInt(parts[0]);
+            int seq = Integer.parseInt(parts[1]);
+            // 同一生产者的日志保持先后顺序
+            assertTrue(seq > lastSeen[producer]);
+            lastSeen[producer] = seq;
+            assertTrue(seen.add(entry.message));
+            buffer.release();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertNull(buffer.peek());
+    }
+}
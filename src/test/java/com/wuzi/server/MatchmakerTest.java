@@ -0,0 +1,94 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MatchmakerTest {
+
+    // 匹配成功时会给双方发送提示，这里丢弃输出
+    private static Player player(String name) {
+        return new Player(name, new Connection() {
+            @Override
+            public void write(byte[] data) {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @Test
+    void testPairsPlayersInSameBucket() {
+        RoomManager roomManager = new RoomManager(1, 10, 1000);
+        Matchmaker matchmaker = roomManager.getMatchmaker();
+        Player alice = player("Alice");
+        Player bob = player("Bob");
+        Player carol = player("Carol");
+
+        assertTrue(matchmaker.enqueue(alice));
+        assertFalse(matchmaker.enqueue(alice));
+        matchmaker.enqueue(bob);
+        matchmaker.enqueue(carol);
+        assertEquals(3, matchmaker.getWaitingCount());
+
+        assertEquals(1, matchmaker.tick(System.currentTimeMillis()));
+        assertNotNull(alice.getCurrentRoom());
+        assertSame(alice.getCurrentRoom(), bob.getCurrentRoom());
+        assertEquals(2, alice.getCurrentRoom().getPlayerCount());
+        assertFalse(alice.isMatching());
+
+        // 剩下的玩家留在队列中，可以取消
+        assertTrue(carol.isMatching());
+        assertEquals(1, matchmaker.getWaitingCount());
+        assertTrue(matchmaker.cancel(carol));
+        assertFalse(carol.isMatching());
+        assertEquals(0, matchmaker.getWaitingCount());
+        assertEquals(0, matchmaker.tick(System.currentTimeMillis()));
+        assertNull(carol.getCurrentRoom());
+    }
+
+    @Test
+    void testDistantRatingsPairOnlyAfterWaiting() {
+        RoomManager roomManager = new RoomManager(1, 10, 1000);
+        Matchmaker matchmaker = roomManager.getMatchmaker();
+        Player strong = player("Strong");
+        Player weak = player("Weak");
+        strong.setRating(1800);
+        weak.setRating(1500);
+        matchmaker.enqueue(strong);
+        matchmaker.enqueue(weak);
+
+        long now = System.currentTimeMillis();
+        assertEquals(0, matchmaker.tick(now));
+        assertEquals(0, matchmaker.tick(now + Matchmaker.WIDEN_MILLIS * 2));
+        assertEquals(1, matchmaker.tick(now + Matchmaker.WIDEN_MILLIS * 3));
+        assertSame(strong.getCurrentRoom(), weak.getCurrentRoom());
+    }
+
+    @Test
+    void testRespectsRoomCap() {
+        RoomManager roomManager = new RoomManager(0, 1, 1000);
+        Matchmaker matchmaker = roomManager.getMatchmaker();
+        Player[] players = new Player[4];
+        for (int i = 0; i < players.length; i++) {
+            players[i] = player("P" + i);
+            matchmaker.enqueue(players[i]);
+        }
+
+        assertEquals(1, matchmaker.tick(System.currentTimeMillis()));
+        assertEquals(2, matchmaker.getWaitingCount());
+        assertEquals(0, matchmaker.tick(System.currentTimeMillis()));
+        assertTrue(players[2].isMatching());
+        assertTrue(players[3].isMatching());
+    }
+
+    @Test
+    void testUpdateRatings() {
+        Player winner = new Player("A", null);
+        Player loser = new Player("B", null);
+        Matchmaker.updateRatings(winner, loser);
+        assertEquals(1516, winner.getRating());
+        assertEquals(1484, loser.getRating());
+    }
+}
@@ -0,0 +1,167 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricsTest {
+
+    private static class RecordingConnection implements Connection {
+        final List<String> lines = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(byte[] data) {
+            lines.add(new String(data, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+        }
+
+        boolean received(String text) {
+            return lines.stream().anyMatch(line -> line.contains(text));
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static long moveCount() {
+        return Metrics.MOVE_LATENCY.snapshot(new long[LatencyHistogram.BUCKETS]);
+    }
+
+    @Test
+    void testHistogramBucketsAndPercentiles() {
+        // 每个值落在自己的格子里，格子上界与值的相对误差不超过 1/8
+        for (long value = 0; value < 1L << 20; value = value * 3 / 2 + 1) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.upperBound(index) > value);
+            assertTrue(index == 0 || LatencyHistogram.upperBound(index - 1) <= value);
+            assertTrue(LatencyHistogram.upperBound(index) - value <= Math.max(1, value / 8));
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.indexOf(Long.MAX_VALUE));
+
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        long total = histogram.snapshot(counts);
+        assertEquals(1000, total);
+        assertEquals(500_500_000L, histogram.getSum());
+        long p50 = LatencyHistogram.percentile(counts, total, 0.5);
+        long p99 = LatencyHistogram.percentile(counts, total, 0.99);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 9 / 8, "p50 " + p50);
+        assertTrue(p99 >= 990_000 && p99 <= 990_000 * 9 / 8, "p99 " + p99);
+        assertEquals(0, LatencyHistogram.percentile(new long[LatencyHistogram.BUCKETS], 0, 0.5));
+    }
+
+    @Test
+    void testRecordingDoesNotAllocate() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int rounds = 200_000;
+        // 预热，并让 LongAdder 在需要时先扩展好计数单元
+        for (int i = 0; i < rounds; i++) {
+            histogram.record(i * 37L);
+            Metrics.command(CommandParser.Command.PUT);
+            Metrics.outbound(1, 64);
+        }
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < rounds; i++) {
+            histogram.record(i * 37L);
+            Metrics.command(CommandParser.Command.PUT);
+            Metrics.command(0x05);
+            Metrics.outbound(1, 64);
+        }
+        long allocated = bean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        assertTrue(allocated < rounds / 100, "记录指标分配了 " + allocated + " 字节");
+    }
+
+    @Test
+    void testMoveLatencyIsRecordedWhenTheOpponentIsFlushed() throws InterruptedException {
+        RoomManager manager = new RoomManager(1, 10, 60_000);
+        RecordingConnection c1 = new RecordingConnection();
+        RecordingConnection c2 = new RecordingConnection();
+        ClientHandler h1 = new ClientHandler(manager);
+        ClientHandler h2 = new ClientHandler(manager);
+        h1.login("A", c1, "test");
+        h2.login("B", c2, "test");
+        h1.handleLine("enter room 1");
+        h2.handleLine("enter room 1");
+        h1.handleLine("start");
+        h2.handleLine("start");
+        GameRoom room = manager.getRoom(1);
+        await(room::isGameStarted);
+
+        long moves = moveCount();
+        long puts = Metrics.getCommandTotal(CommandParser.Command.PUT);
+        long bytes = Metrics.getOutboundBytes();
+        boolean firstToMove = room.getCurrentTurnColor().equals(room.getPlayer1().getColor())
+            == room.getPlayer1().getName().equals("A");
+        ClientHandler mover = firstToMove ? h1 : h2;
+        RecordingConnection opponent = firstToMove ? c2 : c1;
+        mover.handleLine("put 7 7");
+        await(() -> opponent.received("轮到你了"));
+        await(() -> moveCount() == moves + 1);
+        assertTrue(Metrics.getCommandTotal(CommandParser.Command.PUT) >= puts + 1);
+        assertTrue(Metrics.getOutboundBytes() > bytes);
+
+        // 无效的落子没有对手一端的写出，不计入延迟
+        mover.handleLine("put 7 7");
+        Thread.sleep(100);
+        assertEquals(moves + 1, moveCount());
+    }
+
+    @Test
+    void testPrometheusEndpointAndAdminStatsCommand() throws Exception {
+        RoomManager manager = new RoomManager(2, 10, 60_000);
+        Metrics.bind(manager, new AdmissionControl(100));
+        RecordingConnection local = new RecordingConnection();
+        RecordingConnection remote = new RecordingConnection();
+        ClientHandler admin = new ClientHandler(manager);
+        ClientHandler guest = new ClientHandler(manager);
+        admin.login("Admin", local, "localhost/127.0.0.1");
+        guest.login("Guest", remote, "/203.0.113.7");
+        guest.handleLine("enter room 1");
+        await(() -> manager.getRoom(1).getPlayerCount() == 1);
+
+        admin.handleLine("stats");
+        guest.handleLine("stats");
+        await(() -> local.received("落子延迟") && remote.received("只有管理员"));
+        assertTrue(local.received("房间: 空闲 1，等待中 1，已满 0，对局中 0"));
+        assertFalse(remote.received("落子延迟"));
+
+        MetricsServer server = MetricsServer.start(0);
+        try {
+            HttpURLConnection http = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + "/metrics").openConnection();
+            assertEquals(200, http.getResponseCode());
+            assertTrue(http.getContentType().startsWith("text/plain; version=0.0.4"));
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try (InputStream in = http.getInputStream()) {
+                in.transferTo(body);
+            }
+            String text = body.toString(StandardCharsets.UTF_8);
+            assertTrue(text.contains("# TYPE wuzi_commands_total counter"));
+            assertTrue(text.contains("wuzi_commands_total{command=\"stats\"} "));
+            assertTrue(text.contains("wuzi_rooms{state=\"waiting\"} 1\n"));
+            assertTrue(text.contains("wuzi_connections_max 100\n"));
+            assertTrue(text.contains("wuzi_move_latency_seconds_bucket{le=\"+Inf\"} "));
+            assertTrue(text.contains("wuzi_outbound_bytes_total "));
+        } finally {
+            server.close();
+        }
+    }
+}
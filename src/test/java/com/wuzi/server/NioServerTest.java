@@ -0,0 +1,97 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioServerTest {
+    private NioServer server;
+    private RoomManager roomManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        ServerConfig config = new ServerConfig();
+        config.setPort(0);
+        config.setEventLoops(2);
+        roomManager = new RoomManager();
+        server = new NioServer(config, roomManager);
+        server.bind();
+        Thread acceptor = new Thread(server::serve);
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void testLoginAndCommands() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = socket.getOutputStream();
+
+            assertTrue(reader.readLine().contains("请输入你的名字"));
+            out.write("张三\r\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertTrue(reader.readLine().contains("欢迎 张三"));
+
+            // 一条命令拆成两次发送，同一次发送中带两条命令
+            out.write("enter ro".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            Thread.sleep(50);
+            out.write("om 1\nleave\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertTrue(reader.readLine().contains("成功进入房间 1"));
+            assertTrue(reader.readLine().contains("已离开房间 1"));
+
+            out.write("quit\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            assertTrue(reader.readLine().contains("再见"));
+            assertNull(reader.readLine());
+        }
+    }
+
+    @Test
+    void testTwoPlayersGetBroadcasts() throws Exception {
+        try (Socket a = new Socket("localhost", server.getPort());
+             Socket b = new Socket("localhost", server.getPort())) {
+            BufferedReader ra = new BufferedReader(new InputStreamReader(a.getInputStream(), StandardCharsets.UTF_8));
+            BufferedReader rb = new BufferedReader(new InputStreamReader(b.getInputStream(), StandardCharsets.UTF_8));
+            ra.readLine();
+            rb.readLine();
+            a.getOutputStream().write("A\nenter room 2\n".getBytes(StandardCharsets.UTF_8));
+            ra.readLine();
+            assertTrue(ra.readLine().contains("成功进入房间 2"));
+            b.getOutputStream().write("B\nenter room 2\n".getBytes(StandardCharsets.UTF_8));
+            rb.readLine();
+            assertTrue(rb.readLine().contains("成功进入房间 2"));
+
+            assertTrue(ra.readLine().contains("对手已加入"));
+            assertTrue(rb.readLine().contains("对手已加入"));
+        }
+    }
+
+    @Test
+    void testDisconnectLeavesRoom() throws Exception {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            reader.readLine();
+            socket.getOutputStream().write("A\nenter room 3\n".getBytes(StandardCharsets.UTF_8));
+            reader.readLine();
+            reader.readLine();
+            assertEquals(1, roomManager.getRoom(3).getPlayerCount());
+        }
+        for (int i = 0; i < 100 && roomManager.getRoom(3).getPlayerCount() != 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, roomManager.getRoom(3).getPlayerCount());
+    }
+}
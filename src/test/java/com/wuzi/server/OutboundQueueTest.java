@@ -0,0 +1,314 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+
+    // 第一次写操作开始后一直阻塞到 release，模拟 TCP 窗口已满的慢客户端
+    private static class StalledConnection implements Connection {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> writes = new CopyOnWriteArrayList<>();
+        volatile boolean closed;
+
+        @Override
+        public void write(byte[] data) {
+            entered.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writes.add(new String(data, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        // 让写线程卡在第一条数据上，之后入队的数据都计入积压
+        void stall(OutboundQueue queue) throws InterruptedException {
+            queue.offer(bytes("first"), OutboundQueue.Kind.ESSENTIAL);
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    // 自己排队的连接，积压量由测试设置
+    private static class BufferedConnection implements Connection {
+        final List<String> writes = new CopyOnWriteArrayList<>();
+        volatile int backlog;
+
+        @Override
+        public void write(byte[] data) {
+            writes.add(new String(data, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public int backlog() {
+            return backlog;
+        }
+
+        volatile WriteListener listener;
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    // 记录每次写调用带了几条消息
+    private static class CountingConnection implements Connection {
+        final List<Integer> calls = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(byte[] data) {
+            calls.add(1);
+        }
+
+        @Override
+        public void write(byte[][] data, int count) {
+            calls.add(count);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void testEssentialKeptInfoDroppedAndDisconnectAtThreshold() throws InterruptedException {
+        StalledConnection connection = new StalledConnection();
+        OutboundQueue queue = new OutboundQueue(connection, 4, 8, OutboundQueue.Policy.DROP, null);
+        connection.stall(queue);
+        long dropped = OutboundQueue.getDroppedTotal();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(bytes("info" + i), OutboundQueue.Kind.INFO));
+        }
+        assertFalse(queue.offer(bytes("info4"), OutboundQueue.Kind.INFO));
+        assertFalse(queue.offer(bytes("board"), OutboundQueue.Kind.BOARD));
+        assertTrue(OutboundQueue.getDroppedTotal() >= dropped + 2);
+        // 必须送达的消息超过容量仍然入队，直到断开阈值
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(bytes("reply" + i), OutboundQueue.Kind.ESSENTIAL));
+        }
+        assertEquals(8, queue.depth());
+        assertFalse(connection.closed);
+        assertFalse(queue.offer(bytes("reply4"), OutboundQueue.Kind.ESSENTIAL));
+        assertTrue(connection.closed);
+        assertEquals(0, queue.depth());
+        assertFalse(queue.offer(bytes("late"), OutboundQueue.Kind.ESSENTIAL));
+        connection.release.countDown();
+    }
+
+    @Test
+    void testCoalesceResyncsOnceAfterCatchingUp() throws InterruptedException {
+        StalledConnection connection = new StalledConnection();
+        AtomicInteger resyncs = new AtomicInteger();
+        OutboundQueue queue = new OutboundQueue(connection, 4, 100, OutboundQueue.Policy.COALESCE, resyncs::incrementAndGet);
+        connection.stall(queue);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(queue.offer(bytes("move" + i), OutboundQueue.Kind.BOARD));
+        }
+        assertFalse(queue.offer(bytes("move4"), OutboundQueue.Kind.BOARD));
+        assertTrue(queue.isLagging());
+
+        connection.release.countDown();
+        // 写线程把积压写到一半以下时即请求补发，不必等下一次入队
+        await(() -> resyncs.get() == 1);
+        await(() -> queue.depth() == 0);
+        // 补发到来前的棋盘增量都丢弃，其他消息照常发送，也不会重复请求补发
+        assertFalse(queue.offer(bytes("move5"), OutboundQueue.Kind.BOARD));
+        assertFalse(queue.offer(bytes("move6"), OutboundQueue.Kind.BOARD));
+        assertTrue(queue.offer(bytes("chat"), OutboundQueue.Kind.INFO));
+        assertEquals(1, resyncs.get());
+        queue.resynced(bytes("board"));
+        assertFalse(queue.isLagging());
+        assertTrue(queue.offer(bytes("move7"), OutboundQueue.Kind.BOARD));
+        await(() -> connection.writes.size() == 8);
+        assertEquals(List.of("first", "move0", "move1", "move2", "move3", "chat", "board", "move7"), connection.writes);
+    }
+
+    @Test
+    void testDisconnectPolicyClosesAtCapacity() throws InterruptedException {
+        StalledConnection connection = new StalledConnection();
+        OutboundQueue queue = new OutboundQueue(connection, 2, 100, OutboundQueue.Policy.DISCONNECT, null);
+        connection.stall(queue);
+        long disconnected = OutboundQueue.getDisconnectedTotal();
+        assertTrue(queue.offer(bytes("a"), OutboundQueue.Kind.INFO));
+        assertTrue(queue.offer(bytes("b"), OutboundQueue.Kind.INFO));
+        assertFalse(queue.offer(bytes("c"), OutboundQueue.Kind.ESSENTIAL));
+        assertTrue(connection.closed);
+        assertTrue(OutboundQueue.getDisconnectedTotal() > disconnected);
+        connection.release.countDown();
+    }
+
+    @Test
+    void testBufferedConnectionUsesItsOwnBacklog() {
+        BufferedConnection connection = new BufferedConnection();
+        OutboundQueue queue = new OutboundQueue(connection, 4, 8, OutboundQueue.Policy.DROP, null);
+        // 连接自己排队时直接写入，不经过写线程
+        assertTrue(queue.offer(bytes("a"), OutboundQueue.Kind.BOARD));
+        assertEquals(List.of("a"), connection.writes);
+        connection.backlog = 4;
+        assertEquals(4, queue.depth());
+        assertFalse(queue.offer(bytes("b"), OutboundQueue.Kind.BOARD));
+        assertTrue(queue.offer(bytes("c"), OutboundQueue.Kind.ESSENTIAL));
+        assertEquals(List.of("a", "c"), connection.writes);
+    }
+
+    @Test
+    void testBufferedConnectionRecordsLatencyWhenSocketWrites() {
+        BufferedConnection connection = new BufferedConnection();
+        OutboundQueue queue = new OutboundQueue(connection, 4, 8, OutboundQueue.Policy.DROP, null);
+        long[] counts = new long[LatencyHistogram.BUCKETS];
+        long before = Metrics.MOVE_LATENCY.snapshot(counts);
+        byte[] board = bytes("board");
+        assertTrue(queue.offer(board, OutboundQueue.Kind.BOARD, System.nanoTime()));
+        // 交给连接时还没写出，不计入
+        assertEquals(before, Metrics.MOVE_LATENCY.snapshot(counts));
+        connection.listener.written(new ByteBuffer[]{ByteBuffer.wrap(bytes("other"))}, 1);
+        assertEquals(before, Metrics.MOVE_LATENCY.snapshot(counts));
+        connection.listener.written(new ByteBuffer[]{ByteBuffer.wrap(board)}, 1);
+        assertEquals(before + 1, Metrics.MOVE_LATENCY.snapshot(counts));
+    }
+
+    @Test
+    void testBufferedConnectionResyncsWhenSocketCatchesUp() {
+        BufferedConnection connection = new BufferedConnection();
+        AtomicInteger resyncs = new AtomicInteger();
+        OutboundQueue queue = new OutboundQueue(connection, 4, 100, OutboundQueue.Policy.COALESCE, resyncs::incrementAndGet);
+        connection.backlog = 4;
+        assertFalse(queue.offer(bytes("move"), OutboundQueue.Kind.BOARD));
+        assertTrue(queue.isLagging());
+
+        // 连接写出一部分后回调，积压仍超过一半时不补发，降到一半时补发一次
+        connection.backlog = 3;
+        connection.listener.written(new ByteBuffer[1], 1);
+        assertEquals(0, resyncs.get());
+        connection.backlog = 2;
+        connection.listener.written(new ByteBuffer[1], 1);
+        connection.listener.written(new ByteBuffer[1], 1);
+        assertEquals(1, resyncs.get());
+    }
+
+    @Test
+    void testStalledPlayerDoesNotBlockOpponentMoves() throws InterruptedException {
+        GameRoom room = new GameRoom(1);
+        StalledConnection stalled = new StalledConnection();
+        List<String> fast = new CopyOnWriteArrayList<>();
+        Player slow = new Player("Slow", stalled);
+        Player quick = new Player("Quick", new Connection() {
+            @Override
+            public void write(byte[] data) {
+                fast.add(new String(data, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        room.addPlayer(slow);
+        room.addPlayer(quick);
+        room.execute(() -> ClientHandler.startGame(room, slow));
+        room.execute(() -> ClientHandler.startGame(room, quick));
+        await(room::isGameStarted);
+        assertTrue(stalled.entered.await(5, TimeUnit.SECONDS));
+
+        // 按行依次交替落子，三行之内不会连成五子；慢的一方写线程一直卡住，落子照常进行
+        long start = System.nanoTime();
+        for (int i = 0; i < 40; i++) {
+            int x = i % 15;
+            int y = i / 15;
+            Player mover = "black".equals(slow.getColor()) == (i % 2 == 0) ? slow : quick;
+            room.execute(() -> ClientHandler.makeMove(room, mover, x, y));
+        }
+        await(() -> room.getMoveSeq() == 40);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertFalse(room.isGameOver());
+        assertTrue(slow.getOutboundDepth() > 0);
+        assertTrue(stalled.writes.isEmpty());
+        stalled.release.countDown();
+        await(() -> slow.getOutboundDepth() == 0);
+    }
+
+    @Test
+    void testOneWritePerRecipientPerCommand() throws InterruptedException {
+        GameRoom room = new GameRoom(1);
+        CountingConnection c1 = new CountingConnection();
+        CountingConnection c2 = new CountingConnection();
+        Player p1 = new Player("A", c1);
+        Player p2 = new Player("B", c2);
+        room.addPlayer(p1);
+        room.addPlayer(p2);
+        room.execute(() -> ClientHandler.startGame(room, p1));
+        room.execute(() -> ClientHandler.startGame(room, p2));
+        await(room::isGameStarted);
+        await(() -> p1.getOutboundDepth() == 0 && p2.getOutboundDepth() == 0 && !c1.calls.isEmpty() && !c2.calls.isEmpty());
+        // 开局的多条消息合并写出
+        assertTrue(c1.calls.stream().anyMatch(n -> n > 1));
+
+        Player black = "black".equals(p1.getColor()) ? p1 : p2;
+        CountingConnection moverConnection = black == p1 ? c1 : c2;
+        CountingConnection waitingConnection = black == p1 ? c2 : c1;
+        int moverCalls = moverConnection.calls.size();
+        int waitingCalls = waitingConnection.calls.size();
+        room.execute(() -> ClientHandler.makeMove(room, black, 7, 7));
+        await(() -> waitingConnection.calls.size() > waitingCalls && moverConnection.calls.size() > moverCalls);
+        Thread.sleep(50);
+        // 落子方只收到棋盘；对手的棋盘和"轮到你了"一次写出
+        assertEquals(moverCalls + 1, moverConnection.calls.size());
+        assertEquals(waitingCalls + 1, waitingConnection.calls.size());
+        assertEquals(2, waitingConnection.calls.get(waitingCalls));
+    }
+
+    @Test
+    void testBatchRegistersEachQueueOnce() throws InterruptedException {
+        CountingConnection first = new CountingConnection();
+        CountingConnection second = new CountingConnection();
+        OutboundQueue a = new OutboundQueue(first, 64, 128, OutboundQueue.Policy.DROP, null);
+        OutboundQueue b = new OutboundQueue(second, 64, 128, OutboundQueue.Policy.DROP, null);
+        for (int round = 0; round < 2; round++) {
+            OutboundBatch.begin();
+            try {
+                for (int i = 0; i < 10; i++) {
+                    a.offer(bytes("a" + i), OutboundQueue.Kind.ESSENTIAL);
+                    b.offer(bytes("b" + i), OutboundQueue.Kind.ESSENTIAL);
+                }
+                assertTrue(first.calls.size() == round && second.calls.size() == round);
+            } finally {
+                OutboundBatch.end();
+            }
+            // 批次对象按线程复用，第二轮仍要重新登记并写出
+            int expected = round + 1;
+            await(() -> first.calls.size() == expected && second.calls.size() == expected);
+            assertEquals(10, first.calls.get(round));
+            assertEquals(10, second.calls.get(round));
+            assertNull(a.deferredIn);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BinaryProtocol;
+import org.junit.jupiter.api.Test;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomDirectoryTest {
+
+    @Test
+    void testSnapshotRebuiltOnlyAfterStateChange() {
+        RoomManager roomManager = new RoomManager();
+        RoomDirectory directory = new RoomDirectory(roomManager, 0);
+        RoomDirectory.Snapshot first = directory.current();
+        assertSame(first, directory.current());
+        byte[] page = first.page(RoomDirectory.Filter.ALL, 1, false);
+        assertSame(page, directory.page(RoomDirectory.Filter.ALL, 1, false));
+
+        // 目录由所属的 RoomManager 维护版本，这里手动使其失效
+        directory.invalidate();
+        assertNotSame(first, directory.current());
+    }
+
+    @Test
+    void testPaginationAndFilters() {
+        RoomManager roomManager = new RoomManager(45, 100, 1000);
+        roomManager.getRoom(3).addPlayer(new Player("Alice", null));
+        RoomDirectory.Snapshot snapshot = new RoomDirectory(roomManager, 0).current();
+
+        assertEquals(45, snapshot.total(RoomDirectory.Filter.ALL));
+        assertEquals(3, snapshot.pages(RoomDirectory.Filter.ALL));
+        assertEquals(44, snapshot.total(RoomDirectory.Filter.FREE));
+        assertEquals(1, snapshot.total(RoomDirectory.Filter.WAITING));
+        assertEquals(0, snapshot.total(RoomDirectory.Filter.PLAYING));
+        assertEquals(1, snapshot.pages(RoomDirectory.Filter.PLAYING));
+
+        // 超出范围的页码按最后一页处理，跳过 u16 长度前缀
+        ByteBuffer last = ByteBuffer.wrap(snapshot.page(RoomDirectory.Filter.ALL, 9, true));
+        last.position(2);
+        assertEquals(BinaryProtocol.EV_ROOM_LIST, last.get() & 0xFF);
+        assertEquals(5, last.getShort());
+        assertEquals(41, last.getInt());
+        last.position(last.position() + 2 + 4 * 6);
+        assertEquals(3, last.getShort());
+        assertEquals(3, last.getShort());
+        assertEquals(45, last.getInt());
+
+        String waiting = new String(snapshot.page(RoomDirectory.Filter.WAITING, 1, false), StandardCharsets.UTF_8);
+        assertTrue(waiting.contains("[03]"));
+        assertFalse(waiting.contains("[04]"));
+    }
+
+    @Test
+    void testRoomChangesBumpVersion() {
+        RoomManager roomManager = new RoomManager();
+        RoomDirectory directory = roomManager.getDirectory();
+        long version = directory.getVersion();
+        Player player = new Player("Alice", null);
+        roomManager.getRoom(1).addPlayer(player);
+        assertTrue(directory.getVersion() > version);
+
+        version = directory.getVersion();
+        roomManager.getRoom(2).getSpectators().add(player);
+        assertTrue(directory.getVersion() > version);
+
+        version = directory.getVersion();
+        roomManager.createRoom();
+        assertTrue(directory.getVersion() > version);
+    }
+}
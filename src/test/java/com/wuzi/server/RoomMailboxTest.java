@@ -0,0 +1,66 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoomMailboxTest {
+
+    @Test
+    void testCommandsRunInSubmissionOrder() throws Exception {
+        RoomMailbox mailbox = new RoomMailbox();
+        List<Integer> order = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 1000; i++) {
+            int n = i;
+            mailbox.execute(() -> order.add(n));
+        }
+        mailbox.execute(done::countDown);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, order.get(i));
+        }
+    }
+
+    @Test
+    void testSingleWriterUnderConcurrentSubmitters() throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(4);
+        RoomMailbox mailbox = new RoomMailbox(workers);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        // 非线程安全的计数，只有串行执行才能得到准确结果
+        int[] counter = new int[1];
+        int submitters = 4;
+        int perSubmitter = 5000;
+        CountDownLatch done = new CountDownLatch(submitters * perSubmitter);
+        Thread[] threads = new Thread[submitters];
+        for (int t = 0; t < submitters; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < perSubmitter; i++) {
+                    mailbox.execute(() -> {
+                        if (running.incrementAndGet() > 1) {
+                            overlaps.incrementAndGet();
+                        }
+                        counter[0]++;
+                        running.decrementAndGet();
+                        done.countDown();
+                    });
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(0, overlaps.get());
+        assertEquals(submitters * perSubmitter, counter[0]);
+        workers.shutdown();
+    }
+}
@@ -2,6 +2,8 @@ package com.wuzi.server;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import static org.junit.jupiter.api.Assertions.*;
 
 class RoomManagerTest {
@@ -55,4 +57,104 @@ class RoomManagerTest {
         assertEquals(10, roomManager.getAllRooms().size());
         assertNull(roomManager.getRoom(room.getRoomId()));
     }
-} 
\ No newline at end of file
+
+    @Test
+    void testJoinAnyRoomPrefersWaitingRoom() {
+        Player alice = new Player("Alice", null);
+        Player bob = new Player("Bob", null);
+        GameRoom first = roomManager.joinAnyRoom(alice);
+        assertNotNull(first);
+        assertEquals(1, roomManager.getWaitingRoomCount());
+        assertEquals(9, roomManager.getEmptyRoomCount());
+
+        // 第二个玩家应当进入有人等待的房间
+        assertSame(first, roomManager.joinAnyRoom(bob));
+        assertEquals(0, roomManager.getWaitingRoomCount());
+        assertEquals(9, roomManager.getEmptyRoomCount());
+
+        first.removePlayer(alice);
+        assertEquals(1, roomManager.getWaitingRoomCount());
+    }
+
+    @Test
+    void testRoomsCreatedOnDemandUpToCap() {
+        RoomManager manager = new RoomManager(1, 2, 1000);
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(manager.joinAnyRoom(new Player("P" + i, null)));
+        }
+        assertEquals(2, manager.getAllRooms().size());
+        assertNull(manager.joinAnyRoom(new Player("P4", null)));
+        assertNull(manager.createRoom());
+    }
+
+    @Test
+    void testReclaimIdleRooms() {
+        RoomManager manager = new RoomManager(1, 10, 1000);
+        Player player = new Player("Alice", null);
+        GameRoom extra = manager.createRoom();
+        GameRoom occupied = manager.createRoom();
+        occupied.addPlayer(player);
+        long later = System.currentTimeMillis() + 5000;
+
+        // 常驻房间和有人的房间不回收
+        assertEquals(1, manager.reclaimIdleRooms(later));
+        assertNull(manager.getRoom(extra.getRoomId()));
+        assertNotNull(manager.getRoom(1));
+        assertFalse(extra.addPlayer(player));
+
+        occupied.removePlayer(player);
+        assertEquals(0, manager.reclaimIdleRooms(System.currentTimeMillis()));
+        assertEquals(1, manager.reclaimIdleRooms(later));
+        assertEquals(1, manager.getAllRooms().size());
+    }
+
+    @Test
+    void testStaleIndexEntryDoesNotLoseRoom() {
+        Player alice = new Player("Alice", null);
+        Player bob = new Player("Bob", null);
+        GameRoom first = roomManager.joinAnyRoom(alice);
+        // 绕过索引直接坐满，等待索引中的这一项随之过期
+        assertTrue(first.addPlayer(bob));
+        GameRoom other = roomManager.joinAnyRoom(new Player("Carol", null));
+        assertNotSame(first, other);
+
+        // 房间再次只剩一人时重新入队，下一个玩家优先进入
+        first.removePlayer(bob);
+        other.removePlayer(other.getPlayer1());
+        assertSame(first, roomManager.joinAnyRoom(new Player("Dave", null)));
+    }
+
+    @Test
+    void testConcurrentCreateRoomRespectsCap() throws Exception {
+        RoomManager manager = new RoomManager(0, 16, 1000);
+        AtomicInteger created = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int j = 0; j < 10; j++) {
+                    if (manager.createRoom() != null) {
+                        created.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(16, created.get());
+        assertEquals(16, manager.getAllRooms().size());
+
+        // 移除房间后名额归还
+        manager.removeRoom(manager.getAllRooms().values().iterator().next().getRoomId());
+        assertNotNull(manager.createRoom());
+        assertNull(manager.createRoom());
+    }
+}
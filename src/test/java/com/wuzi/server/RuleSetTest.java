@@ -0,0 +1,88 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RuleSetTest {
+
+    private static GameBoard board(int[][] black, int[][] white) {
+        GameBoard board = new GameBoard();
+        for (int[] p : black) {
+            board.makeMove(p[0], p[1], "black");
+        }
+        for (int[] p : white) {
+            board.makeMove(p[0], p[1], "white");
+        }
+        return board;
+    }
+
+    @Test
+    void testOverlineWinsOnlyInFreestyle() {
+        GameBoard board = board(new int[][]{{7, 1}, {7, 2}, {7, 3}, {7, 4}, {7, 5}, {7, 6}}, new int[][]{{1, 1}, {1, 2}, {1, 3}, {1, 4}, {1, 5}});
+        assertTrue(RuleSet.FREESTYLE.isWin(board, 7, 4));
+        assertFalse(RuleSet.STANDARD.isWin(board, 7, 4));
+        assertTrue(RuleSet.STANDARD.isWin(board, 1, 3));
+        // 连珠规则下白方长连也获胜
+        GameBoard white = board(new int[][]{{0, 0}}, new int[][]{{7, 1}, {7, 2}, {7, 3}, {7, 4}, {7, 5}, {7, 6}});
+        assertTrue(RuleSet.RENJU.isWin(white, 7, 6));
+    }
+
+    @Test
+    void testRenjuDoubleThreeAndDoubleFour() {
+        GameBoard threes = board(new int[][]{{7, 5}, {7, 6}, {5, 7}, {6, 7}}, new int[0][]);
+        assertEquals(RuleSet.Forbidden.DOUBLE_THREE, RuleSet.RENJU.checkForbidden(threes, 7, 7, "black"));
+        assertNull(RuleSet.RENJU.checkForbidden(threes, 7, 7, "white"));
+        assertNull(RuleSet.FREESTYLE.checkForbidden(threes, 7, 7, "black"));
+
+        GameBoard fours = board(new int[][]{{7, 3}, {7, 4}, {7, 5}, {3, 7}, {4, 7}, {5, 7}}, new int[0][]);
+        assertEquals(RuleSet.Forbidden.DOUBLE_FOUR, RuleSet.RENJU.checkForbidden(fours, 7, 7, "black"));
+
+        // 同一条线上的两个冲四也是四四
+        GameBoard line = board(new int[][]{{7, 2}, {7, 4}, {7, 6}, {7, 8}}, new int[0][]);
+        assertEquals(RuleSet.Forbidden.DOUBLE_FOUR, RuleSet.RENJU.checkForbidden(line, 7, 5, "black"));
+    }
+
+    @Test
+    void testRenjuOverlineAndFivePriority() {
+        GameBoard board = board(new int[][]{{7, 1}, {7, 2}, {7, 3}, {7, 5}, {7, 6}}, new int[0][]);
+        assertEquals(RuleSet.Forbidden.OVERLINE, RuleSet.RENJU.checkForbidden(board, 7, 4, "black"));
+
+        // 成五的同时形成四四，成五优先
+        GameBoard five = board(new int[][]{{7, 3}, {7, 4}, {7, 5}, {7, 6}, {3, 7}, {4, 7}, {5, 7}, {3, 11}, {4, 10}, {5, 9}}, new int[0][]);
+        assertNull(RuleSet.RENJU.checkForbidden(five, 7, 7, "black"));
+    }
+
+    @Test
+    void testBlockedThreeAndFourThreeAreAllowed() {
+        // 列上的三被白子堵住一端且另一端空间不足，不是活三
+        GameBoard blocked = board(new int[][]{{7, 5}, {7, 6}, {5, 7}, {6, 7}}, new int[][]{{4, 7}, {9, 7}});
+        assertNull(RuleSet.RENJU.checkForbidden(blocked, 7, 7, "black"));
+
+        GameBoard fourThree = board(new int[][]{{7, 4}, {7, 5}, {7, 6}, {5, 7}, {6, 7}}, new int[][]{{7, 3}});
+        assertNull(RuleSet.RENJU.checkForbidden(fourThree, 7, 7, "black"));
+    }
+
+    @Test
+    void testRoomRejectsForbiddenMoveAndRuleChangeDuringGame() {
+        GameRoom room = new GameRoom(1);
+        Player p1 = new Player("A", null);
+        Player p2 = new Player("B", null);
+        room.addPlayer(p1);
+        room.addPlayer(p2);
+        assertTrue(room.setRuleSet(RuleSet.RENJU));
+        room.setPlayerReady(p1);
+        assertTrue(room.setPlayerReady(p2));
+        assertFalse(room.setRuleSet(RuleSet.FREESTYLE));
+
+        int[][] moves = {{7, 5}, {0, 0}, {7, 6}, {0, 2}, {5, 7}, {0, 4}, {6, 7}, {0, 6}};
+        String color = "black";
+        for (int[] m : moves) {
+            assertTrue(room.makeMove(m[0], m[1], color));
+            color = color.equals("black") ? "white" : "black";
+        }
+        assertEquals(RuleSet.Forbidden.DOUBLE_THREE, room.checkForbidden(7, 7, "black"));
+        assertFalse(room.makeMove(7, 7, "black"));
+        assertEquals(RuleSet.Forbidden.DOUBLE_THREE, room.getRejectedForbidden());
+        assertTrue(room.makeMove(8, 8, "black"));
+    }
+}
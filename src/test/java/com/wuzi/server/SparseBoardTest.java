@@ -0,0 +1,101 @@
+package com.wuzi.server;
+
+import com.wuzi.common.BinaryProtocol;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SparseBoardTest {
+
+    @Test
+    void testWinFarFromOrigin() {
+        SparseBoard board = new SparseBoard();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(board.makeMove(-500_000 + i, 123_456 - i, "black"));
+        }
+        assertFalse(board.checkWin(-500_000, 123_456));
+        assertTrue(board.makeMove(-499_996, 123_452, "black"));
+        assertTrue(board.checkWin(-499_996, 123_452));
+        assertFalse(board.makeMove(-499_996, 123_452, "white"));
+        assertFalse(board.makeMove(SparseBoard.LIMIT + 1, 0, "white"));
+        assertEquals(5, board.getStoneCount());
+    }
+
+    @Test
+    void testGrowAndRemoveKeepOtherStones() {
+        SparseBoard board = new SparseBoard();
+        for (int i = 0; i < 1000; i++) {
+            board.place(i * 7, -i * 13, i % 2);
+        }
+        assertEquals(1000, board.getStoneCount());
+        for (int i = 0; i < 1000; i += 3) {
+            board.remove(i * 7, -i * 13, i % 2);
+        }
+        for (int i = 0; i < 1000; i++) {
+            int expected = i % 3 == 0 ? 0 : i % 2 + 1;
+            assertEquals(expected, board.getCell(i * 7, -i * 13), "第 " + i + " 个棋子");
+        }
+        board.reset();
+        assertEquals(0, board.getStoneCount());
+        assertEquals(0, board.getCell(7, -13));
+    }
+
+    @Test
+    void testViewportFollowsRecentMovesAndIsCached() {
+        SparseBoard board = new SparseBoard();
+        board.makeMove(1000, -2000, "black");
+        byte[] first = board.renderBytes();
+        assertSame(first, board.renderBytes());
+        String text = board.toString();
+        assertTrue(text.contains("视口：行 993..1007"), text);
+        assertTrue(text.contains("列 -2007..-1993"), text);
+        assertEquals(SparseBoard.VIEW + 2, text.split("\n").length);
+
+        board.makeMove(1030, -2000, "white");
+        assertNotSame(first, board.renderBytes());
+        // 两手相距很远时视口放大到上限
+        assertEquals(SparseBoard.MAX_VIEW + 2, board.toString().split("\n").length);
+    }
+
+    @Test
+    void testRoomBoardSizes() {
+        GameRoom room = new GameRoom(1);
+        Player p1 = new Player("A", null);
+        Player p2 = new Player("B", null);
+        room.addPlayer(p1);
+        room.addPlayer(p2);
+
+        assertTrue(room.setBoardSize(19));
+        room.setPlayerReady(p1);
+        assertTrue(room.setPlayerReady(p2));
+        assertFalse(room.setBoardSize(15));
+        assertTrue(room.makeMove(18, 18, "black"));
+        assertEquals(19 * 19, room.getBoardCells().length);
+        room.setGameOver(true);
+
+        assertTrue(room.setBoardSize(0));
+        room.setPlayerReady(p1);
+        assertTrue(room.setPlayerReady(p2));
+        assertTrue(room.isUnbounded());
+        assertTrue(room.makeMove(-40, 75, "black"));
+        assertEquals(BinaryProtocol.EV_TEXT, room.getBoardFrame()[2] & 0xFF);
+        assertTrue(room.getBoardSnapshot().startsWith("视口"));
+
+        // 连珠禁手在无边界棋盘上同样适用
+        room.setGameOver(true);
+        assertTrue(room.setRuleSet(RuleSet.RENJU));
+        room.setPlayerReady(p1);
+        assertTrue(room.setPlayerReady(p2));
+        int[][] moves = {{-40, 75}, {0, 0}, {-40, 76}, {0, 2}, {-42, 77}, {0, 4}, {-41, 77}, {0, 6}};
+        String color = "black";
+        for (int[] m : moves) {
+            assertTrue(room.makeMove(m[0], m[1], color));
+            color = color.equals("black") ? "white" : "black";
+        }
+        assertEquals(RuleSet.Forbidden.DOUBLE_THREE, room.checkForbidden(-40, 77, "black"));
+
+        // 房间空出后恢复默认尺寸
+        room.removePlayer(p1);
+        room.removePlayer(p2);
+        assertEquals(GameBoard.DEFAULT_SIZE, room.getBoardSize());
+    }
+}
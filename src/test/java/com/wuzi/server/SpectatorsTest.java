@@ -0,0 +1,140 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpectatorsTest {
+    private GameRoom gameRoom;
+    private Player black;
+
+    // 记录写出的数据
+    private static class RecordingConnection implements Connection {
+        final List<byte[]> writes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(byte[] data) {
+            writes.add(data);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        void awaitWrites(int count) throws InterruptedException {
+            for (int i = 0; i < 200 && writes.size() < count; i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(writes.size() >= count, "only " + writes.size() + " writes");
+        }
+    }
+
+    // 在 release 之前一直阻塞写操作，模拟 TCP 窗口已满的慢客户端
+    private static class StalledConnection implements Connection {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<byte[]> writes = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void write(byte[] data) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writes.add(data);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        gameRoom = new GameRoom(1);
+        Player p1 = new Player("P1", new RecordingConnection());
+        Player p2 = new Player("P2", new RecordingConnection());
+        gameRoom.addPlayer(p1);
+        gameRoom.addPlayer(p2);
+        gameRoom.setPlayerReady(p1);
+        gameRoom.setPlayerReady(p2);
+        black = p1.getColor().equals("black") ? p1 : p2;
+    }
+
+    @Test
+    void testEventEncodedOnceForAllWatchers() throws Exception {
+        RecordingConnection a = new RecordingConnection();
+        RecordingConnection b = new RecordingConnection();
+        RecordingConnection c = new RecordingConnection();
+        gameRoom.getSpectators().add(new Player("A", a));
+        gameRoom.getSpectators().add(new Player("B", b));
+        Player deltaWatcher = new Player("C", c);
+        deltaWatcher.setDeltaUpdates(true);
+        gameRoom.getSpectators().add(deltaWatcher);
+        assertEquals(3, gameRoom.getSpectators().size());
+
+        gameRoom.makeMove(7, 7, "black");
+        gameRoom.getSpectators().publishMove(7, 7, "black");
+        a.awaitWrites(1);
+        b.awaitWrites(1);
+        c.awaitWrites(1);
+
+        // 文本观战者共享同一个棋盘字节数组
+        assertSame(a.writes.get(0), b.writes.get(0));
+        assertSame(gameRoom.getBoardBytes(), a.writes.get(0));
+        assertEquals("@move 1 7 7 b\n", new String(c.writes.get(0), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testStalledWatcherDoesNotBlockPublisher() throws Exception {
+        StalledConnection stalled = new StalledConnection();
+        RecordingConnection healthy = new RecordingConnection();
+        gameRoom.getSpectators().add(new Player("Slow", stalled));
+        gameRoom.getSpectators().add(new Player("Fast", healthy));
+
+        long publishNanos = 0;
+        int capacity = OutboundQueue.getDefaultCapacity();
+        int moves = capacity * 2;
+        for (int i = 0; i < moves; i++) {
+            long start = System.nanoTime();
+            gameRoom.getSpectators().publishMessage("m" + i);
+            publishNanos += System.nanoTime() - start;
+            // 事件之间留出间隔，让正常的观战者跟得上
+            if (i % 8 == 0) {
+                Thread.sleep(2);
+            }
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(publishNanos) < 1000);
+
+        // 健康的观战者收到全部事件
+        healthy.awaitWrites(moves);
+        assertEquals("m0\n", new String(healthy.writes.get(0), StandardCharsets.UTF_8));
+
+        // 慢观战者积压到上限后丢弃，放行后补发一个完整棋盘
+        stalled.release.countDown();
+        for (int i = 0; i < 200 && stalled.writes.size() < capacity; i++) {
+            Thread.sleep(10);
+        }
+        // 卡住的那次写调用已经取走一批数据，不再计入积压
+        assertTrue(stalled.writes.size() <= capacity + OutboundQueue.MAX_BATCH);
+        gameRoom.makeMove(0, 0, black.getColor());
+        gameRoom.getSpectators().publishMove(0, 0, black.getColor());
+        for (int i = 0; i < 200 && stalled.writes.get(stalled.writes.size() - 1) != gameRoom.getBoardBytes(); i++) {
+            Thread.sleep(10);
+        }
+        assertSame(gameRoom.getBoardBytes(), stalled.writes.get(stalled.writes.size() - 1));
+    }
+
+    @Test
+    void testRemoveWatcher() {
+        Player watcher = new Player("W", new RecordingConnection());
+        gameRoom.getSpectators().add(watcher);
+        gameRoom.getSpectators().remove(watcher);
+        assertTrue(gameRoom.getSpectators().isEmpty());
+    }
+}
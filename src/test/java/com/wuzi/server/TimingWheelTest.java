@@ -0,0 +1,204 @@
+package com.wuzi.server;
+
+import org.junit.jupiter.api.Test;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static class RecordingConnection implements Connection {
+        final List<String> lines = new CopyOnWriteArrayList<>();
+        volatile boolean closed;
+
+        @Override
+        public void write(byte[] data) {
+            lines.add(new String(data, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        boolean received(String text) {
+            return lines.stream().anyMatch(line -> line.contains(text));
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void testRescheduleCancelAndLaterRounds() {
+        TimingWheel wheel = new TimingWheel(10, 8);
+        int[] fired = new int[2];
+        TimingWheel.Timeout a = wheel.newTimeout(() -> fired[0]++);
+        TimingWheel.Timeout b = wheel.newTimeout(() -> fired[1]++);
+        wheel.schedule(a, 30);
+        // 20 个刻度之后，比一圈 8 格多两圈，经过同一格时不能提前执行
+        wheel.schedule(b, 200);
+        wheel.schedule(a, 50);
+        assertEquals(2, wheel.size());
+        for (int i = 0; i < 4; i++) {
+            wheel.advance();
+        }
+        assertEquals(0, fired[0]);
+        wheel.advance();
+        assertEquals(1, fired[0]);
+        assertFalse(wheel.isPending(a));
+        for (int i = 5; i < 19; i++) {
+            wheel.advance();
+        }
+        assertEquals(0, fired[1]);
+        wheel.advance();
+        assertEquals(1, fired[1]);
+        assertEquals(200, wheel.now());
+
+        wheel.schedule(a, 10);
+        assertTrue(wheel.cancel(a));
+        assertFalse(wheel.cancel(a));
+        wheel.advance();
+        assertEquals(1, fired[0]);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void testManyClocksFireExactlyOnce() {
+        TimingWheel wheel = new TimingWheel(100, 512);
+        int n = 100_000;
+        int[] fired = new int[n];
+        TimingWheel.Timeout[] timeouts = new TimingWheel.Timeout[n];
+        Random random = new Random(42);
+        for (int i = 0; i < n; i++) {
+            int id = i;
+            timeouts[i] = wheel.newTimeout(() -> fired[id]++);
+            wheel.schedule(timeouts[i], 100 + random.nextInt(120_000));
+        }
+        // 模拟每手棋重新计时，以及部分对局提前结束
+        for (int i = 0; i < n; i += 2) {
+            wheel.schedule(timeouts[i], 100 + random.nextInt(120_000));
+        }
+        for (int i = 1; i < n; i += 4) {
+            wheel.cancel(timeouts[i]);
+        }
+        int total = 0;
+        for (int t = 0; t < 1300; t++) {
+            total += wheel.advance();
+        }
+        assertEquals(n - n / 4, total);
+        assertEquals(0, wheel.size());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i % 4 == 1 ? 0 : 1, fired[i], "计时 " + i);
+        }
+    }
+
+    @Test
+    void testClockIncrementAndByoyomi() {
+        GameClock fischer = new GameClock(TimeControl.parse("1+5"), 0);
+        assertEquals(60_000, fischer.deadline());
+        assertTrue(fischer.move(10_000));
+        assertEquals(55_000, fischer.getRemaining(0, 10_000));
+        assertEquals(1, fischer.getTurn());
+        assertFalse(fischer.move(70_001));
+        assertTrue(fischer.isOutOfTime(70_001));
+
+        // 主时间 0，读秒 10 秒共 2 次：超出一个周期消耗一次
+        GameClock byoyomi = new GameClock(TimeControl.parse("0/10x2"), 0);
+        assertEquals(20_000, byoyomi.deadline());
+        assertTrue(byoyomi.move(15_000));
+        assertEquals(1, byoyomi.getPeriods(0));
+        assertTrue(byoyomi.move(16_000));
+        assertEquals(2, byoyomi.getPeriods(1));
+        assertEquals(26_000, byoyomi.deadline());
+        assertTrue(byoyomi.move(25_000));
+        assertEquals(1, byoyomi.getPeriods(0));
+
+        assertNull(TimeControl.parse("abc"));
+        assertNull(TimeControl.parse("0+5"));
+        // 读秒次数在日志中只占一个字节；过大的数值乘以毫秒数会溢出
+        assertEquals(255, TimeControl.parse("5/30x255").getPeriods());
+        assertNull(TimeControl.parse("5/30x300"));
+        assertNull(TimeControl.parse("153722867280913+0"));
+        assertNull(TimeControl.parse("10+9223372036854776"));
+        assertNull(TimeControl.parse("5/9223372036854776x3"));
+        assertFalse(TimeControl.parse("off").isTimed());
+    }
+
+    @Test
+    void testClockTimeoutEndsGameAsLoss() throws InterruptedException {
+        RoomManager manager = new RoomManager(1, 10, 60_000);
+        manager.setDefaultTimeControl(new TimeControl(0, 0, 50, 1));
+        GameRoom room = manager.getRoom(1);
+        RecordingConnection c1 = new RecordingConnection();
+        RecordingConnection c2 = new RecordingConnection();
+        Player p1 = new Player("A", c1);
+        Player p2 = new Player("B", c2);
+        room.addPlayer(p1);
+        room.addPlayer(p2);
+        room.execute(() -> ClientHandler.startGame(room, p1));
+        room.execute(() -> ClientHandler.startGame(room, p2));
+        await(room::isTimed);
+        Player black = "black".equals(p1.getColor()) ? p1 : p2;
+
+        Thread.sleep(80);
+        manager.getTimers().advance();
+        await(() -> c2.received("获胜"));
+        assertTrue(room.isGameOver());
+        assertFalse(room.isTimed());
+        await(() -> c1.received(black.getName() + " 超时，判负"));
+
+        // 房间的计时规则覆盖默认值，空出后恢复默认
+        assertTrue(room.setTimeControl(TimeControl.NONE));
+        room.removePlayer(p1);
+        room.removePlayer(p2);
+        assertTrue(room.getTimeControl().isTimed());
+    }
+
+    @Test
+    void testIdlePlayersLoseTheirTurnAndLeaveTheLobby() throws InterruptedException {
+        RoomManager manager = new RoomManager(1, 10, 60_000);
+        manager.setIdleTimeouts(200, 100);
+        TimingWheel timers = manager.getTimers();
+        RecordingConnection c1 = new RecordingConnection();
+        RecordingConnection c2 = new RecordingConnection();
+        ClientHandler h1 = new ClientHandler(manager);
+        ClientHandler h2 = new ClientHandler(manager);
+        h1.login("A", c1, "test");
+        h2.login("B", c2, "test");
+        h1.handleLine("enter room 1");
+        h2.handleLine("enter room 1");
+        h1.handleLine("start");
+        h2.handleLine("start");
+        GameRoom room = manager.getRoom(1);
+        await(room::isGameStarted);
+
+        // 登录时按大厅时限安排第一次检查；轮到的一方不落子判负并离座，等待的一方留在房间
+        timers.advance();
+        timers.advance();
+        await(() -> room.getPlayerCount() == 1);
+        // 消息在邮箱任务结束后才统一写出
+        await(() -> c1.received("长时间未落子，判负") && c2.received("长时间未落子，判负"));
+        await(() -> c1.received("已离开房间") || c2.received("已离开房间"));
+        RecordingConnection idle = c1.received("已离开房间") ? c1 : c2;
+        RecordingConnection waiting = idle == c1 ? c2 : c1;
+        assertFalse(waiting.received("已离开房间"));
+
+        // 对局结束后留下的一方也按房间时限离座，房间空出
+        timers.advance();
+        await(() -> room.getPlayerCount() == 0);
+        assertFalse(idle.closed);
+
+        // 离座后重新按大厅时限计算，先离座的一方先断开；断开前先写完已排队的消息
+        timers.advance();
+        await(() -> idle.closed);
+        assertFalse(waiting.closed);
+    }
+}